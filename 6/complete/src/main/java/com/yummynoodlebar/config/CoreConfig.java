@@ -1,28 +1,408 @@
 package com.yummynoodlebar.config;
 
+import com.yummynoodlebar.core.cluster.ClusterNode;
+import com.yummynoodlebar.core.cluster.HttpClusterTransport;
+import com.yummynoodlebar.core.cluster.OrdersPartitionedRepository;
+import com.yummynoodlebar.core.cluster.OwnedOrderKeyGenerator;
 import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.raft.RaftLog;
+import com.yummynoodlebar.core.raft.RaftNode;
+import com.yummynoodlebar.core.raft.SocketRaftTransport;
+import com.yummynoodlebar.core.replication.NoReplication;
+import com.yummynoodlebar.core.replication.OrdersReplication;
+import com.yummynoodlebar.core.replication.ReplicationFollower;
+import com.yummynoodlebar.core.replication.ReplicationLeader;
+import com.yummynoodlebar.core.repository.ColdOrderSegments;
+import com.yummynoodlebar.core.repository.FsyncPolicy;
+import com.yummynoodlebar.core.repository.OrderKeyFilter;
+import com.yummynoodlebar.core.repository.OrdersIndexingRepository;
+import com.yummynoodlebar.core.repository.OrdersConcurrentRepository;
+import com.yummynoodlebar.core.repository.OrdersH2Repository;
+import com.yummynoodlebar.core.repository.OrdersJournalingRepository;
+import com.yummynoodlebar.core.repository.OrdersKeyFilteringRepository;
+import com.yummynoodlebar.core.repository.OrdersLsmRepository;
+import com.yummynoodlebar.core.repository.OrdersMappedFileRepository;
 import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
+import com.yummynoodlebar.core.repository.OrdersPersistentMapRepository;
 import com.yummynoodlebar.core.repository.OrdersRepository;
+import com.yummynoodlebar.core.repository.OrdersShardedRepository;
+import com.yummynoodlebar.core.repository.OrdersSnapshotStore;
+import com.yummynoodlebar.core.repository.OrdersTieredRepository;
+import com.yummynoodlebar.core.repository.OrdersVersioningRepository;
+import com.yummynoodlebar.core.repository.OrdersWriteAheadLog;
+import com.yummynoodlebar.core.repository.WriteAheadLogs;
+import com.yummynoodlebar.core.services.AsyncOrderEventHandler;
+import com.yummynoodlebar.core.services.AsyncOrderService;
 import com.yummynoodlebar.core.services.OrderEventHandler;
 import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.core.services.OrderKeyGenerator;
+import com.yummynoodlebar.core.services.RandomOrderKeyGenerator;
+import com.yummynoodlebar.core.services.TimeOrderedOrderKeyGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class CoreConfig {
 
+  //TODOCUMENT The repository implementation is chosen with the yummynoodlebar.repository property
+  //(a system property or environment variable), so the same WAR can be deployed with different stores.
+  public static final String REPOSITORY_PROPERTY = "yummynoodlebar.repository";
+
+  public static final String MEMORY_REPOSITORY = "memory";
+  public static final String PERSISTENT_MAP_REPOSITORY = "persistent-map";
+  public static final String CONCURRENT_REPOSITORY = "concurrent";
+  public static final String MAPPED_FILE_REPOSITORY = "mapped-file";
+  public static final String H2_REPOSITORY = "h2";
+  public static final String LSM_REPOSITORY = "lsm";
+
+  public static final String CONCURRENCY_LEVEL_PROPERTY = "yummynoodlebar.repository.concurrency";
+  public static final String DIRECTORY_PROPERTY = "yummynoodlebar.repository.directory";
+  public static final String SEGMENT_SIZE_PROPERTY = "yummynoodlebar.repository.segment-size";
+  public static final long COMPACTION_CHECK_INTERVAL_MILLIS = 60000;
+  //TODOCUMENT Size of the h2 repository's connection pool.
+  public static final String CONNECTIONS_PROPERTY = "yummynoodlebar.repository.connections";
+  //TODOCUMENT How many orders of a batch the h2 repository saves a transaction.
+  public static final String ORDERS_PER_TRANSACTION_PROPERTY = "yummynoodlebar.repository.orders-per-transaction";
+  //TODOCUMENT The lsm repository keeps its own log and runs in an lsm subdirectory, forcing the log as
+  //yummynoodlebar.journal.fsync says. Its memtable is flushed at .memtable-size bytes, and merges of its runs
+  //write at most .compaction-rate bytes a second.
+  public static final String MEMTABLE_SIZE_PROPERTY = "yummynoodlebar.repository.memtable-size";
+  public static final String COMPACTION_RATE_PROPERTY = "yummynoodlebar.repository.compaction-rate";
+
+  //TODOCUMENT Setting yummynoodlebar.journal=true logs writes to a write-ahead log in the repository directory
+  //before applying them, and replays it on startup. This makes the in-memory repositories durable, with a
+  //snapshot of them written every .snapshot-interval milliseconds so that only the log since is replayed.
+  //The mapped-file repository is not synced on its own, so the journal makes it durable too; it is flushed
+  //rather than snapshotted. h2 and lsm are durable without it, and it only adds a second log.
+  public static final String JOURNAL_PROPERTY = "yummynoodlebar.journal";
+  public static final String FSYNC_POLICY_PROPERTY = "yummynoodlebar.journal.fsync";
+  public static final String FSYNC_INTERVAL_PROPERTY = "yummynoodlebar.journal.fsync-interval";
+  public static final String SNAPSHOT_INTERVAL_PROPERTY = "yummynoodlebar.journal.snapshot-interval";
+
+  //TODOCUMENT Secondary indexes answer the filtered queries without scanning every order.
+  //They are kept in memory and rebuilt on startup, so they are only on by default for the repositories kept on
+  //the heap: the mapped-file and lsm repositories keep the heap the same size whatever the number of orders,
+  //and the h2 repository answers the queries from its own indexes. yummynoodlebar.indexes overrides that.
+  public static final String INDEXES_PROPERTY = "yummynoodlebar.indexes";
+
+  //TODOCUMENT Tiering keeps only recent orders in the repository above, moving orders submitted more than
+  //yummynoodlebar.tiering.max-age milliseconds ago, and the oldest while more than the yummynoodlebar.tiering.heap
+  //fraction of the heap is used, to compressed segments in a cold subdirectory. Off unless either is set.
+  public static final String TIERING_MAX_AGE_PROPERTY = "yummynoodlebar.tiering.max-age";
+  public static final String TIERING_HEAP_PROPERTY = "yummynoodlebar.tiering.heap";
+  public static final String TIERING_INTERVAL_PROPERTY = "yummynoodlebar.tiering.interval";
+  public static final String TIERING_CACHE_BLOCKS_PROPERTY = "yummynoodlebar.tiering.cache-blocks";
+
+  //TODOCUMENT A Bloom filter of the stored order keys answers lookups of unknown keys without reaching the
+  //repository. yummynoodlebar.key-filter=false turns it off; .capacity and .false-positive-rate size it.
+  public static final String KEY_FILTER_PROPERTY = "yummynoodlebar.key-filter";
+  public static final String KEY_FILTER_CAPACITY_PROPERTY = "yummynoodlebar.key-filter.capacity";
+  public static final String KEY_FILTER_FALSE_POSITIVE_RATE_PROPERTY = "yummynoodlebar.key-filter.false-positive-rate";
+  public static final long KEY_FILTER_CHECK_INTERVAL_MILLIS = 10000;
+
+  //TODOCUMENT Writes are versioned so that reads can share a snapshot of the orders over several calls,
+  //as streaming all orders does. While no snapshot is open a write costs no more than its version.
+  //yummynoodlebar.snapshots=false turns it off.
+  public static final String SNAPSHOTS_PROPERTY = "yummynoodlebar.snapshots";
+
+  //TODOCUMENT yummynoodlebar.repository.shards splits the orders over that many independent repositories,
+  //each built as configured above, and each in its own shard-N subdirectory when it keeps files.
+  public static final String SHARDS_PROPERTY = "yummynoodlebar.repository.shards";
+
+  //TODOCUMENT New order keys are time-ordered UUIDs, see TimeOrderedOrderKeyGenerator;
+  //yummynoodlebar.keys=random goes back to UUID.randomUUID().
+  public static final String KEYS_PROPERTY = "yummynoodlebar.keys";
+  public static final String TIME_ORDERED_KEYS = "time-ordered";
+  public static final String RANDOM_KEYS = "random";
+
+  //TODOCUMENT Partitioned deployment over several instances. yummynoodlebar.cluster.self is the base URL this
+  //instance is reached on (e.g. http://localhost:8081), and yummynoodlebar.cluster.nodes a comma separated list
+  //of the base URLs of the others. Each instance owns the order keys a consistent hash ring gives it, and the
+  //instances call each other's /cluster endpoints with the yummynoodlebar.cluster.user credentials.
+  public static final String CLUSTER_SELF_PROPERTY = "yummynoodlebar.cluster.self";
+  public static final String CLUSTER_NODES_PROPERTY = "yummynoodlebar.cluster.nodes";
+  public static final String CLUSTER_USER_PROPERTY = "yummynoodlebar.cluster.user";
+  public static final String CLUSTER_PASSWORD_PROPERTY = "yummynoodlebar.cluster.password";
+
+  //TODOCUMENT Leader-follower replication. yummynoodlebar.replication.role=leader streams every change to
+  //followers connecting on yummynoodlebar.replication.port. yummynoodlebar.replication.role=follower connects
+  //to the leader at yummynoodlebar.replication.leader (host:port), serves reads from its copy, and sends
+  //writes to the leader's web service at yummynoodlebar.replication.leader-url.
+  public static final String REPLICATION_ROLE_PROPERTY = "yummynoodlebar.replication.role";
+  public static final String REPLICATION_PORT_PROPERTY = "yummynoodlebar.replication.port";
+  public static final String REPLICATION_BACKLOG_PROPERTY = "yummynoodlebar.replication.backlog";
+  public static final String REPLICATION_LEADER_PROPERTY = "yummynoodlebar.replication.leader";
+  public static final String REPLICATION_LEADER_URL_PROPERTY = "yummynoodlebar.replication.leader-url";
+
+  //TODOCUMENT yummynoodlebar.replication.role=raft makes this instance one of a Raft group of three or five.
+  //yummynoodlebar.replication.raft.members lists each member's host:port for Raft messages, and
+  //yummynoodlebar.replication.raft.urls their web services in the same order; .id is this instance's
+  //position in both. The log is kept under yummynoodlebar.replication.raft.dir, or only in memory, and compacted
+  //into a snapshot of the orders every yummynoodlebar.replication.raft.snapshot-every entries.
+  public static final String RAFT_MEMBERS_PROPERTY = "yummynoodlebar.replication.raft.members";
+  public static final String RAFT_URLS_PROPERTY = "yummynoodlebar.replication.raft.urls";
+  public static final String RAFT_ID_PROPERTY = "yummynoodlebar.replication.raft.id";
+  public static final String RAFT_DIR_PROPERTY = "yummynoodlebar.replication.raft.dir";
+  public static final String RAFT_SNAPSHOT_EVERY_PROPERTY = "yummynoodlebar.replication.raft.snapshot-every";
+
+  //TODOCUMENT The web service hands order requests to a pool of yummynoodlebar.service.threads threads
+  //(twice the processors by default), so that servlet threads are not held while the core works.
+  //At most yummynoodlebar.service.queue requests wait for a thread; past that they are refused with a 503.
+  public static final String SERVICE_THREADS_PROPERTY = "yummynoodlebar.service.threads";
+  public static final String SERVICE_QUEUE_PROPERTY = "yummynoodlebar.service.queue";
+  public static final int DEFAULT_SERVICE_QUEUE = 1000;
+
+  public static final String LEADER = "leader";
+  public static final String FOLLOWER = "follower";
+  public static final String RAFT = "raft";
+  public static final int DEFAULT_REPLICATION_PORT = 7070;
+
+  @Autowired
+  private Environment environment;
+
+  private OrdersVersioningRepository versioning;
+
+  @Bean
+  public OrderService createService(OrdersRepository repo, ClusterNode clusterNode) {
+    //Snapshots are of the local orders, so only of use where the service reads those as they are, not
+    //through replication or the cluster.
+    return new OrderEventHandler(repo, new OwnedOrderKeyGenerator(clusterNode, keyGenerator()),
+            repo == versioning ? versioning : null);
+  }
 
   @Bean
-  public OrderService createService(OrdersRepository repo) {
-    return new OrderEventHandler(repo);
+  public AsyncOrderService createAsyncService(OrderService orderService) {
+    return new AsyncOrderEventHandler(orderService, serviceExecutor());
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService serviceExecutor() {
+    int threads = environment.getProperty(SERVICE_THREADS_PROPERTY, Integer.class,
+            2 * Runtime.getRuntime().availableProcessors());
+    int queue = environment.getProperty(SERVICE_QUEUE_PROPERTY, Integer.class, DEFAULT_SERVICE_QUEUE);
+    final AtomicInteger created = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queue), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "order-service-" + created.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private OrderKeyGenerator keyGenerator() {
+    String keys = environment.getProperty(KEYS_PROPERTY, TIME_ORDERED_KEYS);
+    if (RANDOM_KEYS.equals(keys)) {
+      return new RandomOrderKeyGenerator();
+    }
+    if (TIME_ORDERED_KEYS.equals(keys)) {
+      return new TimeOrderedOrderKeyGenerator();
+    }
+    throw new IllegalStateException("Unknown " + KEYS_PROPERTY + " '" + keys + "'");
   }
 
   @Bean
-  public OrdersRepository createRepo() {
-    return new OrdersMemoryRepository(new HashMap<UUID, Order>());
+  public OrdersRepository createRepo() throws IOException {
+    ClusterNode node = clusterNode();
+    if (!node.isClustered()) {
+      return node.getLocalRepository();
+    }
+    return new OrdersPartitionedRepository(node);
+  }
+
+  @Bean
+  public ClusterNode clusterNode() throws IOException {
+    OrdersRepository local = replication().getRepository();
+    String self = environment.getProperty(CLUSTER_SELF_PROPERTY);
+    if (self == null) {
+      return ClusterNode.standalone(local);
+    }
+    return new ClusterNode(self,
+            Arrays.asList(environment.getProperty(CLUSTER_NODES_PROPERTY, "").split(",")),
+            local,
+            new HttpClusterTransport(environment.getProperty(CLUSTER_USER_PROPERTY),
+                    environment.getProperty(CLUSTER_PASSWORD_PROPERTY)));
+  }
+
+  @Bean(destroyMethod = "close")
+  public OrdersReplication replication() throws IOException {
+    String role = environment.getProperty(REPLICATION_ROLE_PROPERTY);
+    if (role == null) {
+      return new NoReplication(createLocalRepo());
+    }
+    if (LEADER.equals(role)) {
+      return new ReplicationLeader(createLocalRepo(),
+              environment.getProperty(REPLICATION_PORT_PROPERTY, Integer.class, DEFAULT_REPLICATION_PORT),
+              environment.getProperty(REPLICATION_BACKLOG_PROPERTY, Integer.class, ReplicationLeader.DEFAULT_BACKLOG_CAPACITY));
+    }
+    if (FOLLOWER.equals(role)) {
+      return new ReplicationFollower(createLocalRepo(),
+              address(REPLICATION_LEADER_PROPERTY, environment.getProperty(REPLICATION_LEADER_PROPERTY)),
+              environment.getProperty(REPLICATION_LEADER_URL_PROPERTY));
+    }
+    if (RAFT.equals(role)) {
+      List<String> members = commaSeparated(RAFT_MEMBERS_PROPERTY);
+      List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+      for (String member : members) {
+        addresses.add(address(RAFT_MEMBERS_PROPERTY, member));
+      }
+      String dir = environment.getProperty(RAFT_DIR_PROPERTY);
+      return new RaftNode(environment.getRequiredProperty(RAFT_ID_PROPERTY, Integer.class), members,
+              commaSeparated(RAFT_URLS_PROPERTY), createLocalRepo(),
+              dir == null ? RaftLog.inMemory() : new RaftLog(new File(dir)),
+              new SocketRaftTransport(addresses),
+              environment.getProperty(RAFT_SNAPSHOT_EVERY_PROPERTY, Integer.class, RaftNode.DEFAULT_SNAPSHOT_EVERY));
+    }
+    throw new IllegalStateException("Unknown " + REPLICATION_ROLE_PROPERTY + " '" + role + "'");
+  }
+
+  @Bean
+  public OrderKeyFilter orderKeyFilter() {
+    return new OrderKeyFilter(
+            environment.getProperty(KEY_FILTER_CAPACITY_PROPERTY, Integer.class, OrderKeyFilter.DEFAULT_INITIAL_CAPACITY),
+            environment.getProperty(KEY_FILTER_FALSE_POSITIVE_RATE_PROPERTY, Double.class,
+                    OrderKeyFilter.DEFAULT_FALSE_POSITIVE_RATE));
+  }
+
+  @Bean
+  public WriteAheadLogs writeAheadLogs() {
+    return new WriteAheadLogs();
+  }
+
+  private OrdersRepository createLocalRepo() throws IOException {
+    OrdersRepository local = createUnfilteredRepo();
+    if (environment.getProperty(KEY_FILTER_PROPERTY, Boolean.class, true)) {
+      local = new OrdersKeyFilteringRepository(local, orderKeyFilter(), KEY_FILTER_CHECK_INTERVAL_MILLIS);
+    }
+    if (environment.getProperty(SNAPSHOTS_PROPERTY, Boolean.class, true)) {
+      versioning = new OrdersVersioningRepository(local);
+      local = versioning;
+    }
+    return local;
+  }
+
+  private OrdersRepository createUnfilteredRepo() throws IOException {
+    int shards = environment.getProperty(SHARDS_PROPERTY, Integer.class, 1);
+    if (shards < 1) {
+      throw new IllegalStateException(SHARDS_PROPERTY + " must be at least 1, not " + shards);
+    }
+    if (shards == 1) {
+      return createShard(repositoryDirectory());
+    }
+
+    List<OrdersRepository> repositories = new ArrayList<OrdersRepository>(shards);
+    for (int i = 0; i < shards; i++) {
+      repositories.add(createShard(new File(repositoryDirectory(), "shard-" + i)));
+    }
+    return new OrdersShardedRepository(repositories);
+  }
+
+  private OrdersRepository createShard(File directory) throws IOException {
+    String type = environment.getProperty(REPOSITORY_PROPERTY, MEMORY_REPOSITORY);
+    OrdersRepository store = createStore(type, directory);
+
+    if (environment.getProperty(JOURNAL_PROPERTY, Boolean.class, false)) {
+      long snapshotInterval = environment.getProperty(SNAPSHOT_INTERVAL_PROPERTY, Long.class, 300000L);
+
+      store = new OrdersJournalingRepository(store,
+              writeAheadLogs().register(directory.getPath(),
+                      new OrdersWriteAheadLog(directory, fsyncPolicy(), fsyncInterval())),
+              new OrdersSnapshotStore(directory), snapshotInterval);
+    }
+
+    if (environment.getProperty(INDEXES_PROPERTY, Boolean.class, isHeapStore(type))) {
+      store = new OrdersIndexingRepository(store);
+    }
+
+    long maxAge = environment.getProperty(TIERING_MAX_AGE_PROPERTY, Long.class, 0L);
+    double heap = environment.getProperty(TIERING_HEAP_PROPERTY, Double.class, 0d);
+    if (maxAge > 0 || heap > 0) {
+      store = new OrdersTieredRepository(store,
+              new ColdOrderSegments(new File(directory, "cold"), environment.getProperty(
+                      TIERING_CACHE_BLOCKS_PROPERTY, Integer.class, ColdOrderSegments.DEFAULT_CACHE_BLOCKS)),
+              maxAge, heap, environment.getProperty(TIERING_INTERVAL_PROPERTY, Long.class, 10000L));
+    }
+    return store;
+  }
+
+  private OrdersRepository createStore(String type, File directory) throws IOException {
+    if (PERSISTENT_MAP_REPOSITORY.equals(type)) {
+      return new OrdersPersistentMapRepository();
+    }
+    if (CONCURRENT_REPOSITORY.equals(type)) {
+      return new OrdersConcurrentRepository(environment.getProperty(
+              CONCURRENCY_LEVEL_PROPERTY, Integer.class, OrdersConcurrentRepository.DEFAULT_CONCURRENCY_LEVEL));
+    }
+    if (MAPPED_FILE_REPOSITORY.equals(type)) {
+      return new OrdersMappedFileRepository(directory, environment.getProperty(
+              SEGMENT_SIZE_PROPERTY, Integer.class, OrdersMappedFileRepository.DEFAULT_SEGMENT_SIZE),
+              COMPACTION_CHECK_INTERVAL_MILLIS);
+    }
+    if (H2_REPOSITORY.equals(type)) {
+      return new OrdersH2Repository(directory,
+              environment.getProperty(CONNECTIONS_PROPERTY, Integer.class, OrdersH2Repository.DEFAULT_CONNECTIONS),
+              environment.getProperty(ORDERS_PER_TRANSACTION_PROPERTY, Integer.class,
+                      OrdersH2Repository.DEFAULT_ORDERS_PER_TRANSACTION));
+    }
+    if (LSM_REPOSITORY.equals(type)) {
+      return new OrdersLsmRepository(new File(directory, "lsm"), fsyncPolicy(), fsyncInterval(),
+              environment.getProperty(MEMTABLE_SIZE_PROPERTY, Integer.class, OrdersLsmRepository.DEFAULT_MEMTABLE_BYTES),
+              environment.getProperty(COMPACTION_RATE_PROPERTY, Long.class,
+                      OrdersLsmRepository.DEFAULT_COMPACTION_BYTES_PER_SECOND));
+    }
+    if (MEMORY_REPOSITORY.equals(type)) {
+      return new OrdersMemoryRepository(new HashMap<UUID, Order>());
+    }
+    throw new IllegalStateException("Unknown " + REPOSITORY_PROPERTY + " '" + type + "'");
+  }
+
+  private static boolean isHeapStore(String type) {
+    return MEMORY_REPOSITORY.equals(type) || PERSISTENT_MAP_REPOSITORY.equals(type) || CONCURRENT_REPOSITORY.equals(type);
+  }
+
+  private FsyncPolicy fsyncPolicy() {
+    return FsyncPolicy.valueOf(
+            environment.getProperty(FSYNC_POLICY_PROPERTY, "every_write").toUpperCase().replace('-', '_'));
+  }
+
+  private long fsyncInterval() {
+    return environment.getProperty(FSYNC_INTERVAL_PROPERTY, Long.class, 10L);
+  }
+
+  private File repositoryDirectory() {
+    return new File(environment.getProperty(DIRECTORY_PROPERTY,
+            new File(System.getProperty("java.io.tmpdir"), "yummynoodlebar").getPath()));
+  }
+
+  private List<String> commaSeparated(String property) {
+    return Arrays.asList(environment.getRequiredProperty(property).split(","));
+  }
+
+  private static InetSocketAddress address(String property, String hostAndPort) {
+    int colon = hostAndPort == null ? -1 : hostAndPort.lastIndexOf(':');
+    if (colon < 0) {
+      throw new IllegalStateException(property + " must be given as host:port, not " + hostAndPort);
+    }
+    return new InetSocketAddress(hostAndPort.substring(0, colon), Integer.parseInt(hostAndPort.substring(colon + 1)));
   }
 
 }
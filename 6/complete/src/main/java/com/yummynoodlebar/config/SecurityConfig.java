@@ -20,6 +20,10 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
   protected void configure(HttpSecurity http) throws Exception {
     http.authorizeUrls()
         .antMatchers("/aggregators/**").hasRole("USER")
+        .antMatchers("/cluster/**").hasRole("USER")
+        .antMatchers("/replication/**").hasRole("USER")
+        .antMatchers("/key-filter/**").hasRole("USER")
+        .antMatchers("/journal/**").hasRole("USER")
         .anyRequest().anonymous()
         .and()
         .httpBasic();
@@ -47,6 +47,7 @@ public class WebAppInitializer implements WebApplicationInitializer {
     ServletRegistration.Dynamic appServlet = servletContext.addServlet(
         "webservice", new DispatcherServlet(mvcContext));
     appServlet.setLoadOnStartup(1);
+    appServlet.setAsyncSupported(true);
     Set<String> mappingConflicts = appServlet.addMapping("/");
 
     if (!mappingConflicts.isEmpty()) {
@@ -61,6 +62,7 @@ public class WebAppInitializer implements WebApplicationInitializer {
   private void configureSpringSecurity(ServletContext servletContext, WebApplicationContext rootContext) {
     FilterRegistration.Dynamic springSecurity = servletContext.addFilter("springSecurityFilterChain",
         new DelegatingFilterProxy("springSecurityFilterChain", rootContext));
+    springSecurity.setAsyncSupported(true);
     springSecurity.addMappingForUrlPatterns(null, true, "/*");
   }
 }
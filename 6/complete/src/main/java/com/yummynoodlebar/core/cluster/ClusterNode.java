@@ -0,0 +1,312 @@
+package com.yummynoodlebar.core.cluster;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.repository.OrderCondition;
+import com.yummynoodlebar.core.repository.OrderUpdate;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One instance of a partitioned deployment: the orders it holds itself, and its view of which node
+ * owns each key.
+ * <p>
+ * Nodes are named by the base URL other nodes reach them on, and ownership follows a
+ * {@link ConsistentHashRing} over those names. Every node is told the same set of nodes, either by
+ * being configured with it or by a node that handled a join or leave announcing it. Whenever the set
+ * changes, the node moves the orders it no longer owns to their new owners in the background, in
+ * batches, deleting each order once the owner has it, unless its version changed meanwhile. The owner
+ * keeps whichever of its own copy and the one handed over has the higher version. A node that leaves the
+ * ring hands over all of its orders this way. Batches that cannot be delivered, and orders written
+ * while they moved, are retried until they are moved.
+ * <p>
+ * While an order moves, a request for it may briefly find it on neither or on both nodes.
+ */
+public class ClusterNode implements Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(ClusterNode.class);
+
+  static final int TRANSFER_BATCH_SIZE = 500;
+  static final long RETRY_DELAY_MILLIS = 5000;
+
+  private static final String STANDALONE = "standalone";
+
+  private final String self;
+  private final OrdersRepository local;
+  private final ClusterTransport transport;
+  private volatile ConsistentHashRing ring;
+
+  private final ScheduledExecutorService rebalancer;
+  private final AtomicBoolean rebalancePending = new AtomicBoolean();
+  private final Object rebalanceLock = new Object();
+
+  public ClusterNode(String self, Collection<String> nodes, OrdersRepository local, ClusterTransport transport) {
+    this.self = normalise(self);
+    this.local = local;
+    this.transport = transport;
+
+    Set<String> members = normalise(nodes);
+    members.add(this.self);
+    this.ring = new ConsistentHashRing(members);
+
+    this.rebalancer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "order-rebalancer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    //Orders recovered from disk may belong to other nodes if the membership changed while this one was down.
+    if (isPartitioned()) {
+      scheduleRebalance(0);
+    }
+  }
+
+  //TODOCUMENT A node that owns every key, for deployments that aren't partitioned.
+  public static ClusterNode standalone(OrdersRepository local) {
+    return new ClusterNode(STANDALONE, Collections.<String>emptySet(), local, null);
+  }
+
+  public String getSelf() {
+    return self;
+  }
+
+  public OrdersRepository getLocalRepository() {
+    return local;
+  }
+
+  public ClusterTransport getTransport() {
+    return transport;
+  }
+
+  public ConsistentHashRing getRing() {
+    return ring;
+  }
+
+  public boolean isClustered() {
+    return transport != null;
+  }
+
+  public boolean isPartitioned() {
+    ConsistentHashRing current = ring;
+    return current.size() > 1 || !current.contains(self);
+  }
+
+  public String ownerOf(UUID key) {
+    return ring.ownerOf(key);
+  }
+
+  public boolean isLocal(UUID key) {
+    return self.equals(ring.ownerOf(key));
+  }
+
+  /*
+   * Adds a node to the cluster and tells every node, the new one included, about it.
+   */
+  public SortedSet<String> join(String node) {
+    String joining = normalise(node);
+    ConsistentHashRing previous;
+    ConsistentHashRing next;
+    synchronized (this) {
+      checkClustered();
+      previous = ring;
+      next = previous.withNode(joining);
+      update(next.getNodes());
+    }
+    announce(previous, next);
+    return next.getNodes();
+  }
+
+  /*
+   * Takes a node out of the cluster and tells every node, the leaving one included, about it.
+   * The leaving node then hands its orders over to the rest.
+   */
+  public SortedSet<String> leave(String node) {
+    String leaving = normalise(node);
+    ConsistentHashRing previous;
+    ConsistentHashRing next;
+    synchronized (this) {
+      checkClustered();
+      previous = ring;
+      if (previous.contains(leaving) && previous.size() == 1) {
+        throw new IllegalArgumentException("The last node of a cluster cannot leave it");
+      }
+      next = previous.withoutNode(leaving);
+      update(next.getNodes());
+    }
+    announce(previous, next);
+    return next.getNodes();
+  }
+
+  /*
+   * Adopts the set of nodes announced by another node. Returns false if it was already known.
+   */
+  public synchronized boolean update(Collection<String> nodes) {
+    checkClustered();
+    ConsistentHashRing next = new ConsistentHashRing(normalise(nodes));
+    if (next.getNodes().equals(ring.getNodes())) {
+      return false;
+    }
+    LOG.info("Cluster membership of {} changed from {} to {}", self, ring, next);
+    ring = next;
+    scheduleRebalance(0);
+    return true;
+  }
+
+  /*
+   * Stores orders handed over by another node, unless the order held here already is at a version as
+   * new, so a transfer that is late or repeated can't undo a newer write.
+   */
+  public void receive(Collection<Order> orders) {
+    for (final Order order : orders) {
+      local.compute(order.getKey(), new OrderUpdate() {
+        @Override
+        public Order apply(Order current) {
+          return current != null && current.getVersion() >= order.getVersion() ? current : order;
+        }
+      });
+    }
+  }
+
+  /*
+   * Moves every local order this node no longer owns to its owner, returning how many were moved.
+   */
+  int rebalance() {
+    synchronized (rebalanceLock) {
+      return moveOrders();
+    }
+  }
+
+  private int moveOrders() {
+    int moved = 0;
+    boolean failed = false;
+    boolean changed = false;
+    OrderCursor after = null;
+    List<Order> page;
+    do {
+      page = local.findPage(after, TRANSFER_BATCH_SIZE);
+      if (page.isEmpty()) {
+        break;
+      }
+      after = OrderCursor.of(page.get(page.size() - 1));
+
+      ConsistentHashRing current = ring;
+      Map<String, List<Order>> leaving = new HashMap<String, List<Order>>();
+      for (Order order : page) {
+        String owner = current.ownerOf(order.getKey());
+        if (!self.equals(owner)) {
+          List<Order> orders = leaving.get(owner);
+          if (orders == null) {
+            orders = new ArrayList<Order>();
+            leaving.put(owner, orders);
+          }
+          orders.add(order);
+        }
+      }
+
+      for (Map.Entry<String, List<Order>> batch : leaving.entrySet()) {
+        try {
+          transport.transfer(batch.getKey(), batch.getValue());
+        } catch (RuntimeException e) {
+          LOG.warn("Unable to move {} orders from {} to {}", batch.getValue().size(), self, batch.getKey(), e);
+          failed = true;
+          continue;
+        }
+        //An order written since it was read is kept, and moved again on the next rebalance.
+        for (final Order order : batch.getValue()) {
+          if (local.removeIf(order.getKey(), new OrderCondition() {
+            @Override
+            public boolean test(Order current) {
+              return current.getVersion() == order.getVersion();
+            }
+          })) {
+            moved++;
+          } else {
+            changed = true;
+          }
+        }
+      }
+    } while (page.size() == TRANSFER_BATCH_SIZE);
+
+    if (moved > 0) {
+      LOG.info("Moved {} orders from {} to their new owners", moved, self);
+    }
+    if (failed || changed) {
+      scheduleRebalance(RETRY_DELAY_MILLIS);
+    }
+    return moved;
+  }
+
+  @Override
+  public void close() {
+    rebalancer.shutdownNow();
+  }
+
+  /*
+   * Tells the other nodes, outside of any lock, so two nodes announcing to each other can't deadlock.
+   */
+  private void announce(ConsistentHashRing previous, ConsistentHashRing next) {
+    Set<String> told = new TreeSet<String>(previous.getNodes());
+    told.addAll(next.getNodes());
+    told.remove(self);
+    for (String node : told) {
+      try {
+        transport.announce(node, next.getNodes());
+      } catch (RuntimeException e) {
+        LOG.warn("Unable to tell {} the cluster is now {}", node, next, e);
+      }
+    }
+  }
+
+  private void scheduleRebalance(long delayMillis) {
+    if (rebalancer.isShutdown() || !rebalancePending.compareAndSet(false, true)) {
+      return;
+    }
+    rebalancer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        rebalancePending.set(false);
+        try {
+          rebalance();
+        } catch (RuntimeException e) {
+          LOG.error("Unable to rebalance the orders of {}", self, e);
+          scheduleRebalance(RETRY_DELAY_MILLIS);
+        }
+      }
+    }, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void checkClustered() {
+    if (!isClustered()) {
+      throw new IllegalStateException("This node is not part of a cluster");
+    }
+  }
+
+  static String normalise(String node) {
+    String name = node.trim();
+    while (name.endsWith("/")) {
+      name = name.substring(0, name.length() - 1);
+    }
+    return name;
+  }
+
+  private static Set<String> normalise(Collection<String> nodes) {
+    Set<String> names = new TreeSet<String>();
+    for (String node : nodes) {
+      if (!node.trim().isEmpty()) {
+        names.add(normalise(node));
+      }
+    }
+    return names;
+  }
+}
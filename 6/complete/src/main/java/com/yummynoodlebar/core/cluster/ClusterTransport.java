@@ -0,0 +1,21 @@
+package com.yummynoodlebar.core.cluster;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+//TODOCUMENT How a node reaches the other nodes of its cluster.
+//Failures to reach a node are thrown as runtime exceptions.
+public interface ClusterTransport {
+
+  //TODOCUMENT The orders held by another node, which it answers from its own repository only.
+  OrdersRepository repositoryOf(String node);
+
+  //TODOCUMENT Tells a node the new set of nodes in the cluster.
+  void announce(String node, Collection<String> nodes);
+
+  //TODOCUMENT Hands orders over to the node that now owns them.
+  void transfer(String node, List<Order> orders);
+}
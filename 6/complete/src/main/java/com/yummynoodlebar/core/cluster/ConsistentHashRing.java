@@ -0,0 +1,119 @@
+package com.yummynoodlebar.core.cluster;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Consistent hash ring assigning each order key to one of a set of nodes.
+ * <p>
+ * Every node is placed on the ring at {@link #DEFAULT_VIRTUAL_NODES} pseudo random points, and a key
+ * belongs to the node at the first point at or after the key's own position, wrapping around. Adding
+ * or removing a node therefore only moves the keys between its points and their neighbours, about
+ * 1/n of them, and the many points per node keep the share of each node close to even. Rings are
+ * immutable; membership changes make a new ring.
+ */
+public final class ConsistentHashRing {
+
+  public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final SortedSet<String> nodes;
+  private final int virtualNodes;
+  private final NavigableMap<Long, String> points = new TreeMap<Long, String>();
+
+  public ConsistentHashRing(Collection<String> nodes) {
+    this(nodes, DEFAULT_VIRTUAL_NODES);
+  }
+
+  public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("A ring needs at least one node");
+    }
+    if (virtualNodes < 1) {
+      throw new IllegalArgumentException("Each node needs at least one point on the ring, not " + virtualNodes);
+    }
+    this.nodes = Collections.unmodifiableSortedSet(new TreeSet<String>(nodes));
+    this.virtualNodes = virtualNodes;
+
+    MessageDigest md5 = md5();
+    //Nodes are placed in sorted order, so on the rare colliding point every ring agrees on the winner.
+    for (String node : this.nodes) {
+      for (int i = 0; i < virtualNodes; i++) {
+        long point = toLong(md5.digest((node + "#" + i).getBytes(UTF_8)));
+        if (!points.containsKey(point)) {
+          points.put(point, node);
+        }
+      }
+    }
+  }
+
+  public String ownerOf(UUID key) {
+    Map.Entry<Long, String> point = points.ceilingEntry(position(key));
+    return point == null ? points.firstEntry().getValue() : point.getValue();
+  }
+
+  public SortedSet<String> getNodes() {
+    return nodes;
+  }
+
+  public boolean contains(String node) {
+    return nodes.contains(node);
+  }
+
+  public int size() {
+    return nodes.size();
+  }
+
+  public ConsistentHashRing withNode(String node) {
+    Set<String> changed = new TreeSet<String>(nodes);
+    changed.add(node);
+    return new ConsistentHashRing(changed, virtualNodes);
+  }
+
+  public ConsistentHashRing withoutNode(String node) {
+    Set<String> changed = new TreeSet<String>(nodes);
+    changed.remove(node);
+    return new ConsistentHashRing(changed, virtualNodes);
+  }
+
+  @Override
+  public String toString() {
+    return nodes.toString();
+  }
+
+  /*
+   * Mixes both halves of the key, so keys that share their leading bits, such as time ordered ones,
+   * still spread over the whole ring.
+   */
+  static long position(UUID key) {
+    return mix(key.getMostSignificantBits() ^ mix(key.getLeastSignificantBits()));
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long toLong(byte[] digest) {
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      value = (value << 8) | (digest[i] & 0xff);
+    }
+    return value;
+  }
+
+  private static MessageDigest md5() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.yummynoodlebar.core.cluster;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reaches the other nodes through the /cluster endpoints of their web service.
+ */
+public class HttpClusterTransport implements ClusterTransport {
+
+  static final int CONNECT_TIMEOUT_MILLIS = 2000;
+  static final int READ_TIMEOUT_MILLIS = 30000;
+
+  private final RestTemplate restTemplate;
+  private final ConcurrentMap<String, RemoteOrdersRepository> repositories =
+          new ConcurrentHashMap<String, RemoteOrdersRepository>();
+
+  //TODOCUMENT The cluster endpoints are secured like the rest of the service, user may be null if they aren't.
+  public HttpClusterTransport(String user, String password) {
+    SimpleClientHttpRequestFactory requests = new SimpleClientHttpRequestFactory();
+    requests.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    requests.setReadTimeout(READ_TIMEOUT_MILLIS);
+    restTemplate = new RestTemplate(requests);
+    if (user != null) {
+      restTemplate.setInterceptors(Collections.<ClientHttpRequestInterceptor>singletonList(
+              new BasicAuthentication(user, password)));
+    }
+  }
+
+  @Override
+  public OrdersRepository repositoryOf(String node) {
+    return remote(node);
+  }
+
+  @Override
+  public void announce(String node, Collection<String> nodes) {
+    restTemplate.put(node + "/cluster/nodes", new ArrayList<String>(nodes));
+  }
+
+  @Override
+  public void transfer(String node, List<Order> orders) {
+    remote(node).saveAll(orders);
+  }
+
+  private RemoteOrdersRepository remote(String node) {
+    RemoteOrdersRepository repository = repositories.get(node);
+    if (repository == null) {
+      repository = new RemoteOrdersRepository(restTemplate, node);
+      RemoteOrdersRepository existing = repositories.putIfAbsent(node, repository);
+      if (existing != null) {
+        repository = existing;
+      }
+    }
+    return repository;
+  }
+
+  private static final class BasicAuthentication implements ClientHttpRequestInterceptor {
+
+    private final String authorization;
+
+    BasicAuthentication(String user, String password) {
+      this.authorization = "Basic " + DatatypeConverter.printBase64Binary(
+              (user + ":" + (password == null ? "" : password)).getBytes(Charset.forName("UTF-8")));
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+      request.getHeaders().set("Authorization", authorization);
+      return execution.execute(request, body);
+    }
+  }
+}
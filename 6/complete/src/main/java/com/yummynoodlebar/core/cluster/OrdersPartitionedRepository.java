@@ -0,0 +1,64 @@
+package com.yummynoodlebar.core.cluster;
+
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import com.yummynoodlebar.core.repository.OrdersShardedRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The orders of a whole cluster, as seen from one of its nodes.
+ * <p>
+ * Each node of the current ring is a shard: this node's own repository, or the other nodes through
+ * the {@link ClusterTransport}. Orders are read and written on the node that owns their key, and
+ * queries are scattered to every node and merged, exactly as {@link OrdersShardedRepository} does
+ * with shards in one process.
+ */
+public class OrdersPartitionedRepository extends OrdersShardedRepository {
+
+  //Queries to other nodes mostly wait on the network, so they get a thread each even on few cores.
+  static final int QUERY_PARALLELISM = 16;
+
+  private final ClusterNode node;
+
+  public OrdersPartitionedRepository(ClusterNode node) {
+    super(QUERY_PARALLELISM);
+    this.node = node;
+  }
+
+  public ClusterNode getNode() {
+    return node;
+  }
+
+  @Override
+  protected OrdersRepository[] shards() {
+    Set<String> nodes = node.getRing().getNodes();
+    OrdersRepository[] shards = new OrdersRepository[nodes.size()];
+    int i = 0;
+    for (String name : nodes) {
+      shards[i++] = repositoryOf(name);
+    }
+    return shards;
+  }
+
+  @Override
+  protected OrdersRepository shardFor(UUID key) {
+    return repositoryOf(node.ownerOf(key));
+  }
+
+  @Override
+  public void close() throws IOException {
+    node.close();
+    super.close();
+    //A node that has left the ring no longer counts its own repository among the shards.
+    if (!node.getRing().contains(node.getSelf()) && node.getLocalRepository() instanceof Closeable) {
+      ((Closeable) node.getLocalRepository()).close();
+    }
+  }
+
+  private OrdersRepository repositoryOf(String name) {
+    return name.equals(node.getSelf()) ? node.getLocalRepository() : node.getTransport().repositoryOf(name);
+  }
+}
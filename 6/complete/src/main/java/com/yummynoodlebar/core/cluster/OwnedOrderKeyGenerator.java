@@ -0,0 +1,35 @@
+package com.yummynoodlebar.core.cluster;
+
+import com.yummynoodlebar.core.services.OrderKeyGenerator;
+
+import java.util.UUID;
+
+/**
+ * Draws keys until it finds one the node owns, so a node always stores the orders it creates itself
+ * and creating an order never needs another node. With n nodes that takes n draws on average.
+ */
+public class OwnedOrderKeyGenerator implements OrderKeyGenerator {
+
+  private final ClusterNode node;
+  private final OrderKeyGenerator keys;
+
+  public OwnedOrderKeyGenerator(ClusterNode node, OrderKeyGenerator keys) {
+    this.node = node;
+    this.keys = keys;
+  }
+
+  @Override
+  public UUID nextKey() {
+    ConsistentHashRing ring = node.getRing();
+    if (!ring.contains(node.getSelf())) {
+      //A node that has left owns nothing, its new orders are stored by their owners.
+      return keys.nextKey();
+    }
+    while (true) {
+      UUID key = keys.nextKey();
+      if (node.getSelf().equals(ring.ownerOf(key))) {
+        return key;
+      }
+    }
+  }
+}
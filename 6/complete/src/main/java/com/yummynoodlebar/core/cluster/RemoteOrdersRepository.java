@@ -0,0 +1,205 @@
+package com.yummynoodlebar.core.cluster;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.repository.KeysetOrderPages;
+import com.yummynoodlebar.core.repository.OrderCodec;
+import com.yummynoodlebar.core.repository.OrderCondition;
+import com.yummynoodlebar.core.repository.OrderKeys;
+import com.yummynoodlebar.core.repository.OrderUpdate;
+import com.yummynoodlebar.core.repository.OrderVersionConflictException;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * The orders held by another node, read and written through its /cluster/orders endpoints.
+ * Orders travel in the {@link OrderCodec} form, so they keep their whole status history.
+ */
+class RemoteOrdersRepository implements OrdersRepository {
+
+  private static final String ORDERS_PATH = "/cluster/orders";
+  private static final int KEY_PAGE_SIZE = 1000;
+
+  private final RestTemplate restTemplate;
+  private final String node;
+
+  RemoteOrdersRepository(RestTemplate restTemplate, String node) {
+    this.restTemplate = restTemplate;
+    this.node = node;
+  }
+
+  @Override
+  public Order save(Order order) {
+    saveAll(Collections.singletonList(order));
+    return order;
+  }
+
+  @Override
+  public List<Order> saveAll(Collection<Order> orders) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+    restTemplate.postForLocation(orders().build().toUri(),
+            new HttpEntity<byte[]>(OrderCodec.encodeAll(orders), headers));
+    return new ArrayList<Order>(orders);
+  }
+
+  @Override
+  public void delete(UUID key) {
+    restTemplate.delete(orders().path("/" + key).build().toUri());
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> keys) {
+    for (UUID key : keys) {
+      delete(key);
+    }
+  }
+
+  //TODOCUMENT Not atomic: the order is read and written back in separate calls, so only writes made on the owning
+  //node itself, as the web service's are, are safe against each other.
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    Order current = findById(key);
+    Order next = update.apply(current);
+    if (next == current) {
+      return current;
+    }
+    if (next == null) {
+      delete(key);
+      return null;
+    }
+    return save(next);
+  }
+
+  @Override
+  public Order computeIfPresent(UUID key, final OrderUpdate update) {
+    return compute(key, new OrderUpdate() {
+      @Override
+      public Order apply(Order current) {
+        return current == null ? null : update.apply(current);
+      }
+    });
+  }
+
+  @Override
+  public boolean removeIf(UUID key, OrderCondition condition) {
+    Order current = findById(key);
+    if (current == null || !condition.test(current)) {
+      return false;
+    }
+    delete(key);
+    return true;
+  }
+
+  //TODOCUMENT Not atomic either, as compute.
+  @Override
+  public Order saveIfVersion(Order order, long expectedVersion) {
+    Order current = findById(order.getKey());
+    long actualVersion = current == null ? 0 : current.getVersion();
+    if (actualVersion != expectedVersion) {
+      throw new OrderVersionConflictException(order.getKey(), expectedVersion, actualVersion);
+    }
+    return save(order.atVersion(expectedVersion + 1));
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    byte[] order;
+    try {
+      order = restTemplate.getForObject(orders().path("/" + key).build().toUri(), byte[].class);
+    } catch (HttpClientErrorException e) {
+      if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+        return null;
+      }
+      throw e;
+    }
+    return order == null ? null : OrderCodec.decode(order);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return query(orders().queryParam("query", "all"));
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    UriComponentsBuilder uri = orders().queryParam("query", "page").queryParam("limit", limit);
+    if (after != null) {
+      uri.queryParam("after", after.toString());
+    }
+    return query(uri);
+  }
+
+  @Override
+  public Iterable<Order> streamAll(int pageSize) {
+    return new KeysetOrderPages(this, pageSize);
+  }
+
+  //TODOCUMENT The keys of the orders streamed a page at a time, the node having no other way to list them.
+  @Override
+  public Iterable<UUID> keys() {
+    return OrderKeys.of(streamAll(KEY_PAGE_SIZE));
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    UriComponentsBuilder uri = orders().queryParam("query", "submitted");
+    if (from != null) {
+      uri.queryParam("from", from.getTime());
+    }
+    if (to != null) {
+      uri.queryParam("to", to.getTime());
+    }
+    return query(uri);
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    return query(orders().queryParam("query", "items")
+            .queryParam("item", items.toArray())
+            .queryParam("match", match.name()));
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    return query(orders().queryParam("query", "status").queryParam("status", status));
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    Integer count = countByStatus().get(status);
+    return count == null ? 0 : count;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Map<String, Integer> countByStatus() {
+    Map<String, Integer> counts = restTemplate.getForObject(orders().path("/statuses").build().toUri(), Map.class);
+    return counts == null ? Collections.<String, Integer>emptyMap() : counts;
+  }
+
+  @Override
+  public String toString() {
+    return node;
+  }
+
+  private List<Order> query(UriComponentsBuilder uri) {
+    URI location = uri.build().encode().toUri();
+    byte[] orders = restTemplate.getForObject(location, byte[].class);
+    return orders == null ? Collections.<Order>emptyList() : OrderCodec.decodeAll(orders);
+  }
+
+  private UriComponentsBuilder orders() {
+    return UriComponentsBuilder.fromHttpUrl(node + ORDERS_PATH);
+  }
+}
@@ -0,0 +1,7 @@
+package com.yummynoodlebar.core.domain;
+
+//TODOCUMENT How an order has to match a set of menu items to be selected,
+//containing ALL of the items, or ANY one of them.
+public enum ItemMatch {
+  ALL, ANY
+}
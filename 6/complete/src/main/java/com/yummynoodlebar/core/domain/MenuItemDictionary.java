@@ -0,0 +1,72 @@
+package com.yummynoodlebar.core.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns every menu item name a small int id the first time it is seen, so orders can store their
+ * lines as ints and share one copy of each name.
+ * <p>
+ * Ids are never reused or reassigned. Looking up a known name is lock free; only new names lock.
+ * A null name has the reserved id {@link #NULL_ID}.
+ * <p>
+ * Names are never dropped, and item names come from clients, so the dictionary holds at most a fixed
+ * number of them. Once it is full, new names get {@link #NO_ID} and orders keep those items by name.
+ */
+public final class MenuItemDictionary {
+
+  //TODOCUMENT The id of a null item name.
+  public static final int NULL_ID = -1;
+  //TODOCUMENT Returned for a new name once the dictionary is full.
+  public static final int NO_ID = -2;
+  //TODOCUMENT Far more than any menu has items.
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+
+  private static final MenuItemDictionary SHARED = new MenuItemDictionary(DEFAULT_CAPACITY);
+
+  private final int capacity;
+  private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+  private volatile String[] names = new String[64];
+  private int size;
+
+  MenuItemDictionary(int capacity) {
+    this.capacity = capacity;
+  }
+
+  public static MenuItemDictionary shared() {
+    return SHARED;
+  }
+
+  public int idOf(String name) {
+    if (name == null) {
+      return NULL_ID;
+    }
+    Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(name);
+      if (id != null) {
+        return id;
+      }
+      if (size == capacity) {
+        return NO_ID;
+      }
+      String[] grown = size == names.length ? Arrays.copyOf(names, Math.min(size * 2, capacity)) : names;
+      grown[size] = name;
+      //Publish the name before the id, so whoever finds the id can also find the name.
+      names = grown;
+      ids.put(name, size);
+      return size++;
+    }
+  }
+
+  public String nameOf(int id) {
+    return id == NULL_ID ? null : names[id];
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+}
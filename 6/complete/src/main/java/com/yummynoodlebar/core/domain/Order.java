@@ -7,29 +7,51 @@ import java.util.*;
 
 public class Order {
 
+  private static final int[] NO_LINES = new int[0];
+
   private final Date dateTimeOfSubmission;
-  private Map<String, Integer> orderItems;
+  //TODOCUMENT Order lines are (item id, quantity) pairs, with ids from the shared MenuItemDictionary, rather
+  //than a Map of names to boxed quantities. getOrderItems() makes a Map view of them when asked.
+  private int[] orderLines;
+  //TODOCUMENT Items kept by name instead, once the dictionary is full.
+  private Map<String, Integer> unlistedItems;
   private final UUID key;
   private Customer customer;
+  //TODOCUMENT Version of the order as stored, 1 when created and one more on each conditional save, 0 until stored.
+  private long version;
 
   private OrderStatus status;
   private List<OrderStatus> statusHistory;
+  private OrderStatusListener statusListener;
 
-  public Order(final Date dateTimeOfSubmission) {
-    this.key = UUID.randomUUID();
+  public Order(final UUID key, final Date dateTimeOfSubmission) {
+    this.key = key;
     this.dateTimeOfSubmission = dateTimeOfSubmission;
     statusHistory = new ArrayList<OrderStatus>();
   }
 
-  public void addStatus(OrderStatus newStatus) {
+  public synchronized void addStatus(OrderStatus newStatus) {
+    OrderStatus previous = status;
     statusHistory.add(newStatus);
     status = newStatus;
+    if (statusListener != null) {
+      statusListener.statusChanged(this, previous, newStatus);
+    }
   }
 
-  public OrderStatus getStatus() {
+  public synchronized OrderStatus getStatus() {
     return status;
   }
 
+  //TODOCUMENT Used by repositories that index the current status of the orders they hold.
+  public synchronized void setStatusListener(OrderStatusListener statusListener) {
+    this.statusListener = statusListener;
+  }
+
+  public List<OrderStatus> getStatusHistory() {
+    return Collections.unmodifiableList(statusHistory);
+  }
+
   public Date getDateTimeOfSubmission() {
     return dateTimeOfSubmission;
   }
@@ -38,16 +60,47 @@ public class Order {
     return key;
   }
 
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  //TODOCUMENT A copy of the order at another version, with its own status history and no status listener,
+  //so a versioned save can store it without touching the order it was given.
+  public synchronized Order atVersion(long version) {
+    Order copy = new Order(key, dateTimeOfSubmission);
+    copy.orderLines = orderLines;
+    copy.unlistedItems = unlistedItems;
+    copy.customer = customer;
+    copy.version = version;
+    copy.status = status;
+    copy.statusHistory.addAll(statusHistory);
+    return copy;
+  }
+
   public void setOrderItems(Map<String, Integer> orderItems) {
+    this.unlistedItems = null;
     if (orderItems == null) {
-      this.orderItems = Collections.emptyMap();
+      this.orderLines = NO_LINES;
     } else {
-      this.orderItems = Collections.unmodifiableMap(orderItems);
+      this.orderLines = OrderLines.encode(orderItems, MenuItemDictionary.shared());
+      if (orderLines == null) {
+        this.unlistedItems = Collections.unmodifiableMap(new LinkedHashMap<String, Integer>(orderItems));
+      }
     }
   }
 
   public Map<String, Integer> getOrderItems() {
-    return orderItems;
+    if (unlistedItems != null) {
+      return unlistedItems;
+    }
+    if (orderLines == null) {
+      return null;
+    }
+    return new OrderLines(orderLines, MenuItemDictionary.shared());
   }
 
   public boolean canBeDeleted() {
@@ -62,8 +115,8 @@ public class Order {
     return details;
   }
 
-  public static Order fromOrderDetails(OrderDetails orderDetails) {
-    Order order = new Order(orderDetails.getDateTimeOfSubmission());
+  public static Order fromOrderDetails(UUID key, OrderDetails orderDetails) {
+    Order order = new Order(key, orderDetails.getDateTimeOfSubmission());
 
     BeanUtils.copyProperties(orderDetails, order);
 
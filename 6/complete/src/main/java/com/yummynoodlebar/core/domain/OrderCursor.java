@@ -0,0 +1,101 @@
+package com.yummynoodlebar.core.domain;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Position of an order in the stable listing order of all orders: by submission time, then by key.
+ * Orders without a submission time come first.
+ * <p>
+ * A cursor can be turned into an opaque token and back, to resume a listing after a given order.
+ */
+public final class OrderCursor implements Comparable<OrderCursor> {
+
+  public static final Comparator<Order> SUBMISSION_ORDER = new Comparator<Order>() {
+    @Override
+    public int compare(Order first, Order second) {
+      return compareOrders(first, second);
+    }
+  };
+
+  private static final long NO_SUBMISSION_TIME = Long.MIN_VALUE;
+  private static final char SEPARATOR = '_';
+
+  private final long submissionTime;
+  private final UUID key;
+
+  public OrderCursor(long submissionTime, UUID key) {
+    this.submissionTime = submissionTime;
+    this.key = key;
+  }
+
+  public static OrderCursor of(Order order) {
+    return new OrderCursor(submissionTime(order.getDateTimeOfSubmission()), order.getKey());
+  }
+
+  public static long submissionTime(Date dateTimeOfSubmission) {
+    return dateTimeOfSubmission == null ? NO_SUBMISSION_TIME : dateTimeOfSubmission.getTime();
+  }
+
+  public static OrderCursor parse(String token) {
+    int separator = token.indexOf(SEPARATOR);
+    if (separator < 0) {
+      throw new IllegalArgumentException("Invalid order cursor '" + token + "'");
+    }
+    try {
+      return new OrderCursor(Long.parseLong(token.substring(0, separator)),
+              UUID.fromString(token.substring(separator + 1)));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid order cursor '" + token + "'", e);
+    }
+  }
+
+  public long getSubmissionTime() {
+    return submissionTime;
+  }
+
+  public UUID getKey() {
+    return key;
+  }
+
+  public boolean isBefore(Order order) {
+    return compare(submissionTime, key, submissionTime(order.getDateTimeOfSubmission()), order.getKey()) < 0;
+  }
+
+  @Override
+  public int compareTo(OrderCursor other) {
+    return compare(submissionTime, key, other.submissionTime, other.key);
+  }
+
+  public static int compareOrders(Order first, Order second) {
+    return compare(submissionTime(first.getDateTimeOfSubmission()), first.getKey(),
+            submissionTime(second.getDateTimeOfSubmission()), second.getKey());
+  }
+
+  public static int compare(long firstTime, UUID firstKey, long secondTime, UUID secondKey) {
+    if (firstTime != secondTime) {
+      return firstTime < secondTime ? -1 : 1;
+    }
+    return firstKey.compareTo(secondKey);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof OrderCursor)) {
+      return false;
+    }
+    OrderCursor cursor = (OrderCursor) other;
+    return submissionTime == cursor.submissionTime && key.equals(cursor.key);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (int) (submissionTime ^ (submissionTime >>> 32)) + key.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(submissionTime) + SEPARATOR + key;
+  }
+}
@@ -0,0 +1,106 @@
+package com.yummynoodlebar.core.domain;
+
+import java.util.*;
+
+/*
+ * Read only Map view of dictionary encoded order lines, made on demand for callers that want items
+ * by name. Orders hold a handful of lines, so lookups scan them.
+ */
+final class OrderLines extends AbstractMap<String, Integer> {
+
+  static final int NO_QUANTITY = Integer.MIN_VALUE;
+
+  private final int[] lines;
+  private final MenuItemDictionary dictionary;
+
+  OrderLines(int[] lines, MenuItemDictionary dictionary) {
+    this.lines = lines;
+    this.dictionary = dictionary;
+  }
+
+  /*
+   * Encodes items as pairs of (item id, quantity). Null if the dictionary has no room for one of the names.
+   */
+  static int[] encode(Map<String, Integer> items, MenuItemDictionary dictionary) {
+    int[] lines = new int[items.size() * 2];
+    int position = 0;
+    for (Map.Entry<String, Integer> item : items.entrySet()) {
+      int id = dictionary.idOf(item.getKey());
+      if (id == MenuItemDictionary.NO_ID) {
+        return null;
+      }
+      lines[position++] = id;
+      lines[position++] = item.getValue() == null ? NO_QUANTITY : item.getValue();
+    }
+    return lines;
+  }
+
+  @Override
+  public int size() {
+    return lines.length / 2;
+  }
+
+  @Override
+  public boolean containsKey(Object name) {
+    return indexOf(name) >= 0;
+  }
+
+  @Override
+  public Integer get(Object name) {
+    int index = indexOf(name);
+    return index < 0 ? null : quantity(index);
+  }
+
+  @Override
+  public Set<Entry<String, Integer>> entrySet() {
+    return new AbstractSet<Entry<String, Integer>>() {
+      @Override
+      public Iterator<Entry<String, Integer>> iterator() {
+        return new Iterator<Entry<String, Integer>>() {
+          private int index;
+
+          @Override
+          public boolean hasNext() {
+            return index < lines.length;
+          }
+
+          @Override
+          public Entry<String, Integer> next() {
+            if (index >= lines.length) {
+              throw new NoSuchElementException();
+            }
+            Entry<String, Integer> entry = new SimpleImmutableEntry<String, Integer>(
+                    dictionary.nameOf(lines[index]), quantity(index));
+            index += 2;
+            return entry;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return OrderLines.this.size();
+      }
+    };
+  }
+
+  private int indexOf(Object name) {
+    for (int index = 0; index < lines.length; index += 2) {
+      String item = dictionary.nameOf(lines[index]);
+      if (item == null ? name == null : item.equals(name)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private Integer quantity(int index) {
+    int quantity = lines[index + 1];
+    return quantity == NO_QUANTITY ? null : quantity;
+  }
+}
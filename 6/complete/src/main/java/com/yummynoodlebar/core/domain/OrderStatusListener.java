@@ -0,0 +1,8 @@
+package com.yummynoodlebar.core.domain;
+
+//TODOCUMENT Told about every status added to an order, after it has become the current status.
+//Called while the order is locked, so it sees status changes of one order in the order they happen.
+public interface OrderStatusListener {
+
+  void statusChanged(Order order, OrderStatus previous, OrderStatus current);
+}
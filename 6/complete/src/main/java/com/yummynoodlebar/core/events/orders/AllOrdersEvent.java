@@ -2,19 +2,37 @@ package com.yummynoodlebar.core.events.orders;
 
 import com.yummynoodlebar.core.events.ReadEvent;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 public class AllOrdersEvent extends ReadEvent {
 
-  private final List<OrderDetails> ordersDetails;
+  private final Iterable<OrderDetails> ordersDetails;
 
   public AllOrdersEvent(List<OrderDetails> orders) {
     this.ordersDetails = Collections.unmodifiableList(orders);
   }
 
+  //TODOCUMENT The details can also be given as a lazy Iterable, which fetches them as it is iterated,
+  //so that handing over every order doesn't require holding them all in memory at once.
+  public AllOrdersEvent(Iterable<OrderDetails> orders) {
+    this.ordersDetails = orders;
+  }
+
   public Collection<OrderDetails> getOrdersDetails() {
-    return this.ordersDetails;
+    if (ordersDetails instanceof Collection) {
+      return (Collection<OrderDetails>) ordersDetails;
+    }
+    List<OrderDetails> all = new ArrayList<OrderDetails>();
+    for (OrderDetails details : ordersDetails) {
+      all.add(details);
+    }
+    return Collections.unmodifiableList(all);
+  }
+
+  public Iterable<OrderDetails> getOrdersDetailsStream() {
+    return ordersDetails;
   }
 }
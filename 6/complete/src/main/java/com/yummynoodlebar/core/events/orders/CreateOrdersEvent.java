@@ -0,0 +1,19 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.events.CreateEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+//TODOCUMENT Creates every order in the list as one batch.
+public class CreateOrdersEvent extends CreateEvent {
+  private final List<OrderDetails> details;
+
+  public CreateOrdersEvent(List<OrderDetails> details) {
+    this.details = Collections.unmodifiableList(details);
+  }
+
+  public List<OrderDetails> getDetails() {
+    return details;
+  }
+}
@@ -7,12 +7,23 @@ import java.util.UUID;
 public class DeleteOrderEvent extends DeleteEvent {
 
   private final UUID key;
+  private final Long expectedVersion;
 
   public DeleteOrderEvent(final UUID key) {
+    this(key, null);
+  }
+
+  //TODOCUMENT Deletes the order only while it is still at the expected version, if one is given.
+  public DeleteOrderEvent(final UUID key, final Long expectedVersion) {
     this.key = key;
+    this.expectedVersion = expectedVersion;
   }
 
   public UUID getKey() {
     return key;
   }
+
+  public Long getExpectedVersion() {
+    return expectedVersion;
+  }
 }
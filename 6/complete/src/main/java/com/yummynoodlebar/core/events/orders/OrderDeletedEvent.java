@@ -9,6 +9,7 @@ public class OrderDeletedEvent extends DeletedEvent {
   private UUID key;
   private OrderDetails details;
   private boolean deletionCompleted;
+  private boolean versionConflict;
 
   private OrderDeletedEvent(UUID key) {
     this.key = key;
@@ -32,6 +33,10 @@ public class OrderDeletedEvent extends DeletedEvent {
     return deletionCompleted;
   }
 
+  public boolean isVersionConflict() {
+    return versionConflict;
+  }
+
   public static OrderDeletedEvent deletionForbidden(UUID key, OrderDetails details) {
     OrderDeletedEvent ev = new OrderDeletedEvent(key, details);
     ev.entityFound=true;
@@ -39,6 +44,15 @@ public class OrderDeletedEvent extends DeletedEvent {
     return ev;
   }
 
+  //TODOCUMENT The order is no longer at the version the deletion expected, the details are of the order as it is now.
+  public static OrderDeletedEvent versionConflict(UUID key, OrderDetails details) {
+    OrderDeletedEvent ev = new OrderDeletedEvent(key, details);
+    ev.entityFound=true;
+    ev.deletionCompleted=false;
+    ev.versionConflict=true;
+    return ev;
+  }
+
   public static OrderDeletedEvent notFound(UUID key) {
     OrderDeletedEvent ev = new OrderDeletedEvent(key);
     ev.entityFound=false;
@@ -10,6 +10,7 @@ public class OrderDetails {
   private UUID key;
   private Date dateTimeOfSubmission;
   private Map<String, Integer> orderItems;
+  private long version;
 
   public OrderDetails() {
     key = null;
@@ -39,6 +40,14 @@ public class OrderDetails {
     }
   }
 
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
   public UUID getKey() {
     return key;
   }
@@ -0,0 +1,20 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.events.ReadEvent;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class OrderStatusCountsEvent extends ReadEvent {
+
+  private final Map<String, Integer> counts;
+
+  public OrderStatusCountsEvent(Map<String, Integer> counts) {
+    this.counts = Collections.unmodifiableMap(counts);
+  }
+
+  //Number of orders currently in each status.
+  public Map<String, Integer> getCounts() {
+    return counts;
+  }
+}
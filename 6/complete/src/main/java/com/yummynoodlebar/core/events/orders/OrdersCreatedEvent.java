@@ -0,0 +1,20 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.events.CreatedEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+//TODOCUMENT One OrderCreatedEvent per order of a CreateOrdersEvent, in the same order.
+public class OrdersCreatedEvent extends CreatedEvent {
+
+  private final List<OrderCreatedEvent> created;
+
+  public OrdersCreatedEvent(List<OrderCreatedEvent> created) {
+    this.created = Collections.unmodifiableList(created);
+  }
+
+  public List<OrderCreatedEvent> getCreated() {
+    return created;
+  }
+}
@@ -0,0 +1,30 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.events.ReadEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+public class OrdersPageEvent extends ReadEvent {
+
+  private final List<OrderDetails> ordersDetails;
+  private final String nextCursor;
+
+  public OrdersPageEvent(List<OrderDetails> ordersDetails, String nextCursor) {
+    this.ordersDetails = Collections.unmodifiableList(ordersDetails);
+    this.nextCursor = nextCursor;
+  }
+
+  public List<OrderDetails> getOrdersDetails() {
+    return ordersDetails;
+  }
+
+  //Cursor to request the following page with, or null when this is the last page.
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  public boolean hasNextPage() {
+    return nextCursor != null;
+  }
+}
@@ -0,0 +1,6 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.events.RequestReadEvent;
+
+public class RequestOrderStatusCountsEvent extends RequestReadEvent {
+}
@@ -0,0 +1,15 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.events.RequestReadEvent;
+
+public class RequestOrdersByStatusEvent extends RequestReadEvent {
+  private final String status;
+
+  public RequestOrdersByStatusEvent(String status) {
+    this.status = status;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+}
@@ -0,0 +1,26 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.events.RequestReadEvent;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class RequestOrdersContainingEvent extends RequestReadEvent {
+  private final Set<String> items;
+  private final ItemMatch match;
+
+  public RequestOrdersContainingEvent(Set<String> items, ItemMatch match) {
+    this.items = Collections.unmodifiableSet(new LinkedHashSet<String>(items));
+    this.match = match;
+  }
+
+  public Set<String> getItems() {
+    return items;
+  }
+
+  public ItemMatch getMatch() {
+    return match;
+  }
+}
@@ -0,0 +1,22 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.events.RequestReadEvent;
+
+public class RequestOrdersPageEvent extends RequestReadEvent {
+  private final String after;
+  private final int limit;
+
+  //after is the cursor returned with the previous page, or null for the first page.
+  public RequestOrdersPageEvent(String after, int limit) {
+    this.after = after;
+    this.limit = limit;
+  }
+
+  public String getAfter() {
+    return after;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+}
@@ -0,0 +1,24 @@
+package com.yummynoodlebar.core.events.orders;
+
+import com.yummynoodlebar.core.events.RequestReadEvent;
+
+import java.util.Date;
+
+public class RequestOrdersSubmittedEvent extends RequestReadEvent {
+  private final Date from;
+  private final Date to;
+
+  //Either bound may be null, from is inclusive and to is exclusive.
+  public RequestOrdersSubmittedEvent(Date from, Date to) {
+    this.from = from;
+    this.to = to;
+  }
+
+  public Date getFrom() {
+    return from;
+  }
+
+  public Date getTo() {
+    return to;
+  }
+}
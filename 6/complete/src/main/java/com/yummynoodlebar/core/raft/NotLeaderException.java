@@ -0,0 +1,19 @@
+package com.yummynoodlebar.core.raft;
+
+//TODOCUMENT Thrown for reads and writes sent to a Raft node that isn't the leader, naming the leader when known.
+public class NotLeaderException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String leaderUrl;
+
+  public NotLeaderException(String leaderUrl) {
+    super(leaderUrl == null ? "No Raft leader is known" : "The Raft leader is " + leaderUrl);
+    this.leaderUrl = leaderUrl;
+  }
+
+  //TODOCUMENT Base URL of the leader's web service, or null while there is no leader.
+  public String getLeaderUrl() {
+    return leaderUrl;
+  }
+}
@@ -0,0 +1,23 @@
+package com.yummynoodlebar.core.raft;
+
+/**
+ * One entry of the Raft log: a save or delete of an order, or the no-op a new leader starts its
+ * term with, tagged with the term of the leader that created it.
+ */
+final class RaftEntry {
+
+  static final byte NOOP = 0;
+  static final byte SAVE = 1;
+  static final byte DELETE = 2;
+
+  final long term;
+  final byte type;
+  //The encoded order for a save, its key for a delete, empty for a no-op.
+  final byte[] payload;
+
+  RaftEntry(long term, byte type, byte[] payload) {
+    this.term = term;
+    this.type = type;
+    this.payload = payload;
+  }
+}
@@ -0,0 +1,420 @@
+package com.yummynoodlebar.core.raft;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The state a Raft node must not forget across a restart: its log, its current term and who it
+ * voted for in that term.
+ * <p>
+ * Entries are numbered from 1. Those up to an index can be replaced by a snapshot of the orders
+ * they were applied to, see {@link #snapshot}; the entries after it are kept in memory. Given a
+ * directory, the log is also appended to a file and the term and vote written to another. Appends and truncations reach the file
+ * straight away but are only forced to the device by {@link #sync()}, so a node can write a whole
+ * batch of entries and force them once before acknowledging any; the term and vote are forced as
+ * soon as they change, as a node may not answer a vote until they are. A record torn by a crash is
+ * detected by its checksum and cut off when the log is reopened. A snapshot is written to a file
+ * of its own before the log is rewritten without the entries it covers, each file replaced whole,
+ * so a crash in between leaves a log the snapshot can still be matched up with.
+ * <p>
+ * Not thread safe: a {@link RaftNode} uses its log from its own thread only.
+ */
+public class RaftLog implements Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(RaftLog.class);
+
+  public static final String LOG_FILE = "raft.log";
+  public static final String STATE_FILE = "raft.state";
+  public static final String SNAPSHOT_FILE = "raft.snapshot";
+
+  //Index and term of the entry before the first in the file, and a checksum.
+  private static final int LOG_HEADER = 8 + 8 + 4;
+  //length, term, type, then the payload and a checksum.
+  private static final int RECORD_HEADER = 4 + 8 + 1;
+  private static final int RECORD_TRAILER = 4;
+  //term, vote and a checksum.
+  private static final int STATE_SIZE = 8 + 4 + 4;
+  //index, term and length, then the snapshot and a checksum.
+  private static final int SNAPSHOT_HEADER = 8 + 8 + 4;
+
+  private final List<RaftEntry> entries = new ArrayList<RaftEntry>();
+  //File offset of each entry, and of the end of the log after them, counting from the first kept.
+  private long[] offsets = new long[1024];
+  private final File directory;
+  private FileChannel log;
+  private final FileChannel state;
+  private boolean dirty;
+
+  //The last entry the snapshot covers, 0 before there is one.
+  private long snapshotIndex;
+  private long snapshotTerm;
+  private byte[] snapshot = new byte[0];
+
+  private long term;
+  private int votedFor = -1;
+
+  //TODOCUMENT A log that lasts as long as the process, for tests and nodes that rejoin from scratch.
+  public static RaftLog inMemory() {
+    return new RaftLog();
+  }
+
+  private RaftLog() {
+    this.directory = null;
+    this.log = null;
+    this.state = null;
+  }
+
+  public RaftLog(File directory) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create the Raft log directory " + directory);
+    }
+    this.directory = directory;
+    this.state = FileChannel.open(new File(directory, STATE_FILE).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.log = FileChannel.open(new File(directory, LOG_FILE).toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    loadState();
+    loadEntries();
+    loadSnapshot();
+  }
+
+  public long getTerm() {
+    return term;
+  }
+
+  //TODOCUMENT The node voted for in the current term, or -1.
+  public int getVotedFor() {
+    return votedFor;
+  }
+
+  public void setTermAndVote(long term, int votedFor) throws IOException {
+    this.term = term;
+    this.votedFor = votedFor;
+    if (state != null) {
+      ByteBuffer buffer = ByteBuffer.allocate(STATE_SIZE);
+      buffer.putLong(term).putInt(votedFor);
+      buffer.putInt(checksum(buffer.array(), 0, 12));
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        state.write(buffer, buffer.position());
+      }
+      state.force(false);
+    }
+  }
+
+  public long getLastIndex() {
+    return snapshotIndex + entries.size();
+  }
+
+  public long getLastTerm() {
+    return termAt(getLastIndex());
+  }
+
+  //TODOCUMENT The last entry the snapshot covers, 0 when there is no snapshot. Only entries after it are kept.
+  public long getSnapshotIndex() {
+    return snapshotIndex;
+  }
+
+  public long getSnapshotTerm() {
+    return snapshotTerm;
+  }
+
+  //TODOCUMENT The orders as of the snapshot index, encoded with OrderCodec.encodeAll.
+  byte[] getSnapshot() {
+    return snapshot;
+  }
+
+  //TODOCUMENT Term of the entry at the index, 0 for index 0, the position before the first entry. Of the entries
+  //the snapshot covers, only the term of its last is known.
+  public long termAt(long index) {
+    if (index == snapshotIndex) {
+      return snapshotTerm;
+    }
+    if (index < snapshotIndex) {
+      throw new IllegalArgumentException("Raft log entry " + index + " has been replaced by a snapshot");
+    }
+    return entries.get(position(index)).term;
+  }
+
+  RaftEntry entryAt(long index) {
+    return entries.get(position(index));
+  }
+
+  //TODOCUMENT Up to max entries from the index on, which must be after the snapshot.
+  List<RaftEntry> entriesFrom(long index, int max) {
+    int from = position(index);
+    int to = Math.min(entries.size(), from + max);
+    if (from >= to) {
+      return new ArrayList<RaftEntry>(0);
+    }
+    return new ArrayList<RaftEntry>(entries.subList(from, to));
+  }
+
+  void append(List<RaftEntry> appended) throws IOException {
+    if (appended.isEmpty()) {
+      return;
+    }
+    if (log != null) {
+      int size = 0;
+      for (RaftEntry entry : appended) {
+        size += RECORD_HEADER + entry.payload.length + RECORD_TRAILER;
+      }
+      long position = offsets[entries.size()];
+      ByteBuffer buffer = ByteBuffer.allocate(size);
+      putRecords(buffer, appended, entries.size(), position);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        position += log.write(buffer, position);
+      }
+      dirty = true;
+    }
+    entries.addAll(appended);
+  }
+
+  //TODOCUMENT Drops the entry at the index, which must be after the snapshot, and every one after it.
+  void truncateFrom(long index) throws IOException {
+    if (index > getLastIndex()) {
+      return;
+    }
+    entries.subList(position(index), entries.size()).clear();
+    if (log != null) {
+      log.truncate(offsets[entries.size()]);
+      dirty = true;
+    }
+  }
+
+  //TODOCUMENT Replaces the entries up to the index, whose entry has the term, with the orders they were applied to.
+  //The entries after it are kept if the log has that entry, as when a node snapshots its own state; otherwise,
+  //as when a leader sends a follower its snapshot, the log is left starting after it. Forced before it returns.
+  void snapshot(long index, long term, byte[] snapshot) throws IOException {
+    if (index <= snapshotIndex) {
+      return;
+    }
+    if (directory != null) {
+      ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_HEADER + snapshot.length + 4);
+      buffer.putLong(index).putLong(term).putInt(snapshot.length).put(snapshot);
+      buffer.putInt(checksum(buffer.array(), 0, buffer.position()));
+      buffer.flip();
+      replace(SNAPSHOT_FILE, buffer);
+    }
+    this.snapshot = snapshot;
+    compact(index, term);
+  }
+
+  //TODOCUMENT Forces appends and truncations since the last sync to the device.
+  void sync() throws IOException {
+    if (dirty) {
+      log.force(false);
+      dirty = false;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (log != null) {
+      sync();
+      log.close();
+      state.close();
+    }
+  }
+
+  /*
+   * Drops the entries up to the index, or all of them if the log doesn't have that entry, and
+   * rewrites the log file with those left.
+   */
+  private void compact(long index, long term) throws IOException {
+    if (index <= getLastIndex() && termAt(index) == term) {
+      entries.subList(0, (int) (index - snapshotIndex)).clear();
+    } else {
+      entries.clear();
+    }
+    snapshotIndex = index;
+    snapshotTerm = term;
+    if (log != null) {
+      int size = LOG_HEADER;
+      for (RaftEntry entry : entries) {
+        size += RECORD_HEADER + entry.payload.length + RECORD_TRAILER;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(size);
+      putHeader(buffer);
+      setOffset(0, LOG_HEADER);
+      putRecords(buffer, entries, 0, 0);
+      buffer.flip();
+      log.close();
+      log = null;
+      replace(LOG_FILE, buffer);
+      log = FileChannel.open(new File(directory, LOG_FILE).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+      dirty = false;
+    }
+    LOG.debug("Raft log compacted up to entry {}, {} entries kept", index, entries.size());
+  }
+
+  /*
+   * Writes the records of the entries to the buffer, which starts at the position in the log file,
+   * noting the offset after each, the first being the one after the given number of entries.
+   */
+  private void putRecords(ByteBuffer buffer, List<RaftEntry> written, int index, long position) {
+    for (RaftEntry entry : written) {
+      int start = buffer.position();
+      buffer.putInt(entry.payload.length).putLong(entry.term).put(entry.type).put(entry.payload);
+      buffer.putInt(checksum(buffer.array(), start, buffer.position() - start));
+      setOffset(++index, position + buffer.position());
+    }
+  }
+
+  private void putHeader(ByteBuffer buffer) {
+    int start = buffer.position();
+    buffer.putLong(snapshotIndex).putLong(snapshotTerm);
+    buffer.putInt(checksum(buffer.array(), start, 16));
+  }
+
+  /*
+   * Replaces the file in the directory with the buffer's contents, through a file beside it that is
+   * forced then moved over it, so the file is never seen half written.
+   */
+  private void replace(String name, ByteBuffer buffer) throws IOException {
+    File written = new File(directory, name + ".tmp");
+    FileChannel channel = FileChannel.open(written.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    } finally {
+      channel.close();
+    }
+    Files.move(written.toPath(), new File(directory, name).toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private int position(long index) {
+    if (index <= snapshotIndex) {
+      throw new IllegalArgumentException("Raft log entry " + index + " has been replaced by a snapshot");
+    }
+    return (int) (index - snapshotIndex - 1);
+  }
+
+  private void setOffset(int index, long offset) {
+    if (index >= offsets.length) {
+      offsets = Arrays.copyOf(offsets, Math.max(index + 1, offsets.length * 2));
+    }
+    offsets[index] = offset;
+  }
+
+  private void loadState() throws IOException {
+    if (state.size() < STATE_SIZE) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(STATE_SIZE);
+    readFully(state, buffer, 0);
+    if (buffer.getInt(12) != checksum(buffer.array(), 0, 12)) {
+      throw new IOException("The Raft term and vote are corrupt");
+    }
+    term = buffer.getLong(0);
+    votedFor = buffer.getInt(8);
+  }
+
+  private void loadEntries() throws IOException {
+    long size = log.size();
+    if (size < LOG_HEADER) {
+      ByteBuffer buffer = ByteBuffer.allocate(LOG_HEADER);
+      putHeader(buffer);
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        log.write(buffer, buffer.position());
+      }
+      log.truncate(LOG_HEADER);
+      log.force(false);
+      size = LOG_HEADER;
+    } else {
+      ByteBuffer buffer = ByteBuffer.allocate(LOG_HEADER);
+      readFully(log, buffer, 0);
+      if (buffer.getInt(16) != checksum(buffer.array(), 0, 16)) {
+        throw new IOException("The Raft log header is corrupt");
+      }
+      snapshotIndex = buffer.getLong(0);
+      snapshotTerm = buffer.getLong(8);
+    }
+    long position = LOG_HEADER;
+    setOffset(0, position);
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+    while (position + RECORD_HEADER + RECORD_TRAILER <= size) {
+      header.clear();
+      readFully(log, header, position);
+      int length = header.getInt(0);
+      if (length < 0 || position + RECORD_HEADER + length + RECORD_TRAILER > size) {
+        break;
+      }
+      ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length + RECORD_TRAILER);
+      readFully(log, record, position);
+      if (record.getInt(RECORD_HEADER + length) != checksum(record.array(), 0, RECORD_HEADER + length)) {
+        break;
+      }
+      byte[] payload = Arrays.copyOfRange(record.array(), RECORD_HEADER, RECORD_HEADER + length);
+      entries.add(new RaftEntry(record.getLong(4), record.get(12), payload));
+      position += record.capacity();
+      setOffset(entries.size(), position);
+    }
+    if (position < size) {
+      LOG.warn("Cutting off {} bytes torn from the end of the Raft log", size - position);
+      log.truncate(position);
+      log.force(false);
+    }
+    LOG.info("Loaded {} Raft log entries after entry {}, up to term {}", entries.size(), snapshotIndex, getLastTerm());
+  }
+
+  private void loadSnapshot() throws IOException {
+    File file = new File(directory, SNAPSHOT_FILE);
+    if (!file.exists()) {
+      if (snapshotIndex > 0) {
+        throw new IOException("The Raft log starts after entry " + snapshotIndex + " but there is no snapshot");
+      }
+      return;
+    }
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    if (bytes.length < SNAPSHOT_HEADER + 4 || bytes.length != SNAPSHOT_HEADER + buffer.getInt(16) + 4
+            || buffer.getInt(bytes.length - 4) != checksum(bytes, 0, bytes.length - 4)) {
+      throw new IOException("The Raft snapshot is corrupt");
+    }
+    long index = buffer.getLong(0);
+    long term = buffer.getLong(8);
+    if (index < snapshotIndex) {
+      throw new IOException("The Raft log starts after entry " + snapshotIndex + ", past its snapshot at " + index);
+    }
+    snapshot = Arrays.copyOfRange(bytes, SNAPSHOT_HEADER, bytes.length - 4);
+    //A crash after the snapshot was written but before the log was rewritten leaves entries it covers.
+    if (index > snapshotIndex) {
+      compact(index, term);
+    }
+    LOG.info("Loaded the Raft snapshot up to entry {} in term {}", index, term);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of " + channel);
+      }
+    }
+  }
+
+  private static int checksum(byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+}
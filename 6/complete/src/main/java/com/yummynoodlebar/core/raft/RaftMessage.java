@@ -0,0 +1,126 @@
+package com.yummynoodlebar.core.raft;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message between two Raft nodes. Nodes never wait for a reply to a particular message, so a
+ * transport may deliver them late, out of order or not at all.
+ */
+public final class RaftMessage {
+
+  static final byte PRE_VOTE = 1;
+  static final byte PRE_VOTE_RESPONSE = 2;
+  static final byte REQUEST_VOTE = 3;
+  static final byte VOTE = 4;
+  static final byte APPEND = 5;
+  static final byte APPEND_RESPONSE = 6;
+  //Answered with an append response, as though the follower had been sent the entries the snapshot replaced.
+  static final byte SNAPSHOT = 7;
+
+  private static final byte[] NO_SNAPSHOT = new byte[0];
+
+  final byte type;
+  final int from;
+  final long term;
+  //Votes: the candidate's last log index. Appends: the index before the entries. Snapshots: the last index covered.
+  //Append responses: the last index matched, or on failure where the leader should carry on after.
+  final long index;
+  //Votes: the term of the candidate's last entry. Appends and snapshots: the term at index.
+  final long logTerm;
+  //Appends and snapshots: the leader's commit index.
+  final long commit;
+  final boolean success;
+  //Appends and snapshots: when the leader sent it, on its own clock, echoed back in the response.
+  final long sentAt;
+  final List<RaftEntry> entries;
+  //Snapshots: the orders as of index, encoded with OrderCodec.encodeAll.
+  final byte[] snapshot;
+
+  RaftMessage(byte type, int from, long term, long index, long logTerm, long commit, boolean success,
+              long sentAt, List<RaftEntry> entries, byte[] snapshot) {
+    this.type = type;
+    this.from = from;
+    this.term = term;
+    this.index = index;
+    this.logTerm = logTerm;
+    this.commit = commit;
+    this.success = success;
+    this.sentAt = sentAt;
+    this.entries = entries;
+    this.snapshot = snapshot;
+  }
+
+  static RaftMessage vote(byte type, int from, long term, long lastIndex, long lastTerm) {
+    return new RaftMessage(type, from, term, lastIndex, lastTerm, 0, false, 0, Collections.<RaftEntry>emptyList(),
+            NO_SNAPSHOT);
+  }
+
+  static RaftMessage voteResponse(byte type, int from, long term, boolean granted) {
+    return new RaftMessage(type, from, term, 0, 0, 0, granted, 0, Collections.<RaftEntry>emptyList(), NO_SNAPSHOT);
+  }
+
+  static RaftMessage append(int from, long term, long prevIndex, long prevTerm, List<RaftEntry> entries,
+                            long commit, long sentAt) {
+    return new RaftMessage(APPEND, from, term, prevIndex, prevTerm, commit, false, sentAt, entries, NO_SNAPSHOT);
+  }
+
+  static RaftMessage snapshot(int from, long term, long lastIndex, long lastTerm, byte[] snapshot, long commit,
+                              long sentAt) {
+    return new RaftMessage(SNAPSHOT, from, term, lastIndex, lastTerm, commit, false, sentAt,
+            Collections.<RaftEntry>emptyList(), snapshot);
+  }
+
+  static RaftMessage appendResponse(int from, long term, boolean success, long index, long sentAt) {
+    return new RaftMessage(APPEND_RESPONSE, from, term, index, 0, 0, success, sentAt, Collections.<RaftEntry>emptyList(),
+            NO_SNAPSHOT);
+  }
+
+  void writeTo(DataOutputStream out) throws IOException {
+    out.writeByte(type);
+    out.writeInt(from);
+    out.writeLong(term);
+    out.writeLong(index);
+    out.writeLong(logTerm);
+    out.writeLong(commit);
+    out.writeBoolean(success);
+    out.writeLong(sentAt);
+    out.writeInt(entries.size());
+    for (RaftEntry entry : entries) {
+      out.writeLong(entry.term);
+      out.writeByte(entry.type);
+      out.writeInt(entry.payload.length);
+      out.write(entry.payload);
+    }
+    out.writeInt(snapshot.length);
+    out.write(snapshot);
+  }
+
+  static RaftMessage readFrom(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    int from = in.readInt();
+    long term = in.readLong();
+    long index = in.readLong();
+    long logTerm = in.readLong();
+    long commit = in.readLong();
+    boolean success = in.readBoolean();
+    long sentAt = in.readLong();
+    int count = in.readInt();
+    List<RaftEntry> entries = new ArrayList<RaftEntry>(count);
+    for (int i = 0; i < count; i++) {
+      long entryTerm = in.readLong();
+      byte entryType = in.readByte();
+      byte[] payload = new byte[in.readInt()];
+      in.readFully(payload);
+      entries.add(new RaftEntry(entryTerm, entryType, payload));
+    }
+    int length = in.readInt();
+    byte[] snapshot = length == 0 ? NO_SNAPSHOT : new byte[length];
+    in.readFully(snapshot);
+    return new RaftMessage(type, from, term, index, logTerm, commit, success, sentAt, entries, snapshot);
+  }
+}
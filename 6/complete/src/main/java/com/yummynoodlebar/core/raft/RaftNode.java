@@ -0,0 +1,852 @@
+package com.yummynoodlebar.core.raft;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.replication.OrdersReplication;
+import com.yummynoodlebar.core.replication.ReplicationStatistics;
+import com.yummynoodlebar.core.repository.OrderCodec;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One member of a group of three or five nodes that keep the same orders by running every save and
+ * delete through a log replicated with Raft. A write returns once a majority of the nodes have the
+ * change in their logs and the leader has applied it, so no acknowledged order is lost while a
+ * majority survives.
+ * <p>
+ * Only the leader serves reads and writes, through {@link #getRepository()}; on the other nodes
+ * they throw {@link NotLeaderException} naming the leader. Reads are linearizable without a round
+ * trip to the followers: the leader holds a lease, renewed by every heartbeat a majority
+ * acknowledges, during which no other node can be elected, as followers don't vote for a new leader
+ * within {@link #ELECTION_TIMEOUT_MILLIS} of hearing from the current one. Leases are a little
+ * shorter than that to allow for clocks running at slightly different rates. Candidates first check
+ * with a pre-vote that they could win, so a node rejoining after a partition doesn't depose a
+ * working leader.
+ * <p>
+ * Everything a node does happens on its own thread, in rounds: it takes all the messages and writes
+ * that have arrived, appends the writes to its log as one batch, syncs the log once, and only then
+ * acknowledges. The leader pipelines entries to each follower without waiting for the previous
+ * append to be acknowledged, up to {@link #MAX_ENTRIES_IN_FLIGHT}, so throughput is bound by how
+ * many writes arrive per round rather than by round trips. The target is that replication keeps
+ * order creation above 10,000 a second for 64 clients of a three node group, whether the nodes run
+ * in one process or on localhost syncing their logs to disk, even on a single core; see
+ * RaftThroughputTest.
+ * <p>
+ * Every node compacts its log on its own: once it has applied a number of entries since its last
+ * snapshot, it snapshots its orders and the log drops the entries before. A node that restarts
+ * restores its orders from the snapshot and applies the entries after it again. A follower so far
+ * behind that the leader no longer has the entries it needs is sent the leader's snapshot instead,
+ * whole, in one message.
+ */
+public class RaftNode implements OrdersReplication {
+
+  private static Logger LOG = LoggerFactory.getLogger(RaftNode.class);
+
+  public static final long ELECTION_TIMEOUT_MILLIS = 300;
+  public static final int DEFAULT_SNAPSHOT_EVERY = 100000;
+
+  static final long HEARTBEAT_MILLIS = 50;
+  static final long LEASE_MILLIS = ELECTION_TIMEOUT_MILLIS * 9 / 10;
+  static final int MAX_ENTRIES_PER_APPEND = 512;
+  static final int MAX_ENTRIES_IN_FLIGHT = 8192;
+  static final long REQUEST_TIMEOUT_MILLIS = 5000;
+
+  private static final long ELECTION_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(ELECTION_TIMEOUT_MILLIS);
+  private static final long HEARTBEAT = TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS);
+  private static final long LEASE = TimeUnit.MILLISECONDS.toNanos(LEASE_MILLIS);
+
+  //Asks the node to send heartbeats now, to renew its lease.
+  private static final Object RENEW_LEASE = new Object();
+
+  private enum Role {FOLLOWER, PRE_CANDIDATE, CANDIDATE, LEADER}
+
+  private final int id;
+  private final int size;
+  private final int majority;
+  private final List<String> members;
+  private final List<String> urls;
+  private final OrdersRepository orders;
+  private final RaftLog log;
+  private final RaftTransport transport;
+  private final RaftOrdersRepository repository;
+  private final int snapshotEvery;
+  private final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+  private final Thread loop;
+  private final Random random = new Random();
+  private final Object leaseMonitor = new Object();
+
+  //Only used on the node's own thread.
+  private Role role = Role.FOLLOWER;
+  private long commitIndex;
+  private long lastApplied;
+  private long electionDeadline;
+  private long lastHeardFromLeader;
+  private long nextHeartbeat;
+  private long quorumContact;
+  private final boolean[] granted;
+  private final long[] nextIndex;
+  private final long[] ackedSentAt;
+  private final long[] resetAt;
+  private final Map<Long, Proposal> proposals = new HashMap<Long, Proposal>();
+  private final List<RaftMessage> responses = new ArrayList<RaftMessage>();
+  private final List<Integer> responseTargets = new ArrayList<Integer>();
+
+  private volatile boolean closed;
+  private volatile boolean leader;
+  private volatile int leaderId = -1;
+  private volatile long term;
+  private volatile long leaseExpires;
+  private volatile long readableIndex;
+  private volatile long appliedIndex;
+  private volatile long knownCommitIndex;
+  private volatile long lastIndex;
+  private final AtomicLongArray matchIndex;
+  private final AtomicLongArray lastContact;
+  private final AtomicLongArray sentEntries;
+
+  /**
+   * @param id       this node's position in members
+   * @param members  names of every node, for logs and statistics
+   * @param urls     base URL of every node's web service, or null
+   * @param orders   the repository the log is applied to
+   */
+  public RaftNode(int id, List<String> members, List<String> urls, OrdersRepository orders, RaftLog log,
+                  RaftTransport transport) {
+    this(id, members, urls, orders, log, transport, DEFAULT_SNAPSHOT_EVERY);
+  }
+
+  /**
+   * @param snapshotEvery how many entries to apply between snapshots of the orders
+   */
+  public RaftNode(int id, List<String> members, List<String> urls, OrdersRepository orders, RaftLog log,
+                  RaftTransport transport, int snapshotEvery) {
+    if (id < 0 || id >= members.size()) {
+      throw new IllegalArgumentException("Node " + id + " isn't one of the " + members.size() + " members");
+    }
+    if (urls != null && urls.size() != members.size()) {
+      throw new IllegalArgumentException("Expected a URL for each of the " + members.size() + " members, not " + urls);
+    }
+    if (snapshotEvery <= 0) {
+      throw new IllegalArgumentException("Snapshots must be taken every so many entries, not " + snapshotEvery);
+    }
+    this.id = id;
+    this.size = members.size();
+    this.majority = size / 2 + 1;
+    this.members = new ArrayList<String>(members);
+    this.urls = urls == null ? null : new ArrayList<String>(urls);
+    this.orders = orders;
+    this.log = log;
+    this.transport = transport;
+    this.repository = new RaftOrdersRepository(this, orders);
+    this.snapshotEvery = snapshotEvery;
+    this.term = log.getTerm();
+    this.lastIndex = log.getLastIndex();
+    if (log.getSnapshotIndex() > 0) {
+      restore(log.getSnapshot());
+      commitIndex = lastApplied = log.getSnapshotIndex();
+      knownCommitIndex = appliedIndex = lastApplied;
+    }
+
+    granted = new boolean[size];
+    nextIndex = new long[size];
+    ackedSentAt = new long[size];
+    resetAt = new long[size];
+    matchIndex = new AtomicLongArray(size);
+    lastContact = new AtomicLongArray(size);
+    sentEntries = new AtomicLongArray(size);
+
+    transport.register(id, this);
+    loop = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "raft-" + members.get(id));
+    loop.setDaemon(true);
+    loop.start();
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public boolean isLeader() {
+    return leader;
+  }
+
+  public long getTerm() {
+    return term;
+  }
+
+  public long getCommitIndex() {
+    return knownCommitIndex;
+  }
+
+  public long getAppliedIndex() {
+    return appliedIndex;
+  }
+
+  @Override
+  public OrdersRepository getRepository() {
+    return repository;
+  }
+
+  @Override
+  public boolean isFollower() {
+    return !leader;
+  }
+
+  @Override
+  public String getLeaderUrl() {
+    int current = leaderId;
+    return urls == null || current < 0 ? null : urls.get(current);
+  }
+
+  @Override
+  public List<ReplicationStatistics> getStatistics() {
+    long now = System.currentTimeMillis();
+    long last = lastIndex;
+    List<ReplicationStatistics> statistics = new ArrayList<ReplicationStatistics>();
+    if (leader) {
+      for (int peer = 0; peer < size; peer++) {
+        if (peer != id) {
+          long contact = lastContact.get(peer);
+          long match = matchIndex.get(peer);
+          statistics.add(new ReplicationStatistics("leader", members.get(peer),
+                  now - contact < ELECTION_TIMEOUT_MILLIS, last, match, match >= last ? 0 : now - contact,
+                  0, sentEntries.get(peer)));
+        }
+      }
+    } else {
+      int current = leaderId;
+      statistics.add(new ReplicationStatistics("follower", current < 0 ? null : members.get(current),
+              current >= 0, knownCommitIndex, appliedIndex, 0, 0, appliedIndex));
+    }
+    return statistics;
+  }
+
+  //TODOCUMENT Called by the transport with each message for this node.
+  public void receive(RaftMessage message) {
+    if (!closed) {
+      events.add(message);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    loop.interrupt();
+    try {
+      loop.join(REQUEST_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    transport.close();
+    log.close();
+  }
+
+  /*
+   * Appends a change to the log, and returns once it has been committed and applied.
+   */
+  void write(byte type, byte[] payload) {
+    writeAll(type, Collections.singletonList(payload));
+  }
+
+  /*
+   * Appends a batch of changes to the log together, and returns once all are committed and applied.
+   */
+  void writeAll(byte type, List<byte[]> payloads) {
+    if (!leader) {
+      throw new NotLeaderException(getLeaderUrl());
+    }
+    List<Proposal> batch = new ArrayList<Proposal>(payloads.size());
+    for (byte[] payload : payloads) {
+      batch.add(new Proposal(type, payload));
+    }
+    events.addAll(batch);
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REQUEST_TIMEOUT_MILLIS);
+    try {
+      for (Proposal proposal : batch) {
+        if (!proposal.done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+          throw new IllegalStateException("The change wasn't committed within " + REQUEST_TIMEOUT_MILLIS
+                  + "ms, it may still be");
+        }
+        if (proposal.failure != null) {
+          throw proposal.failure;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for the change to be committed", e);
+    }
+  }
+
+  /*
+   * Returns once this node can serve a linearizable read: it is the leader, holds a lease, and has
+   * applied an entry of its own term, so has every write acknowledged before the read started.
+   */
+  void awaitReadable() {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REQUEST_TIMEOUT_MILLIS);
+    boolean renewing = false;
+    while (true) {
+      if (!leader) {
+        throw new NotLeaderException(getLeaderUrl());
+      }
+      long now = System.nanoTime();
+      if (appliedIndex >= readableIndex && now - leaseExpires < 0) {
+        return;
+      }
+      if (now - deadline > 0) {
+        throw new IllegalStateException("Unable to confirm this node is still the Raft leader");
+      }
+      if (!renewing) {
+        events.add(RENEW_LEASE);
+        renewing = true;
+      }
+      synchronized (leaseMonitor) {
+        try {
+          leaseMonitor.wait(10);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted waiting for the Raft lease", e);
+        }
+      }
+    }
+  }
+
+  private void loop() {
+    long now = System.nanoTime();
+    lastHeardFromLeader = now - ELECTION_TIMEOUT;
+    resetElectionDeadline(now);
+    List<Object> round = new ArrayList<Object>();
+    List<Proposal> proposed = new ArrayList<Proposal>();
+    try {
+      while (!closed) {
+        long wait = (role == Role.LEADER ? nextHeartbeat : electionDeadline) - System.nanoTime();
+        Object first = events.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+        if (first != null) {
+          round.add(first);
+          events.drainTo(round);
+        }
+        for (Object event : round) {
+          if (event instanceof RaftMessage) {
+            handle((RaftMessage) event);
+          } else if (event instanceof Proposal) {
+            proposed.add((Proposal) event);
+          } else if (event == RENEW_LEASE && role == Role.LEADER) {
+            nextHeartbeat = System.nanoTime();
+          }
+        }
+        round.clear();
+        if (!proposed.isEmpty()) {
+          propose(proposed);
+          proposed.clear();
+        }
+        tick(System.nanoTime());
+
+        //Nothing is acknowledged until the log holding it is synced.
+        log.sync();
+        lastIndex = log.getLastIndex();
+        for (int i = 0; i < responses.size(); i++) {
+          transport.send(responseTargets.get(i), responses.get(i));
+        }
+        responses.clear();
+        responseTargets.clear();
+        if (role == Role.LEADER) {
+          advanceCommit();
+          renewLease();
+        }
+        applyCommitted();
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Raft node {} stopped", members.get(id));
+    } catch (IOException e) {
+      LOG.error("Raft node {} is unable to write its log and has stopped", members.get(id), e);
+      closed = true;
+    }
+    leader = false;
+    failProposals(new NotLeaderException(null));
+    for (Proposal proposal : proposed) {
+      proposal.complete(new NotLeaderException(null));
+    }
+  }
+
+  private void handle(RaftMessage message) throws IOException {
+    long now = System.nanoTime();
+    if (message.type == RaftMessage.PRE_VOTE || message.type == RaftMessage.REQUEST_VOTE) {
+      //A node that has heard from a leader recently won't help replace it, which is what makes leases safe.
+      if (role == Role.LEADER || now - lastHeardFromLeader < ELECTION_TIMEOUT) {
+        return;
+      }
+    }
+    if (message.term > log.getTerm()
+            && message.type != RaftMessage.PRE_VOTE && message.type != RaftMessage.PRE_VOTE_RESPONSE) {
+      becomeFollower(message.term, now);
+    }
+    switch (message.type) {
+      case RaftMessage.PRE_VOTE: {
+        boolean grant = message.term > log.getTerm() && isUpToDate(message.logTerm, message.index);
+        transport.send(message.from, RaftMessage.voteResponse(RaftMessage.PRE_VOTE_RESPONSE, id,
+                grant ? message.term : log.getTerm(), grant));
+        break;
+      }
+      case RaftMessage.PRE_VOTE_RESPONSE:
+        if (role == Role.PRE_CANDIDATE && message.success && message.term == log.getTerm() + 1) {
+          granted[message.from] = true;
+          if (hasMajority(granted)) {
+            startElection(now);
+          }
+        }
+        break;
+      case RaftMessage.REQUEST_VOTE: {
+        int votedFor = log.getVotedFor();
+        boolean grant = message.term == log.getTerm() && (votedFor < 0 || votedFor == message.from)
+                && isUpToDate(message.logTerm, message.index);
+        if (grant && votedFor != message.from) {
+          log.setTermAndVote(log.getTerm(), message.from);
+          resetElectionDeadline(now);
+        }
+        transport.send(message.from, RaftMessage.voteResponse(RaftMessage.VOTE, id, log.getTerm(), grant));
+        break;
+      }
+      case RaftMessage.VOTE:
+        if (role == Role.CANDIDATE && message.success && message.term == log.getTerm()) {
+          granted[message.from] = true;
+          if (hasMajority(granted)) {
+            becomeLeader(now);
+          }
+        }
+        break;
+      case RaftMessage.APPEND:
+        handleAppend(message, now);
+        break;
+      case RaftMessage.APPEND_RESPONSE:
+        handleAppendResponse(message, now);
+        break;
+      case RaftMessage.SNAPSHOT:
+        handleSnapshot(message, now);
+        break;
+      default:
+        LOG.warn("Ignoring a Raft message of unknown type {} from {}", message.type, message.from);
+    }
+  }
+
+  private void handleAppend(RaftMessage message, long now) throws IOException {
+    if (!acceptLeader(message, now)) {
+      return;
+    }
+    long previous = message.index;
+    long previousTerm = message.logTerm;
+    List<RaftEntry> entries = message.entries;
+    if (previous < log.getSnapshotIndex()) {
+      //Entries the snapshot covers were committed, so they are the leader's; only check and append those after.
+      int covered = (int) Math.min(entries.size(), log.getSnapshotIndex() - previous);
+      if (covered == entries.size()) {
+        respond(message.from, RaftMessage.appendResponse(id, log.getTerm(), true, previous + covered, message.sentAt));
+        return;
+      }
+      previous += covered;
+      previousTerm = entries.get(covered - 1).term;
+      entries = entries.subList(covered, entries.size());
+    }
+
+    if (previous > log.getLastIndex()) {
+      respond(message.from, RaftMessage.appendResponse(id, log.getTerm(), false, log.getLastIndex(), message.sentAt));
+      return;
+    }
+    long conflictTerm = log.termAt(previous);
+    if (conflictTerm != previousTerm) {
+      //Have the leader skip back over the whole conflicting term at once.
+      long first = previous;
+      while (first > commitIndex + 1 && log.termAt(first - 1) == conflictTerm) {
+        first--;
+      }
+      respond(message.from, RaftMessage.appendResponse(id, log.getTerm(), false, first - 1, message.sentAt));
+      return;
+    }
+
+    long index = previous;
+    for (int i = 0; i < entries.size(); i++) {
+      index++;
+      if (index <= log.getLastIndex()) {
+        if (log.termAt(index) == entries.get(i).term) {
+          continue;
+        }
+        log.truncateFrom(index);
+      }
+      log.append(entries.subList(i, entries.size()));
+      break;
+    }
+    long matched = previous + entries.size();
+    if (message.commit > commitIndex) {
+      commitIndex = Math.max(commitIndex, Math.min(message.commit, matched));
+    }
+    respond(message.from, RaftMessage.appendResponse(id, log.getTerm(), true, matched, message.sentAt));
+  }
+
+  /*
+   * Replaces the log up to the snapshot and the orders with it, unless this node has already
+   * applied that far, and answers as it would the append of the entries it replaced.
+   */
+  private void handleSnapshot(RaftMessage message, long now) throws IOException {
+    if (!acceptLeader(message, now)) {
+      return;
+    }
+    if (message.index > lastApplied) {
+      log.snapshot(message.index, message.logTerm, message.snapshot);
+      restore(message.snapshot);
+      commitIndex = Math.max(commitIndex, message.index);
+      lastApplied = message.index;
+      appliedIndex = lastApplied;
+      LOG.info("Raft node {} installed the leader's snapshot up to entry {}", members.get(id), message.index);
+    }
+    respond(message.from, RaftMessage.appendResponse(id, log.getTerm(), true, message.index, message.sentAt));
+  }
+
+  /*
+   * Follows the leader that sent the message, unless it is from an earlier term, which it answers
+   * with a failed append and returns false.
+   */
+  private boolean acceptLeader(RaftMessage message, long now) throws IOException {
+    if (message.term < log.getTerm()) {
+      respond(message.from, RaftMessage.appendResponse(id, log.getTerm(), false, log.getLastIndex(), message.sentAt));
+      return false;
+    }
+    if (role != Role.FOLLOWER) {
+      becomeFollower(message.term, now);
+    }
+    leaderId = message.from;
+    lastHeardFromLeader = now;
+    resetElectionDeadline(now);
+    return true;
+  }
+
+  private void handleAppendResponse(RaftMessage message, long now) {
+    if (role != Role.LEADER || message.term != log.getTerm()) {
+      return;
+    }
+    int peer = message.from;
+    //Even a failed append acknowledges this node as the leader, which is all a lease needs.
+    ackedSentAt[peer] = Math.max(ackedSentAt[peer], message.sentAt);
+    lastContact.set(peer, System.currentTimeMillis());
+    if (message.success) {
+      if (message.index > matchIndex.get(peer)) {
+        matchIndex.set(peer, message.index);
+      }
+      nextIndex[peer] = Math.max(nextIndex[peer], message.index + 1);
+    } else if (message.sentAt - resetAt[peer] >= 0) {
+      //Failures of appends sent before the last reset are already being dealt with.
+      nextIndex[peer] = Math.max(matchIndex.get(peer), message.index) + 1;
+      resetAt[peer] = now;
+    }
+    replicateTo(peer, now);
+  }
+
+  private void propose(List<Proposal> proposed) throws IOException {
+    if (role != Role.LEADER) {
+      NotLeaderException notLeader = new NotLeaderException(getLeaderUrl());
+      for (Proposal proposal : proposed) {
+        proposal.complete(notLeader);
+      }
+      return;
+    }
+    List<RaftEntry> entries = new ArrayList<RaftEntry>(proposed.size());
+    long index = log.getLastIndex();
+    for (Proposal proposal : proposed) {
+      entries.add(new RaftEntry(log.getTerm(), proposal.type, proposal.payload));
+      proposals.put(++index, proposal);
+    }
+    log.append(entries);
+    long now = System.nanoTime();
+    for (int peer = 0; peer < size; peer++) {
+      if (peer != id) {
+        replicateTo(peer, now);
+      }
+    }
+  }
+
+  private void tick(long now) throws IOException {
+    if (role == Role.LEADER) {
+      if (now - nextHeartbeat >= 0) {
+        for (int peer = 0; peer < size; peer++) {
+          if (peer != id && !replicateTo(peer, now)) {
+            sendAppend(peer, 0, now);
+          }
+        }
+        nextHeartbeat = now + HEARTBEAT;
+      }
+      if (now - quorumContact > ELECTION_TIMEOUT) {
+        LOG.warn("Raft leader {} lost touch with a majority, stepping down", members.get(id));
+        becomeFollower(log.getTerm(), now);
+      }
+    } else if (now - electionDeadline >= 0) {
+      startPreVote(now);
+    }
+  }
+
+  /*
+   * Sends the peer the entries it doesn't have, as far as the in flight limit allows, starting with
+   * the snapshot if it needs entries the snapshot replaced, and returns whether it sent any.
+   */
+  private boolean replicateTo(int peer, long now) {
+    boolean sent = false;
+    if (nextIndex[peer] <= log.getSnapshotIndex()) {
+      sendSnapshot(peer, now);
+      sent = true;
+    }
+    while (true) {
+      long inFlight = nextIndex[peer] - 1 - matchIndex.get(peer);
+      long count = Math.min(Math.min(MAX_ENTRIES_PER_APPEND, log.getLastIndex() - nextIndex[peer] + 1),
+              MAX_ENTRIES_IN_FLIGHT - inFlight);
+      if (count <= 0) {
+        return sent;
+      }
+      sendAppend(peer, (int) count, now);
+      sent = true;
+    }
+  }
+
+  private void sendAppend(int peer, int count, long now) {
+    long previous = nextIndex[peer] - 1;
+    List<RaftEntry> entries = log.entriesFrom(nextIndex[peer], count);
+    transport.send(peer, RaftMessage.append(id, log.getTerm(), previous, log.termAt(previous), entries,
+            commitIndex, now));
+    nextIndex[peer] += entries.size();
+    sentEntries.addAndGet(peer, entries.size());
+  }
+
+  /*
+   * The snapshot stands for every entry it covers, so until it is acknowledged they count as in flight.
+   */
+  private void sendSnapshot(int peer, long now) {
+    transport.send(peer, RaftMessage.snapshot(id, log.getTerm(), log.getSnapshotIndex(), log.getSnapshotTerm(),
+            log.getSnapshot(), commitIndex, now));
+    sentEntries.addAndGet(peer, log.getSnapshotIndex() - (nextIndex[peer] - 1));
+    nextIndex[peer] = log.getSnapshotIndex() + 1;
+    //Appends the follower failed before it had the snapshot needn't send it again.
+    resetAt[peer] = now;
+  }
+
+  private void startPreVote(long now) throws IOException {
+    role = Role.PRE_CANDIDATE;
+    Arrays.fill(granted, false);
+    granted[id] = true;
+    resetElectionDeadline(now);
+    if (hasMajority(granted)) {
+      startElection(now);
+      return;
+    }
+    RaftMessage preVote = RaftMessage.vote(RaftMessage.PRE_VOTE, id, log.getTerm() + 1, log.getLastIndex(), log.getLastTerm());
+    for (int peer = 0; peer < size; peer++) {
+      if (peer != id) {
+        transport.send(peer, preVote);
+      }
+    }
+  }
+
+  private void startElection(long now) throws IOException {
+    log.setTermAndVote(log.getTerm() + 1, id);
+    term = log.getTerm();
+    role = Role.CANDIDATE;
+    leaderId = -1;
+    Arrays.fill(granted, false);
+    granted[id] = true;
+    resetElectionDeadline(now);
+    LOG.info("Raft node {} standing for election in term {}", members.get(id), term);
+    if (hasMajority(granted)) {
+      becomeLeader(now);
+      return;
+    }
+    RaftMessage request = RaftMessage.vote(RaftMessage.REQUEST_VOTE, id, log.getTerm(), log.getLastIndex(), log.getLastTerm());
+    for (int peer = 0; peer < size; peer++) {
+      if (peer != id) {
+        transport.send(peer, request);
+      }
+    }
+  }
+
+  private void becomeLeader(long now) throws IOException {
+    role = Role.LEADER;
+    leaderId = id;
+    for (int peer = 0; peer < size; peer++) {
+      nextIndex[peer] = log.getLastIndex() + 1;
+      matchIndex.set(peer, 0);
+      ackedSentAt[peer] = now - LEASE;
+      resetAt[peer] = now;
+    }
+    quorumContact = now;
+    leaseExpires = now;
+    //Entries of earlier terms only count as committed once one of this term is, so start with one.
+    log.append(Collections.singletonList(new RaftEntry(log.getTerm(), RaftEntry.NOOP, new byte[0])));
+    readableIndex = log.getLastIndex();
+    leader = true;
+    LOG.info("Raft node {} is the leader in term {}", members.get(id), log.getTerm());
+    nextHeartbeat = now;
+  }
+
+  private void becomeFollower(long newTerm, long now) throws IOException {
+    if (newTerm > log.getTerm()) {
+      log.setTermAndVote(newTerm, -1);
+      term = newTerm;
+      leaderId = -1;
+    }
+    if (role == Role.LEADER) {
+      leader = false;
+      leaderId = -1;
+      failProposals(new NotLeaderException(null));
+      resetElectionDeadline(now);
+    }
+    role = Role.FOLLOWER;
+  }
+
+  private void advanceCommit() {
+    long[] matched = new long[size];
+    for (int peer = 0; peer < size; peer++) {
+      matched[peer] = peer == id ? log.getLastIndex() : matchIndex.get(peer);
+    }
+    Arrays.sort(matched);
+    long index = matched[size - majority];
+    if (index > commitIndex && log.termAt(index) == log.getTerm()) {
+      commitIndex = index;
+    }
+  }
+
+  /*
+   * The lease runs from when the leader sent the latest heartbeat a majority, counting itself,
+   * has acknowledged.
+   */
+  private void renewLease() {
+    long now = System.nanoTime();
+    long acknowledged = now;
+    if (size > 1) {
+      long[] acked = new long[size - 1];
+      for (int peer = 0, i = 0; peer < size; peer++) {
+        if (peer != id) {
+          acked[i++] = ackedSentAt[peer];
+        }
+      }
+      Arrays.sort(acked);
+      acknowledged = acked[size - majority];
+    }
+    if (acknowledged - quorumContact > 0) {
+      quorumContact = acknowledged;
+    }
+    if (acknowledged + LEASE - leaseExpires > 0) {
+      leaseExpires = acknowledged + LEASE;
+      synchronized (leaseMonitor) {
+        leaseMonitor.notifyAll();
+      }
+    }
+  }
+
+  private void applyCommitted() throws IOException {
+    knownCommitIndex = commitIndex;
+    while (lastApplied < commitIndex) {
+      long index = ++lastApplied;
+      RaftEntry entry = log.entryAt(index);
+      RuntimeException failure = null;
+      try {
+        apply(entry);
+      } catch (RuntimeException e) {
+        LOG.error("Raft node {} is unable to apply entry {}", members.get(id), index, e);
+        failure = e;
+      }
+      appliedIndex = index;
+      Proposal proposal = proposals.remove(index);
+      if (proposal != null) {
+        proposal.complete(failure);
+      }
+    }
+    if (lastApplied - log.getSnapshotIndex() >= snapshotEvery) {
+      log.snapshot(lastApplied, log.termAt(lastApplied), OrderCodec.encodeAll(orders.findAll()));
+    }
+  }
+
+  /*
+   * Replaces every order with those in the snapshot.
+   */
+  private void restore(byte[] snapshot) {
+    List<UUID> keys = new ArrayList<UUID>();
+    for (Order order : orders.findAll()) {
+      keys.add(order.getKey());
+    }
+    if (!keys.isEmpty()) {
+      orders.deleteAll(keys);
+    }
+    List<Order> restored = OrderCodec.decodeAll(snapshot);
+    if (!restored.isEmpty()) {
+      orders.saveAll(restored);
+    }
+  }
+
+  private void apply(RaftEntry entry) {
+    switch (entry.type) {
+      case RaftEntry.SAVE:
+        orders.save(OrderCodec.decode(entry.payload));
+        break;
+      case RaftEntry.DELETE: {
+        ByteBuffer key = ByteBuffer.wrap(entry.payload);
+        orders.delete(new UUID(key.getLong(), key.getLong()));
+        break;
+      }
+      default:
+        break;
+    }
+  }
+
+  private void respond(int to, RaftMessage response) {
+    responseTargets.add(to);
+    responses.add(response);
+  }
+
+  private void failProposals(RuntimeException failure) {
+    for (Proposal proposal : proposals.values()) {
+      proposal.complete(failure);
+    }
+    proposals.clear();
+  }
+
+  private boolean isUpToDate(long lastTerm, long lastIndex) {
+    return lastTerm > log.getLastTerm() || (lastTerm == log.getLastTerm() && lastIndex >= log.getLastIndex());
+  }
+
+  private boolean hasMajority(boolean[] votes) {
+    int count = 0;
+    for (boolean vote : votes) {
+      if (vote) {
+        count++;
+      }
+    }
+    return count >= majority;
+  }
+
+  private void resetElectionDeadline(long now) {
+    electionDeadline = now + ELECTION_TIMEOUT + (long) (random.nextDouble() * ELECTION_TIMEOUT);
+  }
+
+  private static final class Proposal {
+    final byte type;
+    final byte[] payload;
+    final CountDownLatch done = new CountDownLatch(1);
+    volatile RuntimeException failure;
+
+    Proposal(byte type, byte[] payload) {
+      this.type = type;
+      this.payload = payload;
+    }
+
+    void complete(RuntimeException failure) {
+      this.failure = failure;
+      done.countDown();
+    }
+  }
+}
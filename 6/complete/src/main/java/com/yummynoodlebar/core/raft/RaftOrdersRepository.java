@@ -0,0 +1,151 @@
+package com.yummynoodlebar.core.raft;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.repository.AbstractOrdersRepository;
+import com.yummynoodlebar.core.repository.KeyLocks;
+import com.yummynoodlebar.core.repository.OrderCodec;
+import com.yummynoodlebar.core.repository.OrderUpdate;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * The orders as the Raft group agrees on them: writes go through the {@link RaftNode}'s log, and
+ * reads are served from the orders the log has been applied to once the node has confirmed it is
+ * still the leader.
+ * <p>
+ * Writes to the same key wait for each other to be applied, so an update reads the order as the
+ * group last agreed on it.
+ */
+class RaftOrdersRepository extends AbstractOrdersRepository {
+
+  private final RaftNode node;
+  private final OrdersRepository orders;
+  private final KeyLocks locks = new KeyLocks();
+
+  RaftOrdersRepository(RaftNode node, OrdersRepository orders) {
+    this.node = node;
+    this.orders = orders;
+  }
+
+  @Override
+  public Order save(Order order) {
+    byte[] payload = OrderCodec.encode(order);
+    synchronized (locks.lockFor(order.getKey())) {
+      node.write(RaftEntry.SAVE, payload);
+    }
+    return order;
+  }
+
+  @Override
+  public List<Order> saveAll(Collection<Order> batch) {
+    final List<byte[]> payloads = new ArrayList<byte[]>(batch.size());
+    List<UUID> keys = new ArrayList<UUID>(batch.size());
+    for (Order order : batch) {
+      payloads.add(OrderCodec.encode(order));
+      keys.add(order.getKey());
+    }
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        node.writeAll(RaftEntry.SAVE, payloads);
+      }
+    });
+    return new ArrayList<Order>(batch);
+  }
+
+  @Override
+  public void delete(UUID key) {
+    synchronized (locks.lockFor(key)) {
+      node.write(RaftEntry.DELETE, keyBytes(key));
+    }
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> keys) {
+    final List<byte[]> payloads = new ArrayList<byte[]>(keys.size());
+    for (UUID key : keys) {
+      payloads.add(keyBytes(key));
+    }
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        node.writeAll(RaftEntry.DELETE, payloads);
+      }
+    });
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    synchronized (locks.lockFor(key)) {
+      return applyUpdate(key, update);
+    }
+  }
+
+  private static byte[] keyBytes(UUID key) {
+    return ByteBuffer.allocate(16).putLong(key.getMostSignificantBits()).putLong(key.getLeastSignificantBits()).array();
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    node.awaitReadable();
+    return orders.findById(key);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    node.awaitReadable();
+    return orders.findAll();
+  }
+
+  @Override
+  public Iterable<UUID> keys() {
+    node.awaitReadable();
+    return orders.keys();
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    node.awaitReadable();
+    return orders.findPage(after, limit);
+  }
+
+  @Override
+  public Iterable<Order> streamAll(int pageSize) {
+    node.awaitReadable();
+    return orders.streamAll(pageSize);
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    node.awaitReadable();
+    return orders.findBySubmissionTime(from, to);
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    node.awaitReadable();
+    return orders.findByItems(items, match);
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    node.awaitReadable();
+    return orders.findByStatus(status);
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    node.awaitReadable();
+    return orders.countByStatus(status);
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    node.awaitReadable();
+    return orders.countByStatus();
+  }
+}
@@ -0,0 +1,13 @@
+package com.yummynoodlebar.core.raft;
+
+import java.io.Closeable;
+
+//TODOCUMENT Carries messages between the nodes of a Raft group, which are numbered from 0.
+public interface RaftTransport extends Closeable {
+
+  //TODOCUMENT Hands messages addressed to the node with the id to it, from now on.
+  void register(int id, RaftNode node);
+
+  //TODOCUMENT Sends without waiting, dropping the message if it can't be sent.
+  void send(int to, RaftMessage message);
+}
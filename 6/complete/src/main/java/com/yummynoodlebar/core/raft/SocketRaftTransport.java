@@ -0,0 +1,219 @@
+package com.yummynoodlebar.core.raft;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collections;
+
+/**
+ * Carries Raft messages over one TCP connection to each other node, opened when first needed and
+ * reopened after it fails.
+ * <p>
+ * Each peer has its own sender thread and queue, so a slow or unreachable peer never holds up the
+ * node. Messages are dropped when the queue is full or the peer can't be reached, which Raft
+ * copes with by sending again.
+ */
+public class SocketRaftTransport implements RaftTransport {
+
+  private static Logger LOG = LoggerFactory.getLogger(SocketRaftTransport.class);
+
+  static final int QUEUE_CAPACITY = 1024;
+  static final int CONNECT_TIMEOUT_MILLIS = 1000;
+  static final long RECONNECT_DELAY_MILLIS = 100;
+
+  private static final long MAGIC = 0x594e4252414654L;
+
+  private final List<InetSocketAddress> members;
+  private final List<Peer> peers = new ArrayList<Peer>();
+  private final List<Thread> threads = new ArrayList<Thread>();
+  private final Set<Socket> inbound = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+  private ServerSocket server;
+  private volatile RaftNode node;
+  private volatile boolean closed;
+
+  public SocketRaftTransport(List<InetSocketAddress> members) {
+    this.members = new ArrayList<InetSocketAddress>(members);
+  }
+
+  @Override
+  public synchronized void register(int id, RaftNode node) {
+    if (this.node != null) {
+      throw new IllegalStateException("A node is already registered");
+    }
+    this.node = node;
+    try {
+      server = new ServerSocket();
+      server.setReuseAddress(true);
+      server.bind(new InetSocketAddress(members.get(id).getPort()));
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to listen for Raft messages on " + members.get(id), e);
+    }
+    start(new Runnable() {
+      @Override
+      public void run() {
+        accept();
+      }
+    }, "raft-acceptor-" + members.get(id));
+    for (int peer = 0; peer < members.size(); peer++) {
+      Peer sender = peer == id ? null : new Peer(members.get(peer));
+      peers.add(sender);
+      if (sender != null) {
+        start(sender, "raft-sender-" + members.get(peer));
+      }
+    }
+  }
+
+  @Override
+  public void send(int to, RaftMessage message) {
+    Peer peer = peers.get(to);
+    if (peer != null) {
+      peer.queue.offer(message);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    if (server != null) {
+      server.close();
+    }
+    for (Peer peer : peers) {
+      if (peer != null) {
+        peer.close();
+      }
+    }
+    for (Socket socket : inbound) {
+      socket.close();
+    }
+    synchronized (threads) {
+      for (Thread thread : threads) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  private void accept() {
+    while (!closed) {
+      final Socket socket;
+      try {
+        socket = server.accept();
+      } catch (IOException e) {
+        if (!closed) {
+          LOG.error("Unable to accept Raft connections", e);
+        }
+        return;
+      }
+      inbound.add(socket);
+      start(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            if (in.readLong() != MAGIC) {
+              LOG.warn("Ignoring a connection from {}, which isn't a Raft node", socket.getRemoteSocketAddress());
+              return;
+            }
+            while (!closed) {
+              node.receive(RaftMessage.readFrom(in));
+            }
+          } catch (IOException e) {
+            LOG.debug("Raft connection from {} closed", socket.getRemoteSocketAddress(), e);
+          } finally {
+            inbound.remove(socket);
+            try {
+              socket.close();
+            } catch (IOException e) {
+              LOG.debug("Unable to close the Raft connection", e);
+            }
+          }
+        }
+      }, "raft-receiver-" + socket.getRemoteSocketAddress());
+    }
+  }
+
+  private void start(Runnable runnable, String name) {
+    Thread thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+    thread.start();
+    synchronized (threads) {
+      threads.add(thread);
+    }
+  }
+
+  private final class Peer implements Runnable {
+    private final InetSocketAddress address;
+    private final BlockingQueue<RaftMessage> queue = new ArrayBlockingQueue<RaftMessage>(QUEUE_CAPACITY);
+    private volatile Socket socket;
+
+    Peer(InetSocketAddress address) {
+      this.address = address;
+    }
+
+    @Override
+    public void run() {
+      List<RaftMessage> batch = new ArrayList<RaftMessage>();
+      DataOutputStream out = null;
+      while (!closed) {
+        try {
+          batch.add(queue.take());
+          queue.drainTo(batch);
+          if (out == null) {
+            out = connect();
+          }
+          for (RaftMessage message : batch) {
+            message.writeTo(out);
+          }
+          out.flush();
+        } catch (InterruptedException e) {
+          return;
+        } catch (IOException e) {
+          if (!closed) {
+            LOG.debug("Unable to send Raft messages to {}: {}", address, e.getMessage());
+          }
+          close();
+          out = null;
+          try {
+            Thread.sleep(RECONNECT_DELAY_MILLIS);
+          } catch (InterruptedException interrupted) {
+            return;
+          }
+          //Whatever queued up meanwhile is stale; the node will send again.
+          queue.clear();
+        } finally {
+          batch.clear();
+        }
+      }
+    }
+
+    private DataOutputStream connect() throws IOException {
+      Socket connection = new Socket();
+      socket = connection;
+      connection.connect(address, CONNECT_TIMEOUT_MILLIS);
+      connection.setTcpNoDelay(true);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(), 1 << 16));
+      out.writeLong(MAGIC);
+      return out;
+    }
+
+    void close() {
+      Socket current = socket;
+      if (current != null) {
+        try {
+          current.close();
+        } catch (IOException e) {
+          LOG.debug("Unable to close the Raft connection to {}", address, e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.repository.OrdersRepository;
+
+import java.util.Collections;
+import java.util.List;
+
+public class NoReplication implements OrdersReplication {
+
+  private final OrdersRepository repository;
+
+  public NoReplication(OrdersRepository repository) {
+    this.repository = repository;
+  }
+
+  @Override
+  public OrdersRepository getRepository() {
+    return repository;
+  }
+
+  @Override
+  public boolean isFollower() {
+    return false;
+  }
+
+  @Override
+  public String getLeaderUrl() {
+    return null;
+  }
+
+  @Override
+  public List<ReplicationStatistics> getStatistics() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public void close() {
+  }
+}
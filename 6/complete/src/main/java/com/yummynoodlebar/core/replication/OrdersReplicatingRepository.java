@@ -0,0 +1,151 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.repository.AbstractOrdersRepository;
+import com.yummynoodlebar.core.repository.OrderCodec;
+import com.yummynoodlebar.core.repository.OrderUpdate;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+
+import java.util.*;
+
+/**
+ * Records every save and delete made on the leader in a {@link ReplicationBacklog}, for the
+ * {@link ReplicationLeader} to stream to the followers.
+ * <p>
+ * A change is applied and numbered under one lock, so the numbering is the order the changes were
+ * applied in, and a snapshot taken under the same lock is exactly the state after its sequence
+ * number. Saved orders are encoded before the lock is taken, as they were at the time of the save.
+ */
+class OrdersReplicatingRepository extends AbstractOrdersRepository {
+
+  private final OrdersRepository orders;
+  private final ReplicationBacklog backlog;
+  private final Object writeLock = new Object();
+
+  OrdersReplicatingRepository(OrdersRepository orders, ReplicationBacklog backlog) {
+    this.orders = orders;
+    this.backlog = backlog;
+  }
+
+  @Override
+  public Order save(Order order) {
+    byte[] encoded = OrderCodec.encode(order);
+    synchronized (writeLock) {
+      Order saved = orders.save(order);
+      backlog.append(ReplicationBacklog.SAVE, order.getKey(), encoded);
+      return saved;
+    }
+  }
+
+  @Override
+  public void delete(UUID key) {
+    synchronized (writeLock) {
+      orders.delete(key);
+      backlog.append(ReplicationBacklog.DELETE, key, null);
+    }
+  }
+
+  @Override
+  public List<Order> saveAll(Collection<Order> batch) {
+    List<byte[]> encoded = new ArrayList<byte[]>(batch.size());
+    for (Order order : batch) {
+      encoded.add(OrderCodec.encode(order));
+    }
+    synchronized (writeLock) {
+      List<Order> saved = orders.saveAll(batch);
+      int i = 0;
+      for (Order order : batch) {
+        backlog.append(ReplicationBacklog.SAVE, order.getKey(), encoded.get(i++));
+      }
+      return saved;
+    }
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> keys) {
+    synchronized (writeLock) {
+      orders.deleteAll(keys);
+      for (UUID key : keys) {
+        backlog.append(ReplicationBacklog.DELETE, key, null);
+      }
+    }
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    synchronized (writeLock) {
+      return applyUpdate(key, update);
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    return orders.findById(key);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return orders.findAll();
+  }
+
+  @Override
+  public Iterable<UUID> keys() {
+    return orders.keys();
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    return orders.findPage(after, limit);
+  }
+
+  @Override
+  public Iterable<Order> streamAll(int pageSize) {
+    return orders.streamAll(pageSize);
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    return orders.findBySubmissionTime(from, to);
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    return orders.findByItems(items, match);
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    return orders.findByStatus(status);
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    return orders.countByStatus(status);
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    return orders.countByStatus();
+  }
+
+  /*
+   * Every order, with the sequence number of the last change they include.
+   */
+  Snapshot snapshot() {
+    synchronized (writeLock) {
+      return new Snapshot(backlog.getLastSequence(), orders.findAll());
+    }
+  }
+
+  static final class Snapshot {
+    final long sequence;
+    final List<Order> orders;
+
+    Snapshot(long sequence, List<Order> orders) {
+      this.sequence = sequence;
+      this.orders = orders;
+    }
+  }
+}
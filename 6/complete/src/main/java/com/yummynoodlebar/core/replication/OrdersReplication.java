@@ -0,0 +1,21 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.repository.OrdersRepository;
+
+import java.io.Closeable;
+import java.util.List;
+
+//TODOCUMENT The part an instance plays in replicating the order store: leader, follower or neither.
+public interface OrdersReplication extends Closeable {
+
+  //TODOCUMENT The repository the rest of the instance should use. A follower's is read only.
+  OrdersRepository getRepository();
+
+  boolean isFollower();
+
+  //TODOCUMENT Base URL of the leader's web service, where a follower sends writes. Null unless a follower.
+  String getLeaderUrl();
+
+  //TODOCUMENT One entry per connected follower on a leader, or the follower's own view of its lag.
+  List<ReplicationStatistics> getStatistics();
+}
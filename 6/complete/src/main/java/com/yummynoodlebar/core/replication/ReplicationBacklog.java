@@ -0,0 +1,93 @@
+package com.yummynoodlebar.core.replication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The most recent changes made on the leader, numbered from 1, kept in a ring of fixed capacity so
+ * a follower that reconnects after a short break can carry on from where it was. A follower that
+ * has fallen further behind than the ring holds needs a snapshot instead.
+ */
+final class ReplicationBacklog {
+
+  static final byte SAVE = 1;
+  static final byte DELETE = 2;
+
+  private final Change[] changes;
+  private long lastSequence;
+  private boolean closed;
+
+  ReplicationBacklog(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("The backlog must hold at least one change, not " + capacity);
+    }
+    this.changes = new Change[capacity];
+  }
+
+  synchronized long append(byte type, UUID key, byte[] order) {
+    long sequence = ++lastSequence;
+    changes[(int) (sequence % changes.length)] = new Change(sequence, System.currentTimeMillis(), type, key, order);
+    notifyAll();
+    return sequence;
+  }
+
+  synchronized long getLastSequence() {
+    return lastSequence;
+  }
+
+  /*
+   * Whether every change after the sequence is still held.
+   */
+  synchronized boolean holdsChangesAfter(long sequence) {
+    return sequence <= lastSequence && sequence >= lastSequence - changes.length;
+  }
+
+  /*
+   * Returns up to max changes after the sequence, waiting up to timeoutMillis for one to be made,
+   * or null when they are no longer held.
+   */
+  synchronized List<Change> read(long after, int max, long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    long remaining = timeoutMillis;
+    while (after == lastSequence && !closed && remaining > 0) {
+      wait(remaining);
+      remaining = deadline - System.currentTimeMillis();
+    }
+    if (!holdsChangesAfter(after)) {
+      return null;
+    }
+    int count = (int) Math.min(max, lastSequence - after);
+    if (count == 0) {
+      return Collections.emptyList();
+    }
+    List<Change> read = new ArrayList<Change>(count);
+    for (long sequence = after + 1; sequence <= after + count; sequence++) {
+      read.add(changes[(int) (sequence % changes.length)]);
+    }
+    return read;
+  }
+
+  synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  static final class Change {
+    final long sequence;
+    final long timestamp;
+    final byte type;
+    final UUID key;
+    //The encoded order for a save, taken when it was saved, null for a delete.
+    final byte[] order;
+
+    Change(long sequence, long timestamp, byte type, UUID key, byte[] order) {
+      this.sequence = sequence;
+      this.timestamp = timestamp;
+      this.type = type;
+      this.key = key;
+      this.order = order;
+    }
+  }
+}
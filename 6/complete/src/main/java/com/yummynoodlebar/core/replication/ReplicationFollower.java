@@ -0,0 +1,312 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.repository.AbstractOrdersRepository;
+import com.yummynoodlebar.core.repository.OrderUpdate;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * Keeps a repository in step with a {@link ReplicationLeader}, applying the changes it streams in the
+ * order they were made on the leader, and reconnecting whenever the connection drops.
+ * <p>
+ * The rest of the instance reads the repository through {@link #getRepository()}, which refuses
+ * writes: they belong on the leader. Reads see the leader's state as of {@link #getAppliedSequence()},
+ * and while a snapshot is being loaded they may see a mix of the old state and the new.
+ */
+public class ReplicationFollower implements OrdersReplication {
+
+  private static Logger LOG = LoggerFactory.getLogger(ReplicationFollower.class);
+
+  static final int CONNECT_TIMEOUT_MILLIS = 2000;
+  static final long RECONNECT_DELAY_MILLIS = 1000;
+  //A leader sends heartbeats every second, so this long without a frame means the connection is dead.
+  static final int READ_TIMEOUT_MILLIS = 10000;
+
+  private final OrdersRepository orders;
+  private final OrdersRepository readOnly;
+  private final InetSocketAddress leader;
+  private final String leaderUrl;
+  private final Thread receiver;
+
+  private volatile boolean closed;
+  private volatile Socket socket;
+  private volatile long leaderId;
+  private volatile long appliedSequence;
+  private volatile long leaderSequence;
+  private volatile long lagMillis;
+  private volatile long snapshots;
+  private volatile long changes;
+
+  public ReplicationFollower(OrdersRepository orders, InetSocketAddress leader, String leaderUrl) {
+    this.orders = orders;
+    this.readOnly = new ReadOnlyOrdersRepository(orders);
+    this.leader = leader;
+    this.leaderUrl = leaderUrl;
+
+    receiver = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        follow();
+      }
+    }, "replication-follower-" + leader);
+    receiver.setDaemon(true);
+    receiver.start();
+  }
+
+  @Override
+  public OrdersRepository getRepository() {
+    return readOnly;
+  }
+
+  @Override
+  public boolean isFollower() {
+    return true;
+  }
+
+  @Override
+  public String getLeaderUrl() {
+    return leaderUrl;
+  }
+
+  public long getAppliedSequence() {
+    return appliedSequence;
+  }
+
+  public boolean isConnected() {
+    Socket current = socket;
+    return current != null && !current.isClosed();
+  }
+
+  @Override
+  public List<ReplicationStatistics> getStatistics() {
+    return Collections.singletonList(new ReplicationStatistics("follower", String.valueOf(leader), isConnected(),
+            leaderSequence, appliedSequence, lagMillis, snapshots, changes));
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    receiver.interrupt();
+    closeSocket();
+  }
+
+  private void follow() {
+    while (!closed) {
+      try {
+        session();
+      } catch (EOFException e) {
+        LOG.info("Leader {} closed the connection", leader);
+      } catch (IOException e) {
+        if (!closed) {
+          LOG.warn("Lost the connection to leader {}: {}", leader, e.getMessage());
+        }
+      } finally {
+        closeSocket();
+      }
+      if (!closed) {
+        try {
+          Thread.sleep(RECONNECT_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  private void session() throws IOException {
+    Socket connection = new Socket();
+    socket = connection;
+    connection.connect(leader, CONNECT_TIMEOUT_MILLIS);
+    connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+    connection.setTcpNoDelay(true);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+    ReplicationProtocol.writeHello(out, leaderId, appliedSequence);
+    out.flush();
+    ReplicationProtocol.readMagic(in);
+    long id = in.readLong();
+    if (id != leaderId) {
+      LOG.info("Following leader {} at {}", Long.toHexString(id), leader);
+    }
+
+    while (!closed) {
+      byte type = in.readByte();
+      switch (type) {
+        case ReplicationProtocol.SNAPSHOT:
+          loadSnapshot(in);
+          leaderId = id;
+          break;
+        case ReplicationProtocol.SAVE: {
+          long sequence = in.readLong();
+          long timestamp = in.readLong();
+          orders.save(ReplicationProtocol.readOrder(in));
+          applied(sequence, timestamp);
+          break;
+        }
+        case ReplicationProtocol.DELETE: {
+          long sequence = in.readLong();
+          long timestamp = in.readLong();
+          orders.delete(ReplicationProtocol.readKey(in));
+          applied(sequence, timestamp);
+          break;
+        }
+        case ReplicationProtocol.HEARTBEAT:
+          leaderSequence = Math.max(leaderSequence, in.readLong());
+          in.readLong();
+          if (leaderSequence == appliedSequence) {
+            lagMillis = 0;
+          }
+          break;
+        default:
+          throw new IOException("Unexpected frame " + type + " from leader " + leader);
+      }
+      //Acknowledge at the end of each batch the leader sent.
+      if (in.available() == 0) {
+        ReplicationProtocol.writeAck(out, appliedSequence);
+        out.flush();
+      }
+    }
+  }
+
+  /*
+   * Replaces every local order with the leader's.
+   */
+  private void loadSnapshot(DataInputStream in) throws IOException {
+    long sequence = in.readLong();
+    int count = in.readInt();
+    Set<UUID> stale = new HashSet<UUID>();
+    for (Order order : orders.findAll()) {
+      stale.add(order.getKey());
+    }
+    for (int i = 0; i < count; i++) {
+      Order order = ReplicationProtocol.readOrder(in);
+      orders.save(order);
+      stale.remove(order.getKey());
+    }
+    for (UUID key : stale) {
+      orders.delete(key);
+    }
+    appliedSequence = sequence;
+    leaderSequence = sequence;
+    snapshots++;
+    LOG.info("Loaded a snapshot of {} orders at change {} from {}", count, sequence, leader);
+  }
+
+  /*
+   * Notes a change that has just been applied.
+   */
+  private void applied(long sequence, long timestamp) {
+    appliedSequence = sequence;
+    leaderSequence = Math.max(leaderSequence, sequence);
+    lagMillis = Math.max(0, System.currentTimeMillis() - timestamp);
+    changes++;
+  }
+
+  private void closeSocket() {
+    Socket current = socket;
+    if (current != null) {
+      try {
+        current.close();
+      } catch (IOException e) {
+        LOG.debug("Unable to close the connection to {}", leader, e);
+      }
+    }
+  }
+
+  /*
+   * Reads straight through to the replicated orders, and refuses writes.
+   */
+  private static final class ReadOnlyOrdersRepository extends AbstractOrdersRepository {
+
+    private final OrdersRepository orders;
+
+    ReadOnlyOrdersRepository(OrdersRepository orders) {
+      this.orders = orders;
+    }
+
+    @Override
+    public Order save(Order order) {
+      throw new UnsupportedOperationException("Orders are saved on the replication leader, not a follower");
+    }
+
+    @Override
+    public List<Order> saveAll(Collection<Order> orders) {
+      throw new UnsupportedOperationException("Orders are saved on the replication leader, not a follower");
+    }
+
+    @Override
+    public void delete(UUID key) {
+      throw new UnsupportedOperationException("Orders are deleted on the replication leader, not a follower");
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> keys) {
+      throw new UnsupportedOperationException("Orders are deleted on the replication leader, not a follower");
+    }
+
+    @Override
+    public Order compute(UUID key, OrderUpdate update) {
+      throw new UnsupportedOperationException("Orders are updated on the replication leader, not a follower");
+    }
+
+    @Override
+    public Order findById(UUID key) {
+      return orders.findById(key);
+    }
+
+    @Override
+    public List<Order> findAll() {
+      return orders.findAll();
+    }
+
+    @Override
+    public Iterable<UUID> keys() {
+      return orders.keys();
+    }
+
+    @Override
+    public List<Order> findPage(OrderCursor after, int limit) {
+      return orders.findPage(after, limit);
+    }
+
+    @Override
+    public Iterable<Order> streamAll(int pageSize) {
+      return orders.streamAll(pageSize);
+    }
+
+    @Override
+    public List<Order> findBySubmissionTime(Date from, Date to) {
+      return orders.findBySubmissionTime(from, to);
+    }
+
+    @Override
+    public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+      return orders.findByItems(items, match);
+    }
+
+    @Override
+    public List<Order> findByStatus(String status) {
+      return orders.findByStatus(status);
+    }
+
+    @Override
+    public int countByStatus(String status) {
+      return orders.countByStatus(status);
+    }
+
+    @Override
+    public Map<String, Integer> countByStatus() {
+      return orders.countByStatus();
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Streams every change made through its repository to the followers that connect to it over TCP.
+ * <p>
+ * Each follower is served by its own thread, which sends the changes from the
+ * {@link ReplicationBacklog} in batches as they are made, so a slow follower never holds up writes
+ * or other followers. A follower that is new, was following another leader, or has fallen behind
+ * what the backlog holds, is first sent a snapshot of every order and then the changes after it.
+ * Replication is asynchronous: a write returns once applied on the leader, and followers lag by
+ * however long the changes take to reach them, which {@link #getStatistics()} reports.
+ */
+public class ReplicationLeader implements OrdersReplication {
+
+  private static Logger LOG = LoggerFactory.getLogger(ReplicationLeader.class);
+
+  public static final int DEFAULT_BACKLOG_CAPACITY = 100000;
+
+  static final int BATCH_SIZE = 1000;
+  static final long HEARTBEAT_MILLIS = 1000;
+
+  //Identifies this run of the leader, as the backlog and its numbering don't survive a restart.
+  private final long leaderId = new SecureRandom().nextLong() | 1;
+  private final ReplicationBacklog backlog;
+  private final OrdersReplicatingRepository repository;
+  private final ServerSocket server;
+  private final Thread acceptor;
+  private final List<FollowerSession> sessions = new CopyOnWriteArrayList<FollowerSession>();
+  private volatile boolean closed;
+
+  public ReplicationLeader(OrdersRepository orders, int port) throws IOException {
+    this(orders, port, DEFAULT_BACKLOG_CAPACITY);
+  }
+
+  public ReplicationLeader(OrdersRepository orders, int port, int backlogCapacity) throws IOException {
+    this.backlog = new ReplicationBacklog(backlogCapacity);
+    this.repository = new OrdersReplicatingRepository(orders, backlog);
+    this.server = new ServerSocket();
+    server.setReuseAddress(true);
+    server.bind(new InetSocketAddress(port));
+
+    acceptor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        accept();
+      }
+    }, "replication-leader-" + getPort());
+    acceptor.setDaemon(true);
+    acceptor.start();
+    LOG.info("Replication leader {} listening on port {}", Long.toHexString(leaderId), getPort());
+  }
+
+  //TODOCUMENT The port followers connect to, useful when constructed with port 0.
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  @Override
+  public OrdersRepository getRepository() {
+    return repository;
+  }
+
+  @Override
+  public boolean isFollower() {
+    return false;
+  }
+
+  @Override
+  public String getLeaderUrl() {
+    return null;
+  }
+
+  public long getLastSequence() {
+    return backlog.getLastSequence();
+  }
+
+  @Override
+  public List<ReplicationStatistics> getStatistics() {
+    List<ReplicationStatistics> statistics = new ArrayList<ReplicationStatistics>();
+    for (FollowerSession session : sessions) {
+      statistics.add(session.statistics());
+    }
+    return statistics;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    backlog.close();
+    server.close();
+    for (FollowerSession session : sessions) {
+      session.close();
+    }
+  }
+
+  private void accept() {
+    while (!closed) {
+      Socket socket;
+      try {
+        socket = server.accept();
+      } catch (IOException e) {
+        if (!closed) {
+          LOG.error("Unable to accept followers", e);
+        }
+        return;
+      }
+      final FollowerSession session = new FollowerSession(socket);
+      sessions.add(session);
+      Thread sender = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            session.run();
+          } finally {
+            sessions.remove(session);
+            session.close();
+          }
+        }
+      }, "replication-sender-" + socket.getRemoteSocketAddress());
+      sender.setDaemon(true);
+      sender.start();
+    }
+  }
+
+  private final class FollowerSession {
+    private final Socket socket;
+    private final String follower;
+    private volatile long sentSequence;
+    private volatile long ackedSequence;
+    private volatile long lastChangeTimestamp;
+    private volatile long snapshots;
+    private volatile long changes;
+
+    FollowerSession(Socket socket) {
+      this.socket = socket;
+      this.follower = String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    void run() {
+      try {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+        ReplicationProtocol.readMagic(in);
+        long followerLeaderId = in.readLong();
+        long followerSequence = in.readLong();
+        ReplicationProtocol.writeWelcome(out, leaderId);
+
+        if (followerLeaderId == leaderId && backlog.holdsChangesAfter(followerSequence)) {
+          sentSequence = followerSequence;
+          LOG.info("Follower {} carries on after change {}", follower, followerSequence);
+        } else {
+          OrdersReplicatingRepository.Snapshot snapshot = repository.snapshot();
+          ReplicationProtocol.writeSnapshot(out, snapshot.sequence, snapshot.orders);
+          sentSequence = snapshot.sequence;
+          snapshots++;
+          LOG.info("Follower {} sent a snapshot of {} orders at change {}", follower, snapshot.orders.size(), snapshot.sequence);
+        }
+        out.flush();
+
+        while (!closed) {
+          List<ReplicationBacklog.Change> batch = backlog.read(sentSequence, BATCH_SIZE, HEARTBEAT_MILLIS);
+          if (batch == null) {
+            LOG.warn("Follower {} fell more than the backlog behind, it will resynchronise", follower);
+            return;
+          }
+          if (batch.isEmpty()) {
+            ReplicationProtocol.writeHeartbeat(out, backlog.getLastSequence());
+          } else {
+            for (ReplicationBacklog.Change change : batch) {
+              ReplicationProtocol.writeChange(out, change);
+            }
+            ReplicationBacklog.Change last = batch.get(batch.size() - 1);
+            sentSequence = last.sequence;
+            lastChangeTimestamp = last.timestamp;
+            changes += batch.size();
+          }
+          out.flush();
+          readAcks(in);
+        }
+      } catch (EOFException e) {
+        LOG.info("Follower {} disconnected", follower);
+      } catch (SocketException e) {
+        if (!closed) {
+          LOG.info("Follower {} disconnected: {}", follower, e.getMessage());
+        }
+      } catch (IOException e) {
+        LOG.warn("Replication to follower {} failed", follower, e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void readAcks(DataInputStream in) throws IOException {
+      while (in.available() >= ReplicationProtocol.ACK_SIZE) {
+        byte type = in.readByte();
+        if (type != ReplicationProtocol.ACK) {
+          throw new IOException("Unexpected frame " + type + " from follower " + follower);
+        }
+        ackedSequence = in.readLong();
+      }
+    }
+
+    ReplicationStatistics statistics() {
+      long acked = ackedSequence;
+      long lag = acked >= sentSequence || lastChangeTimestamp == 0 ? 0 : System.currentTimeMillis() - lastChangeTimestamp;
+      return new ReplicationStatistics("leader", follower, !socket.isClosed(), backlog.getLastSequence(),
+              acked, lag, snapshots, changes);
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        LOG.debug("Unable to close the connection to {}", follower, e);
+      }
+    }
+  }
+}
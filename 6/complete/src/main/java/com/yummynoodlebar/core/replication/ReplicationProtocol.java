@@ -0,0 +1,102 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.repository.OrderCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Frames exchanged between a leader and a follower over one TCP connection.
+ * <p>
+ * The follower opens with a hello naming the leader and sequence it last applied, the leader replies
+ * with its own id and then either carries on from that sequence or starts with a snapshot. After that
+ * the leader sends changes, and heartbeats when there are none, and the follower acknowledges what
+ * it has applied.
+ */
+final class ReplicationProtocol {
+
+  static final long MAGIC = 0x594e425245504cL;
+
+  static final byte SAVE = ReplicationBacklog.SAVE;
+  static final byte DELETE = ReplicationBacklog.DELETE;
+  static final byte SNAPSHOT = 3;
+  static final byte HEARTBEAT = 4;
+  static final byte ACK = 5;
+
+  //type and sequence.
+  static final int ACK_SIZE = 1 + 8;
+
+  private ReplicationProtocol() {
+  }
+
+  static void writeHello(DataOutputStream out, long leaderId, long appliedSequence) throws IOException {
+    out.writeLong(MAGIC);
+    out.writeLong(leaderId);
+    out.writeLong(appliedSequence);
+  }
+
+  static void writeWelcome(DataOutputStream out, long leaderId) throws IOException {
+    out.writeLong(MAGIC);
+    out.writeLong(leaderId);
+  }
+
+  static void readMagic(DataInputStream in) throws IOException {
+    long magic = in.readLong();
+    if (magic != MAGIC) {
+      throw new IOException("Not an order replication peer, got " + Long.toHexString(magic));
+    }
+  }
+
+  static void writeSnapshot(DataOutputStream out, long sequence, Collection<Order> orders) throws IOException {
+    out.writeByte(SNAPSHOT);
+    out.writeLong(sequence);
+    out.writeInt(orders.size());
+    for (Order order : orders) {
+      byte[] encoded = OrderCodec.encode(order);
+      out.writeInt(encoded.length);
+      out.write(encoded);
+    }
+  }
+
+  static void writeChange(DataOutputStream out, ReplicationBacklog.Change change) throws IOException {
+    out.writeByte(change.type);
+    out.writeLong(change.sequence);
+    out.writeLong(change.timestamp);
+    if (change.type == SAVE) {
+      out.writeInt(change.order.length);
+      out.write(change.order);
+    } else {
+      writeKey(out, change.key);
+    }
+  }
+
+  static void writeHeartbeat(DataOutputStream out, long lastSequence) throws IOException {
+    out.writeByte(HEARTBEAT);
+    out.writeLong(lastSequence);
+    out.writeLong(System.currentTimeMillis());
+  }
+
+  static void writeAck(DataOutputStream out, long appliedSequence) throws IOException {
+    out.writeByte(ACK);
+    out.writeLong(appliedSequence);
+  }
+
+  static Order readOrder(DataInputStream in) throws IOException {
+    byte[] encoded = new byte[in.readInt()];
+    in.readFully(encoded);
+    return OrderCodec.decode(encoded);
+  }
+
+  static void writeKey(DataOutputStream out, UUID key) throws IOException {
+    out.writeLong(key.getMostSignificantBits());
+    out.writeLong(key.getLeastSignificantBits());
+  }
+
+  static UUID readKey(DataInputStream in) throws IOException {
+    return new UUID(in.readLong(), in.readLong());
+  }
+}
@@ -0,0 +1,76 @@
+package com.yummynoodlebar.core.replication;
+
+/**
+ * How far a follower is behind its leader. Sequence numbers count the changes made on the leader
+ * since it started; the lag in time assumes the leader and follower clocks agree.
+ */
+public class ReplicationStatistics {
+
+  private final String role;
+  private final String peer;
+  private final boolean connected;
+  private final long leaderSequence;
+  private final long appliedSequence;
+  private final long lagMillis;
+  private final long snapshots;
+  private final long changes;
+
+  public ReplicationStatistics(String role, String peer, boolean connected, long leaderSequence,
+                               long appliedSequence, long lagMillis, long snapshots, long changes) {
+    this.role = role;
+    this.peer = peer;
+    this.connected = connected;
+    this.leaderSequence = leaderSequence;
+    this.appliedSequence = appliedSequence;
+    this.lagMillis = lagMillis;
+    this.snapshots = snapshots;
+    this.changes = changes;
+  }
+
+  public String getRole() {
+    return role;
+  }
+
+  //TODOCUMENT The follower, seen from the leader, or the leader, seen from a follower.
+  public String getPeer() {
+    return peer;
+  }
+
+  public boolean isConnected() {
+    return connected;
+  }
+
+  public long getLeaderSequence() {
+    return leaderSequence;
+  }
+
+  //TODOCUMENT On a leader, the last change the follower has acknowledged applying.
+  public long getAppliedSequence() {
+    return appliedSequence;
+  }
+
+  public long getLagChanges() {
+    return Math.max(0, leaderSequence - appliedSequence);
+  }
+
+  //TODOCUMENT Time between the leader making the last applied change and the follower applying it.
+  public long getLagMillis() {
+    return lagMillis;
+  }
+
+  //TODOCUMENT Full snapshots sent to, or loaded by, the follower.
+  public long getSnapshots() {
+    return snapshots;
+  }
+
+  //TODOCUMENT Single changes sent to, or applied by, the follower.
+  public long getChanges() {
+    return changes;
+  }
+
+  @Override
+  public String toString() {
+    return role + " " + peer + (connected ? "" : " (disconnected)") + ": applied " + appliedSequence
+            + " of " + leaderSequence + ", " + getLagChanges() + " changes and " + lagMillis + "ms behind";
+  }
+}
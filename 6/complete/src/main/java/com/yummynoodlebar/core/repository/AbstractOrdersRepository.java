@@ -0,0 +1,216 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Generic implementations of the {@link OrdersRepository} queries, written in terms of a scan over
+ * every order, of the batch writes in terms of single ones, and of the conditional and versioned
+ * writes in terms of {@link #compute}. Stores override {@link #scan} to avoid materializing all
+ * orders, and override the queries and batch writes when they can do them more directly.
+ * All orders are streamed through {@link KeysetOrderPages}, so a store that finds a page from an index
+ * streams from it too.
+ */
+public abstract class AbstractOrdersRepository implements OrdersRepository {
+
+  @Override
+  public List<Order> saveAll(Collection<Order> orders) {
+    List<Order> saved = new ArrayList<Order>(orders.size());
+    for (Order order : orders) {
+      saved.add(save(order));
+    }
+    return saved;
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> keys) {
+    for (UUID key : keys) {
+      delete(key);
+    }
+  }
+
+  @Override
+  public Order computeIfPresent(UUID key, final OrderUpdate update) {
+    return compute(key, new OrderUpdate() {
+      @Override
+      public Order apply(Order current) {
+        return current == null ? null : update.apply(current);
+      }
+    });
+  }
+
+  @Override
+  public boolean removeIf(UUID key, final OrderCondition condition) {
+    final boolean[] removed = new boolean[1];
+    compute(key, new OrderUpdate() {
+      @Override
+      public Order apply(Order current) {
+        removed[0] = current != null && condition.test(current);
+        return removed[0] ? null : current;
+      }
+    });
+    return removed[0];
+  }
+
+  @Override
+  public Order saveIfVersion(final Order order, final long expectedVersion) {
+    final long[] actual = new long[1];
+    Order saved = compute(order.getKey(), new OrderUpdate() {
+      @Override
+      public Order apply(Order current) {
+        actual[0] = current == null ? 0 : current.getVersion();
+        if (actual[0] != expectedVersion) {
+          return current;
+        }
+        return order.atVersion(expectedVersion + 1);
+      }
+    });
+    if (actual[0] != expectedVersion) {
+      throw new OrderVersionConflictException(order.getKey(), expectedVersion, actual[0]);
+    }
+    return saved;
+  }
+
+  /*
+   * The keys of a scan. Stores whose scan decodes the orders list their keys some other way.
+   */
+  @Override
+  public Iterable<UUID> keys() {
+    return OrderKeys.of(scan());
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    OrderPageCollector page = new OrderPageCollector(after, limit);
+    page.offerAll(scan());
+    return page.toList();
+  }
+
+  /*
+   * A page at a time, each found after the last order of the one before, so only one page is held
+   * whatever the number of orders. A store answering findPage with a scan scans once a page.
+   */
+  @Override
+  public Iterable<Order> streamAll(int pageSize) {
+    return new KeysetOrderPages(this, pageSize);
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    List<Order> found = new ArrayList<Order>();
+    for (Order order : scan()) {
+      long submitted = OrderCursor.submissionTime(order.getDateTimeOfSubmission());
+      if ((from == null || submitted >= from.getTime()) && (to == null || submitted < to.getTime())) {
+        found.add(order);
+      }
+    }
+    Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    return found;
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    List<Order> found = new ArrayList<Order>();
+    for (Order order : scan()) {
+      if (containsItems(order, items, match)) {
+        found.add(order);
+      }
+    }
+    Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    return found;
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    List<Order> found = new ArrayList<Order>();
+    for (Order order : scan()) {
+      if (status.equals(statusName(order.getStatus()))) {
+        found.add(order);
+      }
+    }
+    Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    return found;
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    Integer count = countByStatus().get(status);
+    return count == null ? 0 : count;
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    Map<String, Integer> counts = new TreeMap<String, Integer>();
+    for (Order order : scan()) {
+      String status = statusName(order.getStatus());
+      if (status != null) {
+        Integer count = counts.get(status);
+        counts.put(status, count == null ? 1 : count + 1);
+      }
+    }
+    return counts;
+  }
+
+  /*
+   * Reads the order, applies the update, and saves or deletes what it returns, through this
+   * repository's own methods. Atomic only while the caller holds whatever its writes to the key take.
+   */
+  protected Order applyUpdate(UUID key, OrderUpdate update) {
+    Order current = findById(key);
+    Order next = update.apply(current);
+    if (next == current) {
+      return current;
+    }
+    if (next == null) {
+      delete(key);
+      return null;
+    }
+    checkKey(key, next);
+    return save(next);
+  }
+
+  static void checkKey(UUID key, Order updated) {
+    if (!key.equals(updated.getKey())) {
+      throw new IllegalArgumentException("The update of order " + key + " returned order " + updated.getKey());
+    }
+  }
+
+  static String statusName(OrderStatus status) {
+    return status == null ? null : status.getStatus();
+  }
+
+  static boolean containsItems(Order order, Collection<String> items, ItemMatch match) {
+    Map<String, Integer> orderItems = order.getOrderItems();
+    if (orderItems == null || items.isEmpty()) {
+      return false;
+    }
+    for (String item : items) {
+      boolean contained = orderItems.containsKey(item);
+      if (match == ItemMatch.ANY && contained) {
+        return true;
+      }
+      if (match == ItemMatch.ALL && !contained) {
+        return false;
+      }
+    }
+    return match == ItemMatch.ALL;
+  }
+
+  /*
+   * Every order, in no particular order.
+   */
+  protected Iterable<Order> scan() {
+    return findAll();
+  }
+}
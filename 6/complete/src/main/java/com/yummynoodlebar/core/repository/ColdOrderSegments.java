@@ -0,0 +1,765 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The cold tier of an {@link OrdersTieredRepository}: orders encoded with {@link OrderCodec},
+ * deflated in blocks of up to {@link #ORDERS_PER_BLOCK}, and appended to segment files that are never
+ * rewritten. Only the key of each cold order stays on the heap, in an index to the block holding it.
+ * <p>
+ * Removing an order appends a tombstone, so reopening the directory replays the segments into the
+ * same index. A segment is deleted once none of its orders are live and every older one has gone,
+ * as its tombstones may still hide orders in older segments until then. Lookups go through a
+ * {@link ColdPageCache} of decompressed blocks; scans read the blocks directly, skipping those whose
+ * orders were all submitted outside the time range asked for.
+ * <p>
+ * Each block also keeps a summary on the heap: the statuses and items of its orders. Pages read blocks
+ * in order of their earliest order and stop once the page can't change, and queries by status or by
+ * items only read the blocks whose summary could match.
+ * <p>
+ * Appends are made by one thread at a time and don't block lookups, as new blocks only become
+ * visible when their orders are indexed.
+ */
+public class ColdOrderSegments implements Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(ColdOrderSegments.class);
+
+  public static final int DEFAULT_CACHE_BLOCKS = 256;
+
+  static final int ORDERS_PER_BLOCK = 64;
+  static final long SEGMENT_BYTES = 64L << 20;
+
+  private static final Pattern SEGMENT_FILE = Pattern.compile("cold-(\\d+)\\.seg");
+  private static final byte BLOCK = 1;
+  private static final byte TOMBSTONE = 2;
+  //type, earliest and latest submission time, raw and compressed length.
+  private static final int BLOCK_HEADER = 1 + 8 + 8 + 4 + 4;
+  private static final int CHECKSUM = 4;
+  private static final int TOMBSTONE_SIZE = 1 + 16 + CHECKSUM;
+  private static final int OFFSET_BITS = 40;
+
+  private final File directory;
+  private final ColdPageCache cache;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Object appendLock = new Object();
+
+  //Guarded by lock.
+  private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+  private final TreeSet<Block> byEarliest = new TreeSet<Block>();
+  private final UuidLongMap index = new UuidLongMap();
+  private final Map<String, Integer> statusCounts = new TreeMap<String, Integer>();
+
+  //Guarded by appendLock.
+  private Segment current;
+
+  private final AtomicLong blocksScanned = new AtomicLong();
+
+  public ColdOrderSegments(File directory, int cacheBlocks) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create the cold order directory " + directory);
+    }
+    this.directory = directory;
+    this.cache = new ColdPageCache(cacheBlocks);
+    load();
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return index.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getSegmentCount() {
+    lock.readLock().lock();
+    try {
+      return segments.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public long getBytesOnDisk() {
+    lock.readLock().lock();
+    try {
+      long bytes = 0;
+      for (Segment segment : segments.values()) {
+        bytes += segment.size;
+      }
+      return bytes;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public long getCacheHits() {
+    return cache.getHits();
+  }
+
+  public long getCacheMisses() {
+    return cache.getMisses();
+  }
+
+  //TODOCUMENT Blocks read by scans, pages and queries, rather than by lookups through the cache.
+  public long getBlocksScanned() {
+    return blocksScanned.get();
+  }
+
+  public boolean contains(UUID key) {
+    lock.readLock().lock();
+    try {
+      return index.get(key) != UuidLongMap.NO_VALUE;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public Order find(UUID key) {
+    lock.readLock().lock();
+    try {
+      long location = index.get(key);
+      return location == UuidLongMap.NO_VALUE ? null : readOrder(location, key);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /*
+   * The live orders in blocks holding any submitted from, inclusive, to, exclusive, and perhaps others.
+   */
+  List<Order> scan(long from, long to) {
+    List<Order> found = new ArrayList<Order>();
+    lock.readLock().lock();
+    try {
+      for (Segment segment : segments.values()) {
+        for (Block block : segment.blocks) {
+          if (block.latest >= from && block.earliest < to) {
+            found.addAll(liveOrders(block));
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the cold orders in " + directory, e);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return found;
+  }
+
+  /*
+   * The first live orders after the cursor, in submission order, at most limit of them.
+   */
+  List<Order> page(OrderCursor after, int limit) {
+    OrderPageCollector page = new OrderPageCollector(after, limit);
+    long from = after == null ? Long.MIN_VALUE : after.getSubmissionTime();
+    lock.readLock().lock();
+    try {
+      for (Block block : byEarliest) {
+        if (page.excludesFrom(block.earliest)) {
+          break;
+        }
+        if (block.latest >= from) {
+          page.offerAll(liveOrders(block));
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the cold orders in " + directory, e);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return page.toList();
+  }
+
+  /*
+   * The live orders whose current status is the given one.
+   */
+  List<Order> findByStatus(String status) {
+    List<Order> found = new ArrayList<Order>();
+    lock.readLock().lock();
+    try {
+      for (Block block : byEarliest) {
+        if (Arrays.binarySearch(block.statuses, status) >= 0) {
+          for (Order order : liveOrders(block)) {
+            if (status.equals(AbstractOrdersRepository.statusName(order.getStatus()))) {
+              found.add(order);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the cold orders in " + directory, e);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return found;
+  }
+
+  /*
+   * The live orders containing all, or any, of the items.
+   */
+  List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    List<Order> found = new ArrayList<Order>();
+    lock.readLock().lock();
+    try {
+      for (Block block : byEarliest) {
+        if (block.mayContain(items, match)) {
+          for (Order order : liveOrders(block)) {
+            if (AbstractOrdersRepository.containsItems(order, items, match)) {
+              found.add(order);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the cold orders in " + directory, e);
+    } finally {
+      lock.readLock().unlock();
+    }
+    return found;
+  }
+
+  public int countByStatus(String status) {
+    lock.readLock().lock();
+    try {
+      Integer count = statusCounts.get(status);
+      return count == null ? 0 : count;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public Map<String, Integer> countByStatus() {
+    lock.readLock().lock();
+    try {
+      return new TreeMap<String, Integer>(statusCounts);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  List<UUID> keys() {
+    lock.readLock().lock();
+    try {
+      return index.keys();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /*
+   * Writes the orders, given with their encoded form, and forces them to disk. They only become
+   * visible once each is indexed at the location returned for it.
+   */
+  long[] append(List<Order> orders, List<byte[]> encoded) throws IOException {
+    long[] locations = new long[orders.size()];
+    List<Segment> written = new ArrayList<Segment>();
+    List<Block> blocks = new ArrayList<Block>();
+    synchronized (appendLock) {
+      for (int start = 0; start < orders.size(); start += ORDERS_PER_BLOCK) {
+        int end = Math.min(orders.size(), start + ORDERS_PER_BLOCK);
+        int rawLength = 4;
+        long earliest = Long.MAX_VALUE;
+        long latest = Long.MIN_VALUE;
+        for (int i = start; i < end; i++) {
+          rawLength += 4 + encoded.get(i).length;
+          long submitted = OrderCursor.submissionTime(orders.get(i).getDateTimeOfSubmission());
+          earliest = Math.min(earliest, submitted);
+          latest = Math.max(latest, submitted);
+        }
+        ByteBuffer raw = ByteBuffer.allocate(rawLength);
+        raw.putInt(end - start);
+        for (int i = start; i < end; i++) {
+          raw.putInt(encoded.get(i).length).put(encoded.get(i));
+        }
+        byte[] compressed = deflate(raw.array());
+
+        ByteBuffer record = ByteBuffer.allocate(BLOCK_HEADER + compressed.length + CHECKSUM);
+        record.put(BLOCK).putLong(earliest).putLong(latest).putInt(rawLength).putInt(compressed.length).put(compressed);
+        record.putInt(checksum(record.array(), 0, record.position()));
+        record.flip();
+
+        Segment segment = writableSegment(record.remaining());
+        long offset = segment.size;
+        write(segment, record, offset);
+        if (!written.contains(segment)) {
+          written.add(segment);
+        }
+        blocks.add(new Block(segment, offset, earliest, latest, rawLength, compressed.length,
+                orders.subList(start, end)));
+        for (int i = start; i < end; i++) {
+          locations[i] = location(segment.id, offset);
+        }
+      }
+      for (Segment segment : written) {
+        segment.channel.force(false);
+      }
+    }
+    lock.writeLock().lock();
+    try {
+      for (Block block : blocks) {
+        block.segment.blocks.add(block);
+        byEarliest.add(block);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return locations;
+  }
+
+  void index(Order order, long location) {
+    lock.writeLock().lock();
+    try {
+      long previous = index.put(order.getKey(), location);
+      if (previous != UuidLongMap.NO_VALUE) {
+        unindexed(previous, readOrder(previous, order.getKey()));
+      }
+      segments.get(segmentOf(location)).live++;
+      count(AbstractOrdersRepository.statusName(order.getStatus()), 1);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /*
+   * Removes the order, if cold, and returns whether it was.
+   */
+  boolean remove(UUID key) throws IOException {
+    long location;
+    lock.readLock().lock();
+    try {
+      location = index.get(key);
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (location == UuidLongMap.NO_VALUE) {
+      return false;
+    }
+
+    ByteBuffer tombstone = ByteBuffer.allocate(TOMBSTONE_SIZE);
+    tombstone.put(TOMBSTONE).putLong(key.getMostSignificantBits()).putLong(key.getLeastSignificantBits());
+    tombstone.putInt(checksum(tombstone.array(), 0, tombstone.position()));
+    tombstone.flip();
+    synchronized (appendLock) {
+      Segment segment = writableSegment(TOMBSTONE_SIZE);
+      write(segment, tombstone, segment.size);
+      segment.channel.force(false);
+    }
+
+    lock.writeLock().lock();
+    try {
+      location = index.remove(key);
+      if (location != UuidLongMap.NO_VALUE) {
+        unindexed(location, readOrder(location, key));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return true;
+  }
+
+  /*
+   * Deletes segments, from the oldest on, that no longer hold a live order. Must not run while
+   * appended orders are still to be indexed.
+   */
+  void deleteDeadSegments() throws IOException {
+    synchronized (appendLock) {
+      lock.writeLock().lock();
+      try {
+        while (!segments.isEmpty()) {
+          Segment oldest = segments.firstEntry().getValue();
+          if (oldest == current || oldest.live > 0) {
+            return;
+          }
+          oldest.channel.close();
+          byEarliest.removeAll(oldest.blocks);
+          if (!oldest.file.delete()) {
+            throw new IOException("Unable to delete the cold segment " + oldest.file);
+          }
+          segments.remove(oldest.id);
+          LOG.info("Deleted cold segment {}, it held no live orders", oldest.file.getName());
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (appendLock) {
+      lock.writeLock().lock();
+      try {
+        for (Segment segment : segments.values()) {
+          segment.channel.close();
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private Segment writableSegment(int length) throws IOException {
+    if (current != null && (current.size == 0 || current.size + length <= SEGMENT_BYTES)) {
+      return current;
+    }
+    if (current != null) {
+      current.channel.force(false);
+    }
+    int id;
+    lock.readLock().lock();
+    try {
+      id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+    } finally {
+      lock.readLock().unlock();
+    }
+    Segment segment = new Segment(id, new File(directory, String.format("cold-%06d.seg", id)));
+    lock.writeLock().lock();
+    try {
+      segments.put(id, segment);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    current = segment;
+    return segment;
+  }
+
+  private static void write(Segment segment, ByteBuffer record, long offset) throws IOException {
+    long position = offset;
+    while (record.hasRemaining()) {
+      position += segment.channel.write(record, position);
+    }
+    segment.size = position;
+  }
+
+  private void unindexed(long location, Order order) {
+    segments.get(segmentOf(location)).live--;
+    count(AbstractOrdersRepository.statusName(order.getStatus()), -1);
+  }
+
+  private void count(String status, int change) {
+    if (status == null) {
+      return;
+    }
+    Integer count = statusCounts.get(status);
+    int updated = (count == null ? 0 : count) + change;
+    if (updated == 0) {
+      statusCounts.remove(status);
+    } else {
+      statusCounts.put(status, updated);
+    }
+  }
+
+  private Order readOrder(long location, UUID key) {
+    try {
+      byte[] raw = cache.get(location);
+      if (raw == null) {
+        raw = readBlock(segments.get(segmentOf(location)), location & ((1L << OFFSET_BITS) - 1));
+        cache.put(location, raw);
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(raw);
+      int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        int length = buffer.getInt();
+        int start = buffer.position();
+        if (buffer.getLong(start + 1) == key.getMostSignificantBits()
+                && buffer.getLong(start + 9) == key.getLeastSignificantBits()) {
+          return OrderCodec.decode(buffer);
+        }
+        buffer.position(start + length);
+      }
+      throw new IllegalStateException("Cold order " + key + " is missing from its block");
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read cold order " + key, e);
+    }
+  }
+
+  private byte[] readBlock(Segment segment, long offset) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+    readFully(segment.channel, header, offset);
+    int rawLength = header.getInt(17);
+    ByteBuffer record = ByteBuffer.allocate(BLOCK_HEADER + header.getInt(21) + CHECKSUM);
+    readFully(segment.channel, record, offset);
+    int end = record.capacity() - CHECKSUM;
+    if (record.getInt(end) != checksum(record.array(), 0, end)) {
+      throw new IOException("Corrupt cold block at " + offset + " of " + segment.file);
+    }
+    return inflate(record.array(), BLOCK_HEADER, end - BLOCK_HEADER, rawLength);
+  }
+
+  private void load() throws IOException {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Matcher matcher = SEGMENT_FILE.matcher(file.getName());
+        if (matcher.matches()) {
+          int id = Integer.parseInt(matcher.group(1));
+          segments.put(id, new Segment(id, file));
+        }
+      }
+    }
+    for (Segment segment : segments.values()) {
+      loadRecords(segment);
+    }
+    //Only now is it known which copy of each order is live.
+    for (Segment segment : segments.values()) {
+      for (Block block : segment.blocks) {
+        for (Order order : decodeBlock(segment, block.offset, block.rawLength)) {
+          if (index.get(order.getKey()) == location(segment.id, block.offset)) {
+            segment.live++;
+            count(AbstractOrdersRepository.statusName(order.getStatus()), 1);
+          }
+        }
+      }
+    }
+    current = segments.isEmpty() ? null : segments.lastEntry().getValue();
+    if (!segments.isEmpty()) {
+      LOG.info("Loaded {} cold orders from {} segments in {}", index.size(), segments.size(), directory);
+    }
+  }
+
+  private void loadRecords(Segment segment) throws IOException {
+    long size = segment.channel.size();
+    long position = 0;
+    while (position < size) {
+      ByteBuffer type = ByteBuffer.allocate(1);
+      readFully(segment.channel, type, position);
+      long length = type.get(0) == BLOCK ? recordLength(segment, position, size)
+              : type.get(0) == TOMBSTONE ? TOMBSTONE_SIZE : -1;
+      if (length < 0 || position + length > size) {
+        break;
+      }
+      ByteBuffer record = ByteBuffer.allocate((int) length);
+      readFully(segment.channel, record, position);
+      int end = (int) length - CHECKSUM;
+      if (record.getInt(end) != checksum(record.array(), 0, end)) {
+        break;
+      }
+      if (type.get(0) == BLOCK) {
+        List<Order> orders = decodeBlock(segment, position, record.getInt(17));
+        Block block = new Block(segment, position, record.getLong(1), record.getLong(9), record.getInt(17), record.getInt(21),
+                orders);
+        segment.blocks.add(block);
+        byEarliest.add(block);
+        for (Order order : orders) {
+          index.put(order.getKey(), location(segment.id, position));
+        }
+      } else {
+        index.remove(new UUID(record.getLong(1), record.getLong(9)));
+      }
+      position += length;
+    }
+    if (position < size) {
+      LOG.warn("Cutting off {} bytes torn from the end of cold segment {}", size - position, segment.file);
+      segment.channel.truncate(position);
+      segment.channel.force(false);
+    }
+    segment.size = position;
+  }
+
+  private static long recordLength(Segment segment, long position, long size) throws IOException {
+    if (position + BLOCK_HEADER > size) {
+      return -1;
+    }
+    ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+    readFully(segment.channel, header, position);
+    int compressed = header.getInt(21);
+    return compressed < 0 ? -1 : BLOCK_HEADER + (long) compressed + CHECKSUM;
+  }
+
+  /*
+   * The orders of the block still indexed at it. Must hold the lock.
+   */
+  private List<Order> liveOrders(Block block) throws IOException {
+    blocksScanned.incrementAndGet();
+    long location = location(block.segment.id, block.offset);
+    List<Order> live = new ArrayList<Order>(ORDERS_PER_BLOCK);
+    for (Order order : decodeBlock(block.segment, block.offset, block.rawLength)) {
+      if (index.get(order.getKey()) == location) {
+        live.add(order);
+      }
+    }
+    return live;
+  }
+
+  private List<Order> decodeBlock(Segment segment, long offset, int rawLength) throws IOException {
+    ByteBuffer raw = ByteBuffer.wrap(readBlock(segment, offset));
+    int count = raw.getInt();
+    List<Order> orders = new ArrayList<Order>(count);
+    for (int i = 0; i < count; i++) {
+      int length = raw.getInt();
+      int start = raw.position();
+      orders.add(OrderCodec.decode(raw));
+      raw.position(start + length);
+    }
+    return orders;
+  }
+
+  private static byte[] deflate(byte[] raw) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(raw);
+      deflater.finish();
+      byte[] buffer = new byte[Math.max(64, raw.length / 2)];
+      int length = 0;
+      while (!deflater.finished()) {
+        if (length == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        length += deflater.deflate(buffer, length, buffer.length - length);
+      }
+      return Arrays.copyOf(buffer, length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] compressed, int offset, int length, int rawLength) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed, offset, length);
+      byte[] raw = new byte[rawLength];
+      int inflated = 0;
+      while (inflated < rawLength && !inflater.finished()) {
+        int count = inflater.inflate(raw, inflated, rawLength - inflated);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        inflated += count;
+      }
+      if (inflated != rawLength) {
+        throw new IOException("Cold block inflated to " + inflated + " bytes, not " + rawLength);
+      }
+      return raw;
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt cold block", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of a cold segment");
+      }
+    }
+  }
+
+  private static long location(int segment, long offset) {
+    return ((long) segment << OFFSET_BITS) | offset;
+  }
+
+  private static int segmentOf(long location) {
+    return (int) (location >>> OFFSET_BITS);
+  }
+
+  private static int checksum(byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private static final class Segment {
+    final int id;
+    final File file;
+    final FileChannel channel;
+    final List<Block> blocks = new ArrayList<Block>();
+    long size;
+    int live;
+
+    Segment(int id, File file) throws IOException {
+      this.id = id;
+      this.file = file;
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+    }
+  }
+
+  private static final class Block implements Comparable<Block> {
+    private static final String[] NONE = new String[0];
+
+    final Segment segment;
+    final long offset;
+    final long earliest;
+    final long latest;
+    final int rawLength;
+    final int compressedLength;
+    //Sorted, without nulls, for the summary.
+    final String[] statuses;
+    final String[] items;
+
+    Block(Segment segment, long offset, long earliest, long latest, int rawLength, int compressedLength,
+          List<Order> orders) {
+      this.segment = segment;
+      this.offset = offset;
+      this.earliest = earliest;
+      this.latest = latest;
+      this.rawLength = rawLength;
+      this.compressedLength = compressedLength;
+      Set<String> statuses = new TreeSet<String>();
+      Set<String> items = new TreeSet<String>();
+      for (Order order : orders) {
+        String status = AbstractOrdersRepository.statusName(order.getStatus());
+        if (status != null) {
+          statuses.add(status);
+        }
+        if (order.getOrderItems() != null) {
+          for (String item : order.getOrderItems().keySet()) {
+            if (item != null) {
+              items.add(item);
+            }
+          }
+        }
+      }
+      this.statuses = statuses.toArray(NONE);
+      this.items = items.toArray(NONE);
+    }
+
+    /*
+     * False only if no order of the block can match.
+     */
+    boolean mayContain(Collection<String> wanted, ItemMatch match) {
+      for (String item : wanted) {
+        boolean contained = item == null || Arrays.binarySearch(items, item) >= 0;
+        if (match == ItemMatch.ANY && contained) {
+          return true;
+        }
+        if (match == ItemMatch.ALL && !contained) {
+          return false;
+        }
+      }
+      return match == ItemMatch.ALL && !wanted.isEmpty();
+    }
+
+    @Override
+    public int compareTo(Block other) {
+      if (earliest != other.earliest) {
+        return earliest < other.earliest ? -1 : 1;
+      }
+      return Long.compare(location(segment.id, offset), location(other.segment.id, other.offset));
+    }
+  }
+}
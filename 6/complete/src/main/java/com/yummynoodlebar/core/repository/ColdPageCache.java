@@ -0,0 +1,48 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The most recently used blocks of cold orders, decompressed, so repeated lookups of orders that
+ * sit near each other in the cold tier read and inflate a block once.
+ */
+final class ColdPageCache {
+
+  private final Map<Long, byte[]> blocks;
+  private long hits;
+  private long misses;
+
+  ColdPageCache(final int capacity) {
+    this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  synchronized byte[] get(long location) {
+    byte[] block = blocks.get(location);
+    if (block == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return block;
+  }
+
+  synchronized void put(long location, byte[] block) {
+    blocks.put(location, block);
+  }
+
+  synchronized long getHits() {
+    return hits;
+  }
+
+  synchronized long getMisses() {
+    return misses;
+  }
+}
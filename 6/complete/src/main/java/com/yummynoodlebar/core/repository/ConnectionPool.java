@@ -0,0 +1,160 @@
+package com.yummynoodlebar.core.repository;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of JDBC connections to one database, each keeping the statements prepared on it.
+ * <p>
+ * At most the given number of connections are open at once; a caller wanting one while all are in
+ * use waits for one to be handed back. Connections are opened as they are first needed and kept open
+ * until the pool is closed, along with up to {@link #STATEMENT_CACHE_SIZE} prepared statements each,
+ * least recently used dropped first, so the same SQL is only parsed and planned once per connection.
+ */
+final class ConnectionPool {
+
+  static final int STATEMENT_CACHE_SIZE = 32;
+
+  private final String url;
+  private final Semaphore permits;
+  private final long timeoutMillis;
+  private final ConcurrentLinkedQueue<PooledConnection> idle = new ConcurrentLinkedQueue<PooledConnection>();
+  private final List<PooledConnection> all = new ArrayList<PooledConnection>();
+  private boolean closed;
+
+  ConnectionPool(String url, int size, long timeoutMillis) {
+    if (size < 1) {
+      throw new IllegalArgumentException("A connection pool needs at least one connection, not " + size);
+    }
+    this.url = url;
+    this.permits = new Semaphore(size, true);
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /*
+   * A connection no other caller has until it is released, in auto-commit mode.
+   */
+  PooledConnection acquire() throws SQLException {
+    try {
+      if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new SQLException("No database connection was free after " + timeoutMillis + "ms");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted waiting for a database connection", e);
+    }
+    try {
+      PooledConnection connection = idle.poll();
+      return connection == null ? open() : connection;
+    } catch (SQLException e) {
+      permits.release();
+      throw e;
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /*
+   * Hands the connection back, or closes it if the work done on it failed, as it may be left in any state.
+   */
+  void release(PooledConnection connection, boolean failed) {
+    try {
+      if (failed) {
+        discard(connection);
+      } else {
+        idle.add(connection);
+      }
+    } finally {
+      permits.release();
+    }
+  }
+
+  synchronized void close() throws SQLException {
+    closed = true;
+    SQLException failure = null;
+    for (PooledConnection connection : all) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        failure = e;
+      }
+    }
+    all.clear();
+    idle.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private synchronized PooledConnection open() throws SQLException {
+    if (closed) {
+      throw new SQLException("The connection pool is closed");
+    }
+    PooledConnection connection = new PooledConnection(DriverManager.getConnection(url));
+    all.add(connection);
+    return connection;
+  }
+
+  private synchronized void discard(PooledConnection connection) {
+    all.remove(connection);
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      //Already broken, it is being dropped for that.
+    }
+  }
+
+  static final class PooledConnection {
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements =
+            new LinkedHashMap<String, PreparedStatement>(STATEMENT_CACHE_SIZE * 2, 0.75f, true);
+
+    PooledConnection(Connection connection) {
+      this.connection = connection;
+    }
+
+    Connection connection() {
+      return connection;
+    }
+
+    /*
+     * The statement prepared for the SQL on this connection, prepared now if it isn't cached.
+     * Its parameters are left as the last user set them.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+      PreparedStatement statement = statements.get(sql);
+      if (statement == null) {
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+        if (statements.size() > STATEMENT_CACHE_SIZE) {
+          Map.Entry<String, PreparedStatement> eldest = statements.entrySet().iterator().next();
+          statements.remove(eldest.getKey());
+          eldest.getValue().close();
+        }
+      }
+      return statement;
+    }
+
+    void close() throws SQLException {
+      try {
+        for (PreparedStatement statement : statements.values()) {
+          statement.close();
+        }
+        statements.clear();
+      } finally {
+        connection.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.yummynoodlebar.core.repository;
+
+import java.io.IOException;
+
+/**
+ * A repository that keeps its orders in files of its own, and still has them when reopened.
+ * <p>
+ * An {@link OrdersJournalingRepository} over one does not snapshot it: it flushes it, after which the
+ * log records it has applied are no longer needed.
+ */
+public interface DurableOrdersStore {
+
+  /*
+   * Writes every change made so far through to disk.
+   */
+  void flush() throws IOException;
+}
@@ -0,0 +1,22 @@
+package com.yummynoodlebar.core.repository;
+
+/**
+ * When the write-ahead log forces appended records to disk.
+ */
+public enum FsyncPolicy {
+
+  /*
+   * Every write is on disk before it is acknowledged; concurrent writers share one fsync.
+   */
+  EVERY_WRITE,
+
+  /*
+   * Writes are acknowledged once handed to the OS and forced to disk every few milliseconds.
+   */
+  INTERVAL,
+
+  /*
+   * Writes are acknowledged once handed to the OS, which decides when they reach the disk.
+   */
+  OS
+}
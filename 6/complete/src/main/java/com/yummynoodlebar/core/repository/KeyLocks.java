@@ -0,0 +1,67 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * A fixed number of locks that order keys are spread over, so writes to the same key can be
+ * serialised without a lock per key, and writes to most other keys don't wait for them.
+ * <p>
+ * The locks of several keys are taken in a fixed order, so holders of several can't deadlock with
+ * each other or with holders of one.
+ */
+public final class KeyLocks {
+
+  public static final int DEFAULT_STRIPES = 64;
+
+  private final Object[] locks;
+
+  public KeyLocks() {
+    this(DEFAULT_STRIPES);
+  }
+
+  /**
+   * @param stripes number of locks, a power of two
+   */
+  public KeyLocks(int stripes) {
+    if (Integer.bitCount(stripes) != 1) {
+      throw new IllegalArgumentException("The number of lock stripes must be a power of two, not " + stripes);
+    }
+    locks = new Object[stripes];
+    for (int i = 0; i < stripes; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  public Object lockFor(UUID key) {
+    return locks[stripeOf(key)];
+  }
+
+  /*
+   * Runs the action holding the locks of all the keys.
+   */
+  public void withLocksOf(Collection<UUID> keys, Runnable action) {
+    boolean[] held = new boolean[locks.length];
+    for (UUID key : keys) {
+      held[stripeOf(key)] = true;
+    }
+    lockFrom(held, 0, action);
+  }
+
+  private void lockFrom(boolean[] held, int stripe, Runnable action) {
+    while (stripe < locks.length && !held[stripe]) {
+      stripe++;
+    }
+    if (stripe == locks.length) {
+      action.run();
+      return;
+    }
+    synchronized (locks[stripe]) {
+      lockFrom(held, stripe + 1, action);
+    }
+  }
+
+  private int stripeOf(UUID key) {
+    return key.hashCode() & (locks.length - 1);
+  }
+}
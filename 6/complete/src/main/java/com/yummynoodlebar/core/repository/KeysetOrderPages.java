@@ -0,0 +1,59 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Every order of a repository in submission order, fetched a page at a time through keyset pagination,
+ * each page starting after the last order of the one before. Each iteration starts from the beginning.
+ * For stores that find a page without scanning every order.
+ */
+public class KeysetOrderPages implements Iterable<Order> {
+
+  private final OrdersRepository orders;
+  private final int pageSize;
+
+  public KeysetOrderPages(OrdersRepository orders, int pageSize) {
+    this.orders = orders;
+    this.pageSize = Math.max(1, pageSize);
+  }
+
+  @Override
+  public Iterator<Order> iterator() {
+    return new Iterator<Order>() {
+
+      private List<Order> page = orders.findPage(null, pageSize);
+      private int position;
+
+      @Override
+      public boolean hasNext() {
+        if (position < page.size()) {
+          return true;
+        }
+        if (page.size() < pageSize) {
+          return false;
+        }
+        page = orders.findPage(OrderCursor.of(page.get(page.size() - 1)), pageSize);
+        position = 0;
+        return !page.isEmpty();
+      }
+
+      @Override
+      public Order next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return page.get(position++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
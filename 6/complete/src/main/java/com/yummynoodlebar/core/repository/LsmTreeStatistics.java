@@ -0,0 +1,94 @@
+package com.yummynoodlebar.core.repository;
+
+/**
+ * Point in time view of the flush and compaction activity of an {@link OrdersLsmRepository}.
+ */
+public class LsmTreeStatistics {
+
+  private final long userBytes;
+  private final long flushedBytes;
+  private final long compactedBytes;
+  private final long flushes;
+  private final long compactions;
+  private final int runs;
+  private final long runBytes;
+  private final long writeStalls;
+  private final long cacheHits;
+  private final long cacheMisses;
+
+  public LsmTreeStatistics(long userBytes, long flushedBytes, long compactedBytes, long flushes, long compactions,
+                           int runs, long runBytes, long writeStalls, long cacheHits, long cacheMisses) {
+    this.userBytes = userBytes;
+    this.flushedBytes = flushedBytes;
+    this.compactedBytes = compactedBytes;
+    this.flushes = flushes;
+    this.compactions = compactions;
+    this.runs = runs;
+    this.runBytes = runBytes;
+    this.writeStalls = writeStalls;
+    this.cacheHits = cacheHits;
+    this.cacheMisses = cacheMisses;
+  }
+
+  /*
+   * Bytes of orders and tombstones written by callers, in the form runs hold them.
+   */
+  public long getUserBytes() {
+    return userBytes;
+  }
+
+  public long getFlushedBytes() {
+    return flushedBytes;
+  }
+
+  public long getCompactedBytes() {
+    return compactedBytes;
+  }
+
+  public long getFlushes() {
+    return flushes;
+  }
+
+  public long getCompactions() {
+    return compactions;
+  }
+
+  public int getRuns() {
+    return runs;
+  }
+
+  public long getRunBytes() {
+    return runBytes;
+  }
+
+  /*
+   * Times a writer waited for memtables to be flushed.
+   */
+  public long getWriteStalls() {
+    return writeStalls;
+  }
+
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  public long getCacheMisses() {
+    return cacheMisses;
+  }
+
+  /*
+   * Bytes written to runs, by flushes and compactions, for each byte written by callers. The log
+   * adds about one more.
+   */
+  public double getWriteAmplification() {
+    return userBytes == 0 ? 0 : (double) (flushedBytes + compactedBytes) / userBytes;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d user bytes, %d flushed in %d flushes, %d compacted in %d compactions, " +
+            "write amplification %.2f, %d runs of %d bytes, %d write stalls, block cache %d hits %d misses",
+            userBytes, flushedBytes, flushes, compactedBytes, compactions, getWriteAmplification(),
+            runs, runBytes, writeStalls, cacheHits, cacheMisses);
+  }
+}
@@ -0,0 +1,448 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.Arrays;
+
+/**
+ * Compressed bitmap of non negative ints, laid out like a roaring bitmap.
+ * <p>
+ * Values are split on their high 16 bits into containers. A container holding at most
+ * {@link #ARRAY_LIMIT} values is a sorted char array, a fuller one is a plain 65536 bit bitmap, so
+ * sparse and dense sets both stay small and intersections and unions work a container at a time.
+ * Not thread safe.
+ */
+final class OrderBitmap {
+
+  static final int ARRAY_LIMIT = 4096;
+
+  private char[] keys = new char[4];
+  private Container[] containers = new Container[4];
+  private int size;
+
+  public void add(int value) {
+    char key = highBits(value);
+    int index = indexOf(key);
+    if (index >= 0) {
+      containers[index] = containers[index].add(lowBits(value));
+    } else {
+      insert(-index - 1, key, new ArrayContainer().add(lowBits(value)));
+    }
+  }
+
+  public void remove(int value) {
+    int index = indexOf(highBits(value));
+    if (index < 0) {
+      return;
+    }
+    Container container = containers[index].remove(lowBits(value));
+    if (container.cardinality() == 0) {
+      System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+      System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+      containers[--size] = null;
+    } else {
+      containers[index] = container;
+    }
+  }
+
+  public boolean contains(int value) {
+    int index = indexOf(highBits(value));
+    return index >= 0 && containers[index].contains(lowBits(value));
+  }
+
+  public int cardinality() {
+    int cardinality = 0;
+    for (int i = 0; i < size; i++) {
+      cardinality += containers[i].cardinality();
+    }
+    return cardinality;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int[] toArray() {
+    int[] values = new int[cardinality()];
+    int position = 0;
+    for (int i = 0; i < size; i++) {
+      position = containers[i].copyTo(values, position, keys[i] << 16);
+    }
+    return values;
+  }
+
+  /*
+   * Approximate heap footprint of the containers, in bytes.
+   */
+  public long sizeInBytes() {
+    long bytes = keys.length * 2L + containers.length * 4L;
+    for (int i = 0; i < size; i++) {
+      bytes += containers[i].sizeInBytes();
+    }
+    return bytes;
+  }
+
+  public OrderBitmap copy() {
+    OrderBitmap copy = new OrderBitmap();
+    copy.keys = Arrays.copyOf(keys, Math.max(size, 1));
+    copy.containers = new Container[copy.keys.length];
+    for (int i = 0; i < size; i++) {
+      copy.containers[i] = containers[i].copy();
+    }
+    copy.size = size;
+    return copy;
+  }
+
+  public static OrderBitmap and(OrderBitmap first, OrderBitmap second) {
+    OrderBitmap result = new OrderBitmap();
+    int i = 0;
+    int j = 0;
+    while (i < first.size && j < second.size) {
+      if (first.keys[i] < second.keys[j]) {
+        i++;
+      } else if (first.keys[i] > second.keys[j]) {
+        j++;
+      } else {
+        Container container = first.containers[i].and(second.containers[j]);
+        if (container.cardinality() > 0) {
+          result.append(first.keys[i], container);
+        }
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  public static OrderBitmap or(OrderBitmap first, OrderBitmap second) {
+    OrderBitmap result = new OrderBitmap();
+    int i = 0;
+    int j = 0;
+    while (i < first.size || j < second.size) {
+      if (j == second.size || (i < first.size && first.keys[i] < second.keys[j])) {
+        result.append(first.keys[i], first.containers[i].copy());
+        i++;
+      } else if (i == first.size || first.keys[i] > second.keys[j]) {
+        result.append(second.keys[j], second.containers[j].copy());
+        j++;
+      } else {
+        result.append(first.keys[i], first.containers[i].or(second.containers[j]));
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  private int indexOf(char key) {
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  private void insert(int index, char key, Container container) {
+    ensureCapacity();
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(containers, index, containers, index + 1, size - index);
+    keys[index] = key;
+    containers[index] = container;
+    size++;
+  }
+
+  private void append(char key, Container container) {
+    ensureCapacity();
+    keys[size] = key;
+    containers[size] = container;
+    size++;
+  }
+
+  private void ensureCapacity() {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      containers = Arrays.copyOf(containers, size * 2);
+    }
+  }
+
+  private static char highBits(int value) {
+    return (char) (value >>> 16);
+  }
+
+  private static char lowBits(int value) {
+    return (char) value;
+  }
+
+  private abstract static class Container {
+
+    /*
+     * The mutators return the container now holding the values, which may be a different kind.
+     */
+    abstract Container add(char value);
+
+    abstract Container remove(char value);
+
+    abstract boolean contains(char value);
+
+    abstract int cardinality();
+
+    abstract Container and(Container other);
+
+    abstract Container or(Container other);
+
+    abstract int copyTo(int[] values, int position, int high);
+
+    abstract long sizeInBytes();
+
+    abstract Container copy();
+  }
+
+  private static final class ArrayContainer extends Container {
+
+    private char[] values;
+    private int cardinality;
+
+    ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    ArrayContainer(char[] values, int cardinality) {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+      int index = Arrays.binarySearch(values, 0, cardinality, value);
+      if (index >= 0) {
+        return this;
+      }
+      if (cardinality == ARRAY_LIMIT) {
+        return toBitmap().add(value);
+      }
+      index = -index - 1;
+      if (cardinality == values.length) {
+        values = Arrays.copyOf(values, Math.max(4, Math.min(cardinality * 2, ARRAY_LIMIT)));
+      }
+      System.arraycopy(values, index, values, index + 1, cardinality - index);
+      values[index] = value;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(char value) {
+      int index = Arrays.binarySearch(values, 0, cardinality, value);
+      if (index >= 0) {
+        System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+      char[] result = new char[Math.min(cardinality, other.cardinality())];
+      int count = 0;
+      if (other instanceof ArrayContainer) {
+        ArrayContainer array = (ArrayContainer) other;
+        int i = 0;
+        int j = 0;
+        while (i < cardinality && j < array.cardinality) {
+          if (values[i] < array.values[j]) {
+            i++;
+          } else if (values[i] > array.values[j]) {
+            j++;
+          } else {
+            result[count++] = values[i];
+            i++;
+            j++;
+          }
+        }
+      } else {
+        for (int i = 0; i < cardinality; i++) {
+          if (other.contains(values[i])) {
+            result[count++] = values[i];
+          }
+        }
+      }
+      return new ArrayContainer(result, count);
+    }
+
+    @Override
+    Container or(Container other) {
+      if (other instanceof BitmapContainer) {
+        return other.or(this);
+      }
+      ArrayContainer array = (ArrayContainer) other;
+      char[] result = new char[cardinality + array.cardinality];
+      int count = 0;
+      int i = 0;
+      int j = 0;
+      while (i < cardinality || j < array.cardinality) {
+        if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+          result[count++] = values[i++];
+        } else if (i == cardinality || values[i] > array.values[j]) {
+          result[count++] = array.values[j++];
+        } else {
+          result[count++] = values[i];
+          i++;
+          j++;
+        }
+      }
+      ArrayContainer union = new ArrayContainer(result, count);
+      return count > ARRAY_LIMIT ? union.toBitmap() : union;
+    }
+
+    @Override
+    int copyTo(int[] out, int position, int high) {
+      for (int i = 0; i < cardinality; i++) {
+        out[position++] = high | values[i];
+      }
+      return position;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 16 + values.length * 2L;
+    }
+
+    @Override
+    Container copy() {
+      return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+    }
+
+    private BitmapContainer toBitmap() {
+      BitmapContainer bitmap = new BitmapContainer();
+      for (int i = 0; i < cardinality; i++) {
+        bitmap.add(values[i]);
+      }
+      return bitmap;
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+
+    private final long[] words;
+    private int cardinality;
+
+    BitmapContainer() {
+      this(new long[1024], 0);
+    }
+
+    BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char value) {
+      long word = words[value >>> 6];
+      long bit = 1L << value;
+      if ((word & bit) == 0) {
+        words[value >>> 6] = word | bit;
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(char value) {
+      long word = words[value >>> 6];
+      long bit = 1L << value;
+      if ((word & bit) != 0) {
+        words[value >>> 6] = word & ~bit;
+        cardinality--;
+        if (cardinality <= ARRAY_LIMIT) {
+          return toArrayContainer();
+        }
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    Container and(Container other) {
+      if (other instanceof ArrayContainer) {
+        return other.and(this);
+      }
+      long[] otherWords = ((BitmapContainer) other).words;
+      long[] result = new long[words.length];
+      int count = 0;
+      for (int i = 0; i < words.length; i++) {
+        result[i] = words[i] & otherWords[i];
+        count += Long.bitCount(result[i]);
+      }
+      BitmapContainer intersection = new BitmapContainer(result, count);
+      return count <= ARRAY_LIMIT ? intersection.toArrayContainer() : intersection;
+    }
+
+    @Override
+    Container or(Container other) {
+      BitmapContainer union = (BitmapContainer) copy();
+      if (other instanceof ArrayContainer) {
+        ArrayContainer array = (ArrayContainer) other;
+        for (int i = 0; i < array.cardinality; i++) {
+          union.add(array.values[i]);
+        }
+        return union;
+      }
+      long[] otherWords = ((BitmapContainer) other).words;
+      int count = 0;
+      for (int i = 0; i < union.words.length; i++) {
+        union.words[i] |= otherWords[i];
+        count += Long.bitCount(union.words[i]);
+      }
+      union.cardinality = count;
+      return union;
+    }
+
+    @Override
+    int copyTo(int[] out, int position, int high) {
+      for (int i = 0; i < words.length; i++) {
+        long word = words[i];
+        while (word != 0) {
+          out[position++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+        }
+      }
+      return position;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return 16 + words.length * 8L;
+    }
+
+    @Override
+    Container copy() {
+      return new BitmapContainer(words.clone(), cardinality);
+    }
+
+    private ArrayContainer toArrayContainer() {
+      char[] values = new char[cardinality];
+      int count = 0;
+      for (int i = 0; i < words.length; i++) {
+        long word = words[i];
+        while (word != 0) {
+          values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values, count);
+    }
+  }
+}
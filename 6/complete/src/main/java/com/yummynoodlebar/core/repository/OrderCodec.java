@@ -0,0 +1,178 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Compact binary form of a core {@link Order}, used by the stores that keep orders outside the heap
+ * or on disk. Strings are length prefixed UTF-8, and absent values use reserved markers.
+ * <p>
+ * Format 2 added the order's version after its submission time. Orders written in format 1 are still
+ * read, as version 0.
+ */
+public final class OrderCodec {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte FORMAT_VERSION = 2;
+  private static final byte UNVERSIONED_FORMAT = 1;
+  private static final long NO_DATE = Long.MIN_VALUE;
+  private static final int NO_VALUE = -1;
+  private static final int NO_QUANTITY = Integer.MIN_VALUE;
+
+  private OrderCodec() {
+  }
+
+  public static byte[] encode(Order order) {
+    Map<String, Integer> items = order.getOrderItems();
+    List<OrderStatus> history = order.getStatusHistory();
+
+    List<byte[]> itemNames = new ArrayList<byte[]>();
+    List<byte[]> statusNames = new ArrayList<byte[]>();
+
+    int size = 1 + 16 + 8 + 8 + 4 + 4;
+    if (items != null) {
+      for (String name : items.keySet()) {
+        byte[] bytes = bytes(name);
+        itemNames.add(bytes);
+        size += 4 + length(bytes) + 4;
+      }
+    }
+    for (OrderStatus status : history) {
+      byte[] bytes = bytes(status.getStatus());
+      statusNames.add(bytes);
+      size += 8 + 4 + length(bytes);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.put(FORMAT_VERSION);
+    buffer.putLong(order.getKey().getMostSignificantBits());
+    buffer.putLong(order.getKey().getLeastSignificantBits());
+    putDate(buffer, order.getDateTimeOfSubmission());
+    buffer.putLong(order.getVersion());
+
+    if (items == null) {
+      buffer.putInt(NO_VALUE);
+    } else {
+      buffer.putInt(items.size());
+      int i = 0;
+      for (Integer quantity : items.values()) {
+        putBytes(buffer, itemNames.get(i++));
+        buffer.putInt(quantity == null ? NO_QUANTITY : quantity);
+      }
+    }
+
+    buffer.putInt(history.size());
+    for (int i = 0; i < history.size(); i++) {
+      putDate(buffer, history.get(i).getStatusDate());
+      putBytes(buffer, statusNames.get(i));
+    }
+
+    return buffer.array();
+  }
+
+  public static Order decode(byte[] bytes) {
+    return decode(ByteBuffer.wrap(bytes));
+  }
+
+  /*
+   * Reads one order starting at the buffer's position, leaving the position just after it.
+   */
+  public static Order decode(ByteBuffer buffer) {
+    byte format = buffer.get();
+    if (format != FORMAT_VERSION && format != UNVERSIONED_FORMAT) {
+      throw new IllegalArgumentException("Unsupported order format version " + format);
+    }
+    UUID key = new UUID(buffer.getLong(), buffer.getLong());
+    Order order = new Order(key, getDate(buffer));
+    if (format == FORMAT_VERSION) {
+      order.setVersion(buffer.getLong());
+    }
+
+    int itemCount = buffer.getInt();
+    if (itemCount != NO_VALUE) {
+      Map<String, Integer> items = new LinkedHashMap<String, Integer>(itemCount * 2);
+      for (int i = 0; i < itemCount; i++) {
+        String name = getString(buffer);
+        int quantity = buffer.getInt();
+        items.put(name, quantity == NO_QUANTITY ? null : quantity);
+      }
+      order.setOrderItems(items);
+    }
+
+    int statusCount = buffer.getInt();
+    for (int i = 0; i < statusCount; i++) {
+      Date date = getDate(buffer);
+      order.addStatus(new OrderStatus(date, getString(buffer)));
+    }
+
+    return order;
+  }
+
+  /*
+   * Concatenates the encoded orders, so a batch of orders travels as one message.
+   */
+  public static byte[] encodeAll(Collection<Order> orders) {
+    List<byte[]> encoded = new ArrayList<byte[]>(orders.size());
+    int size = 0;
+    for (Order order : orders) {
+      byte[] bytes = encode(order);
+      encoded.add(bytes);
+      size += bytes.length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (byte[] bytes : encoded) {
+      buffer.put(bytes);
+    }
+    return buffer.array();
+  }
+
+  public static List<Order> decodeAll(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    List<Order> orders = new ArrayList<Order>();
+    while (buffer.hasRemaining()) {
+      orders.add(decode(buffer));
+    }
+    return orders;
+  }
+
+  private static byte[] bytes(String value) {
+    return value == null ? null : value.getBytes(UTF_8);
+  }
+
+  private static int length(byte[] bytes) {
+    return bytes == null ? 0 : bytes.length;
+  }
+
+  private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+    if (bytes == null) {
+      buffer.putInt(NO_VALUE);
+    } else {
+      buffer.putInt(bytes.length);
+      buffer.put(bytes);
+    }
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length == NO_VALUE) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static void putDate(ByteBuffer buffer, Date date) {
+    buffer.putLong(date == null ? NO_DATE : date.getTime());
+  }
+
+  private static Date getDate(ByteBuffer buffer) {
+    long time = buffer.getLong();
+    return time == NO_DATE ? null : new Date(time);
+  }
+}
@@ -0,0 +1,12 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+
+/**
+ * Decides whether an order is removed, for {@link OrdersRepository#removeIf}. Like an
+ * {@link OrderUpdate}, it may be asked more than once, and must not change the order.
+ */
+public interface OrderCondition {
+
+  boolean test(Order order);
+}
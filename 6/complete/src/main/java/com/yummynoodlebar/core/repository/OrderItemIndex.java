@@ -0,0 +1,159 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index from menu item name to the orders containing that item.
+ * <p>
+ * Every indexed order is given a dense int ordinal, reused after the order is removed, and each item
+ * maps to an {@link OrderBitmap} of ordinals. Item filters then run as bitmap intersections and
+ * unions, touching only the orders that actually contain the items.
+ */
+class OrderItemIndex {
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final Map<String, OrderBitmap> byItem = new HashMap<String, OrderBitmap>();
+  private UUID[] keys = new UUID[1024];
+  private int[] freeOrdinals = new int[16];
+  private int freeCount;
+  private int nextOrdinal;
+
+  public int add(UUID key, String[] items) {
+    lock.writeLock().lock();
+    try {
+      int ordinal = allocate();
+      keys[ordinal] = key;
+      for (String item : items) {
+        bitmapFor(item).add(ordinal);
+      }
+      return ordinal;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void replace(int ordinal, String[] previousItems, String[] items) {
+    lock.writeLock().lock();
+    try {
+      unindex(ordinal, previousItems);
+      for (String item : items) {
+        bitmapFor(item).add(ordinal);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(int ordinal, String[] items) {
+    lock.writeLock().lock();
+    try {
+      unindex(ordinal, items);
+      keys[ordinal] = null;
+      if (freeCount == freeOrdinals.length) {
+        freeOrdinals = Arrays.copyOf(freeOrdinals, freeCount * 2);
+      }
+      freeOrdinals[freeCount++] = ordinal;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /*
+   * Keys of the orders containing all, or any, of the items, in no particular order.
+   */
+  public List<UUID> find(Collection<String> items, ItemMatch match) {
+    lock.readLock().lock();
+    try {
+      OrderBitmap matching = null;
+      for (String item : items) {
+        OrderBitmap bitmap = byItem.get(item);
+        if (bitmap == null) {
+          if (match == ItemMatch.ALL) {
+            return Collections.emptyList();
+          }
+          continue;
+        }
+        if (matching == null) {
+          matching = bitmap;
+        } else if (match == ItemMatch.ALL) {
+          matching = OrderBitmap.and(matching, bitmap);
+        } else {
+          matching = OrderBitmap.or(matching, bitmap);
+        }
+      }
+      if (matching == null) {
+        return Collections.emptyList();
+      }
+      int[] ordinals = matching.toArray();
+      List<UUID> found = new ArrayList<UUID>(ordinals.length);
+      for (int ordinal : ordinals) {
+        found.add(keys[ordinal]);
+      }
+      return found;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int countContaining(String item) {
+    lock.readLock().lock();
+    try {
+      OrderBitmap bitmap = byItem.get(item);
+      return bitmap == null ? 0 : bitmap.cardinality();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /*
+   * Approximate heap footprint of the item bitmaps, in bytes.
+   */
+  public long sizeInBytes() {
+    lock.readLock().lock();
+    try {
+      long bytes = 0;
+      for (OrderBitmap bitmap : byItem.values()) {
+        bytes += bitmap.sizeInBytes();
+      }
+      return bytes;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void unindex(int ordinal, String[] items) {
+    for (String item : items) {
+      OrderBitmap bitmap = byItem.get(item);
+      if (bitmap != null) {
+        bitmap.remove(ordinal);
+        if (bitmap.isEmpty()) {
+          byItem.remove(item);
+        }
+      }
+    }
+  }
+
+  private OrderBitmap bitmapFor(String item) {
+    OrderBitmap bitmap = byItem.get(item);
+    if (bitmap == null) {
+      bitmap = new OrderBitmap();
+      byItem.put(item, bitmap);
+    }
+    return bitmap;
+  }
+
+  private int allocate() {
+    if (freeCount > 0) {
+      return freeOrdinals[--freeCount];
+    }
+    if (nextOrdinal == keys.length) {
+      keys = Arrays.copyOf(keys, keys.length * 2);
+    }
+    return nextOrdinal++;
+  }
+}
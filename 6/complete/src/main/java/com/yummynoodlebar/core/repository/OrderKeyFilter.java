@@ -0,0 +1,108 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the key of every order saved, in a {@link ScalableBloomFilter}, so that looking up a key
+ * that was never saved can be answered without going to the repository. Deleted keys stay in the
+ * filter, and show up as false positives, until it is rebuilt from the keys still stored.
+ * <p>
+ * A rebuild runs alongside saves without blocking them: a key saved meanwhile is added to the filter
+ * being built as well as the one in use, both before and after it is stored, so whichever side of the
+ * scan of stored keys the save falls it is never missed.
+ */
+public class OrderKeyFilter {
+
+  public static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+  public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+  //Rebuild once this fraction of the keys in the filter have been deleted.
+  static final double REBUILD_DELETED_FRACTION = 0.25;
+
+  private final int initialCapacity;
+  private final double falsePositiveRate;
+
+  private volatile ScalableBloomFilter current;
+  private volatile ScalableBloomFilter next;
+
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong definiteMisses = new AtomicLong();
+  private final AtomicLong falsePositives = new AtomicLong();
+  private final AtomicLong deletes = new AtomicLong();
+  private final AtomicLong rebuilds = new AtomicLong();
+
+  public OrderKeyFilter() {
+    this(DEFAULT_INITIAL_CAPACITY, DEFAULT_FALSE_POSITIVE_RATE);
+  }
+
+  public OrderKeyFilter(int initialCapacity, double falsePositiveRate) {
+    this.initialCapacity = initialCapacity;
+    this.falsePositiveRate = falsePositiveRate;
+    this.current = new ScalableBloomFilter(initialCapacity, falsePositiveRate);
+  }
+
+  /*
+   * False only if the key was never added.
+   */
+  public boolean mightContain(UUID key) {
+    lookups.incrementAndGet();
+    if (current.mightContain(key)) {
+      return true;
+    }
+    definiteMisses.incrementAndGet();
+    return false;
+  }
+
+  /*
+   * Call both before an order with the key is stored, and after.
+   */
+  void add(UUID key) {
+    //Read in this order, a rebuild finishing in between moves next to current.
+    ScalableBloomFilter building = next;
+    ScalableBloomFilter using = current;
+    using.add(key);
+    if (building != null && building != using) {
+      building.add(key);
+    }
+  }
+
+  void falsePositive() {
+    falsePositives.incrementAndGet();
+  }
+
+  void deleted(int count) {
+    deletes.addAndGet(count);
+  }
+
+  boolean needsRebuild() {
+    return deletes.get() > current.size() * REBUILD_DELETED_FRACTION;
+  }
+
+  /*
+   * Replaces the filter with one holding only the keys of the orders stored, dropping deleted keys.
+   * The keys are listed by the store, without reading the orders.
+   * Orders may be saved while it runs, but only one rebuild may run at a time.
+   */
+  void rebuild(OrdersRepository stored) {
+    long deletesBefore = deletes.get();
+    int expectedKeys = (int) Math.max(0, current.size() - deletesBefore);
+    ScalableBloomFilter building = new ScalableBloomFilter(
+            Math.max(initialCapacity, expectedKeys + expectedKeys / 2), falsePositiveRate);
+    //Saves from here on add to it, so those the scan misses aren't lost.
+    next = building;
+    for (UUID key : stored.keys()) {
+      building.add(key);
+    }
+    current = building;
+    next = null;
+    deletes.addAndGet(-deletesBefore);
+    rebuilds.incrementAndGet();
+  }
+
+  public OrderKeyFilterStatistics getStatistics() {
+    ScalableBloomFilter filter = current;
+    return new OrderKeyFilterStatistics(filter.size(), filter.getStageCount(), filter.getMemoryBytes(),
+            falsePositiveRate, filter.getFalsePositiveProbability(), lookups.get(), definiteMisses.get(),
+            falsePositives.get(), deletes.get(), rebuilds.get());
+  }
+}
@@ -0,0 +1,95 @@
+package com.yummynoodlebar.core.repository;
+
+/**
+ * Point in time view of the size and accuracy of an {@link OrderKeyFilter}.
+ */
+public class OrderKeyFilterStatistics {
+
+  private final int keys;
+  private final int stages;
+  private final long memoryBytes;
+  private final double targetFalsePositiveRate;
+  private final double expectedFalsePositiveRate;
+  private final long lookups;
+  private final long definiteMisses;
+  private final long falsePositives;
+  private final long deletesSinceRebuild;
+  private final long rebuilds;
+
+  public OrderKeyFilterStatistics(int keys, int stages, long memoryBytes, double targetFalsePositiveRate,
+                                  double expectedFalsePositiveRate, long lookups, long definiteMisses,
+                                  long falsePositives, long deletesSinceRebuild, long rebuilds) {
+    this.keys = keys;
+    this.stages = stages;
+    this.memoryBytes = memoryBytes;
+    this.targetFalsePositiveRate = targetFalsePositiveRate;
+    this.expectedFalsePositiveRate = expectedFalsePositiveRate;
+    this.lookups = lookups;
+    this.definiteMisses = definiteMisses;
+    this.falsePositives = falsePositives;
+    this.deletesSinceRebuild = deletesSinceRebuild;
+    this.rebuilds = rebuilds;
+  }
+
+  /*
+   * Keys added since the last rebuild, deleted ones included.
+   */
+  public int getKeys() {
+    return keys;
+  }
+
+  public int getStages() {
+    return stages;
+  }
+
+  public long getMemoryBytes() {
+    return memoryBytes;
+  }
+
+  public double getTargetFalsePositiveRate() {
+    return targetFalsePositiveRate;
+  }
+
+  /*
+   * Estimated from how many bits of the filter are set.
+   */
+  public double getExpectedFalsePositiveRate() {
+    return expectedFalsePositiveRate;
+  }
+
+  /*
+   * Share of lookups for keys not stored that the filter let through, deleted keys included.
+   */
+  public double getObservedFalsePositiveRate() {
+    long misses = definiteMisses + falsePositives;
+    return misses == 0 ? 0 : (double) falsePositives / misses;
+  }
+
+  public long getLookups() {
+    return lookups;
+  }
+
+  public long getDefiniteMisses() {
+    return definiteMisses;
+  }
+
+  public long getFalsePositives() {
+    return falsePositives;
+  }
+
+  public long getDeletesSinceRebuild() {
+    return deletesSinceRebuild;
+  }
+
+  public long getRebuilds() {
+    return rebuilds;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d keys in %d stages (%d bytes), false positive rate %.4f expected %.4f observed, " +
+            "%d of %d lookups answered without the repository, %d rebuilds",
+            keys, stages, memoryBytes, expectedFalsePositiveRate, getObservedFalsePositiveRate(),
+            definiteMisses, lookups, rebuilds);
+  }
+}
@@ -0,0 +1,83 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Listings of order keys for {@link OrdersRepository#keys}, made lazily from other listings, so nothing
+ * is read before it is iterated.
+ */
+public final class OrderKeys {
+
+  private OrderKeys() {
+  }
+
+  //TODOCUMENT The keys of the orders, read as they are iterated.
+  public static Iterable<UUID> of(final Iterable<Order> orders) {
+    return new Iterable<UUID>() {
+      @Override
+      public Iterator<UUID> iterator() {
+        final Iterator<Order> each = orders.iterator();
+        return new Iterator<UUID>() {
+          @Override
+          public boolean hasNext() {
+            return each.hasNext();
+          }
+
+          @Override
+          public UUID next() {
+            return each.next().getKey();
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  //TODOCUMENT The keys of each listing in turn, each only started once those before it have run out.
+  public static Iterable<UUID> concat(final List<? extends Iterable<UUID>> listings) {
+    return new Iterable<UUID>() {
+      @Override
+      public Iterator<UUID> iterator() {
+        final Iterator<? extends Iterable<UUID>> remaining = listings.iterator();
+        return new Iterator<UUID>() {
+
+          private Iterator<UUID> current = Collections.<UUID>emptyList().iterator();
+
+          @Override
+          public boolean hasNext() {
+            while (!current.hasNext()) {
+              if (!remaining.hasNext()) {
+                return false;
+              }
+              current = remaining.next().iterator();
+            }
+            return true;
+          }
+
+          @Override
+          public UUID next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            return current.next();
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+}
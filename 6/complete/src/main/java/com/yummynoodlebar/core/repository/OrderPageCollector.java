@@ -0,0 +1,55 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+
+import java.util.*;
+
+/**
+ * Picks the first orders after a cursor, in submission order, from orders offered in any order.
+ * Only the current best candidates are kept, so memory is bounded by the page size whatever the
+ * number of orders scanned.
+ */
+public class OrderPageCollector {
+
+  private final OrderCursor after;
+  private final int limit;
+  private final PriorityQueue<Order> candidates;
+
+  public OrderPageCollector(OrderCursor after, int limit) {
+    this.after = after;
+    this.limit = limit;
+    this.candidates = new PriorityQueue<Order>(Math.max(1, limit), Collections.reverseOrder(OrderCursor.SUBMISSION_ORDER));
+  }
+
+  public void offer(Order order) {
+    if (limit <= 0 || (after != null && !after.isBefore(order))) {
+      return;
+    }
+    if (candidates.size() < limit) {
+      candidates.add(order);
+    } else if (OrderCursor.compareOrders(order, candidates.peek()) < 0) {
+      candidates.poll();
+      candidates.add(order);
+    }
+  }
+
+  public void offerAll(Iterable<Order> orders) {
+    for (Order order : orders) {
+      offer(order);
+    }
+  }
+
+  //TODOCUMENT True once the page is full of orders submitted before the given time, so no order submitted
+  //at or after it can get in.
+  public boolean excludesFrom(long submissionTime) {
+    return limit <= 0 || (candidates.size() == limit
+            && OrderCursor.submissionTime(candidates.peek().getDateTimeOfSubmission()) < submissionTime);
+  }
+
+  public List<Order> toList() {
+    List<Order> page = new ArrayList<Order>(candidates);
+    Collections.sort(page, OrderCursor.SUBMISSION_ORDER);
+    return Collections.unmodifiableList(page);
+  }
+}
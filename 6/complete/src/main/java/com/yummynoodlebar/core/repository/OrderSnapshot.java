@@ -0,0 +1,98 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The orders of an {@link OrdersVersioningRepository} as of one version, read only. Every query sees
+ * the same orders, whatever has been written since the snapshot was taken. Close it when done with it,
+ * so the orders replaced since can be dropped; one that isn't closed is released once it is garbage
+ * collected.
+ */
+public final class OrderSnapshot extends AbstractOrdersRepository implements Closeable {
+
+  private final OrdersVersioningRepository repository;
+  private final long version;
+  OrdersVersioningRepository.SnapshotReference reference;
+
+  OrderSnapshot(OrdersVersioningRepository repository, long version) {
+    this.repository = repository;
+    this.version = version;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  @Override
+  public Order save(Order order) {
+    throw new UnsupportedOperationException("Snapshots are read only");
+  }
+
+  @Override
+  public void delete(UUID key) {
+    throw new UnsupportedOperationException("Snapshots are read only");
+  }
+
+  @Override
+  public List<Order> saveAll(Collection<Order> orders) {
+    throw new UnsupportedOperationException("Snapshots are read only");
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> keys) {
+    throw new UnsupportedOperationException("Snapshots are read only");
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    throw new UnsupportedOperationException("Snapshots are read only");
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    return repository.findById(key, version);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return repository.findAll(version);
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    return repository.findPage(after, limit, version);
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    return repository.findBySubmissionTime(from, to, version);
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    return repository.findByItems(items, match, version);
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    return repository.findByStatus(status, version);
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    return findByStatus(status).size();
+  }
+
+  @Override
+  public void close() {
+    repository.release(reference);
+  }
+}
@@ -0,0 +1,11 @@
+package com.yummynoodlebar.core.repository;
+
+/**
+ * Hands out snapshots of a repository's orders, for reads that must see the same orders throughout,
+ * such as streaming them all.
+ */
+public interface OrderSnapshots {
+
+  //TODOCUMENT The orders as they are now, unchanged by later writes. Close it when done with it.
+  OrderSnapshot snapshot();
+}
@@ -0,0 +1,84 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index from the current status of each order to the orders in that status, with a running count
+ * per status so counting costs O(1).
+ * <p>
+ * Updates of one key must not run concurrently with each other; updates of different keys may.
+ */
+class OrderStatusIndex {
+
+  private final ConcurrentHashMap<UUID, String> statusOf = new ConcurrentHashMap<UUID, String>();
+  private final ConcurrentHashMap<String, Set<UUID>> byStatus = new ConcurrentHashMap<String, Set<UUID>>();
+  private final ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+
+  /*
+   * Records the current status of an order, null when it has none.
+   */
+  public void update(UUID key, String status) {
+    String previous = status == null ? statusOf.remove(key) : statusOf.put(key, status);
+    if (status == null ? previous == null : status.equals(previous)) {
+      return;
+    }
+    if (previous != null) {
+      byStatus.get(previous).remove(key);
+      counts.get(previous).decrementAndGet();
+    }
+    if (status != null) {
+      keysWith(status).add(key);
+      countOf(status).incrementAndGet();
+    }
+  }
+
+  public void remove(UUID key) {
+    update(key, null);
+  }
+
+  public Set<UUID> find(String status) {
+    Set<UUID> keys = byStatus.get(status);
+    return keys == null ? Collections.<UUID>emptySet() : keys;
+  }
+
+  public int count(String status) {
+    AtomicInteger count = counts.get(status);
+    return count == null ? 0 : count.get();
+  }
+
+  public Map<String, Integer> counts() {
+    Map<String, Integer> all = new TreeMap<String, Integer>();
+    for (Map.Entry<String, AtomicInteger> count : counts.entrySet()) {
+      if (count.getValue().get() > 0) {
+        all.put(count.getKey(), count.getValue().get());
+      }
+    }
+    return all;
+  }
+
+  private Set<UUID> keysWith(String status) {
+    Set<UUID> keys = byStatus.get(status);
+    if (keys == null) {
+      Set<UUID> created = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+      keys = byStatus.putIfAbsent(status, created);
+      if (keys == null) {
+        keys = created;
+      }
+    }
+    return keys;
+  }
+
+  private AtomicInteger countOf(String status) {
+    AtomicInteger count = counts.get(status);
+    if (count == null) {
+      AtomicInteger created = new AtomicInteger();
+      count = counts.putIfAbsent(status, created);
+      if (count == null) {
+        count = created;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,19 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+
+/**
+ * Works out what an order becomes, for {@link OrdersRepository#compute}.
+ * <p>
+ * The order passed in is the one stored, shared with readers, so it must not be changed: return a
+ * changed copy instead. It may be called again with the newly stored order if another write got in
+ * first, so it should do nothing but return the result.
+ */
+public interface OrderUpdate {
+
+  /**
+   * @param current the order stored, or null if there is none
+   * @return the order to store in its place, the current order itself to leave it be, or null to remove it
+   */
+  Order apply(Order current);
+}
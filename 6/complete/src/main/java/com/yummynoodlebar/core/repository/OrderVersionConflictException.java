@@ -0,0 +1,34 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.UUID;
+
+//TODOCUMENT Thrown by OrdersRepository.saveIfVersion when the order stored isn't the version the save expected,
+//because another write got in first. Nothing is written.
+public class OrderVersionConflictException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final UUID key;
+  private final long expectedVersion;
+  private final long actualVersion;
+
+  public OrderVersionConflictException(UUID key, long expectedVersion, long actualVersion) {
+    super("Order " + key + " is at version " + actualVersion + ", not " + expectedVersion);
+    this.key = key;
+    this.expectedVersion = expectedVersion;
+    this.actualVersion = actualVersion;
+  }
+
+  public UUID getKey() {
+    return key;
+  }
+
+  public long getExpectedVersion() {
+    return expectedVersion;
+  }
+
+  //TODOCUMENT Version of the order stored, 0 if there is none.
+  public long getActualVersion() {
+    return actualVersion;
+  }
+}
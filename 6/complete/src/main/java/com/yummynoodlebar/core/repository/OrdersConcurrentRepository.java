@@ -0,0 +1,95 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Order store backed by a {@link ConcurrentHashMap}, whose lock striping lets writers on different
+ * keys proceed in parallel instead of queueing on a single monitor.
+ * <p>
+ * Consistency contract:
+ * <ul>
+ *   <li>{@link #save}, {@link #delete} and {@link #findById} are linearizable per order key: once a
+ *   save or delete for a key returns, every later {@code findById} for that key observes it.</li>
+ *   <li>There is no ordering guarantee between operations on different keys.</li>
+ *   <li>{@link #findAll} is weakly consistent: it never fails under concurrent writes and reflects
+ *   every write that completed before it started, but may or may not reflect writes running while
+ *   it iterates. It is not a point-in-time snapshot. The same holds for each page of
+ *   {@link #findPage}.</li>
+ * </ul>
+ */
+public class OrdersConcurrentRepository extends AbstractOrdersRepository {
+
+  public static final int DEFAULT_CONCURRENCY_LEVEL = 64;
+
+  private final ConcurrentMap<UUID, Order> orders;
+
+  public OrdersConcurrentRepository() {
+    this(DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  public OrdersConcurrentRepository(int concurrencyLevel) {
+    this.orders = new ConcurrentHashMap<UUID, Order>(16, 0.75f, concurrencyLevel);
+  }
+
+  public OrdersConcurrentRepository(final Map<UUID, Order> orders) {
+    this(DEFAULT_CONCURRENCY_LEVEL);
+    this.orders.putAll(orders);
+  }
+
+  @Override
+  public Order save(Order order) {
+    orders.put(order.getKey(), order);
+    return order;
+  }
+
+  @Override
+  public void delete(UUID key) {
+    orders.remove(key);
+  }
+
+  //TODOCUMENT Lock free: the update is applied to the order read, and the result swapped in only if the
+  //order is still the one read, trying again otherwise.
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    while (true) {
+      Order current = orders.get(key);
+      Order next = update.apply(current);
+      if (next == current) {
+        return current;
+      }
+      if (next != null) {
+        checkKey(key, next);
+      }
+      boolean swapped;
+      if (current == null) {
+        swapped = orders.putIfAbsent(key, next) == null;
+      } else if (next == null) {
+        swapped = orders.remove(key, current);
+      } else {
+        swapped = orders.replace(key, current, next);
+      }
+      if (swapped) {
+        return next;
+      }
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    return orders.get(key);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return Collections.unmodifiableList(new ArrayList<Order>(orders.values()));
+  }
+
+  @Override
+  protected Iterable<Order> scan() {
+    return orders.values();
+  }
+}
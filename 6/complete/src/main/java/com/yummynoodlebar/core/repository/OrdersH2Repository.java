@@ -0,0 +1,664 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Keeps orders in an embedded H2 database, in a file under a directory.
+ * <p>
+ * The schema is normalized: a row per order in ORDERS, a row per order line in ORDER_ITEMS and a row
+ * per status the order has been through in ORDER_STATUSES, the last also kept as the order's current
+ * status so orders can be counted and found by it through an index. Keys are stored as their two longs,
+ * so the database sorts orders by submission time and key just as {@link OrderCursor} does, and pages
+ * are read straight from an index.
+ * <p>
+ * Connections come from a bounded pool, each keeping the statements prepared on it. A write is one
+ * transaction, and a batch is written in key order with JDBC batches, a statement execution per table
+ * for a few orders at a time rather than one per row. Writes to a key are serialised on a
+ * {@link KeyLocks} stripe, which also makes {@link #compute} atomic. Orders are read back as new objects.
+ * <p>
+ * Batches save little here: the database is in process and a commit isn't forced to disk, so most of
+ * the cost of a write is adding its rows to the indexes, which a batch pays all the same. Under MVCC
+ * every row a transaction has written but not committed is also kept in an index of its own, which
+ * each further row of the transaction goes through, so a long transaction costs more a row than short
+ * ones. A batch is therefore committed every {@link #DEFAULT_ORDERS_PER_TRANSACTION} orders unless set
+ * otherwise, and one that fails may be left partly saved.
+ * <p>
+ * Reads see committed writes only. A query over many orders reads the orders, their lines and their
+ * statuses one after the other, so an order written while it runs may come back with its lines or
+ * statuses from after the write; a single order is read whole.
+ */
+public class OrdersH2Repository extends AbstractOrdersRepository implements DurableOrdersStore, Closeable {
+
+  public static final int DEFAULT_CONNECTIONS = 8;
+  public static final int DEFAULT_ORDERS_PER_TRANSACTION = 8;
+
+  private static final String DATABASE_FILE = "orders";
+  private static final long CONNECTION_TIMEOUT_MILLIS = 30000;
+  private static final long NO_SUBMISSION_TIME = OrderCursor.submissionTime(null);
+
+  private static final String[] SCHEMA = {
+          "CREATE TABLE IF NOT EXISTS orders (key_msb BIGINT NOT NULL, key_lsb BIGINT NOT NULL, "
+                  + "submitted BIGINT NOT NULL, version BIGINT NOT NULL, item_count INT, status VARCHAR, "
+                  + "PRIMARY KEY (key_msb, key_lsb))",
+          "CREATE INDEX IF NOT EXISTS orders_submitted ON orders (submitted, key_msb, key_lsb)",
+          "CREATE INDEX IF NOT EXISTS orders_status ON orders (status)",
+          "CREATE TABLE IF NOT EXISTS order_items (key_msb BIGINT NOT NULL, key_lsb BIGINT NOT NULL, "
+                  + "line INT NOT NULL, item VARCHAR, quantity INT, PRIMARY KEY (key_msb, key_lsb, line), "
+                  + "FOREIGN KEY (key_msb, key_lsb) REFERENCES orders (key_msb, key_lsb) ON DELETE CASCADE)",
+          "CREATE INDEX IF NOT EXISTS order_items_item ON order_items (item)",
+          "CREATE TABLE IF NOT EXISTS order_statuses (key_msb BIGINT NOT NULL, key_lsb BIGINT NOT NULL, "
+                  + "seq INT NOT NULL, status_date BIGINT, status VARCHAR, PRIMARY KEY (key_msb, key_lsb, seq), "
+                  + "FOREIGN KEY (key_msb, key_lsb) REFERENCES orders (key_msb, key_lsb) ON DELETE CASCADE)"
+  };
+
+  private static final String MERGE_ORDER = "MERGE INTO orders (key_msb, key_lsb, submitted, version, item_count, status) "
+          + "KEY (key_msb, key_lsb) VALUES (?, ?, ?, ?, ?, ?)";
+  private static final String DELETE_ORDER = "DELETE FROM orders WHERE key_msb = ? AND key_lsb = ?";
+  private static final String DELETE_ITEMS = "DELETE FROM order_items WHERE key_msb = ? AND key_lsb = ?";
+  private static final String DELETE_STATUSES = "DELETE FROM order_statuses WHERE key_msb = ? AND key_lsb = ?";
+  private static final String INSERT_ITEM = "INSERT INTO order_items (key_msb, key_lsb, line, item, quantity) "
+          + "VALUES (?, ?, ?, ?, ?)";
+  private static final String INSERT_STATUS = "INSERT INTO order_statuses (key_msb, key_lsb, seq, status_date, status) "
+          + "VALUES (?, ?, ?, ?, ?)";
+
+  private static final String SELECT_ORDERS = "SELECT o.key_msb, o.key_lsb, o.submitted, o.version, o.item_count "
+          + "FROM orders o ";
+  private static final String SELECT_ITEMS = "SELECT o.key_msb, o.key_lsb, i.item, i.quantity FROM orders o "
+          + "INNER JOIN order_items i ON i.key_msb = o.key_msb AND i.key_lsb = o.key_lsb ";
+  private static final String SELECT_STATUSES = "SELECT o.key_msb, o.key_lsb, s.status_date, s.status FROM orders o "
+          + "INNER JOIN order_statuses s ON s.key_msb = o.key_msb AND s.key_lsb = o.key_lsb ";
+  private static final String WHERE = "WHERE ";
+  private static final String ORDERS_IN_LISTING_ORDER = " ORDER BY o.submitted, o.key_msb, o.key_lsb";
+  //Joined to the orders to keep those with any or all of the items, found from the index on the item.
+  private static final String HAVING_ITEMS = "INNER JOIN (SELECT key_msb, key_lsb FROM order_items "
+          + "WHERE item IN (%s) GROUP BY key_msb, key_lsb%s) m ON m.key_msb = o.key_msb AND m.key_lsb = o.key_lsb ";
+  private static final String ITEMS_IN_ORDER = " ORDER BY i.line";
+  private static final String STATUSES_IN_ORDER = " ORDER BY s.seq";
+
+  private static final String ALL = "TRUE";
+  private static final String BY_KEY = "o.key_msb = ? AND o.key_lsb = ?";
+  private static final String BY_STATUS = "o.status = ?";
+  private static final String SUBMITTED_BETWEEN = "o.submitted >= ? AND o.submitted <= ?";
+  //Orders after a cursor, and up to one. The bare bound on the submission time lets the index be used.
+  private static final String AFTER = "o.submitted >= ? AND (o.submitted > ? OR o.key_msb > ? "
+          + "OR (o.key_msb = ? AND o.key_lsb > ?))";
+  private static final String UP_TO = "o.submitted <= ? AND (o.submitted < ? OR o.key_msb < ? "
+          + "OR (o.key_msb = ? AND o.key_lsb <= ?))";
+
+  private static final String KEYS = "SELECT key_msb, key_lsb FROM orders";
+  private static final String KEYS_AFTER = " WHERE key_msb > ? OR (key_msb = ? AND key_lsb > ?)";
+  private static final String KEYS_IN_ORDER = " ORDER BY key_msb, key_lsb LIMIT ?";
+  private static final int KEY_PAGE_SIZE = 10000;
+  private static final String COUNT_BY_STATUS = "SELECT COUNT(*) FROM orders WHERE status = ?";
+  private static final String COUNT_BY_EACH_STATUS = "SELECT status, COUNT(*) FROM orders "
+          + "WHERE status IS NOT NULL GROUP BY status";
+
+  private final ConnectionPool pool;
+  private final KeyLocks locks = new KeyLocks();
+  private final int ordersPerTransaction;
+
+  public OrdersH2Repository(File directory) {
+    this(directory, DEFAULT_CONNECTIONS);
+  }
+
+  public OrdersH2Repository(File directory, int connections) {
+    this(directory, connections, DEFAULT_ORDERS_PER_TRANSACTION);
+  }
+
+  public OrdersH2Repository(File directory, int connections, int ordersPerTransaction) {
+    if (ordersPerTransaction < 1) {
+      throw new IllegalArgumentException("A transaction must save at least one order, not " + ordersPerTransaction);
+    }
+    this.ordersPerTransaction = ordersPerTransaction;
+    org.h2.Driver.load();
+    pool = new ConnectionPool("jdbc:h2:" + new File(directory, DATABASE_FILE).getAbsolutePath() + ";MVCC=TRUE",
+            connections, CONNECTION_TIMEOUT_MILLIS);
+    run("create the order tables", new Work<Void>() {
+      @Override
+      Void run(ConnectionPool.PooledConnection connection) throws SQLException {
+        Statement statement = connection.connection().createStatement();
+        try {
+          for (String sql : SCHEMA) {
+            statement.execute(sql);
+          }
+        } finally {
+          statement.close();
+        }
+        return null;
+      }
+    }, false);
+  }
+
+  @Override
+  public Order save(Order order) {
+    synchronized (locks.lockFor(order.getKey())) {
+      write(Collections.singletonList(order));
+    }
+    return order;
+  }
+
+  @Override
+  public List<Order> saveAll(final Collection<Order> orders) {
+    List<UUID> keys = new ArrayList<UUID>(orders.size());
+    for (Order order : orders) {
+      keys.add(order.getKey());
+    }
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        write(orders);
+      }
+    });
+    return new ArrayList<Order>(orders);
+  }
+
+  @Override
+  public void delete(UUID key) {
+    synchronized (locks.lockFor(key)) {
+      remove(Collections.singletonList(key));
+    }
+  }
+
+  @Override
+  public void deleteAll(final Collection<UUID> keys) {
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        remove(keys);
+      }
+    });
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    synchronized (locks.lockFor(key)) {
+      return applyUpdate(key, update);
+    }
+  }
+
+  /*
+   * Holds the key's stripe, so the order is read whole, not half way through a write.
+   */
+  @Override
+  public Order findById(UUID key) {
+    synchronized (locks.lockFor(key)) {
+      List<Order> found = select(BY_KEY, key.getMostSignificantBits(), key.getLeastSignificantBits());
+      return found.isEmpty() ? null : found.get(0);
+    }
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return select(ALL);
+  }
+
+  /*
+   * The orders of the page are read first, and then the lines and statuses of the orders from the
+   * cursor up to the last of them.
+   */
+  @Override
+  public List<Order> findPage(final OrderCursor after, final int limit) {
+    if (limit <= 0) {
+      return Collections.emptyList();
+    }
+    return run("read a page of orders", new Work<List<Order>>() {
+      @Override
+      List<Order> run(ConnectionPool.PooledConnection connection) throws SQLException {
+        Object[] bound = after == null ? new Object[0] : cursor(after);
+        String from = after == null ? ALL : AFTER;
+        Object[] page = Arrays.copyOf(bound, bound.length + 1);
+        page[bound.length] = limit;
+        Map<UUID, OrderRow> rows = selectOrders(connection, WHERE + from + ORDERS_IN_LISTING_ORDER + " LIMIT ?", page);
+        if (rows.isEmpty()) {
+          return Collections.emptyList();
+        }
+        Order last = null;
+        for (OrderRow row : rows.values()) {
+          last = row.order;
+        }
+        Object[] range = Arrays.copyOf(bound, bound.length + 5);
+        System.arraycopy(cursor(OrderCursor.of(last)), 0, range, bound.length, 5);
+        return complete(connection, rows, WHERE + from + " AND " + UP_TO, range);
+      }
+    }, true);
+  }
+
+  /*
+   * Read a page at a time from the primary key, each page after the last key of the one before, so
+   * neither the orders nor all the keys are held at once.
+   */
+  @Override
+  public Iterable<UUID> keys() {
+    return new Iterable<UUID>() {
+      @Override
+      public Iterator<UUID> iterator() {
+        return new KeyPages();
+      }
+    };
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    if (to != null && to.getTime() == Long.MIN_VALUE) {
+      return Collections.emptyList();
+    }
+    return select(SUBMITTED_BETWEEN, from == null ? Long.MIN_VALUE : from.getTime(),
+            to == null ? Long.MAX_VALUE : to.getTime() - 1);
+  }
+
+  /*
+   * Reads the orders with the items as any other query, joined to the keys found from the items.
+   */
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    Set<String> distinct = new LinkedHashSet<String>(items);
+    if (distinct.isEmpty()) {
+      return Collections.emptyList();
+    }
+    StringBuilder placeholders = new StringBuilder();
+    for (int i = 0; i < distinct.size(); i++) {
+      placeholders.append(i == 0 ? "?" : ", ?");
+    }
+    String having = match == ItemMatch.ALL ? " HAVING COUNT(*) = " + distinct.size() : "";
+    return selectJoined(String.format(HAVING_ITEMS, placeholders, having), ALL, distinct.toArray());
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    return select(BY_STATUS, status);
+  }
+
+  @Override
+  public int countByStatus(final String status) {
+    return run("count orders by status", new Work<Integer>() {
+      @Override
+      Integer run(ConnectionPool.PooledConnection connection) throws SQLException {
+        PreparedStatement statement = connection.prepare(COUNT_BY_STATUS);
+        statement.setString(1, status);
+        ResultSet results = statement.executeQuery();
+        try {
+          results.next();
+          return results.getInt(1);
+        } finally {
+          results.close();
+        }
+      }
+    }, true);
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    return run("count orders by status", new Work<Map<String, Integer>>() {
+      @Override
+      Map<String, Integer> run(ConnectionPool.PooledConnection connection) throws SQLException {
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        ResultSet results = connection.prepare(COUNT_BY_EACH_STATUS).executeQuery();
+        try {
+          while (results.next()) {
+            counts.put(results.getString(1), results.getInt(2));
+          }
+        } finally {
+          results.close();
+        }
+        return counts;
+      }
+    }, true);
+  }
+
+  @Override
+  public void flush() {
+    run("sync the order database", new Work<Void>() {
+      @Override
+      Void run(ConnectionPool.PooledConnection connection) throws SQLException {
+        Statement statement = connection.connection().createStatement();
+        try {
+          statement.execute("CHECKPOINT SYNC");
+        } finally {
+          statement.close();
+        }
+        return null;
+      }
+    }, false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      pool.close();
+    } catch (SQLException e) {
+      throw new IOException("Unable to close the order database", e);
+    }
+  }
+
+  /*
+   * Saves the orders in key order, so the rows of a transaction go to neighbouring index pages, a few
+   * orders a transaction.
+   */
+  private void write(Collection<Order> orders) {
+    //A key saved twice in one batch is stored as last saved.
+    Map<UUID, Order> latest = new TreeMap<UUID, Order>();
+    for (Order order : orders) {
+      latest.put(order.getKey(), order);
+    }
+    List<Order> sorted = new ArrayList<Order>(latest.values());
+    for (int from = 0; from < sorted.size(); from += ordersPerTransaction) {
+      writeTransaction(sorted.subList(from, Math.min(sorted.size(), from + ordersPerTransaction)));
+    }
+  }
+
+  private void writeTransaction(final List<Order> orders) {
+    run("save orders", new Work<Void>() {
+      @Override
+      Void run(ConnectionPool.PooledConnection connection) throws SQLException {
+        PreparedStatement merge = connection.prepare(MERGE_ORDER);
+        PreparedStatement deleteItems = connection.prepare(DELETE_ITEMS);
+        PreparedStatement deleteStatuses = connection.prepare(DELETE_STATUSES);
+        PreparedStatement insertItem = connection.prepare(INSERT_ITEM);
+        PreparedStatement insertStatus = connection.prepare(INSERT_STATUS);
+        boolean items = false;
+        boolean statuses = false;
+
+        for (Order order : orders) {
+          long msb = order.getKey().getMostSignificantBits();
+          long lsb = order.getKey().getLeastSignificantBits();
+          Map<String, Integer> orderItems = order.getOrderItems();
+          List<OrderStatus> history = order.getStatusHistory();
+
+          merge.setLong(1, msb);
+          merge.setLong(2, lsb);
+          merge.setLong(3, OrderCursor.submissionTime(order.getDateTimeOfSubmission()));
+          merge.setLong(4, order.getVersion());
+          if (orderItems == null) {
+            merge.setNull(5, Types.INTEGER);
+          } else {
+            merge.setInt(5, orderItems.size());
+          }
+          merge.setString(6, history.isEmpty() ? null : statusName(history.get(history.size() - 1)));
+          merge.addBatch();
+
+          setKey(deleteItems, msb, lsb);
+          deleteItems.addBatch();
+          setKey(deleteStatuses, msb, lsb);
+          deleteStatuses.addBatch();
+
+          if (orderItems != null) {
+            int line = 0;
+            for (Map.Entry<String, Integer> item : orderItems.entrySet()) {
+              setKey(insertItem, msb, lsb);
+              insertItem.setInt(3, line++);
+              insertItem.setString(4, item.getKey());
+              if (item.getValue() == null) {
+                insertItem.setNull(5, Types.INTEGER);
+              } else {
+                insertItem.setInt(5, item.getValue());
+              }
+              insertItem.addBatch();
+              items = true;
+            }
+          }
+          for (int seq = 0; seq < history.size(); seq++) {
+            OrderStatus status = history.get(seq);
+            setKey(insertStatus, msb, lsb);
+            insertStatus.setInt(3, seq);
+            if (status.getStatusDate() == null) {
+              insertStatus.setNull(4, Types.BIGINT);
+            } else {
+              insertStatus.setLong(4, status.getStatusDate().getTime());
+            }
+            insertStatus.setString(5, status.getStatus());
+            insertStatus.addBatch();
+            statuses = true;
+          }
+        }
+
+        merge.executeBatch();
+        deleteItems.executeBatch();
+        deleteStatuses.executeBatch();
+        if (items) {
+          insertItem.executeBatch();
+        }
+        if (statuses) {
+          insertStatus.executeBatch();
+        }
+        return null;
+      }
+    }, true);
+  }
+
+  private void remove(final Collection<UUID> keys) {
+    run("delete orders", new Work<Void>() {
+      @Override
+      Void run(ConnectionPool.PooledConnection connection) throws SQLException {
+        PreparedStatement delete = connection.prepare(DELETE_ORDER);
+        for (UUID key : keys) {
+          setKey(delete, key.getMostSignificantBits(), key.getLeastSignificantBits());
+          delete.addBatch();
+        }
+        delete.executeBatch();
+        return null;
+      }
+    }, true);
+  }
+
+  private List<Order> select(String condition, Object... parameters) {
+    return selectJoined("", condition, parameters);
+  }
+
+  /*
+   * The orders meeting the condition, of those the join to the orders keeps.
+   */
+  private List<Order> selectJoined(String join, String condition, final Object[] parameters) {
+    final String where = join + WHERE + condition;
+    return run("read orders", new Work<List<Order>>() {
+      @Override
+      List<Order> run(ConnectionPool.PooledConnection connection) throws SQLException {
+        Map<UUID, OrderRow> rows = selectOrders(connection, where + ORDERS_IN_LISTING_ORDER, parameters);
+        if (rows.isEmpty()) {
+          return Collections.emptyList();
+        }
+        return complete(connection, rows, where, parameters);
+      }
+    }, true);
+  }
+
+  private Map<UUID, OrderRow> selectOrders(ConnectionPool.PooledConnection connection, String where,
+                                           Object... parameters) throws SQLException {
+    Map<UUID, OrderRow> rows = new LinkedHashMap<UUID, OrderRow>();
+    ResultSet results = query(connection, SELECT_ORDERS + where, parameters);
+    try {
+      while (results.next()) {
+        UUID key = new UUID(results.getLong(1), results.getLong(2));
+        long submitted = results.getLong(3);
+        OrderRow row = new OrderRow(new Order(key, submitted == NO_SUBMISSION_TIME ? null : new Date(submitted)));
+        row.order.setVersion(results.getLong(4));
+        int itemCount = results.getInt(5);
+        if (!results.wasNull()) {
+          row.items = new LinkedHashMap<String, Integer>(itemCount * 2);
+        }
+        rows.put(key, row);
+      }
+    } finally {
+      results.close();
+    }
+    return rows;
+  }
+
+  /*
+   * Reads the lines and statuses of the orders matching the condition into the rows read for them,
+   * and returns their orders.
+   */
+  private List<Order> complete(ConnectionPool.PooledConnection connection, Map<UUID, OrderRow> rows, String where,
+                               Object... parameters) throws SQLException {
+    ResultSet items = query(connection, SELECT_ITEMS + where + ITEMS_IN_ORDER, parameters);
+    try {
+      while (items.next()) {
+        OrderRow row = rows.get(new UUID(items.getLong(1), items.getLong(2)));
+        if (row != null && row.items != null) {
+          int quantity = items.getInt(4);
+          row.items.put(items.getString(3), items.wasNull() ? null : quantity);
+        }
+      }
+    } finally {
+      items.close();
+    }
+
+    ResultSet statuses = query(connection, SELECT_STATUSES + where + STATUSES_IN_ORDER, parameters);
+    try {
+      while (statuses.next()) {
+        OrderRow row = rows.get(new UUID(statuses.getLong(1), statuses.getLong(2)));
+        if (row != null) {
+          long date = statuses.getLong(3);
+          row.order.addStatus(new OrderStatus(statuses.wasNull() ? null : new Date(date), statuses.getString(4)));
+        }
+      }
+    } finally {
+      statuses.close();
+    }
+
+    List<Order> orders = new ArrayList<Order>(rows.size());
+    for (OrderRow row : rows.values()) {
+      if (row.items != null) {
+        row.order.setOrderItems(row.items);
+      }
+      orders.add(row.order);
+    }
+    return orders;
+  }
+
+  private static ResultSet query(ConnectionPool.PooledConnection connection, String sql, Object... parameters)
+          throws SQLException {
+    PreparedStatement statement = connection.prepare(sql);
+    for (int i = 0; i < parameters.length; i++) {
+      statement.setObject(i + 1, parameters[i]);
+    }
+    return statement.executeQuery();
+  }
+
+  private static Object[] cursor(OrderCursor cursor) {
+    long submitted = cursor.getSubmissionTime();
+    long msb = cursor.getKey().getMostSignificantBits();
+    return new Object[]{submitted, submitted, msb, msb, cursor.getKey().getLeastSignificantBits()};
+  }
+
+  private static void setKey(PreparedStatement statement, long msb, long lsb) throws SQLException {
+    statement.setLong(1, msb);
+    statement.setLong(2, lsb);
+  }
+
+  /*
+   * Runs the work on a pooled connection, as one transaction if asked, and turns database errors
+   * into unchecked ones as the other stores do with I/O errors.
+   */
+  private <T> T run(String action, Work<T> work, boolean transaction) {
+    ConnectionPool.PooledConnection connection;
+    try {
+      connection = pool.acquire();
+    } catch (SQLException e) {
+      throw new IllegalStateException("Unable to " + action, e);
+    }
+    boolean failed = true;
+    try {
+      if (transaction) {
+        connection.connection().setAutoCommit(false);
+      }
+      try {
+        T result = work.run(connection);
+        if (transaction) {
+          connection.connection().commit();
+        }
+        failed = false;
+        return result;
+      } finally {
+        if (transaction) {
+          if (failed) {
+            connection.connection().rollback();
+          }
+          connection.connection().setAutoCommit(true);
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Unable to " + action, e);
+    } finally {
+      pool.release(connection, failed);
+    }
+  }
+
+  private List<UUID> keyPage(final UUID after) {
+    return run("list order keys", new Work<List<UUID>>() {
+      @Override
+      List<UUID> run(ConnectionPool.PooledConnection connection) throws SQLException {
+        ResultSet results = after == null
+                ? query(connection, KEYS + KEYS_IN_ORDER, KEY_PAGE_SIZE)
+                : query(connection, KEYS + KEYS_AFTER + KEYS_IN_ORDER, after.getMostSignificantBits(),
+                after.getMostSignificantBits(), after.getLeastSignificantBits(), KEY_PAGE_SIZE);
+        List<UUID> keys = new ArrayList<UUID>();
+        try {
+          while (results.next()) {
+            keys.add(new UUID(results.getLong(1), results.getLong(2)));
+          }
+        } finally {
+          results.close();
+        }
+        return keys;
+      }
+    }, false);
+  }
+
+  /*
+   * The keys in primary key order, read a page at a time; a short page is the last.
+   */
+  private final class KeyPages implements Iterator<UUID> {
+
+    private List<UUID> page = keyPage(null);
+    private int next;
+
+    @Override
+    public boolean hasNext() {
+      if (next == page.size() && page.size() == KEY_PAGE_SIZE) {
+        page = keyPage(page.get(page.size() - 1));
+        next = 0;
+      }
+      return next < page.size();
+    }
+
+    @Override
+    public UUID next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return page.get(next++);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private abstract static class Work<T> {
+    abstract T run(ConnectionPool.PooledConnection connection) throws SQLException;
+  }
+
+  private static final class OrderRow {
+    final Order order;
+    //The lines read so far, null if the order has none set.
+    Map<String, Integer> items;
+
+    OrderRow(Order order) {
+      this.order = order;
+    }
+  }
+}
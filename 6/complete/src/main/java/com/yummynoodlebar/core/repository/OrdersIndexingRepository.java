@@ -0,0 +1,314 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.OrderStatusListener;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maintains secondary indexes over the orders of another repository, so that queries on them
+ * don't have to scan every order.
+ * <p>
+ * The submission time index is a skip list ordered the same way as {@link OrderCursor}, so time range
+ * queries and pages cost O(log n + k). The item index maps each menu item to a compressed bitmap of
+ * the orders containing it, see {@link OrderItemIndex}. The status index keeps the orders in each
+ * current status and their count, see {@link OrderStatusIndex}.
+ * <p>
+ * When the underlying store holds on to the saved instances, a status added to a stored order with
+ * {@link Order#addStatus} moves it in the status index straight away, while the order is locked, so
+ * the index never disagrees with what a reader of that order sees. Stores that copy orders pick up a
+ * new status when the order is saved again. Which kind of store it is is found out once, from the first
+ * order indexed, rather than by reading every saved order back.
+ * <p>
+ * What was indexed for each order is remembered, so an order is unindexed exactly as it was indexed
+ * even when the stored instance has been changed in place. Writes to the same key are serialised on a
+ * lock stripe, which keeps the indexes in step with the underlying store. Readers never lock the
+ * stripes; an order written while a query runs may or may not be part of its result.
+ */
+public class OrdersIndexingRepository extends AbstractOrdersRepository implements Closeable {
+
+  private static final int LOCK_STRIPES = 64;
+  private static final UUID LOWEST_KEY = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+  private static final String[] NO_ITEMS = new String[0];
+
+  private final OrdersRepository orders;
+  private final KeyLocks locks = new KeyLocks(LOCK_STRIPES);
+
+  private final ConcurrentHashMap<UUID, IndexedOrder> indexed = new ConcurrentHashMap<UUID, IndexedOrder>();
+  private final ConcurrentSkipListMap<OrderCursor, UUID> bySubmission = new ConcurrentSkipListMap<OrderCursor, UUID>();
+  private final OrderItemIndex byItem = new OrderItemIndex();
+
+  //Status updates of a key happen under its status lock, taken last, so they can come from the
+  //write path or from a status listener running with the order locked.
+  private final Object[] statusLocks = new Object[LOCK_STRIPES];
+  private final OrderStatusIndex byStatus = new OrderStatusIndex();
+  private final ConcurrentHashMap<UUID, Order> heldOrders = new ConcurrentHashMap<UUID, Order>();
+  //Whether the store underneath holds on to the saved instances, null until the first order is indexed.
+  private volatile Boolean storeHoldsOrders;
+  private final OrderStatusListener statusListener = new OrderStatusListener() {
+    @Override
+    public void statusChanged(Order order, OrderStatus previous, OrderStatus current) {
+      synchronized (statusLockFor(order.getKey())) {
+        if (heldOrders.get(order.getKey()) == order) {
+          byStatus.update(order.getKey(), statusName(current));
+        }
+      }
+    }
+  };
+
+  public OrdersIndexingRepository(final OrdersRepository orders) {
+    this.orders = orders;
+    for (int i = 0; i < statusLocks.length; i++) {
+      statusLocks[i] = new Object();
+    }
+    for (Order order : orders.findAll()) {
+      index(order);
+      indexStatus(order);
+    }
+  }
+
+  @Override
+  public Order save(Order order) {
+    synchronized (locks.lockFor(order.getKey())) {
+      Order saved = orders.save(order);
+      index(saved);
+      indexStatus(saved);
+      return saved;
+    }
+  }
+
+  @Override
+  public List<Order> saveAll(final Collection<Order> batch) {
+    final List<Order> saved = new ArrayList<Order>(batch.size());
+    List<UUID> keys = new ArrayList<UUID>(batch.size());
+    for (Order order : batch) {
+      keys.add(order.getKey());
+    }
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        saved.addAll(orders.saveAll(batch));
+        for (Order order : saved) {
+          index(order);
+          indexStatus(order);
+        }
+      }
+    });
+    return saved;
+  }
+
+  @Override
+  public void delete(UUID key) {
+    synchronized (locks.lockFor(key)) {
+      orders.delete(key);
+      unindex(key);
+    }
+  }
+
+  @Override
+  public void deleteAll(final Collection<UUID> keys) {
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        orders.deleteAll(keys);
+        for (UUID key : keys) {
+          unindex(key);
+        }
+      }
+    });
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    synchronized (locks.lockFor(key)) {
+      return applyUpdate(key, update);
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    return orders.findById(key);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return orders.findAll();
+  }
+
+  @Override
+  public Iterable<UUID> keys() {
+    return orders.keys();
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    ConcurrentNavigableMap<OrderCursor, UUID> range = after == null ? bySubmission : bySubmission.tailMap(after, false);
+    return resolve(range, limit);
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    ConcurrentNavigableMap<OrderCursor, UUID> range = bySubmission;
+    if (from != null) {
+      range = range.tailMap(new OrderCursor(from.getTime(), LOWEST_KEY), true);
+    }
+    if (to != null) {
+      range = range.headMap(new OrderCursor(to.getTime(), LOWEST_KEY), false);
+    }
+    return resolve(range, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    List<Order> found = new ArrayList<Order>();
+    for (UUID key : byItem.find(items, match)) {
+      Order order = orders.findById(key);
+      if (order != null && containsItems(order, items, match)) {
+        found.add(order);
+      }
+    }
+    Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    return found;
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    List<Order> found = new ArrayList<Order>();
+    for (UUID key : byStatus.find(status)) {
+      Order order = orders.findById(key);
+      if (order != null && status.equals(statusName(order.getStatus()))) {
+        found.add(order);
+      }
+    }
+    Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    return found;
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    return byStatus.count(status);
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    return byStatus.counts();
+  }
+
+  /*
+   * Approximate heap footprint of the item bitmaps, in bytes.
+   */
+  public long getItemIndexSize() {
+    return byItem.sizeInBytes();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (orders instanceof Closeable) {
+      ((Closeable) orders).close();
+    }
+  }
+
+  /*
+   * Looks up the orders of an index range, skipping entries whose order changed or went away since.
+   */
+  private List<Order> resolve(Map<OrderCursor, UUID> range, int limit) {
+    List<Order> result = new ArrayList<Order>();
+    for (Map.Entry<OrderCursor, UUID> entry : range.entrySet()) {
+      if (result.size() == limit) {
+        break;
+      }
+      Order order = orders.findById(entry.getValue());
+      if (order != null && OrderCursor.of(order).equals(entry.getKey())) {
+        result.add(order);
+      }
+    }
+    return result;
+  }
+
+  private void index(Order order) {
+    OrderCursor cursor = OrderCursor.of(order);
+    String[] items = itemsOf(order);
+
+    IndexedOrder previous = indexed.get(order.getKey());
+    int ordinal;
+    if (previous == null) {
+      ordinal = byItem.add(order.getKey(), items);
+    } else {
+      ordinal = previous.ordinal;
+      byItem.replace(ordinal, previous.items, items);
+      if (!previous.cursor.equals(cursor)) {
+        bySubmission.remove(previous.cursor);
+      }
+    }
+    bySubmission.put(cursor, order.getKey());
+    indexed.put(order.getKey(), new IndexedOrder(cursor, ordinal, items));
+  }
+
+  private void unindex(UUID key) {
+    IndexedOrder previous = indexed.remove(key);
+    if (previous != null) {
+      bySubmission.remove(previous.cursor);
+      byItem.remove(previous.ordinal, previous.items);
+    }
+    heldOrders.remove(key);
+    synchronized (statusLockFor(key)) {
+      byStatus.remove(key);
+    }
+  }
+
+  /*
+   * Indexes the current status, and follows later status changes when the store keeps this instance.
+   */
+  private void indexStatus(Order saved) {
+    UUID key = saved.getKey();
+    if (holdsOrders(saved)) {
+      heldOrders.put(key, saved);
+      saved.setStatusListener(statusListener);
+    } else {
+      heldOrders.remove(key);
+    }
+    synchronized (saved) {
+      synchronized (statusLockFor(key)) {
+        byStatus.update(key, statusName(saved.getStatus()));
+      }
+    }
+  }
+
+  private boolean holdsOrders(Order saved) {
+    Boolean holds = storeHoldsOrders;
+    if (holds == null) {
+      holds = orders.findById(saved.getKey()) == saved;
+      storeHoldsOrders = holds;
+    }
+    return holds;
+  }
+
+  private static String[] itemsOf(Order order) {
+    Map<String, Integer> items = order.getOrderItems();
+    return items == null || items.isEmpty() ? NO_ITEMS : items.keySet().toArray(new String[items.size()]);
+  }
+
+  private Object statusLockFor(UUID key) {
+    return statusLocks[key.hashCode() & (LOCK_STRIPES - 1)];
+  }
+
+  private static final class IndexedOrder {
+    final OrderCursor cursor;
+    final int ordinal;
+    final String[] items;
+
+    IndexedOrder(OrderCursor cursor, int ordinal, String[] items) {
+      this.cursor = cursor;
+      this.ordinal = ordinal;
+      this.items = items;
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes another repository durable by writing every save and delete to an {@link OrdersWriteAheadLog}
+ * before applying it, and by replaying the log into it on startup.
+ * <p>
+ * Changes are applied to the wrapped repository in log order once committed, so a write is only
+ * visible to readers after the log has accepted it, and a restart rebuilds exactly the same state.
+ * Writes to the same key wait for each other to commit, so {@link #compute} reads the order as the
+ * log has it; writes to other keys are still committed together.
+ * <p>
+ * With an {@link OrdersSnapshotStore}, a background checkpoint periodically writes a snapshot and
+ * drops the log records it covers, and startup loads the latest snapshot and replays only the log
+ * tail. The snapshot of an {@link OrdersPersistentMapRepository} is captured in O(1) at the LSN it is
+ * tagged with. Other repositories are copied while writes carry on, so their snapshot may also hold
+ * some later writes; replaying the tail over it still ends in the same state, as every record sets
+ * an order's whole state or deletes it.
+ * <p>
+ * A {@link DurableOrdersStore} keeps its orders itself, so it is never snapshotted or loaded from a
+ * snapshot, which would only write every order into it again. A checkpoint flushes it instead, and
+ * startup replays the log tail that may not have reached it.
+ */
+public class OrdersJournalingRepository extends AbstractOrdersRepository implements Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersJournalingRepository.class);
+
+  private final OrdersRepository orders;
+  private final OrdersWriteAheadLog log;
+  private final OrdersSnapshotStore snapshots;
+  private final DurableOrdersStore durable;
+  private final ScheduledExecutorService checkpointer;
+
+  private final KeyLocks locks = new KeyLocks();
+  private final Object applyLock = new Object();
+  private long appliedLsn;
+  private long checkpointLsn;
+
+  public OrdersJournalingRepository(final OrdersRepository orders, final OrdersWriteAheadLog log) throws IOException {
+    this(orders, log, null, 0);
+  }
+
+  public OrdersJournalingRepository(final OrdersRepository orders, final OrdersWriteAheadLog log,
+                                    final OrdersSnapshotStore snapshots, long checkpointIntervalMillis) throws IOException {
+    this.orders = orders;
+    this.log = log;
+    this.snapshots = snapshots;
+    this.durable = orders instanceof DurableOrdersStore ? (DurableOrdersStore) orders : null;
+
+    checkpointLsn = snapshots == null || durable != null ? -1 : snapshots.loadLatest(orders);
+    log.replay(checkpointLsn, orders);
+    appliedLsn = log.getCommittedLsn();
+
+    if ((snapshots != null || durable != null) && checkpointIntervalMillis > 0) {
+      checkpointer = Executors.newSingleThreadScheduledExecutor();
+      checkpointer.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            checkpoint();
+          } catch (Exception e) {
+            LOG.error("Unable to checkpoint the order log", e);
+          }
+        }
+      }, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+    } else {
+      checkpointer = null;
+    }
+  }
+
+  @Override
+  public Order save(final Order order) {
+    synchronized (locks.lockFor(order.getKey())) {
+      log.appendSave(order, new Runnable() {
+        @Override
+        public void run() {
+          synchronized (applyLock) {
+            orders.save(order);
+            appliedLsn = log.getCommittedLsn();
+          }
+        }
+      });
+    }
+    return order;
+  }
+
+  @Override
+  public void delete(final UUID key) {
+    synchronized (locks.lockFor(key)) {
+      log.appendDelete(key, new Runnable() {
+        @Override
+        public void run() {
+          synchronized (applyLock) {
+            orders.delete(key);
+            appliedLsn = log.getCommittedLsn();
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public List<Order> saveAll(Collection<Order> batch) {
+    final List<Order> saved = new ArrayList<Order>(batch);
+    List<UUID> keys = new ArrayList<UUID>(saved.size());
+    for (Order order : saved) {
+      keys.add(order.getKey());
+    }
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        log.appendSaves(saved, new Runnable() {
+          @Override
+          public void run() {
+            synchronized (applyLock) {
+              orders.saveAll(saved);
+              appliedLsn = log.getCommittedLsn();
+            }
+          }
+        });
+      }
+    });
+    return saved;
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> batch) {
+    final List<UUID> keys = new ArrayList<UUID>(batch);
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        log.appendDeletes(keys, new Runnable() {
+          @Override
+          public void run() {
+            synchronized (applyLock) {
+              orders.deleteAll(keys);
+              appliedLsn = log.getCommittedLsn();
+            }
+          }
+        });
+      }
+    });
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    synchronized (locks.lockFor(key)) {
+      return applyUpdate(key, update);
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    return orders.findById(key);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return orders.findAll();
+  }
+
+  @Override
+  public Iterable<UUID> keys() {
+    return orders.keys();
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    return orders.findPage(after, limit);
+  }
+
+  @Override
+  public Iterable<Order> streamAll(int pageSize) {
+    return orders.streamAll(pageSize);
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    return orders.findBySubmissionTime(from, to);
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    return orders.findByItems(items, match);
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    return orders.findByStatus(status);
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    return orders.countByStatus(status);
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    return orders.countByStatus();
+  }
+
+  /*
+   * Writes a snapshot of every order applied so far, or flushes a durable store, then drops the log
+   * records that covers.
+   */
+  public synchronized void checkpoint() throws IOException {
+    if (snapshots == null && durable == null) {
+      throw new IllegalStateException("No snapshot store configured");
+    }
+    long lsn;
+    Iterable<Order> view = null;
+    synchronized (applyLock) {
+      lsn = appliedLsn;
+      if (orders instanceof OrdersPersistentMapRepository) {
+        view = ((OrdersPersistentMapRepository) orders).snapshot();
+      }
+    }
+    if (lsn <= checkpointLsn) {
+      return;
+    }
+    if (durable != null) {
+      durable.flush();
+    } else {
+      //Copied outside the apply lock, so commits are not held up for as long as this takes.
+      snapshots.write(lsn, view != null ? view : orders.findAll());
+    }
+    log.compact(lsn);
+    checkpointLsn = lsn;
+  }
+
+  public WriteAheadLogStatistics getStatistics() {
+    return log.getStatistics();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (checkpointer != null) {
+      checkpointer.shutdown();
+      try {
+        checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    log.close();
+    if (orders instanceof Closeable) {
+      ((Closeable) orders).close();
+    }
+  }
+}
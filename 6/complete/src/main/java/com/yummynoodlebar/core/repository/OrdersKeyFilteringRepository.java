@@ -0,0 +1,198 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers {@link #findById} for keys that were never saved from an {@link OrderKeyFilter}, without
+ * reaching the repository it wraps, so lookups of stale or mistyped keys don't cost a trip through
+ * every layer below, or to disk. Everything else goes straight through.
+ * <p>
+ * The filter is built from the stored keys on startup, listed by {@link OrdersRepository#keys} without
+ * reading the orders, and rebuilt in the background once enough orders have been deleted that their
+ * keys would make it let too many misses through.
+ */
+public class OrdersKeyFilteringRepository extends AbstractOrdersRepository implements Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersKeyFilteringRepository.class);
+
+  private final OrdersRepository orders;
+  private final OrderKeyFilter filter;
+  private final ScheduledExecutorService rebuilder;
+
+  public OrdersKeyFilteringRepository(OrdersRepository orders, final OrderKeyFilter filter, long checkIntervalMillis) {
+    this.orders = orders;
+    this.filter = filter;
+    rebuild();
+
+    if (checkIntervalMillis > 0) {
+      rebuilder = Executors.newSingleThreadScheduledExecutor();
+      rebuilder.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (filter.needsRebuild()) {
+              rebuild();
+            }
+          } catch (Exception e) {
+            LOG.error("Unable to rebuild the order key filter", e);
+          }
+        }
+      }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    } else {
+      rebuilder = null;
+    }
+  }
+
+  public OrderKeyFilter getFilter() {
+    return filter;
+  }
+
+  @Override
+  public Order save(Order order) {
+    filter.add(order.getKey());
+    Order saved = orders.save(order);
+    filter.add(order.getKey());
+    return saved;
+  }
+
+  @Override
+  public List<Order> saveAll(Collection<Order> batch) {
+    for (Order order : batch) {
+      filter.add(order.getKey());
+    }
+    List<Order> saved = orders.saveAll(batch);
+    for (Order order : batch) {
+      filter.add(order.getKey());
+    }
+    return saved;
+  }
+
+  @Override
+  public void delete(UUID key) {
+    orders.delete(key);
+    filter.deleted(1);
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> keys) {
+    orders.deleteAll(keys);
+    filter.deleted(keys.size());
+  }
+
+  @Override
+  public Order compute(final UUID key, final OrderUpdate update) {
+    final boolean[] removed = new boolean[1];
+    Order stored = orders.compute(key, new OrderUpdate() {
+      @Override
+      public Order apply(Order current) {
+        Order next = update.apply(current);
+        removed[0] = current != null && next == null;
+        if (next != null) {
+          filter.add(key);
+        }
+        return next;
+      }
+    });
+    if (stored != null) {
+      filter.add(key);
+    } else if (removed[0]) {
+      filter.deleted(1);
+    }
+    return stored;
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    if (!filter.mightContain(key)) {
+      return null;
+    }
+    Order order = orders.findById(key);
+    if (order == null) {
+      filter.falsePositive();
+    }
+    return order;
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return orders.findAll();
+  }
+
+  @Override
+  public Iterable<UUID> keys() {
+    return orders.keys();
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    return orders.findPage(after, limit);
+  }
+
+  @Override
+  public Iterable<Order> streamAll(int pageSize) {
+    return orders.streamAll(pageSize);
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    return orders.findBySubmissionTime(from, to);
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    return orders.findByItems(items, match);
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    return orders.findByStatus(status);
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    return orders.countByStatus(status);
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    return orders.countByStatus();
+  }
+
+  /*
+   * Rebuilds the filter from the keys stored now, dropping the keys of deleted ones.
+   */
+  synchronized void rebuild() {
+    filter.rebuild(orders);
+    LOG.debug("Rebuilt the order key filter: {}", filter.getStatistics());
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (rebuilder != null) {
+      rebuilder.shutdown();
+      try {
+        rebuilder.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (orders instanceof Closeable) {
+      ((Closeable) orders).close();
+    }
+  }
+}
@@ -0,0 +1,733 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Log-structured merge tree of orders, for write heavy ingestion.
+ * <p>
+ * Writes go to an {@link OrdersWriteAheadLog}, then to an in-memory memtable sorted by key. A full
+ * memtable is frozen, and flushed by a background thread into a {@link SortedOrderRun} on disk. The
+ * same thread merges runs of about the same size into one, four or more at a time, so the number of
+ * runs grows with the log of the number of orders; deletes are tombstones until a merge reaches the
+ * oldest run. Every file is written sequentially and never changed, and the merges are throttled to
+ * a number of bytes a second, and give way to flushes, so they don't starve the lookups and writes
+ * of the disk. Writers only wait if several frozen memtables are still waiting to be flushed.
+ * <p>
+ * {@link #findById} looks in the memtables, then the runs from newest to oldest, skipping those
+ * whose Bloom filter rules the key out. A manifest lists the runs and the last log record they hold,
+ * so on startup only the log after it is replayed, and the log is compacted to that point now and then.
+ */
+public class OrdersLsmRepository extends AbstractOrdersRepository implements DurableOrdersStore, Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersLsmRepository.class);
+
+  public static final int DEFAULT_MEMTABLE_BYTES = 4 << 20;
+  public static final long DEFAULT_COMPACTION_BYTES_PER_SECOND = 16L << 20;
+
+  static final int CACHE_BLOCKS = 1024;
+  static final int MAX_FROZEN_MEMTABLES = 4;
+  static final int MIN_MERGE = 4;
+  static final int MAX_MERGE = 8;
+  //Runs merged together differ in size by at most this factor.
+  static final int MERGE_SIZE_RATIO = 2;
+  static final int FLUSHES_PER_LOG_COMPACTION = 4;
+
+  private static final String MANIFEST = "MANIFEST";
+  private static final long MANIFEST_MAGIC = 0x594e424d414e49L;
+  private static final Pattern RUN_FILE = Pattern.compile("run-(\\d+)\\.sst");
+
+  private final File directory;
+  private final OrdersWriteAheadLog log;
+  private final int memtableBytes;
+  private final long compactionBytesPerSecond;
+  private final ColdPageCache cache = new ColdPageCache(CACHE_BLOCKS);
+  private final KeyLocks locks = new KeyLocks();
+  private final Thread compactor;
+
+  //Writes to the memtables are made holding applyLock, in log order.
+  private final Object applyLock = new Object();
+  private volatile Memtable active = new Memtable();
+  //Newest first, replaced holding applyLock.
+  private volatile List<Memtable> frozen = Collections.emptyList();
+
+  //Newest first, replaced holding the write lock; readers of the run files hold the read lock.
+  private final ReadWriteLock runLock = new ReentrantReadWriteLock();
+  private volatile List<SortedOrderRun> runs;
+
+  //Wakes the compactor, and writers waiting for flushes.
+  private final Object work = new Object();
+  private boolean compactorIdle;
+  private volatile boolean closed;
+
+  //Used by the compactor thread only, once started.
+  private long flushedLsn;
+  private long nextRunId;
+  private int flushesSinceLogCompaction;
+
+  private final AtomicLong userBytes = new AtomicLong();
+  private final AtomicLong flushedBytes = new AtomicLong();
+  private final AtomicLong compactedBytes = new AtomicLong();
+  private final AtomicLong flushes = new AtomicLong();
+  private final AtomicLong compactions = new AtomicLong();
+  private final AtomicLong writeStalls = new AtomicLong();
+
+  /**
+   * @param memtableBytes size the memtable is frozen and flushed at
+   * @param compactionBytesPerSecond most bytes a second merges write
+   */
+  public OrdersLsmRepository(File directory, FsyncPolicy policy, long syncIntervalMillis, int memtableBytes,
+                             long compactionBytesPerSecond) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create the order run directory " + directory);
+    }
+    this.directory = directory;
+    this.memtableBytes = memtableBytes;
+    this.compactionBytesPerSecond = compactionBytesPerSecond;
+    this.runs = load();
+    this.log = new OrdersWriteAheadLog(directory, policy, syncIntervalMillis);
+
+    log.replay(flushedLsn, new AbstractOrdersRepository() {
+      @Override
+      public Order save(Order order) {
+        apply(order.getKey(), OrderCodec.encode(order));
+        return order;
+      }
+
+      @Override
+      public void delete(UUID key) {
+        apply(key, SortedOrderRun.TOMBSTONE);
+      }
+
+      @Override
+      public Order compute(UUID key, OrderUpdate update) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Order findById(UUID key) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public List<Order> findAll() {
+        throw new UnsupportedOperationException();
+      }
+    });
+    synchronized (applyLock) {
+      committed();
+    }
+
+    compactor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        compactUntilClosed();
+      }
+    }, "order-run-compactor");
+    compactor.setDaemon(true);
+    compactor.setPriority(Thread.MIN_PRIORITY);
+    compactor.start();
+  }
+
+  @Override
+  public Order save(Order order) {
+    final UUID key = order.getKey();
+    final byte[] encoded = OrderCodec.encode(order);
+    awaitFlushes();
+    synchronized (locks.lockFor(key)) {
+      log.appendEncodedSave(encoded, new Runnable() {
+        @Override
+        public void run() {
+          synchronized (applyLock) {
+            apply(key, encoded);
+            committed();
+          }
+        }
+      });
+    }
+    return order;
+  }
+
+  @Override
+  public void delete(final UUID key) {
+    awaitFlushes();
+    synchronized (locks.lockFor(key)) {
+      log.appendDelete(key, new Runnable() {
+        @Override
+        public void run() {
+          synchronized (applyLock) {
+            apply(key, SortedOrderRun.TOMBSTONE);
+            committed();
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public List<Order> saveAll(Collection<Order> batch) {
+    final List<Order> saved = new ArrayList<Order>(batch);
+    if (saved.isEmpty()) {
+      return saved;
+    }
+    final List<UUID> keys = new ArrayList<UUID>(saved.size());
+    final List<byte[]> encoded = new ArrayList<byte[]>(saved.size());
+    for (Order order : saved) {
+      keys.add(order.getKey());
+      encoded.add(OrderCodec.encode(order));
+    }
+    awaitFlushes();
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        log.appendEncodedSaves(encoded, new Runnable() {
+          @Override
+          public void run() {
+            synchronized (applyLock) {
+              for (int i = 0; i < keys.size(); i++) {
+                apply(keys.get(i), encoded.get(i));
+              }
+              committed();
+            }
+          }
+        });
+      }
+    });
+    return saved;
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> batch) {
+    final List<UUID> keys = new ArrayList<UUID>(batch);
+    if (keys.isEmpty()) {
+      return;
+    }
+    awaitFlushes();
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        log.appendDeletes(keys, new Runnable() {
+          @Override
+          public void run() {
+            synchronized (applyLock) {
+              for (UUID key : keys) {
+                apply(key, SortedOrderRun.TOMBSTONE);
+              }
+              committed();
+            }
+          }
+        });
+      }
+    });
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    synchronized (locks.lockFor(key)) {
+      return applyUpdate(key, update);
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    byte[] encoded = find(key);
+    return encoded == null || encoded == SortedOrderRun.TOMBSTONE ? null : OrderCodec.decode(encoded);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    final List<Order> found = new ArrayList<Order>();
+    visitLive(new LiveEntries() {
+      @Override
+      void visit(UUID key, byte[] encoded) {
+        found.add(OrderCodec.decode(encoded));
+      }
+    });
+    return found;
+  }
+
+  /*
+   * Merged from the memtables and runs as findAll is, as each iteration starts, but without decoding.
+   */
+  @Override
+  public Iterable<UUID> keys() {
+    return new Iterable<UUID>() {
+      @Override
+      public Iterator<UUID> iterator() {
+        final List<UUID> found = new ArrayList<UUID>();
+        visitLive(new LiveEntries() {
+          @Override
+          void visit(UUID key, byte[] encoded) {
+            found.add(key);
+          }
+        });
+        return found.iterator();
+      }
+    };
+  }
+
+  public LsmTreeStatistics getStatistics() {
+    List<SortedOrderRun> current = runs;
+    long runBytes = 0;
+    for (SortedOrderRun run : current) {
+      runBytes += run.getBytes();
+    }
+    return new LsmTreeStatistics(userBytes.get(), flushedBytes.get(), compactedBytes.get(), flushes.get(),
+            compactions.get(), current.size(), runBytes, writeStalls.get(), cache.getHits(), cache.getMisses());
+  }
+
+  /*
+   * Waits until every frozen memtable is flushed and no merge is due, or the time is up.
+   */
+  boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (work) {
+      while (!(compactorIdle && frozen.isEmpty())) {
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+          return false;
+        }
+        work.wait(left);
+      }
+      return true;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    log.sync();
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (work) {
+      closed = true;
+      work.notifyAll();
+    }
+    try {
+      compactor.join(60000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    log.close();
+    runLock.writeLock().lock();
+    try {
+      for (SortedOrderRun run : runs) {
+        run.close();
+      }
+    } finally {
+      runLock.writeLock().unlock();
+    }
+    LOG.info("Closed order runs in {}: {}", directory, getStatistics());
+  }
+
+  private byte[] find(UUID key) {
+    //Read in this order, so an order being flushed or frozen is seen either where it was or where it went.
+    byte[] encoded = active.entries.get(key);
+    if (encoded != null) {
+      return encoded;
+    }
+    for (Memtable memtable : frozen) {
+      encoded = memtable.entries.get(key);
+      if (encoded != null) {
+        return encoded;
+      }
+    }
+    runLock.readLock().lock();
+    try {
+      for (SortedOrderRun run : runs) {
+        encoded = run.find(key);
+        if (encoded != null) {
+          return encoded;
+        }
+      }
+      return null;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read order " + key + " from the runs in " + directory, e);
+    } finally {
+      runLock.readLock().unlock();
+    }
+  }
+
+  /*
+   * Writes to the active memtable. Called holding applyLock, or from the constructor.
+   */
+  /*
+   * Visits the latest entry of every live order, in key order.
+   */
+  private void visitLive(LiveEntries visitor) {
+    List<Iterator<Map.Entry<UUID, byte[]>>> sources = new ArrayList<Iterator<Map.Entry<UUID, byte[]>>>();
+    List<SortedOrderRun.Entries> opened = new ArrayList<SortedOrderRun.Entries>();
+    //Read in this order, so an order being flushed or frozen is seen either where it was or where it went.
+    sources.add(active.entries.entrySet().iterator());
+    for (Memtable memtable : frozen) {
+      sources.add(memtable.entries.entrySet().iterator());
+    }
+    runLock.readLock().lock();
+    try {
+      for (SortedOrderRun run : runs) {
+        SortedOrderRun.Entries entries = run.entries();
+        opened.add(entries);
+        sources.add(entries);
+      }
+      SortedOrderMerge merge = new SortedOrderMerge(sources);
+      while (merge.hasNext()) {
+        Map.Entry<UUID, byte[]> entry = merge.next();
+        if (entry.getValue() != SortedOrderRun.TOMBSTONE) {
+          visitor.visit(entry.getKey(), entry.getValue());
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the order runs in " + directory, e);
+    } finally {
+      for (SortedOrderRun.Entries entries : opened) {
+        closeQuietly(entries);
+      }
+      runLock.readLock().unlock();
+    }
+  }
+
+  private void apply(UUID key, byte[] encoded) {
+    Memtable memtable = active;
+    memtable.entries.put(key, encoded);
+    memtable.bytes += SortedOrderRun.ENTRY_HEADER + encoded.length;
+    userBytes.addAndGet(SortedOrderRun.ENTRY_HEADER + encoded.length);
+  }
+
+  /*
+   * Notes that the active memtable holds everything logged so far, and freezes it if it is full.
+   * Called holding applyLock.
+   */
+  private void committed() {
+    Memtable memtable = active;
+    memtable.lastLsn = log.getCommittedLsn();
+    if (memtable.bytes < memtableBytes) {
+      return;
+    }
+    List<Memtable> frozenNow = new ArrayList<Memtable>(frozen.size() + 1);
+    frozenNow.add(memtable);
+    frozenNow.addAll(frozen);
+    //Frozen before it is replaced, so readers always find it in one or the other.
+    frozen = Collections.unmodifiableList(frozenNow);
+    active = new Memtable();
+    synchronized (work) {
+      work.notifyAll();
+    }
+  }
+
+  private void awaitFlushes() {
+    if (frozen.size() < MAX_FROZEN_MEMTABLES) {
+      return;
+    }
+    synchronized (work) {
+      if (frozen.size() >= MAX_FROZEN_MEMTABLES) {
+        writeStalls.incrementAndGet();
+      }
+      while (frozen.size() >= MAX_FROZEN_MEMTABLES && !closed) {
+        try {
+          work.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted waiting for orders to be flushed to " + directory, e);
+        }
+      }
+    }
+  }
+
+  private void compactUntilClosed() {
+    while (!closed) {
+      try {
+        flushFrozen();
+        if (!compact()) {
+          synchronized (work) {
+            compactorIdle = frozen.isEmpty();
+            work.notifyAll();
+            if (compactorIdle && !closed) {
+              work.wait(1000);
+            }
+            compactorIdle = false;
+          }
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (Exception e) {
+        LOG.error("Unable to flush or merge the order runs in {}", directory, e);
+        synchronized (work) {
+          try {
+            work.wait(1000);
+          } catch (InterruptedException interrupted) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /*
+   * Flushes the frozen memtables, oldest first, each to a new run.
+   */
+  private void flushFrozen() throws IOException {
+    List<Memtable> current = frozen;
+    while (!current.isEmpty() && !closed) {
+      Memtable oldest = current.get(current.size() - 1);
+
+      SortedOrderRun.Writer writer = new SortedOrderRun.Writer(runFile(nextRunId), nextRunId++);
+      SortedOrderRun run;
+      try {
+        for (Map.Entry<UUID, byte[]> entry : oldest.entries.entrySet()) {
+          writer.add(entry.getKey(), entry.getValue());
+        }
+        run = writer.finish(cache);
+      } catch (IOException e) {
+        writer.abandon();
+        throw e;
+      }
+
+      List<SortedOrderRun> withRun = new ArrayList<SortedOrderRun>(runs.size() + 1);
+      withRun.add(run);
+      withRun.addAll(runs);
+      install(withRun);
+      flushedLsn = oldest.lastLsn;
+      writeManifest();
+
+      //Dropped only once the run is there, so readers always find its orders in one or the other.
+      synchronized (applyLock) {
+        List<Memtable> rest = new ArrayList<Memtable>(frozen);
+        rest.remove(oldest);
+        frozen = Collections.unmodifiableList(rest);
+        current = frozen;
+      }
+      flushedBytes.addAndGet(run.getBytes());
+      flushes.incrementAndGet();
+      flushesSinceLogCompaction++;
+      synchronized (work) {
+        work.notifyAll();
+      }
+    }
+
+    //Copies the records not yet in a run to a new log, so this waits for a quiet moment.
+    if (current.isEmpty() && flushesSinceLogCompaction >= FLUSHES_PER_LOG_COMPACTION) {
+      log.compact(flushedLsn);
+      flushesSinceLogCompaction = 0;
+    }
+  }
+
+  /*
+   * Merges the newest set of runs of about the same size, if there is one. False if there is none.
+   */
+  private boolean compact() throws IOException, InterruptedException {
+    List<SortedOrderRun> current = runs;
+    int[] merge = pickMerge(current);
+    if (merge == null) {
+      return false;
+    }
+    List<SortedOrderRun> inputs = new ArrayList<SortedOrderRun>(current.subList(merge[0], merge[1]));
+    //Nothing older can hold an order a tombstone hides, so they can go.
+    boolean oldest = merge[1] == current.size();
+
+    SortedOrderRun.Writer writer = new SortedOrderRun.Writer(runFile(nextRunId), nextRunId++);
+    List<SortedOrderRun.Entries> sources = new ArrayList<SortedOrderRun.Entries>();
+    SortedOrderRun output = null;
+    try {
+      for (SortedOrderRun input : inputs) {
+        sources.add(input.entries());
+      }
+      SortedOrderMerge merged = new SortedOrderMerge(sources);
+      long started = System.nanoTime();
+      long paced = 0;
+      while (merged.hasNext()) {
+        Map.Entry<UUID, byte[]> entry = merged.next();
+        if (oldest && entry.getValue() == SortedOrderRun.TOMBSTONE) {
+          continue;
+        }
+        writer.add(entry.getKey(), entry.getValue());
+        if (writer.getBytesWritten() - paced >= SortedOrderRun.BLOCK_BYTES) {
+          paced = writer.getBytesWritten();
+          if (!pace(started, paced)) {
+            writer.abandon();
+            return false;
+          }
+        }
+      }
+      if (writer.getEntries() > 0) {
+        output = writer.finish(cache);
+      } else {
+        writer.abandon();
+      }
+    } catch (IOException e) {
+      writer.abandon();
+      throw e;
+    } finally {
+      for (SortedOrderRun.Entries source : sources) {
+        closeQuietly(source);
+      }
+    }
+
+    //Runs flushed meanwhile are newer, so they are ahead of the inputs.
+    List<SortedOrderRun> merged = new ArrayList<SortedOrderRun>(runs);
+    int at = merged.indexOf(inputs.get(0));
+    merged.subList(at, at + inputs.size()).clear();
+    if (output != null) {
+      merged.add(at, output);
+      compactedBytes.addAndGet(output.getBytes());
+    }
+    install(merged);
+    writeManifest();
+    for (SortedOrderRun input : inputs) {
+      input.delete();
+    }
+    compactions.incrementAndGet();
+    return true;
+  }
+
+  /*
+   * Keeps a merge to its rate, flushing any memtables frozen meanwhile first. False if closed.
+   */
+  private boolean pace(long started, long written) throws IOException, InterruptedException {
+    while (!closed) {
+      flushFrozen();
+      long ahead = (long) (written * 1e9 / compactionBytesPerSecond) - (System.nanoTime() - started);
+      if (ahead <= 0) {
+        return true;
+      }
+      synchronized (work) {
+        if (!closed && frozen.isEmpty()) {
+          work.wait(Math.max(1, Math.min(ahead / 1000000, 10)));
+        }
+      }
+    }
+    return false;
+  }
+
+  /*
+   * The start and end of the newest stretch of at least MIN_MERGE runs within MERGE_SIZE_RATIO of
+   * each other's size, or null.
+   */
+  static int[] pickMerge(List<SortedOrderRun> runs) {
+    for (int start = 0; start + MIN_MERGE <= runs.size(); start++) {
+      long smallest = runs.get(start).getBytes();
+      long largest = smallest;
+      int end = start + 1;
+      while (end < runs.size() && end - start < MAX_MERGE) {
+        long bytes = runs.get(end).getBytes();
+        if (Math.max(largest, bytes) > MERGE_SIZE_RATIO * Math.min(smallest, bytes)) {
+          break;
+        }
+        smallest = Math.min(smallest, bytes);
+        largest = Math.max(largest, bytes);
+        end++;
+      }
+      if (end - start >= MIN_MERGE) {
+        return new int[]{start, end};
+      }
+    }
+    return null;
+  }
+
+  private void install(List<SortedOrderRun> newRuns) {
+    runLock.writeLock().lock();
+    try {
+      runs = Collections.unmodifiableList(newRuns);
+    } finally {
+      runLock.writeLock().unlock();
+    }
+  }
+
+  /*
+   * Opens the runs the manifest lists, deleting any other run files, left by a flush or merge
+   * cut short.
+   */
+  private List<SortedOrderRun> load() throws IOException {
+    List<Long> ids = new ArrayList<Long>();
+    flushedLsn = -1;
+    File manifest = new File(directory, MANIFEST);
+    if (manifest.exists()) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+      try {
+        if (in.readLong() != MANIFEST_MAGIC) {
+          throw new IOException(manifest + " is not an order run manifest");
+        }
+        flushedLsn = in.readLong();
+        nextRunId = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          ids.add(in.readLong());
+        }
+      } finally {
+        in.close();
+      }
+    }
+
+    File[] files = directory.listFiles();
+    for (File file : files == null ? new File[0] : files) {
+      Matcher matcher = RUN_FILE.matcher(file.getName());
+      boolean listed = matcher.matches() && ids.contains(Long.parseLong(matcher.group(1)));
+      if (!listed && (matcher.matches() || file.getName().endsWith(".sst.tmp"))) {
+        LOG.warn("Deleting unlisted order run {}", file);
+        file.delete();
+      }
+    }
+
+    List<SortedOrderRun> loaded = new ArrayList<SortedOrderRun>(ids.size());
+    for (long id : ids) {
+      loaded.add(SortedOrderRun.open(runFile(id), id, cache));
+    }
+    return Collections.unmodifiableList(loaded);
+  }
+
+  private void writeManifest() throws IOException {
+    File manifest = new File(directory, MANIFEST);
+    File temporary = new File(directory, MANIFEST + ".tmp");
+    FileOutputStream stream = new FileOutputStream(temporary);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+    try {
+      out.writeLong(MANIFEST_MAGIC);
+      out.writeLong(flushedLsn);
+      out.writeLong(nextRunId);
+      out.writeInt(runs.size());
+      for (SortedOrderRun run : runs) {
+        out.writeLong(run.getId());
+      }
+      out.flush();
+      stream.getFD().sync();
+    } finally {
+      out.close();
+    }
+    Files.move(temporary.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private File runFile(long id) {
+    return new File(directory, "run-" + id + ".sst");
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      //Only read from.
+    }
+  }
+
+  private abstract static class LiveEntries {
+    abstract void visit(UUID key, byte[] encoded);
+  }
+
+  private static final class Memtable {
+    final ConcurrentSkipListMap<UUID, byte[]> entries = new ConcurrentSkipListMap<UUID, byte[]>();
+    //Written holding applyLock.
+    volatile long bytes;
+    volatile long lastLsn;
+  }
+}
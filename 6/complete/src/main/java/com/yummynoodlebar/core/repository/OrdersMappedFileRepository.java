@@ -0,0 +1,840 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps orders outside the Java heap, in memory mapped files under a directory.
+ * <p>
+ * Orders are appended in {@link OrderCodec} form to fixed size segment files, and located through an
+ * open addressing hash index, itself a mapped file, keyed by the two longs of the order key.
+ * The index also holds each order's submission time, so pages are selected without decoding orders.
+ * The heap only holds the file mappings, so its size does not depend on the number of orders;
+ * an {@link Order} is decoded on each read. Reopening the same directory re-maps the files,
+ * and if the index file is missing it is rebuilt by scanning the segments.
+ * <p>
+ * Space used by overwritten or deleted orders, and by tombstones, is reclaimed by {@link #compact}, run
+ * in the background once at least half the segments on disk is reclaimable. It moves the live orders of
+ * the oldest full segment to the end of the store and deletes the segment, oldest first, as tombstones
+ * may still hide orders in older segments until those have gone. Reads and writes wait while a segment
+ * is moved, and go on between segments.
+ */
+public class OrdersMappedFileRepository extends AbstractOrdersRepository implements DurableOrdersStore, Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersMappedFileRepository.class);
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final int INITIAL_CAPACITY = 1 << 16;
+  private static final int MAX_CAPACITY = 1 << 25;
+
+  private static final String INDEX_FILE = "orders.idx";
+  private static final String SEGMENT_PREFIX = "orders-";
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  private static final long INDEX_MAGIC = 0x594e4249445802L;
+  private static final int HEADER_SIZE = 64;
+  private static final int HEADER_MAGIC = 0;
+  private static final int HEADER_CAPACITY = 8;
+  private static final int HEADER_SIZE_FIELD = 12;
+  private static final int HEADER_USED_SLOTS = 16;
+  private static final int HEADER_SEGMENT = 20;
+  private static final int HEADER_WRITE_OFFSET = 24;
+  private static final int HEADER_RECLAIMABLE = 32;
+
+  private static final int SLOT_SIZE = 40;
+  private static final int SLOT_MSB = 0;
+  private static final int SLOT_LSB = 8;
+  private static final int SLOT_SEGMENT = 16;
+  private static final int SLOT_OFFSET = 20;
+  private static final int SLOT_SUBMITTED = 24;
+  private static final int SLOT_STATE = 32;
+
+  private static final int STATE_EMPTY = 0;
+  private static final int STATE_LIVE = 1;
+  private static final int STATE_DELETED = 2;
+
+  private static final int RECORD_HEADER = 4;
+  private static final int TOMBSTONE = -1;
+  private static final int KEY_SIZE = 16;
+  //The codec writes a version byte, then the key and the submission time.
+  private static final int PAYLOAD_KEY_OFFSET = 1;
+  private static final int PAYLOAD_SUBMITTED_OFFSET = PAYLOAD_KEY_OFFSET + KEY_SIZE;
+
+  private final File directory;
+  private final int segmentSize;
+  //By segment number, null for those compacted away.
+  private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<MappedByteBuffer>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final ScheduledExecutorService compactor;
+
+  private MappedByteBuffer index;
+  private int capacity;
+  private int size;
+  private int usedSlots;
+  private int writeSegment;
+  private int writeOffset;
+  private long reclaimable;
+
+  public OrdersMappedFileRepository(File directory) throws IOException {
+    this(directory, DEFAULT_SEGMENT_SIZE);
+  }
+
+  public OrdersMappedFileRepository(File directory, int segmentSize) throws IOException {
+    this(directory, segmentSize, 0);
+  }
+
+  /**
+   * @param compactionCheckIntervalMillis how often to check whether to compact, or 0 to leave it to
+   *                                      calls of {@link #compact}
+   */
+  public OrdersMappedFileRepository(File directory, int segmentSize, long compactionCheckIntervalMillis)
+          throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create order store directory " + directory);
+    }
+
+    int first = firstSegmentOnDisk();
+    for (int i = 0; i < first; i++) {
+      segments.add(null);
+    }
+    for (int i = first; segmentFile(i).exists(); i++) {
+      segments.add(map(segmentFile(i), segmentFile(i).length()));
+    }
+    if (segments.size() == first) {
+      segments.add(map(segmentFile(first), segmentSize));
+    }
+
+    File indexFile = new File(directory, INDEX_FILE);
+    if (!indexFile.exists() || !openIndex(indexFile)) {
+      createIndex(indexFile, INITIAL_CAPACITY);
+      rebuildIndex();
+    }
+
+    if (compactionCheckIntervalMillis > 0) {
+      compactor = Executors.newSingleThreadScheduledExecutor();
+      compactor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (needsCompaction()) {
+              compact();
+            }
+          } catch (Exception e) {
+            LOG.error("Unable to compact the order segments in {}", OrdersMappedFileRepository.this.directory, e);
+          }
+        }
+      }, compactionCheckIntervalMillis, compactionCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    } else {
+      compactor = null;
+    }
+  }
+
+  @Override
+  public Order save(Order order) {
+    byte[] payload = OrderCodec.encode(order);
+
+    lock.writeLock().lock();
+    try {
+      appendOrder(order, payload);
+      return order;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public List<Order> saveAll(Collection<Order> orders) {
+    List<Order> batch = new ArrayList<Order>(orders);
+    List<byte[]> payloads = new ArrayList<byte[]>(batch.size());
+    for (Order order : batch) {
+      payloads.add(OrderCodec.encode(order));
+    }
+
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < batch.size(); i++) {
+        appendOrder(batch.get(i), payloads.get(i));
+      }
+      return batch;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void delete(UUID key) {
+    deleteAll(Collections.singleton(key));
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> keys) {
+    lock.writeLock().lock();
+    try {
+      boolean deleted = false;
+      for (UUID key : keys) {
+        int slot = findSlot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        if (slot < 0) {
+          continue;
+        }
+        byte[] keyBytes = ByteBuffer.allocate(KEY_SIZE)
+                .putLong(key.getMostSignificantBits())
+                .putLong(key.getLeastSignificantBits())
+                .array();
+        reclaimable += recordSize(slot) + RECORD_HEADER + KEY_SIZE;
+        append(TOMBSTONE, keyBytes);
+        index.putInt(slotBase(slot) + SLOT_STATE, STATE_DELETED);
+        size--;
+        deleted = true;
+      }
+      if (deleted) {
+        writeHeader();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void appendOrder(Order order, byte[] payload) {
+    UUID key = order.getKey();
+    if (RECORD_HEADER + payload.length + RECORD_HEADER > segmentSize) {
+      throw new IllegalArgumentException("Order " + key + " does not fit in a segment");
+    }
+    int offset = append(payload.length, payload);
+    putSlot(key.getMostSignificantBits(), key.getLeastSignificantBits(),
+            OrderCursor.submissionTime(order.getDateTimeOfSubmission()), writeSegment, offset);
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    lock.writeLock().lock();
+    try {
+      return applyUpdate(key, update);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    ByteBuffer segment;
+    int offset;
+
+    lock.readLock().lock();
+    try {
+      int slot = findSlot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+      if (slot < 0) {
+        return null;
+      }
+      segment = segments.get(index.getInt(slotBase(slot) + SLOT_SEGMENT));
+      offset = index.getInt(slotBase(slot) + SLOT_OFFSET);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    //Records are never modified once written, and a compacted segment stays mapped until it is no longer
+    //referenced, so decoding can happen outside the lock.
+    return read(segment, offset);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    List<Order> orders = new ArrayList<Order>(size());
+    for (Order order : scan()) {
+      orders.add(order);
+    }
+    return Collections.unmodifiableList(orders);
+  }
+
+  /*
+   * The locations of the orders are copied from the index as each iteration starts, and the orders
+   * decoded one at a time as they are iterated, so a query holds one order rather than all of them.
+   */
+  @Override
+  protected Iterable<Order> scan() {
+    return new Iterable<Order>() {
+      @Override
+      public Iterator<Order> iterator() {
+        final long[] locations;
+        final ByteBuffer[] mapped;
+        lock.readLock().lock();
+        try {
+          mapped = segments.toArray(new ByteBuffer[segments.size()]);
+          locations = new long[size];
+          int found = 0;
+          for (int slot = 0; slot < capacity; slot++) {
+            int base = slotBase(slot);
+            if (index.getInt(base + SLOT_STATE) == STATE_LIVE) {
+              locations[found++] =
+                      ((long) index.getInt(base + SLOT_SEGMENT) << 32) | index.getInt(base + SLOT_OFFSET);
+            }
+          }
+        } finally {
+          lock.readLock().unlock();
+        }
+        return new Iterator<Order>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < locations.length;
+          }
+
+          @Override
+          public Order next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            long location = locations[next++];
+            return read(mapped[(int) (location >>> 32)], (int) location);
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    if (limit <= 0) {
+      return Collections.emptyList();
+    }
+    //Each candidate is {submitted, msb, lsb, location}; the head of the queue is the last one in order.
+    PriorityQueue<long[]> candidates = new PriorityQueue<long[]>(limit, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] first, long[] second) {
+        return -compareSlots(first, second);
+      }
+    });
+
+    long[] cursor = after == null ? null : new long[]{
+            after.getSubmissionTime(), after.getKey().getMostSignificantBits(), after.getKey().getLeastSignificantBits()};
+
+    ByteBuffer[] mapped;
+    lock.readLock().lock();
+    try {
+      mapped = segments.toArray(new ByteBuffer[segments.size()]);
+      for (int slot = 0; slot < capacity; slot++) {
+        int base = slotBase(slot);
+        if (index.getInt(base + SLOT_STATE) != STATE_LIVE) {
+          continue;
+        }
+        long[] candidate = {
+                index.getLong(base + SLOT_SUBMITTED), index.getLong(base + SLOT_MSB), index.getLong(base + SLOT_LSB),
+                ((long) index.getInt(base + SLOT_SEGMENT) << 32) | index.getInt(base + SLOT_OFFSET)};
+        if (cursor != null && compareSlots(candidate, cursor) <= 0) {
+          continue;
+        }
+        if (candidates.size() < limit) {
+          candidates.add(candidate);
+        } else if (compareSlots(candidate, candidates.peek()) < 0) {
+          candidates.poll();
+          candidates.add(candidate);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    List<long[]> selected = new ArrayList<long[]>(candidates);
+    Collections.sort(selected, new Comparator<long[]>() {
+      @Override
+      public int compare(long[] first, long[] second) {
+        return compareSlots(first, second);
+      }
+    });
+    List<Order> page = new ArrayList<Order>(selected.size());
+    for (long[] candidate : selected) {
+      page.add(read(mapped[(int) (candidate[3] >>> 32)], (int) candidate[3]));
+    }
+    return Collections.unmodifiableList(page);
+  }
+
+  /*
+   * Copied from the index as each iteration starts, two longs a key, without decoding any order.
+   */
+  @Override
+  public Iterable<UUID> keys() {
+    return new Iterable<UUID>() {
+      @Override
+      public Iterator<UUID> iterator() {
+        final long[] bits;
+        lock.readLock().lock();
+        try {
+          bits = new long[2 * size];
+          int found = 0;
+          for (int slot = 0; slot < capacity; slot++) {
+            int base = slotBase(slot);
+            if (index.getInt(base + SLOT_STATE) == STATE_LIVE) {
+              bits[found++] = index.getLong(base + SLOT_MSB);
+              bits[found++] = index.getLong(base + SLOT_LSB);
+            }
+          }
+        } finally {
+          lock.readLock().unlock();
+        }
+        return new Iterator<UUID>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < bits.length;
+          }
+
+          @Override
+          public UUID next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            UUID key = new UUID(bits[next], bits[next + 1]);
+            next += 2;
+            return key;
+          }
+
+          @Override
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  //TODOCUMENT Bytes of the segments taken by overwritten and deleted orders and by tombstones, which compact
+  //reclaims.
+  public long getReclaimableBytes() {
+    lock.readLock().lock();
+    try {
+      return reclaimable;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  //TODOCUMENT Whether at least half the bytes of the full segments are reclaimable.
+  public boolean needsCompaction() {
+    lock.readLock().lock();
+    try {
+      long full = 0;
+      for (int segment = 0; segment < writeSegment; segment++) {
+        if (segments.get(segment) != null) {
+          full += segments.get(segment).capacity();
+        }
+      }
+      return full > 0 && reclaimable >= full / 2;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  //TODOCUMENT Reclaims the space of the full segments: oldest first, the live orders of each are appended to the
+  //end of the store and the segment deleted. Reads and writes wait while a segment is moved.
+  public void compact() throws IOException {
+    int end;
+    lock.readLock().lock();
+    try {
+      end = writeSegment;
+    } finally {
+      lock.readLock().unlock();
+    }
+    //Only the segments full when it started, so orders moved into new segments aren't moved again.
+    for (int segment = 0; segment < end; segment++) {
+      lock.writeLock().lock();
+      try {
+        if (segments.get(segment) != null) {
+          moveLiveOrders(segment);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  @Override
+  public void flush() {
+    lock.readLock().lock();
+    try {
+      force();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (compactor != null) {
+      compactor.shutdown();
+      try {
+        compactor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    lock.writeLock().lock();
+    try {
+      force();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void force() {
+    for (MappedByteBuffer segment : segments) {
+      if (segment != null) {
+        segment.force();
+      }
+    }
+    index.force();
+  }
+
+  /*
+   * Appends the live orders of the segment to the end of the store, points the index at the copies,
+   * and once they are on disk deletes the segment. Its tombstones go with it, which is safe as every
+   * older segment has already gone.
+   */
+  private void moveLiveOrders(int number) throws IOException {
+    MappedByteBuffer segment = segments.get(number);
+    long moved = 0;
+    for (int slot = 0; slot < capacity; slot++) {
+      int base = slotBase(slot);
+      if (index.getInt(base + SLOT_STATE) != STATE_LIVE || index.getInt(base + SLOT_SEGMENT) != number) {
+        continue;
+      }
+      int offset = index.getInt(base + SLOT_OFFSET);
+      byte[] payload = new byte[segment.getInt(offset)];
+      ByteBuffer view = segment.duplicate();
+      view.position(offset + RECORD_HEADER);
+      view.get(payload);
+      int copied = append(payload.length, payload);
+      index.putInt(base + SLOT_SEGMENT, writeSegment);
+      index.putInt(base + SLOT_OFFSET, copied);
+      moved += RECORD_HEADER + payload.length;
+    }
+    reclaimable = Math.max(0, reclaimable - (usedBytes(segment) - moved));
+    writeHeader();
+    force();
+
+    segments.set(number, null);
+    File file = segmentFile(number);
+    if (!file.delete()) {
+      throw new IOException("Cannot delete the compacted order segment " + file);
+    }
+    LOG.debug("Compacted order segment {}, moving {} live bytes", file, moved);
+  }
+
+  /*
+   * The bytes of the segment up to the end of its last record.
+   */
+  private static int usedBytes(ByteBuffer segment) {
+    int offset = 0;
+    while (offset + RECORD_HEADER <= segment.capacity()) {
+      int length = segment.getInt(offset);
+      if (length == 0) {
+        break;
+      }
+      offset += RECORD_HEADER + (length == TOMBSTONE ? KEY_SIZE : length);
+    }
+    return offset;
+  }
+
+  private int recordSize(int slot) {
+    int base = slotBase(slot);
+    return RECORD_HEADER + segments.get(index.getInt(base + SLOT_SEGMENT)).getInt(index.getInt(base + SLOT_OFFSET));
+  }
+
+  private static Order read(ByteBuffer segment, int offset) {
+    ByteBuffer view = segment.duplicate();
+    view.position(offset + RECORD_HEADER);
+    return OrderCodec.decode(view);
+  }
+
+  /*
+   * Appends a record to the current segment, rolling over to a new one when it is full,
+   * and returns the offset it was written at in the (possibly new) write segment.
+   * The length is written last, so a record interrupted half way looks like the end of the segment.
+   */
+  private int append(int header, byte[] body) {
+    int recordSize = RECORD_HEADER + body.length;
+    if (writeOffset + recordSize + RECORD_HEADER > segments.get(writeSegment).capacity()) {
+      rollSegment();
+    }
+    MappedByteBuffer segment = segments.get(writeSegment);
+    int offset = writeOffset;
+
+    ByteBuffer view = segment.duplicate();
+    view.position(offset + RECORD_HEADER);
+    view.put(body);
+    segment.putInt(offset, header);
+
+    writeOffset += recordSize;
+    writeHeader();
+    return offset;
+  }
+
+  private void rollSegment() {
+    try {
+      segments.add(map(segmentFile(writeSegment + 1), segmentSize));
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot create a new order segment in " + directory, e);
+    }
+    writeSegment++;
+    writeOffset = 0;
+  }
+
+  private void rebuildIndex() {
+    for (int segment = 0; segment < segments.size(); segment++) {
+      MappedByteBuffer buffer = segments.get(segment);
+      if (buffer == null) {
+        continue;
+      }
+      int offset = 0;
+      while (offset + RECORD_HEADER <= buffer.capacity()) {
+        int length = buffer.getInt(offset);
+        if (length == 0) {
+          break;
+        }
+        if (length == TOMBSTONE) {
+          int slot = findSlot(buffer.getLong(offset + RECORD_HEADER), buffer.getLong(offset + RECORD_HEADER + 8));
+          if (slot >= 0) {
+            reclaimable += recordSize(slot);
+            index.putInt(slotBase(slot) + SLOT_STATE, STATE_DELETED);
+            size--;
+          }
+          reclaimable += RECORD_HEADER + KEY_SIZE;
+          offset += RECORD_HEADER + KEY_SIZE;
+        } else {
+          int keyOffset = offset + RECORD_HEADER + PAYLOAD_KEY_OFFSET;
+          putSlot(buffer.getLong(keyOffset), buffer.getLong(keyOffset + 8),
+                  buffer.getLong(offset + RECORD_HEADER + PAYLOAD_SUBMITTED_OFFSET), segment, offset);
+          offset += RECORD_HEADER + length;
+        }
+      }
+      writeSegment = segment;
+      writeOffset = offset;
+    }
+    writeHeader();
+  }
+
+  private int findSlot(long msb, long lsb) {
+    int mask = capacity - 1;
+    for (int slot = hash(msb, lsb) & mask; ; slot = (slot + 1) & mask) {
+      int base = slotBase(slot);
+      int state = index.getInt(base + SLOT_STATE);
+      if (state == STATE_EMPTY) {
+        return -1;
+      }
+      if (state == STATE_LIVE && index.getLong(base + SLOT_MSB) == msb && index.getLong(base + SLOT_LSB) == lsb) {
+        return slot;
+      }
+    }
+  }
+
+  private void putSlot(long msb, long lsb, long submitted, int segment, int offset) {
+    int mask = capacity - 1;
+    int reusable = -1;
+    int slot = hash(msb, lsb) & mask;
+    for (; ; slot = (slot + 1) & mask) {
+      int base = slotBase(slot);
+      int state = index.getInt(base + SLOT_STATE);
+      if (state == STATE_EMPTY) {
+        break;
+      }
+      if (state == STATE_DELETED) {
+        if (reusable < 0) {
+          reusable = slot;
+        }
+      } else if (index.getLong(base + SLOT_MSB) == msb && index.getLong(base + SLOT_LSB) == lsb) {
+        reclaimable += recordSize(slot);
+        writeSlot(slot, msb, lsb, submitted, segment, offset);
+        writeHeader();
+        return;
+      }
+    }
+
+    if (reusable >= 0) {
+      slot = reusable;
+    } else {
+      usedSlots++;
+    }
+    size++;
+    writeSlot(slot, msb, lsb, submitted, segment, offset);
+    writeHeader();
+
+    if (usedSlots > capacity / 10 * 7) {
+      resizeIndex(size > capacity / 10 * 3 ? capacity * 2 : capacity);
+    }
+  }
+
+  private void writeSlot(int slot, long msb, long lsb, long submitted, int segment, int offset) {
+    int base = slotBase(slot);
+    index.putLong(base + SLOT_MSB, msb);
+    index.putLong(base + SLOT_LSB, lsb);
+    index.putLong(base + SLOT_SUBMITTED, submitted);
+    index.putInt(base + SLOT_SEGMENT, segment);
+    index.putInt(base + SLOT_OFFSET, offset);
+    index.putInt(base + SLOT_STATE, STATE_LIVE);
+  }
+
+  private void resizeIndex(int newCapacity) {
+    if (newCapacity > MAX_CAPACITY) {
+      throw new IllegalStateException("Order index in " + directory + " is full");
+    }
+    MappedByteBuffer oldIndex = index;
+    int oldCapacity = capacity;
+    long oldReclaimable = reclaimable;
+
+    File indexFile = new File(directory, INDEX_FILE);
+    File resized = new File(directory, INDEX_FILE + ".resize");
+    try {
+      if (resized.exists() && !resized.delete()) {
+        throw new IOException("Cannot remove stale " + resized);
+      }
+      createIndex(resized, newCapacity);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot resize the order index in " + directory, e);
+    }
+    reclaimable = oldReclaimable;
+
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      int base = HEADER_SIZE + slot * SLOT_SIZE;
+      if (oldIndex.getInt(base + SLOT_STATE) == STATE_LIVE) {
+        putSlot(oldIndex.getLong(base + SLOT_MSB), oldIndex.getLong(base + SLOT_LSB), oldIndex.getLong(base + SLOT_SUBMITTED),
+                oldIndex.getInt(base + SLOT_SEGMENT), oldIndex.getInt(base + SLOT_OFFSET));
+      }
+    }
+    index.force();
+
+    if (!resized.renameTo(indexFile)) {
+      throw new IllegalStateException("Cannot replace the order index " + indexFile);
+    }
+  }
+
+  private boolean openIndex(File indexFile) throws IOException {
+    MappedByteBuffer existing = map(indexFile, indexFile.length());
+    if (existing.capacity() < HEADER_SIZE || existing.getLong(HEADER_MAGIC) != INDEX_MAGIC) {
+      return false;
+    }
+    index = existing;
+    capacity = index.getInt(HEADER_CAPACITY);
+    size = index.getInt(HEADER_SIZE_FIELD);
+    usedSlots = index.getInt(HEADER_USED_SLOTS);
+    writeSegment = index.getInt(HEADER_SEGMENT);
+    writeOffset = index.getInt(HEADER_WRITE_OFFSET);
+    reclaimable = index.getLong(HEADER_RECLAIMABLE);
+    return writeSegment < segments.size() && segments.get(writeSegment) != null;
+  }
+
+  private void createIndex(File indexFile, int newCapacity) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+    try {
+      file.setLength(0);
+    } finally {
+      file.close();
+    }
+    index = map(indexFile, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+    index.putLong(HEADER_MAGIC, INDEX_MAGIC);
+    capacity = newCapacity;
+    size = 0;
+    usedSlots = 0;
+    reclaimable = 0;
+    writeHeader();
+  }
+
+  private void writeHeader() {
+    index.putInt(HEADER_CAPACITY, capacity);
+    index.putInt(HEADER_SIZE_FIELD, size);
+    index.putInt(HEADER_USED_SLOTS, usedSlots);
+    index.putInt(HEADER_SEGMENT, writeSegment);
+    index.putInt(HEADER_WRITE_OFFSET, writeOffset);
+    index.putLong(HEADER_RECLAIMABLE, reclaimable);
+  }
+
+  private File segmentFile(int number) {
+    return new File(directory, SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+  }
+
+  /*
+   * The number of the oldest segment left, those before it having been compacted away, or 0 if none.
+   */
+  private int firstSegmentOnDisk() {
+    int first = -1;
+    String[] names = directory.list();
+    for (String name : names == null ? new String[0] : names) {
+      if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+        try {
+          int number = Integer.parseInt(
+                  name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+          first = first < 0 ? number : Math.min(first, number);
+        } catch (NumberFormatException e) {
+          //Not a segment.
+        }
+      }
+    }
+    return Math.max(first, 0);
+  }
+
+  private static int compareSlots(long[] first, long[] second) {
+    if (first[0] != second[0]) {
+      return first[0] < second[0] ? -1 : 1;
+    }
+    if (first[1] != second[1]) {
+      return first[1] < second[1] ? -1 : 1;
+    }
+    return first[2] < second[2] ? -1 : (first[2] == second[2] ? 0 : 1);
+  }
+
+  private static int slotBase(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private static int hash(long msb, long lsb) {
+    long h = msb * 0x9e3779b97f4a7c15L ^ lsb;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 29;
+    return (int) h;
+  }
+
+  private static MappedByteBuffer map(File file, long length) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    } finally {
+      raf.close();
+    }
+  }
+}
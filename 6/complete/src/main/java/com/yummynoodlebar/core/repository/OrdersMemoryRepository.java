@@ -9,12 +9,15 @@ import com.yummynoodlebar.core.events.orders.*;
 
 import java.util.*;
 
-public class OrdersMemoryRepository implements OrdersRepository {
+//TODOCUMENT Reads take no lock: writes copy the orders into a new map and swap it in whole, so a read sees
+//either all of a write or none of it. Each write, or batch, copies every order, so this suits stores read far
+//more than they are written; OrdersConcurrentRepository suits the rest.
+public class OrdersMemoryRepository extends AbstractOrdersRepository {
 
-  private Map<UUID, Order> orders;
+  private volatile Map<UUID, Order> orders;
 
   public OrdersMemoryRepository(final Map<UUID, Order> orders) {
-    this.orders = Collections.unmodifiableMap(orders);
+    this.orders = Collections.unmodifiableMap(new HashMap<UUID, Order>(orders));
   }
 
   @Override
@@ -36,6 +39,33 @@ public class OrdersMemoryRepository implements OrdersRepository {
     }
   }
 
+  /*
+   * One copy for the whole batch.
+   */
+  @Override
+  public synchronized List<Order> saveAll(Collection<Order> batch) {
+    Map<UUID, Order> modifiableOrders = new HashMap<UUID, Order>(orders);
+    for (Order order : batch) {
+      modifiableOrders.put(order.getKey(), order);
+    }
+    this.orders = Collections.unmodifiableMap(modifiableOrders);
+    return new ArrayList<Order>(batch);
+  }
+
+  @Override
+  public synchronized void deleteAll(Collection<UUID> keys) {
+    Map<UUID, Order> modifiableOrders = new HashMap<UUID, Order>(orders);
+    for (UUID key : keys) {
+      modifiableOrders.remove(key);
+    }
+    this.orders = Collections.unmodifiableMap(modifiableOrders);
+  }
+
+  @Override
+  public synchronized Order compute(UUID key, OrderUpdate update) {
+    return applyUpdate(key, update);
+  }
+
   @Override
   public Order findById(UUID key) {
     return orders.get(key);
@@ -45,4 +75,9 @@ public class OrdersMemoryRepository implements OrdersRepository {
   public List<Order> findAll() {
     return Collections.unmodifiableList(new ArrayList<Order>(orders.values()));
   }
+
+  @Override
+  public Iterable<UUID> keys() {
+    return orders.keySet();
+  }
 }
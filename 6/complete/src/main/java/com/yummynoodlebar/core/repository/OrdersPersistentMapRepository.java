@@ -0,0 +1,77 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+
+import java.util.*;
+
+/**
+ * Keeps the copy-on-write semantics of {@link OrdersMemoryRepository} (lock free reads of an
+ * immutable snapshot), but publishes a {@link PersistentOrderMap} instead of a full HashMap copy,
+ * so each write costs O(log n) and allocates only the changed path.
+ */
+public class OrdersPersistentMapRepository extends AbstractOrdersRepository {
+
+  private volatile PersistentOrderMap orders;
+
+  public OrdersPersistentMapRepository() {
+    this.orders = PersistentOrderMap.empty();
+  }
+
+  public OrdersPersistentMapRepository(final Map<UUID, Order> orders) {
+    this.orders = PersistentOrderMap.of(orders);
+  }
+
+  @Override
+  public synchronized Order save(Order order) {
+    this.orders = orders.plus(order.getKey(), order);
+    return order;
+  }
+
+  @Override
+  public synchronized void delete(UUID key) {
+    this.orders = orders.minus(key);
+  }
+
+  @Override
+  public synchronized List<Order> saveAll(Collection<Order> batch) {
+    this.orders = orders.plusAll(batch);
+    return new ArrayList<Order>(batch);
+  }
+
+  @Override
+  public synchronized void deleteAll(Collection<UUID> keys) {
+    this.orders = orders.minusAll(keys);
+  }
+
+  @Override
+  public synchronized Order compute(UUID key, OrderUpdate update) {
+    return applyUpdate(key, update);
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    return orders.get(key);
+  }
+
+  /*
+   * The current contents, as an immutable map unaffected by later writes. Costs O(1).
+   */
+  public PersistentOrderMap snapshot() {
+    return orders;
+  }
+
+  @Override
+  public List<Order> findAll() {
+    PersistentOrderMap snapshot = orders;
+    List<Order> all = new ArrayList<Order>(snapshot.size());
+    for (Order order : snapshot) {
+      all.add(order);
+    }
+    return Collections.unmodifiableList(all);
+  }
+
+  @Override
+  protected Iterable<Order> scan() {
+    return orders;
+  }
+}
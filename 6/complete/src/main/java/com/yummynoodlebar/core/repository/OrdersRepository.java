@@ -1,13 +1,18 @@
 package com.yummynoodlebar.core.repository;
 
+import com.yummynoodlebar.core.domain.ItemMatch;
 import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
 import com.yummynoodlebar.core.events.CreateEvent;
 import com.yummynoodlebar.core.events.DeleteEvent;
 import com.yummynoodlebar.core.events.RequestReadEvent;
 import com.yummynoodlebar.core.events.UpdatedEvent;
 import com.yummynoodlebar.core.events.orders.*;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 //TODO, make this event based again, with persistence integration events.
@@ -17,7 +22,59 @@ public interface OrdersRepository {
 
   void delete(UUID key);
 
+  //TODOCUMENT Batch writes. The whole batch is applied as one write where the store allows it,
+  //so it costs far less than saving or deleting each order on its own.
+  List<Order> saveAll(Collection<Order> orders);
+
+  void deleteAll(Collection<UUID> keys);
+
+  //TODOCUMENT Atomic read-modify-write of one order: no other write to the key lands between the read of
+  //the order given to the update and the write of the order it returns. Returns the order stored after.
+  Order compute(UUID key, OrderUpdate update);
+
+  //TODOCUMENT As compute, but leaves a key with no order alone without calling the update.
+  Order computeIfPresent(UUID key, OrderUpdate update);
+
+  //TODOCUMENT Removes the order if it meets the condition, atomically as compute. False if there was no
+  //order, or it didn't meet the condition.
+  boolean removeIf(UUID key, OrderCondition condition);
+
+  //TODOCUMENT Optimistic concurrency: saves the order as the next version only if the one stored is still at the
+  //expected version, 0 meaning there is none, atomically as compute. Throws OrderVersionConflictException if it
+  //isn't. Returns the order saved, a copy at its new version; the order given is left as it was. Plain saves
+  //store orders at whatever version they carry.
+  Order saveIfVersion(Order order, long expectedVersion);
+
   Order findById(UUID key);
 
   List<Order> findAll();
+
+  //TODOCUMENT The key of every order, in no particular order, listed without reading the orders where the store
+  //can. Every order stored throughout is listed; those saved or deleted meanwhile may or may not be.
+  Iterable<UUID> keys();
+
+  //TODOCUMENT Keyset pagination. Returns at most limit orders strictly after the cursor
+  //(from the start when it is null) in submission order, see OrderCursor.
+  //Pages stay stable under concurrent writes, no order is returned twice.
+  List<Order> findPage(OrderCursor after, int limit);
+
+  //TODOCUMENT Every order in submission order, for streaming them all. Orders are read about pageSize at a time,
+  //each page found after the last order of the one before, so only that many are held at once.
+  Iterable<Order> streamAll(int pageSize);
+
+  //TODOCUMENT Orders submitted at or after from and before to, in submission order.
+  //Either bound may be null to leave that end of the range open.
+  List<Order> findBySubmissionTime(Date from, Date to);
+
+  //TODOCUMENT Orders containing all, or any, of the given menu items, in submission order.
+  //No orders match an empty set of items.
+  List<Order> findByItems(Collection<String> items, ItemMatch match);
+
+  //TODOCUMENT Orders whose current status is the given one, in submission order.
+  List<Order> findByStatus(String status);
+
+  int countByStatus(String status);
+
+  //TODOCUMENT Number of orders in each current status, leaving out statuses no order is in.
+  Map<String, Integer> countByStatus();
 }
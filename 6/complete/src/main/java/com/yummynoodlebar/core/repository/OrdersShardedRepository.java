@@ -0,0 +1,375 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the orders over independent shards, chosen by a hash of the order key.
+ * <p>
+ * Each shard is a complete repository with its own storage and locks, so writes to different shards
+ * never contend. Queries over all orders are scattered to every shard in parallel on a
+ * {@link ForkJoinPool}, and the sorted results of the shards are merged, so results come back in the
+ * same order, and pages hold the same orders, as they would from a single repository.
+ */
+public class OrdersShardedRepository extends AbstractOrdersRepository implements Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersShardedRepository.class);
+
+  private final OrdersRepository[] shards;
+  private final ForkJoinPool pool;
+
+  public OrdersShardedRepository(List<? extends OrdersRepository> shards) {
+    this(shards, Math.min(shards.size(), Runtime.getRuntime().availableProcessors()));
+  }
+
+  public OrdersShardedRepository(List<? extends OrdersRepository> shards, int parallelism) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("At least one shard is needed");
+    }
+    this.shards = shards.toArray(new OrdersRepository[shards.size()]);
+    this.pool = new ForkJoinPool(Math.max(1, parallelism));
+  }
+
+  /*
+   * For subclasses whose shards change over time, which override shards() and shardFor(UUID).
+   */
+  protected OrdersShardedRepository(int parallelism) {
+    this.shards = null;
+    this.pool = new ForkJoinPool(Math.max(1, parallelism));
+  }
+
+  public int getShardCount() {
+    return shards().length;
+  }
+
+  @Override
+  public Order save(Order order) {
+    return shardFor(order.getKey()).save(order);
+  }
+
+  @Override
+  public void delete(UUID key) {
+    shardFor(key).delete(key);
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    return shardFor(key).compute(key, update);
+  }
+
+  @Override
+  public Order computeIfPresent(UUID key, OrderUpdate update) {
+    return shardFor(key).computeIfPresent(key, update);
+  }
+
+  @Override
+  public boolean removeIf(UUID key, OrderCondition condition) {
+    return shardFor(key).removeIf(key, condition);
+  }
+
+  @Override
+  public Order saveIfVersion(Order order, long expectedVersion) {
+    return shardFor(order.getKey()).saveIfVersion(order, expectedVersion);
+  }
+
+  /*
+   * Splits the batch by shard, and saves each shard's part of it as one batch.
+   */
+  @Override
+  public List<Order> saveAll(Collection<Order> orders) {
+    Map<OrdersRepository, List<Order>> byShard = new LinkedHashMap<OrdersRepository, List<Order>>();
+    for (Order order : orders) {
+      OrdersRepository shard = shardFor(order.getKey());
+      List<Order> part = byShard.get(shard);
+      if (part == null) {
+        part = new ArrayList<Order>();
+        byShard.put(shard, part);
+      }
+      part.add(order);
+    }
+    List<Order> saved = new ArrayList<Order>(orders.size());
+    for (Map.Entry<OrdersRepository, List<Order>> part : byShard.entrySet()) {
+      saved.addAll(part.getKey().saveAll(part.getValue()));
+    }
+    return saved;
+  }
+
+  @Override
+  public void deleteAll(Collection<UUID> keys) {
+    Map<OrdersRepository, List<UUID>> byShard = new LinkedHashMap<OrdersRepository, List<UUID>>();
+    for (UUID key : keys) {
+      OrdersRepository shard = shardFor(key);
+      List<UUID> part = byShard.get(shard);
+      if (part == null) {
+        part = new ArrayList<UUID>();
+        byShard.put(shard, part);
+      }
+      part.add(key);
+    }
+    for (Map.Entry<OrdersRepository, List<UUID>> part : byShard.entrySet()) {
+      part.getKey().deleteAll(part.getValue());
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    return shardFor(key).findById(key);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    List<Order> all = new ArrayList<Order>();
+    for (List<Order> orders : scatter(new ShardQuery<List<Order>>() {
+      @Override
+      public List<Order> query(OrdersRepository shard) {
+        return shard.findAll();
+      }
+    })) {
+      all.addAll(orders);
+    }
+    return Collections.unmodifiableList(all);
+  }
+
+  @Override
+  public List<Order> findPage(final OrderCursor after, final int limit) {
+    //Every order of the merged page is within the first limit orders after the cursor of its own shard.
+    return merge(scatter(new ShardQuery<List<Order>>() {
+      @Override
+      public List<Order> query(OrdersRepository shard) {
+        return shard.findPage(after, limit);
+      }
+    }), limit);
+  }
+
+  //TODOCUMENT The keys of each shard in turn.
+  @Override
+  public Iterable<UUID> keys() {
+    List<Iterable<UUID>> listings = new ArrayList<Iterable<UUID>>();
+    for (OrdersRepository shard : shards()) {
+      listings.add(shard.keys());
+    }
+    return OrderKeys.concat(listings);
+  }
+
+  //TODOCUMENT Each shard streams its own orders, started in parallel and together holding about a page of
+  //orders, and the streams are merged one order at a time.
+  @Override
+  public Iterable<Order> streamAll(int pageSize) {
+    final int shardPageSize = Math.max(1, pageSize / shards().length);
+    return new Iterable<Order>() {
+      @Override
+      public Iterator<Order> iterator() {
+        return new MergedStreams(scatter(new ShardQuery<Iterator<Order>>() {
+          @Override
+          public Iterator<Order> query(OrdersRepository shard) {
+            return shard.streamAll(shardPageSize).iterator();
+          }
+        }));
+      }
+    };
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(final Date from, final Date to) {
+    return merge(scatter(new ShardQuery<List<Order>>() {
+      @Override
+      public List<Order> query(OrdersRepository shard) {
+        return shard.findBySubmissionTime(from, to);
+      }
+    }), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<Order> findByItems(final Collection<String> items, final ItemMatch match) {
+    return merge(scatter(new ShardQuery<List<Order>>() {
+      @Override
+      public List<Order> query(OrdersRepository shard) {
+        return shard.findByItems(items, match);
+      }
+    }), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<Order> findByStatus(final String status) {
+    return merge(scatter(new ShardQuery<List<Order>>() {
+      @Override
+      public List<Order> query(OrdersRepository shard) {
+        return shard.findByStatus(status);
+      }
+    }), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    int count = 0;
+    for (OrdersRepository shard : shards()) {
+      count += shard.countByStatus(status);
+    }
+    return count;
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    Map<String, Integer> counts = new TreeMap<String, Integer>();
+    for (OrdersRepository shard : shards()) {
+      for (Map.Entry<String, Integer> count : shard.countByStatus().entrySet()) {
+        Integer total = counts.get(count.getKey());
+        counts.put(count.getKey(), total == null ? count.getValue() : total + count.getValue());
+      }
+    }
+    return counts;
+  }
+
+  @Override
+  public void close() throws IOException {
+    pool.shutdown();
+    IOException failure = null;
+    for (OrdersRepository shard : shards()) {
+      if (shard instanceof Closeable) {
+        try {
+          ((Closeable) shard).close();
+        } catch (IOException e) {
+          LOG.error("Unable to close shard {}", shard, e);
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  protected OrdersRepository[] shards() {
+    return shards;
+  }
+
+  protected OrdersRepository shardFor(UUID key) {
+    //UUID.hashCode() folds the key differently from the hash tables inside the shards, so each
+    //shard still spreads its own keys evenly.
+    return shards[(key.hashCode() & Integer.MAX_VALUE) % shards.length];
+  }
+
+  private interface ShardQuery<T> {
+    T query(OrdersRepository shard);
+  }
+
+  /*
+   * Merges streams each in submission order into one, keeping the next order of every stream in a heap.
+   */
+  private static final class MergedStreams implements Iterator<Order> {
+
+    private final PriorityQueue<Head> heads;
+
+    MergedStreams(List<Iterator<Order>> streams) {
+      heads = new PriorityQueue<Head>(Math.max(1, streams.size()));
+      for (Iterator<Order> stream : streams) {
+        if (stream.hasNext()) {
+          heads.add(new Head(stream.next(), stream));
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public Order next() {
+      Head head = heads.poll();
+      if (head == null) {
+        throw new NoSuchElementException();
+      }
+      if (head.rest.hasNext()) {
+        heads.add(new Head(head.rest.next(), head.rest));
+      }
+      return head.order;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private <T> List<T> scatter(final ShardQuery<T> query) {
+    OrdersRepository[] shards = shards();
+    if (shards.length == 1) {
+      return Collections.singletonList(query.query(shards[0]));
+    }
+    List<Callable<T>> tasks = new ArrayList<Callable<T>>(shards.length);
+    for (final OrdersRepository shard : shards) {
+      tasks.add(new Callable<T>() {
+        @Override
+        public T call() throws Exception {
+          return query.query(shard);
+        }
+      });
+    }
+    List<T> results = new ArrayList<T>(shards.length);
+    try {
+      for (Future<T> result : pool.invokeAll(tasks)) {
+        results.add(result.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted querying the order shards", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to query the order shards", e.getCause());
+    }
+    return results;
+  }
+
+  /*
+   * Merges lists each sorted in submission order into one, keeping at most limit orders.
+   */
+  static List<Order> merge(List<List<Order>> sorted, int limit) {
+    PriorityQueue<Head> heads = new PriorityQueue<Head>(Math.max(1, sorted.size()));
+    int total = 0;
+    for (List<Order> orders : sorted) {
+      total += orders.size();
+      Iterator<Order> iterator = orders.iterator();
+      if (iterator.hasNext()) {
+        heads.add(new Head(iterator.next(), iterator));
+      }
+    }
+    List<Order> merged = new ArrayList<Order>(Math.min(total, limit));
+    while (merged.size() < limit && !heads.isEmpty()) {
+      Head head = heads.poll();
+      merged.add(head.order);
+      if (head.rest.hasNext()) {
+        heads.add(new Head(head.rest.next(), head.rest));
+      }
+    }
+    return merged;
+  }
+
+  private static final class Head implements Comparable<Head> {
+    final Order order;
+    final Iterator<Order> rest;
+
+    Head(Order order, Iterator<Order> rest) {
+      this.order = order;
+      this.rest = rest;
+    }
+
+    @Override
+    public int compareTo(Head other) {
+      return OrderCursor.compareOrders(order, other.order);
+    }
+  }
+}
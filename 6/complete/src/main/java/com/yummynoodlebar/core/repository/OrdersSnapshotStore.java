@@ -0,0 +1,268 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Writes and loads binary snapshots of the full order set, each tagged with the log sequence number
+ * of the last write it contains.
+ * <p>
+ * A snapshot file is a header, then chunks of length prefixed {@link OrderCodec} records, then a
+ * directory of the chunks (offset, size, order count, checksum). The directory lets a load decode
+ * the chunks in parallel on every core. Snapshots are written to a temporary file and renamed into
+ * place, so a crash never leaves a partial snapshot behind.
+ */
+public class OrdersSnapshotStore {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersSnapshotStore.class);
+
+  public static final int DEFAULT_CHUNK_SIZE = 16384;
+
+  private static final String PREFIX = "orders-";
+  private static final String SUFFIX = ".snapshot";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+
+  private static final long MAGIC = 0x594e42534e4150L;
+  //magic, lsn, directory offset, chunk count.
+  private static final int HEADER = 8 + 8 + 8 + 4;
+  //offset, size, count, checksum.
+  private static final int DIRECTORY_ENTRY = 8 + 4 + 4 + 4;
+
+  private final File directory;
+  private final int chunkSize;
+  private final int parallelism;
+
+  public OrdersSnapshotStore(File directory) {
+    this(directory, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+  }
+
+  public OrdersSnapshotStore(File directory, int chunkSize, int parallelism) {
+    this.directory = directory;
+    this.chunkSize = chunkSize;
+    this.parallelism = parallelism;
+  }
+
+  public void write(long lsn, Iterable<Order> orders) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create snapshot directory " + directory);
+    }
+    long started = System.currentTimeMillis();
+    File target = snapshotFile(lsn);
+    File temporary = new File(target.getPath() + TEMPORARY_SUFFIX);
+
+    FileChannel out = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    int total = 0;
+    try {
+      long position = HEADER;
+      List<long[]> chunks = new ArrayList<long[]>();
+
+      List<byte[]> chunk = new ArrayList<byte[]>(chunkSize);
+      int chunkBytes = 0;
+      for (Order order : orders) {
+        byte[] encoded = OrderCodec.encode(order);
+        chunk.add(encoded);
+        chunkBytes += 4 + encoded.length;
+        if (chunk.size() == chunkSize) {
+          chunks.add(writeChunk(out, position, chunk, chunkBytes));
+          position += chunkBytes;
+          total += chunk.size();
+          chunk.clear();
+          chunkBytes = 0;
+        }
+      }
+      if (!chunk.isEmpty()) {
+        chunks.add(writeChunk(out, position, chunk, chunkBytes));
+        position += chunkBytes;
+        total += chunk.size();
+      }
+
+      ByteBuffer entries = ByteBuffer.allocate(chunks.size() * DIRECTORY_ENTRY);
+      for (long[] entry : chunks) {
+        entries.putLong(entry[0]);
+        entries.putInt((int) entry[1]);
+        entries.putInt((int) entry[2]);
+        entries.putInt((int) entry[3]);
+      }
+      entries.flip();
+      writeFully(out, entries, position);
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      header.putLong(MAGIC);
+      header.putLong(lsn);
+      header.putLong(position);
+      header.putInt(chunks.size());
+      header.flip();
+      writeFully(out, header, 0);
+
+      out.force(true);
+    } finally {
+      out.close();
+    }
+
+    Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    deleteSnapshotsBefore(lsn);
+
+    LOG.info("Wrote snapshot of {} orders up to LSN {} in {}ms", total, lsn, System.currentTimeMillis() - started);
+  }
+
+  /*
+   * Loads the most recent snapshot into the target repository, and returns its LSN, or -1 if there is none.
+   */
+  public long loadLatest(OrdersRepository target) throws IOException {
+    File latest = latestSnapshot();
+    if (latest == null) {
+      return -1;
+    }
+    long started = System.currentTimeMillis();
+
+    final FileChannel in = FileChannel.open(latest.toPath(), StandardOpenOption.READ);
+    ExecutorService decoders = Executors.newFixedThreadPool(parallelism);
+    try {
+      ByteBuffer header = readFully(in, 0, HEADER);
+      if (header.getLong() != MAGIC) {
+        throw new IOException(latest + " is not an order snapshot");
+      }
+      long lsn = header.getLong();
+      long directoryOffset = header.getLong();
+      int chunkCount = header.getInt();
+
+      ByteBuffer entries = readFully(in, directoryOffset, chunkCount * DIRECTORY_ENTRY);
+      List<Future<List<Order>>> decoded = new ArrayList<Future<List<Order>>>(chunkCount);
+      for (int i = 0; i < chunkCount; i++) {
+        final long offset = entries.getLong();
+        final int size = entries.getInt();
+        final int count = entries.getInt();
+        final int checksum = entries.getInt();
+        decoded.add(decoders.submit(new Callable<List<Order>>() {
+          @Override
+          public List<Order> call() throws Exception {
+            return readChunk(in, offset, size, count, checksum);
+          }
+        }));
+      }
+
+      int total = 0;
+      for (Future<List<Order>> chunk : decoded) {
+        for (Order order : chunk.get()) {
+          target.save(order);
+          total++;
+        }
+      }
+
+      LOG.info("Loaded snapshot of {} orders up to LSN {} in {}ms", total, lsn, System.currentTimeMillis() - started);
+      return lsn;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted loading snapshot " + latest, e);
+    } catch (ExecutionException e) {
+      throw new IOException("Unable to load snapshot " + latest, e.getCause());
+    } finally {
+      decoders.shutdownNow();
+      in.close();
+    }
+  }
+
+  private long[] writeChunk(FileChannel out, long position, List<byte[]> records, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (byte[] record : records) {
+      buffer.putInt(record.length);
+      buffer.put(record);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, size);
+    buffer.flip();
+    writeFully(out, buffer, position);
+    return new long[]{position, size, records.size(), (int) crc.getValue()};
+  }
+
+  private static List<Order> readChunk(FileChannel in, long offset, int size, int count, int checksum) throws IOException {
+    ByteBuffer buffer = readFully(in, offset, size);
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, size);
+    if ((int) crc.getValue() != checksum) {
+      throw new IOException("Corrupt snapshot chunk at offset " + offset);
+    }
+
+    List<Order> orders = new ArrayList<Order>(count);
+    for (int i = 0; i < count; i++) {
+      int length = buffer.getInt();
+      int next = buffer.position() + length;
+      orders.add(OrderCodec.decode(buffer));
+      buffer.position(next);
+    }
+    return orders;
+  }
+
+  private File latestSnapshot() {
+    File latest = null;
+    long latestLsn = Long.MIN_VALUE;
+    for (File candidate : snapshots()) {
+      long lsn = lsnOf(candidate);
+      if (lsn > latestLsn) {
+        latest = candidate;
+        latestLsn = lsn;
+      }
+    }
+    return latest;
+  }
+
+  private void deleteSnapshotsBefore(long lsn) {
+    for (File candidate : snapshots()) {
+      if (lsnOf(candidate) < lsn && !candidate.delete()) {
+        LOG.warn("Unable to delete old snapshot {}", candidate);
+      }
+    }
+  }
+
+  private File[] snapshots() {
+    File[] files = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+      }
+    });
+    return files == null ? new File[0] : files;
+  }
+
+  private File snapshotFile(long lsn) {
+    return new File(directory, PREFIX + lsn + SUFFIX);
+  }
+
+  private static long lsnOf(File snapshot) {
+    String name = snapshot.getName();
+    return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += out.write(buffer, position);
+    }
+  }
+
+  private static ByteBuffer readFully(FileChannel in, long position, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    while (buffer.hasRemaining()) {
+      int read = in.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of snapshot at offset " + (position + buffer.position()));
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,344 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps recent orders in a hot repository and moves the rest to {@link ColdOrderSegments} on disk:
+ * orders submitted more than a maximum age ago, and, whenever the heap is fuller than a threshold,
+ * the oldest orders left. Reads look in the hot tier first and fall back to the cold one, and
+ * queries merge both, so callers never see which tier an order is in. Pages and queries by status or
+ * items only read the cold blocks they need. Saving a cold order brings it back to the hot tier.
+ * <p>
+ * A background thread does the moving. Orders are compressed and written to disk without holding
+ * any lock, then each is dropped from the hot tier under a lock striped by key, and only if it
+ * hasn't changed since it was written, so saves and reads of hot orders carry on at full speed.
+ */
+public class OrdersTieredRepository extends AbstractOrdersRepository implements Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersTieredRepository.class);
+
+  public static final int DEFAULT_BATCH_SIZE = 10000;
+
+  private static final int STRIPES = 256;
+
+  private final OrdersRepository hot;
+  private final ColdOrderSegments cold;
+  private final long maxAgeMillis;
+  private final double heapThreshold;
+  private final int batchSize;
+  private final KeyLocks stripes = new KeyLocks(STRIPES);
+  private final ScheduledExecutorService demoter;
+
+  private volatile long demoted;
+
+  /**
+   * @param maxAgeMillis  orders submitted longer ago than this are moved, none if 0
+   * @param heapThreshold the oldest orders are moved while more than this fraction of the heap is used, never if 0
+   * @param intervalMillis how often to look for orders to move, only when asked to by {@link #demote()} if 0
+   */
+  public OrdersTieredRepository(OrdersRepository hot, ColdOrderSegments cold, long maxAgeMillis,
+                                double heapThreshold, long intervalMillis) throws IOException {
+    this(hot, cold, maxAgeMillis, heapThreshold, intervalMillis, DEFAULT_BATCH_SIZE);
+  }
+
+  public OrdersTieredRepository(OrdersRepository hot, ColdOrderSegments cold, long maxAgeMillis,
+                                double heapThreshold, long intervalMillis, int batchSize) throws IOException {
+    this.hot = hot;
+    this.cold = cold;
+    this.maxAgeMillis = maxAgeMillis;
+    this.heapThreshold = heapThreshold;
+    this.batchSize = batchSize;
+
+    //A crash between an order being written cold and being dropped from a durable hot tier leaves it in both.
+    for (UUID key : cold.keys()) {
+      if (hot.findById(key) != null) {
+        cold.remove(key);
+      }
+    }
+
+    if (intervalMillis > 0) {
+      demoter = Executors.newSingleThreadScheduledExecutor();
+      demoter.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            demote();
+          } catch (Exception e) {
+            LOG.error("Unable to move orders to the cold tier", e);
+          }
+        }
+      }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    } else {
+      demoter = null;
+    }
+  }
+
+  public ColdOrderSegments getColdTier() {
+    return cold;
+  }
+
+  public long getDemoted() {
+    return demoted;
+  }
+
+  @Override
+  public Order save(Order order) {
+    synchronized (stripes.lockFor(order.getKey())) {
+      hot.save(order);
+      removeCold(order.getKey());
+    }
+    return order;
+  }
+
+  @Override
+  public void delete(UUID key) {
+    synchronized (stripes.lockFor(key)) {
+      hot.delete(key);
+      removeCold(key);
+    }
+  }
+
+  @Override
+  public List<Order> saveAll(final Collection<Order> batch) {
+    final List<Order> saved = new ArrayList<Order>(batch.size());
+    List<UUID> keys = new ArrayList<UUID>(batch.size());
+    for (Order order : batch) {
+      keys.add(order.getKey());
+    }
+    stripes.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        saved.addAll(hot.saveAll(batch));
+        for (Order order : batch) {
+          removeCold(order.getKey());
+        }
+      }
+    });
+    return saved;
+  }
+
+  @Override
+  public void deleteAll(final Collection<UUID> keys) {
+    stripes.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        hot.deleteAll(keys);
+        for (UUID key : keys) {
+          removeCold(key);
+        }
+      }
+    });
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    synchronized (stripes.lockFor(key)) {
+      return applyUpdate(key, update);
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    Order order = hot.findById(key);
+    if (order == null) {
+      order = cold.find(key);
+      //It may have been saved hot again while being read cold.
+      if (order == null) {
+        order = hot.findById(key);
+      }
+    }
+    return order;
+  }
+
+  @Override
+  public List<Order> findAll() {
+    List<Order> all = new ArrayList<Order>(hot.findAll());
+    all.addAll(coldOnly(Long.MIN_VALUE, Long.MAX_VALUE));
+    return all;
+  }
+
+  /*
+   * The hot keys, then the cold ones, listed only once the hot have run out. An order is written cold
+   * before it is dropped from the hot tier, so one moved meanwhile is listed one way or the other.
+   */
+  @Override
+  public Iterable<UUID> keys() {
+    return OrderKeys.concat(Arrays.<Iterable<UUID>>asList(hot.keys(), new Iterable<UUID>() {
+      @Override
+      public Iterator<UUID> iterator() {
+        return cold.keys().iterator();
+      }
+    }));
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    OrderPageCollector page = new OrderPageCollector(after, limit);
+    page.offerAll(hot.findPage(after, limit));
+    if (cold.size() > 0) {
+      page.offerAll(notHot(cold.page(after, limit)));
+    }
+    return page.toList();
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    List<Order> found = new ArrayList<Order>(hot.findBySubmissionTime(from, to));
+    for (Order order : coldOnly(from == null ? Long.MIN_VALUE : from.getTime(), to == null ? Long.MAX_VALUE : to.getTime())) {
+      long submitted = OrderCursor.submissionTime(order.getDateTimeOfSubmission());
+      if ((from == null || submitted >= from.getTime()) && (to == null || submitted < to.getTime())) {
+        found.add(order);
+      }
+    }
+    Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    return found;
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    List<Order> found = new ArrayList<Order>(hot.findByItems(items, match));
+    if (cold.size() > 0 && !items.isEmpty()) {
+      found.addAll(notHot(cold.findByItems(items, match)));
+      Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    }
+    return found;
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    List<Order> found = new ArrayList<Order>(hot.findByStatus(status));
+    if (cold.countByStatus(status) > 0) {
+      found.addAll(notHot(cold.findByStatus(status)));
+      Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    }
+    return found;
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    return hot.countByStatus(status) + cold.countByStatus(status);
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    Map<String, Integer> counts = new TreeMap<String, Integer>(hot.countByStatus());
+    for (Map.Entry<String, Integer> entry : cold.countByStatus().entrySet()) {
+      Integer count = counts.get(entry.getKey());
+      counts.put(entry.getKey(), count == null ? entry.getValue() : count + entry.getValue());
+    }
+    return counts;
+  }
+
+  /*
+   * Moves the orders past the maximum age to the cold tier, then the oldest orders left while the
+   * heap is over its threshold, and returns how many were moved.
+   */
+  synchronized int demote() throws IOException {
+    int moved = 0;
+    if (maxAgeMillis > 0) {
+      List<Order> old = hot.findBySubmissionTime(null, new Date(System.currentTimeMillis() - maxAgeMillis));
+      for (int start = 0; start < old.size(); start += batchSize) {
+        moved += moveToCold(old.subList(start, Math.min(old.size(), start + batchSize)));
+      }
+    }
+    if (heapThreshold > 0 && heapUsed() > heapThreshold) {
+      //Each batch frees space only once collected, so move one batch a pass and look again at the next.
+      moved += moveToCold(hot.findPage(null, batchSize));
+    }
+    cold.deleteDeadSegments();
+    if (moved > 0) {
+      demoted += moved;
+      LOG.info("Moved {} orders to the cold tier, which now holds {}", moved, cold.size());
+    }
+    return moved;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (demoter != null) {
+      demoter.shutdown();
+      try {
+        demoter.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    cold.close();
+    if (hot instanceof Closeable) {
+      ((Closeable) hot).close();
+    }
+  }
+
+  private int moveToCold(List<Order> orders) throws IOException {
+    if (orders.isEmpty()) {
+      return 0;
+    }
+    List<byte[]> encoded = new ArrayList<byte[]>(orders.size());
+    for (Order order : orders) {
+      encoded.add(OrderCodec.encode(order));
+    }
+    long[] locations = cold.append(orders, encoded);
+
+    int moved = 0;
+    for (int i = 0; i < orders.size(); i++) {
+      Order order = orders.get(i);
+      synchronized (stripes.lockFor(order.getKey())) {
+        Order current = hot.findById(order.getKey());
+        //Written cold as it was when read; left hot if it has changed or gone since.
+        if (current != null && Arrays.equals(encoded.get(i), OrderCodec.encode(current))) {
+          cold.index(current, locations[i]);
+          hot.delete(order.getKey());
+          moved++;
+        }
+      }
+    }
+    return moved;
+  }
+
+  /*
+   * Cold orders that aren't also hot, submitted in the given range or near it.
+   */
+  private List<Order> coldOnly(long from, long to) {
+    if (cold.size() == 0) {
+      return Collections.emptyList();
+    }
+    return notHot(cold.scan(from, to));
+  }
+
+  /*
+   * Leaves out the cold orders that are hot too, while being moved or saved again.
+   */
+  private List<Order> notHot(List<Order> coldOrders) {
+    List<Order> found = new ArrayList<Order>(coldOrders.size());
+    for (Order order : coldOrders) {
+      if (hot.findById(order.getKey()) == null) {
+        found.add(order);
+      }
+    }
+    return found;
+  }
+
+  private void removeCold(UUID key) {
+    try {
+      cold.remove(key);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to remove order " + key + " from the cold tier", e);
+    }
+  }
+
+  private static double heapUsed() {
+    Runtime runtime = Runtime.getRuntime();
+    return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+  }
+}
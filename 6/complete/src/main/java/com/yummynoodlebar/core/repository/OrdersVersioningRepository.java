@@ -0,0 +1,540 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Multi-version concurrency control over another repository. {@link #snapshot} hands out a read only
+ * view of the orders as of one version, which stays the same over any number of calls while writes
+ * carry on. Each write is given the next version, a batch one version for all its orders, and while a
+ * snapshot is open records the orders it replaces before it is applied. A snapshot reads the repository
+ * underneath, indexes and all, and puts back the orders replaced by writes newer than itself, so
+ * nothing is copied.
+ * <p>
+ * Writes only wait for writes to the same keys. While no snapshot is open they record nothing and
+ * read nothing back, so the layer costs them a version each; taking a snapshot waits out the writes
+ * already under way instead, parked until they end.
+ * <p>
+ * Replaced orders are kept only while an open snapshot is older than the write that replaced them.
+ * A snapshot is released when closed, or once it is no longer referenced and has been garbage
+ * collected. Orders are versioned as saved: one changed in place without being saved again changes in
+ * every snapshot that holds it.
+ */
+public class OrdersVersioningRepository extends AbstractOrdersRepository implements OrderSnapshots, Closeable {
+
+  private final OrdersRepository orders;
+  private final KeyLocks locks = new KeyLocks();
+
+  //The orders replaced by writes to each key, newest write first.
+  private final ConcurrentHashMap<UUID, Replaced> replaced = new ConcurrentHashMap<UUID, Replaced>();
+  //The same, by the version of the write, so a snapshot only visits the writes newer than itself.
+  private final ConcurrentSkipListMap<Long, List<Replaced>> retained = new ConcurrentSkipListMap<Long, List<Replaced>>();
+
+  private final AtomicLong lastVersion = new AtomicLong();
+  private final Set<Write> writing = Collections.newSetFromMap(new ConcurrentHashMap<Write, Boolean>());
+  //Threads taking a snapshot, parked until the writes they wait for are given a version or end.
+  private final Set<Thread> waiting = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+  //Snapshots open or being taken; writes record what they replace while there are any.
+  private final AtomicInteger snapshotsOpen = new AtomicInteger();
+  private final AtomicLong snapshotSequence = new AtomicLong();
+  private final ConcurrentSkipListSet<SnapshotReference> references =
+          new ConcurrentSkipListSet<SnapshotReference>(SnapshotReference.BY_VERSION);
+  private final ReferenceQueue<OrderSnapshot> collected = new ReferenceQueue<OrderSnapshot>();
+  private final ReentrantLock reclaiming = new ReentrantLock();
+
+  public OrdersVersioningRepository(OrdersRepository orders) {
+    this.orders = orders;
+  }
+
+  /*
+   * The orders as of the last write begun before it, once the writes under way have completed.
+   * Writes begun after see the snapshot open, so record what they replace.
+   */
+  @Override
+  public OrderSnapshot snapshot() {
+    snapshotsOpen.incrementAndGet();
+    long version = lastVersion.get();
+    for (Write write : writing) {
+      awaitWrite(write, version);
+    }
+    OrderSnapshot snapshot = new OrderSnapshot(this, version);
+    snapshot.reference = new SnapshotReference(snapshot, version, snapshotSequence.incrementAndGet(), collected);
+    references.add(snapshot.reference);
+    return snapshot;
+  }
+
+  public long getVersion() {
+    return lastVersion.get();
+  }
+
+  public int getOpenSnapshots() {
+    return references.size();
+  }
+
+  //TODOCUMENT Number of replaced orders kept for open snapshots.
+  public int getRetainedOrders() {
+    int count = 0;
+    for (List<Replaced> writes : retained.values()) {
+      count += writes.size();
+    }
+    return count;
+  }
+
+  @Override
+  public Order save(Order order) {
+    synchronized (locks.lockFor(order.getKey())) {
+      Write write = begin(Collections.singleton(order.getKey()));
+      try {
+        return orders.save(order);
+      } finally {
+        end(write);
+      }
+    }
+  }
+
+  @Override
+  public List<Order> saveAll(final Collection<Order> batch) {
+    final List<Order> saved = new ArrayList<Order>(batch.size());
+    final List<UUID> keys = new ArrayList<UUID>(batch.size());
+    for (Order order : batch) {
+      keys.add(order.getKey());
+    }
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        Write write = begin(keys);
+        try {
+          saved.addAll(orders.saveAll(batch));
+        } finally {
+          end(write);
+        }
+      }
+    });
+    return saved;
+  }
+
+  @Override
+  public void delete(UUID key) {
+    synchronized (locks.lockFor(key)) {
+      Write write = begin(Collections.singleton(key));
+      try {
+        orders.delete(key);
+      } finally {
+        end(write);
+      }
+    }
+  }
+
+  @Override
+  public void deleteAll(final Collection<UUID> keys) {
+    locks.withLocksOf(keys, new Runnable() {
+      @Override
+      public void run() {
+        Write write = begin(keys);
+        try {
+          orders.deleteAll(keys);
+        } finally {
+          end(write);
+        }
+      }
+    });
+  }
+
+  @Override
+  public Order compute(UUID key, OrderUpdate update) {
+    synchronized (locks.lockFor(key)) {
+      return applyUpdate(key, update);
+    }
+  }
+
+  @Override
+  public Order findById(UUID key) {
+    return orders.findById(key);
+  }
+
+  @Override
+  public List<Order> findAll() {
+    return orders.findAll();
+  }
+
+  @Override
+  public Iterable<UUID> keys() {
+    return orders.keys();
+  }
+
+  @Override
+  public List<Order> findPage(OrderCursor after, int limit) {
+    return orders.findPage(after, limit);
+  }
+
+  @Override
+  public Iterable<Order> streamAll(int pageSize) {
+    return orders.streamAll(pageSize);
+  }
+
+  @Override
+  public List<Order> findBySubmissionTime(Date from, Date to) {
+    return orders.findBySubmissionTime(from, to);
+  }
+
+  @Override
+  public List<Order> findByItems(Collection<String> items, ItemMatch match) {
+    return orders.findByItems(items, match);
+  }
+
+  @Override
+  public List<Order> findByStatus(String status) {
+    return orders.findByStatus(status);
+  }
+
+  @Override
+  public int countByStatus(String status) {
+    return orders.countByStatus(status);
+  }
+
+  @Override
+  public Map<String, Integer> countByStatus() {
+    return orders.countByStatus();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (orders instanceof Closeable) {
+      ((Closeable) orders).close();
+    }
+  }
+
+  /*
+   * The queries of OrderSnapshot. Each reads the current orders first and then the orders replaced
+   * since the version: a write is recorded before it is applied, so every write the current orders
+   * include that is newer than the version is undone.
+   */
+
+  Order findById(UUID key, long version) {
+    Order order = orders.findById(key);
+    Replaced first = firstSince(replaced.get(key), version);
+    return first == null ? order : first.order;
+  }
+
+  List<Order> findAll(long version) {
+    return asOf(version, orders.findAll(), null, false);
+  }
+
+  List<Order> findPage(OrderCursor after, int limit, long version) {
+    int extra = 0;
+    while (true) {
+      List<Order> current = orders.findPage(after, limit + extra);
+      Map<UUID, Replaced> since = replacedSince(version);
+      OrderPageCollector page = new OrderPageCollector(after, limit);
+      int undone = 0;
+      for (Order order : current) {
+        if (since.containsKey(order.getKey())) {
+          undone++;
+        } else {
+          page.offer(order);
+        }
+      }
+      //Orders past the end of the page fetched come after all of it, so it is enough if as many
+      //current orders as were asked for are left, or there were no more.
+      if (undone <= extra || current.size() < limit + extra) {
+        for (Replaced first : since.values()) {
+          if (first.order != null) {
+            page.offer(first.order);
+          }
+        }
+        return page.toList();
+      }
+      extra = Math.max(undone, extra * 2);
+    }
+  }
+
+  List<Order> findBySubmissionTime(final Date from, final Date to, long version) {
+    return asOf(version, orders.findBySubmissionTime(from, to), new OrderMatch() {
+      @Override
+      boolean matches(Order order) {
+        long submitted = OrderCursor.submissionTime(order.getDateTimeOfSubmission());
+        return (from == null || submitted >= from.getTime()) && (to == null || submitted < to.getTime());
+      }
+    }, true);
+  }
+
+  List<Order> findByItems(final Collection<String> items, final ItemMatch match, long version) {
+    return asOf(version, orders.findByItems(items, match), new OrderMatch() {
+      @Override
+      boolean matches(Order order) {
+        return containsItems(order, items, match);
+      }
+    }, true);
+  }
+
+  List<Order> findByStatus(final String status, long version) {
+    return asOf(version, orders.findByStatus(status), new OrderMatch() {
+      @Override
+      boolean matches(Order order) {
+        return status.equals(statusName(order.getStatus()));
+      }
+    }, true);
+  }
+
+  void release(SnapshotReference reference) {
+    unregister(reference);
+    reclaim(true);
+  }
+
+  private List<Order> asOf(long version, List<Order> current, OrderMatch match, boolean sorted) {
+    Map<UUID, Replaced> since = replacedSince(version);
+    if (since.isEmpty()) {
+      return current;
+    }
+    List<Order> found = new ArrayList<Order>(current.size());
+    for (Order order : current) {
+      if (!since.containsKey(order.getKey())) {
+        found.add(order);
+      }
+    }
+    for (Replaced first : since.values()) {
+      if (first.order != null && (match == null || match.matches(first.order))) {
+        found.add(first.order);
+      }
+    }
+    if (sorted) {
+      Collections.sort(found, OrderCursor.SUBMISSION_ORDER);
+    }
+    return found;
+  }
+
+  /*
+   * For each key written since the version, the first such write, which holds the order as of it.
+   */
+  private Map<UUID, Replaced> replacedSince(long version) {
+    Map<UUID, Replaced> since = new HashMap<UUID, Replaced>();
+    for (List<Replaced> writes : retained.tailMap(version, false).values()) {
+      for (Replaced write : writes) {
+        if (!since.containsKey(write.key)) {
+          since.put(write.key, write);
+        }
+      }
+    }
+    return since;
+  }
+
+  private static Replaced firstSince(Replaced newest, long version) {
+    Replaced first = null;
+    for (Replaced write = newest; write != null && write.version > version; write = write.older) {
+      first = write;
+    }
+    return first;
+  }
+
+  private Map<UUID, Order> current(Collection<UUID> keys) {
+    Map<UUID, Order> current = new LinkedHashMap<UUID, Order>();
+    for (UUID key : keys) {
+      if (!current.containsKey(key)) {
+        current.put(key, orders.findById(key));
+      }
+    }
+    return current;
+  }
+
+  /*
+   * Registers the write as under way before it is given its version, so a snapshot taken meanwhile
+   * can't miss it. Only a write that sees a snapshot open reads back the orders it replaces: one that
+   * doesn't was given its version before the snapshot read the last, so the snapshot waits for it.
+   */
+  private Write begin(Collection<UUID> keys) {
+    Write write = new Write();
+    writing.add(write);
+    write.version = lastVersion.incrementAndGet();
+    wakeWaiting();
+    if (snapshotsOpen.get() > 0) {
+      List<Replaced> writes = new ArrayList<Replaced>(keys.size());
+      for (Map.Entry<UUID, Order> entry : current(keys).entrySet()) {
+        Replaced replacedByWrite = new Replaced(entry.getKey(), write.version, entry.getValue(),
+                replaced.get(entry.getKey()));
+        replaced.put(entry.getKey(), replacedByWrite);
+        writes.add(replacedByWrite);
+      }
+      retained.put(write.version, writes);
+    }
+    return write;
+  }
+
+  private void end(Write write) {
+    writing.remove(write);
+    wakeWaiting();
+    if (!retained.isEmpty()) {
+      reclaim(false);
+    }
+  }
+
+  /*
+   * Parks until the write has ended or been given a version newer than the snapshot's. The thread
+   * counts itself waiting before checking again, and writes check for waiting threads after they
+   * change, so whichever comes second sees the other.
+   */
+  private void awaitWrite(Write write, long version) {
+    if (!mustAwait(write, version)) {
+      return;
+    }
+    Thread current = Thread.currentThread();
+    waiting.add(current);
+    try {
+      while (mustAwait(write, version)) {
+        LockSupport.park(this);
+      }
+    } finally {
+      waiting.remove(current);
+    }
+  }
+
+  private boolean mustAwait(Write write, long version) {
+    return writing.contains(write) && (write.version == 0 || write.version <= version);
+  }
+
+  private void wakeWaiting() {
+    if (!waiting.isEmpty()) {
+      for (Thread thread : waiting) {
+        LockSupport.unpark(thread);
+      }
+    }
+  }
+
+  /*
+   * Drops the replaced orders no open snapshot, nor any taken from now on, is older than. Writes leave
+   * it to whoever is reclaiming already; a released snapshot waits its turn. Either goes round again
+   * if more could be dropped by the time it is done.
+   */
+  private void reclaim(boolean wait) {
+    do {
+      if (wait) {
+        reclaiming.lock();
+      } else if (!reclaiming.tryLock()) {
+        return;
+      }
+      try {
+        SnapshotReference reference;
+        while ((reference = (SnapshotReference) collected.poll()) != null) {
+          unregister(reference);
+        }
+        long horizon = horizon();
+        Map.Entry<Long, List<Replaced>> oldest;
+        while ((oldest = retained.firstEntry()) != null && oldest.getKey() <= horizon) {
+          for (Replaced write : oldest.getValue()) {
+            drop(write);
+          }
+          retained.remove(oldest.getKey());
+        }
+      } finally {
+        reclaiming.unlock();
+      }
+      wait = false;
+    } while (reclaimable());
+  }
+
+  private boolean reclaimable() {
+    Map.Entry<Long, List<Replaced>> oldest = retained.firstEntry();
+    return oldest != null && oldest.getKey() <= horizon();
+  }
+
+  /*
+   * The version no snapshot is older than. A snapshot still being taken will be as new as the last
+   * version once it has counted itself open, but until it is registered its version isn't known, so
+   * then nothing is dropped.
+   */
+  private long horizon() {
+    long horizon = lastVersion.get();
+    if (snapshotsOpen.get() > references.size()) {
+      return Long.MIN_VALUE;
+    }
+    try {
+      return Math.min(horizon, references.first().version);
+    } catch (NoSuchElementException e) {
+      return horizon;
+    }
+  }
+
+  /*
+   * Writes are dropped oldest first, so the write is the oldest left for its key. A write to the key
+   * under way may still link to it, which is harmless: it is older than every snapshot.
+   */
+  private void drop(Replaced write) {
+    Replaced newest = replaced.get(write.key);
+    if (newest == write) {
+      replaced.remove(write.key, write);
+      return;
+    }
+    for (Replaced newer = newest; newer != null; newer = newer.older) {
+      if (newer.older == write) {
+        newer.older = null;
+        return;
+      }
+    }
+  }
+
+  private void unregister(SnapshotReference reference) {
+    if (references.remove(reference)) {
+      snapshotsOpen.decrementAndGet();
+    }
+  }
+
+  private static final class Replaced {
+    final UUID key;
+    final long version;
+    //The order before the write, null if there was none.
+    final Order order;
+    volatile Replaced older;
+
+    Replaced(UUID key, long version, Order order, Replaced older) {
+      this.key = key;
+      this.version = version;
+      this.order = order;
+      this.older = older;
+    }
+  }
+
+  private static final class Write {
+    //0 until given one.
+    volatile long version;
+  }
+
+  private abstract static class OrderMatch {
+    abstract boolean matches(Order order);
+  }
+
+  static final class SnapshotReference extends WeakReference<OrderSnapshot> {
+
+    static final Comparator<SnapshotReference> BY_VERSION = new Comparator<SnapshotReference>() {
+      @Override
+      public int compare(SnapshotReference a, SnapshotReference b) {
+        if (a.version != b.version) {
+          return a.version < b.version ? -1 : 1;
+        }
+        return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+      }
+    };
+
+    final long version;
+    final long sequence;
+
+    SnapshotReference(OrderSnapshot snapshot, long version, long sequence, ReferenceQueue<OrderSnapshot> queue) {
+      super(snapshot, queue);
+      this.version = version;
+      this.sequence = sequence;
+    }
+  }
+}
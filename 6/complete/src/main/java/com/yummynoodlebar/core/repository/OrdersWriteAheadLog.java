@@ -0,0 +1,571 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of order saves and deletes, written through a {@link FileChannel}.
+ * <p>
+ * Writers use group commit: the first writer to arrive while no write is in progress becomes the
+ * leader and writes, and if the {@link FsyncPolicy} requires it forces, every record queued so far
+ * in one go, while the others wait for it. Each record carries a log sequence number (LSN) and a
+ * checksum, so a record torn by a crash is detected and cut off when the log is reopened.
+ * <p>
+ * Once a snapshot covers everything up to some LSN, {@link #compact} drops the records it contains.
+ * The file header keeps the LSN the log starts after, so numbering carries on across compactions.
+ * <p>
+ * A batch that cannot be written is cut off the end of the file again, so that later batches are not
+ * appended after torn bytes that recovery would stop at. If that is not possible, or syncing fails,
+ * the log is failed: what is on disk can no longer be trusted, and every later append throws.
+ */
+public class OrdersWriteAheadLog implements Closeable {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersWriteAheadLog.class);
+
+  public static final String LOG_FILE = "orders.wal";
+
+  static final byte SAVE = 1;
+  static final byte DELETE = 2;
+
+  private static final long MAGIC = 0x594e42574c4f47L;
+  //magic, then the LSN the log starts after.
+  private static final int FILE_HEADER = 8 + 8;
+
+  //length, lsn, type, then the payload and a checksum.
+  private static final int RECORD_HEADER = 4 + 8 + 1;
+  private static final int RECORD_TRAILER = 4;
+  private static final int KEY_SIZE = 16;
+
+  private final File file;
+  private volatile FileChannel channel;
+  private final FsyncPolicy policy;
+  private final ScheduledExecutorService syncer;
+  private volatile IOException failure;
+
+  private final Object lock = new Object();
+  private List<PendingRecord> pending = new ArrayList<PendingRecord>();
+  private boolean writing;
+  private boolean closed;
+  private long nextLsn;
+  private long committedLsn;
+
+  private long commits;
+  private long records;
+  private long syncs;
+  private int maxBatchSize;
+  private long totalCommitLatencyNanos;
+  private long maxCommitLatencyNanos;
+
+  public OrdersWriteAheadLog(File directory, FsyncPolicy policy, long syncIntervalMillis) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create log directory " + directory);
+    }
+    this.file = new File(directory, LOG_FILE);
+    this.policy = policy;
+    this.channel = open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    recover();
+
+    if (policy == FsyncPolicy.INTERVAL) {
+      syncer = Executors.newSingleThreadScheduledExecutor();
+      syncer.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            sync();
+          } catch (IOException e) {
+            //The log has failed, and says so on the next append.
+          }
+        }
+      }, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    } else {
+      syncer = null;
+    }
+  }
+
+  /*
+   * Logs a save and, once it is committed, runs the given action. Actions run in log order,
+   * which lets the caller apply changes to its own state in exactly the order they were logged.
+   */
+  public long appendSave(Order order, Runnable onCommit) {
+    return appendEncodedSave(OrderCodec.encode(order), onCommit);
+  }
+
+  /*
+   * As appendSave, for a caller that already has the order encoded with OrderCodec.
+   */
+  long appendEncodedSave(byte[] encoded, Runnable onCommit) {
+    return append(SAVE, encoded, onCommit);
+  }
+
+  public long appendDelete(UUID key, Runnable onCommit) {
+    return append(DELETE, keyBytes(key), onCommit);
+  }
+
+  /*
+   * Logs a batch of saves, committed together, and runs the action once all of them are.
+   */
+  public long appendSaves(Collection<Order> orders, Runnable onCommit) {
+    List<byte[]> encoded = new ArrayList<byte[]>(orders.size());
+    for (Order order : orders) {
+      encoded.add(OrderCodec.encode(order));
+    }
+    return appendEncodedSaves(encoded, onCommit);
+  }
+
+  long appendEncodedSaves(Collection<byte[]> encoded, Runnable onCommit) {
+    List<PendingRecord> batch = new ArrayList<PendingRecord>(encoded.size());
+    for (byte[] order : encoded) {
+      batch.add(new PendingRecord(SAVE, order, null));
+    }
+    return append(batch, onCommit);
+  }
+
+  public long appendDeletes(Collection<UUID> keys, Runnable onCommit) {
+    List<PendingRecord> batch = new ArrayList<PendingRecord>(keys.size());
+    for (UUID key : keys) {
+      batch.add(new PendingRecord(DELETE, keyBytes(key), null));
+    }
+    return append(batch, onCommit);
+  }
+
+  /*
+   * Applies every record with an LSN above the given one to the target repository, in log order.
+   */
+  public void replay(long afterLsn, OrdersRepository target) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    try {
+      long end = channel.size();
+      long position = FILE_HEADER;
+      in.skipBytes(FILE_HEADER);
+      while (position < end) {
+        int length = in.readInt();
+        byte[] body = new byte[length];
+        in.readFully(body);
+        in.readInt();
+        position += 4 + length + RECORD_TRAILER;
+
+        ByteBuffer record = ByteBuffer.wrap(body);
+        long lsn = record.getLong();
+        byte type = record.get();
+        if (lsn <= afterLsn) {
+          continue;
+        }
+        if (type == SAVE) {
+          target.save(OrderCodec.decode(record));
+        } else {
+          target.delete(new UUID(record.getLong(), record.getLong()));
+        }
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /*
+   * The LSN of the last record appended so far.
+   */
+  public long getLastLsn() {
+    synchronized (lock) {
+      return nextLsn - 1;
+    }
+  }
+
+  /*
+   * The LSN of the last committed record. Inside a commit action, this is the record being committed.
+   */
+  public long getCommittedLsn() {
+    synchronized (lock) {
+      return committedLsn;
+    }
+  }
+
+  /*
+   * Drops every record up to and including the given LSN, once a snapshot holds their effect.
+   * Writers wait while the remaining records are copied to a new file, which then replaces the log.
+   */
+  public void compact(long upToLsn) throws IOException {
+    synchronized (lock) {
+      while (writing) {
+        awaitQuietly();
+      }
+      writing = true;
+    }
+
+    try {
+      File compacted = new File(file.getPath() + ".compact");
+      FileChannel out = open(compacted.toPath(), StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        writeFileHeader(out, upToLsn);
+        copyRecordsAfter(upToLsn, out);
+        out.force(true);
+      } catch (IOException e) {
+        out.close();
+        throw e;
+      }
+
+      channel.close();
+      Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      channel = out;
+    } finally {
+      synchronized (lock) {
+        writing = false;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  public FsyncPolicy getPolicy() {
+    return policy;
+  }
+
+  public WriteAheadLogStatistics getStatistics() {
+    synchronized (lock) {
+      return new WriteAheadLogStatistics(commits, records, syncs, maxBatchSize,
+              totalCommitLatencyNanos, maxCommitLatencyNanos);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (syncer != null) {
+      syncer.shutdown();
+    }
+    synchronized (lock) {
+      closed = true;
+      while (writing) {
+        awaitQuietly();
+      }
+    }
+    channel.force(false);
+    channel.close();
+    LOG.info("Closed order log {}: {}", file, getStatistics());
+  }
+
+  private long append(byte type, byte[] payload, Runnable onCommit) {
+    List<PendingRecord> queued = new ArrayList<PendingRecord>(1);
+    queued.add(new PendingRecord(type, payload, null));
+    return append(queued, onCommit);
+  }
+
+  /*
+   * Queues the records together, so they are written in the same group commit, and runs the action
+   * when the last of them commits.
+   */
+  private long append(List<PendingRecord> queued, Runnable onCommit) {
+    if (queued.isEmpty()) {
+      onCommit.run();
+      return getCommittedLsn();
+    }
+    PendingRecord record = queued.get(queued.size() - 1);
+    record.onCommit = onCommit;
+    List<PendingRecord> batch;
+
+    synchronized (lock) {
+      if (closed) {
+        throw new IllegalStateException("Order log " + file + " is closed");
+      }
+      if (failure != null) {
+        throw new IllegalStateException("Order log " + file + " has failed", failure);
+      }
+      for (PendingRecord each : queued) {
+        each.lsn = nextLsn++;
+      }
+      pending.addAll(queued);
+
+      while (writing && !record.done) {
+        awaitQuietly();
+      }
+      if (record.done) {
+        return record.result();
+      }
+
+      writing = true;
+      batch = pending;
+      pending = new ArrayList<PendingRecord>();
+    }
+
+    IOException failure = null;
+    try {
+      write(batch);
+    } catch (IOException e) {
+      failure = e;
+    }
+
+    synchronized (lock) {
+      long now = System.nanoTime();
+      for (PendingRecord committed : batch) {
+        if (failure == null) {
+          committedLsn = committed.lsn;
+        }
+        committed.complete(failure);
+        long latency = now - committed.enqueuedAt;
+        totalCommitLatencyNanos += latency;
+        maxCommitLatencyNanos = Math.max(maxCommitLatencyNanos, latency);
+      }
+      if (failure == null) {
+        commits++;
+        records += batch.size();
+        maxBatchSize = Math.max(maxBatchSize, batch.size());
+        if (policy == FsyncPolicy.EVERY_WRITE) {
+          syncs++;
+        }
+      }
+      writing = false;
+      lock.notifyAll();
+    }
+
+    return record.result();
+  }
+
+  /*
+   * Opens the log file, and the file a compaction writes.
+   */
+  FileChannel open(Path path, OpenOption... options) throws IOException {
+    return FileChannel.open(path, options);
+  }
+
+  private void write(List<PendingRecord> batch) throws IOException {
+    if (failure != null) {
+      throw new IOException("Order log " + file + " has failed", failure);
+    }
+
+    int size = 0;
+    for (PendingRecord record : batch) {
+      size += RECORD_HEADER + record.payload.length + RECORD_TRAILER;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    CRC32 crc = new CRC32();
+    for (PendingRecord record : batch) {
+      int start = buffer.position();
+      buffer.putInt(8 + 1 + record.payload.length);
+      buffer.putLong(record.lsn);
+      buffer.put(record.type);
+      buffer.put(record.payload);
+      crc.reset();
+      crc.update(buffer.array(), start + 4, buffer.position() - start - 4);
+      buffer.putInt((int) crc.getValue());
+    }
+    buffer.flip();
+
+    long start = channel.position();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      cutOff(start, e);
+      throw e;
+    }
+    if (policy == FsyncPolicy.EVERY_WRITE) {
+      try {
+        channel.force(false);
+      } catch (IOException e) {
+        //The writers are told the batch failed, so it must not come back when the log is replayed.
+        cutOff(start, e);
+        fail(e);
+        throw e;
+      }
+    }
+  }
+
+  /*
+   * Truncates the file back to where a failed batch started, or fails the log if it cannot.
+   */
+  private void cutOff(long start, IOException cause) {
+    try {
+      channel.truncate(start);
+      channel.position(start);
+    } catch (IOException e) {
+      LOG.error("Unable to cut a failed batch off order log " + file, e);
+      fail(cause);
+    }
+  }
+
+  private void fail(IOException cause) {
+    if (failure == null) {
+      LOG.error("Order log " + file + " has failed, no more writes are accepted", cause);
+      failure = cause;
+    }
+  }
+
+  /*
+   * Forces every record written so far to disk, as the INTERVAL policy does periodically.
+   */
+  void sync() throws IOException {
+    try {
+      channel.force(false);
+      synchronized (lock) {
+        syncs++;
+      }
+    } catch (ClosedChannelException e) {
+      //Replaced by a compaction; the new file was forced when it was written.
+    } catch (IOException e) {
+      fail(e);
+      throw e;
+    }
+  }
+
+  private void copyRecordsAfter(long afterLsn, FileChannel out) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    DataOutputStream copy = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16));
+    try {
+      long end = channel.size();
+      long position = FILE_HEADER;
+      in.skipBytes(FILE_HEADER);
+      while (position < end) {
+        int length = in.readInt();
+        byte[] body = new byte[length];
+        in.readFully(body);
+        int checksum = in.readInt();
+        position += 4 + length + RECORD_TRAILER;
+
+        if (ByteBuffer.wrap(body).getLong() > afterLsn) {
+          copy.writeInt(length);
+          copy.write(body);
+          copy.writeInt(checksum);
+        }
+      }
+      copy.flush();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void writeFileHeader(FileChannel out, long baseLsn) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+    header.putLong(MAGIC);
+    header.putLong(baseLsn);
+    header.flip();
+    while (header.hasRemaining()) {
+      out.write(header);
+    }
+  }
+
+  /*
+   * Scans the log to find the next LSN, cutting off a torn or corrupt tail left by a crash.
+   */
+  private void recover() throws IOException {
+    if (channel.size() < FILE_HEADER) {
+      channel.truncate(0);
+      writeFileHeader(channel, -1);
+      channel.force(true);
+    }
+
+    long end = channel.size();
+    long valid = FILE_HEADER;
+    long lastLsn;
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    try {
+      if (in.readLong() != MAGIC) {
+        throw new IOException(file + " is not an order log");
+      }
+      lastLsn = in.readLong();
+      CRC32 crc = new CRC32();
+      while (valid + 4 <= end) {
+        int length = in.readInt();
+        if (length < 8 + 1 || valid + 4 + length + RECORD_TRAILER > end) {
+          break;
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        crc.reset();
+        crc.update(body, 0, body.length);
+        if ((int) crc.getValue() != in.readInt()) {
+          break;
+        }
+        lastLsn = ByteBuffer.wrap(body).getLong();
+        valid += 4 + length + RECORD_TRAILER;
+      }
+    } finally {
+      in.close();
+    }
+
+    if (valid < end) {
+      LOG.warn("Discarding {} bytes of incomplete records at the end of order log {}", end - valid, file);
+      channel.truncate(valid);
+    }
+    channel.position(valid);
+    nextLsn = lastLsn + 1;
+    committedLsn = lastLsn;
+  }
+
+  private void awaitQuietly() {
+    try {
+      lock.wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for order log " + file, e);
+    }
+  }
+
+  static byte[] keyBytes(UUID key) {
+    return ByteBuffer.allocate(KEY_SIZE)
+            .putLong(key.getMostSignificantBits())
+            .putLong(key.getLeastSignificantBits())
+            .array();
+  }
+
+  private static class PendingRecord {
+    final byte type;
+    final byte[] payload;
+    Runnable onCommit;
+    final long enqueuedAt = System.nanoTime();
+    long lsn;
+    boolean done;
+    RuntimeException failure;
+
+    PendingRecord(byte type, byte[] payload, Runnable onCommit) {
+      this.type = type;
+      this.payload = payload;
+      this.onCommit = onCommit;
+    }
+
+    void complete(IOException writeFailure) {
+      done = true;
+      if (writeFailure != null) {
+        failure = new IllegalStateException("Unable to write to the order log", writeFailure);
+        return;
+      }
+      if (onCommit == null) {
+        return;
+      }
+      try {
+        onCommit.run();
+      } catch (RuntimeException e) {
+        failure = e;
+      }
+    }
+
+    long result() {
+      if (failure != null) {
+        throw failure;
+      }
+      return lsn;
+    }
+  }
+}
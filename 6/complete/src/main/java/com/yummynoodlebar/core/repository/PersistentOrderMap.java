@@ -0,0 +1,465 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Immutable hash array mapped trie of orders keyed by UUID.
+ * <p>
+ * Every {@link #plus} or {@link #minus} returns a new map that shares all untouched nodes with
+ * this one, so a write allocates only the path from the root to the changed entry.
+ * An instance never changes once built and can be read by any number of threads without locking.
+ * <p>
+ * {@link #plusAll} and {@link #minusAll} apply a batch of writes as one: nodes copied for the batch are
+ * owned by it and changed in place by its later writes, so each is copied at most once per batch.
+ */
+public final class PersistentOrderMap implements Iterable<Order> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  private static final int MAX_SHIFT = 30;
+
+  private static final PersistentOrderMap EMPTY = new PersistentOrderMap(BitmapNode.EMPTY, 0);
+  private static final Object PERSISTENT = null;
+
+  private final Node root;
+  private final int size;
+
+  private PersistentOrderMap(Node root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  public static PersistentOrderMap empty() {
+    return EMPTY;
+  }
+
+  public static PersistentOrderMap of(Map<UUID, Order> orders) {
+    PersistentOrderMap map = EMPTY;
+    for (Map.Entry<UUID, Order> entry : orders.entrySet()) {
+      map = map.plus(entry.getKey(), entry.getValue());
+    }
+    return map;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public Order get(UUID key) {
+    return root.find(key, hash(key), 0);
+  }
+
+  public boolean containsKey(UUID key) {
+    return get(key) != null;
+  }
+
+  public PersistentOrderMap plus(UUID key, Order order) {
+    boolean[] added = new boolean[1];
+    Node newRoot = root.put(key, order, hash(key), 0, PERSISTENT, added);
+    if (newRoot == root) {
+      return this;
+    }
+    return new PersistentOrderMap(newRoot, added[0] ? size + 1 : size);
+  }
+
+  public PersistentOrderMap minus(UUID key) {
+    boolean[] removed = new boolean[1];
+    Node newRoot = root.remove(key, hash(key), 0, PERSISTENT, removed);
+    if (!removed[0]) {
+      return this;
+    }
+    if (newRoot == null) {
+      return EMPTY;
+    }
+    return new PersistentOrderMap(newRoot, size - 1);
+  }
+
+  public PersistentOrderMap plusAll(Iterable<Order> orders) {
+    Object edit = new Object();
+    Node newRoot = root;
+    int newSize = size;
+    boolean[] added = new boolean[1];
+    for (Order order : orders) {
+      added[0] = false;
+      newRoot = newRoot.put(order.getKey(), order, hash(order.getKey()), 0, edit, added);
+      if (added[0]) {
+        newSize++;
+      }
+    }
+    return newRoot == root ? this : new PersistentOrderMap(newRoot, newSize);
+  }
+
+  public PersistentOrderMap minusAll(Iterable<UUID> keys) {
+    Object edit = new Object();
+    Node newRoot = root;
+    int newSize = size;
+    boolean[] removed = new boolean[1];
+    for (UUID key : keys) {
+      removed[0] = false;
+      newRoot = newRoot.remove(key, hash(key), 0, edit, removed);
+      if (removed[0]) {
+        newSize--;
+      }
+      if (newRoot == null) {
+        newRoot = BitmapNode.EMPTY;
+      }
+    }
+    if (newSize == size) {
+      return this;
+    }
+    return newSize == 0 ? EMPTY : new PersistentOrderMap(newRoot, newSize);
+  }
+
+  @Override
+  public Iterator<Order> iterator() {
+    return new OrderIterator(root);
+  }
+
+  static int hash(UUID key) {
+    long h = key.getMostSignificantBits() ^ key.getLeastSignificantBits();
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static int bit(int hash, int shift) {
+    return 1 << ((hash >>> shift) & MASK);
+  }
+
+  private static Node merge(Entry first, int firstHash, Entry second, int secondHash, int shift, Object edit) {
+    if (shift > MAX_SHIFT) {
+      return new CollisionNode(firstHash, new Entry[]{first, second});
+    }
+    int firstBit = bit(firstHash, shift);
+    int secondBit = bit(secondHash, shift);
+    if (firstBit == secondBit) {
+      return new BitmapNode(edit, firstBit,
+              new Object[]{merge(first, firstHash, second, secondHash, shift + BITS, edit)});
+    }
+    Object[] slots = ((firstHash >>> shift) & MASK) < ((secondHash >>> shift) & MASK)
+            ? new Object[]{first, second}
+            : new Object[]{second, first};
+    return new BitmapNode(edit, firstBit | secondBit, slots);
+  }
+
+  private static final class Entry {
+    final UUID key;
+    final Order value;
+
+    Entry(UUID key, Order value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private abstract static class Node {
+
+    abstract Order find(UUID key, int hash, int shift);
+
+    /*
+     * Returns this when nothing changed, or when this node is owned by the edit and was changed in place.
+     */
+    abstract Node put(UUID key, Order value, int hash, int shift, Object edit, boolean[] added);
+
+    /*
+     * Returns null when the node became empty.
+     */
+    abstract Node remove(UUID key, int hash, int shift, Object edit, boolean[] removed);
+
+    abstract int slotCount();
+
+    abstract Object slot(int index);
+
+    /*
+     * The only entry of a node holding exactly one entry and no children, so parents can inline it.
+     */
+    Entry singleEntry() {
+      if (slotCount() == 1 && slot(0) instanceof Entry) {
+        return (Entry) slot(0);
+      }
+      return null;
+    }
+  }
+
+  private static final class BitmapNode extends Node {
+
+    static final BitmapNode EMPTY = new BitmapNode(PERSISTENT, 0, new Object[0]);
+
+    //Only the batch owning the node, if any, changes these, and only before the map is published.
+    private final Object edit;
+    private int bitmap;
+    private Object[] slots;
+
+    BitmapNode(Object edit, int bitmap, Object[] slots) {
+      this.edit = edit;
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    Order find(UUID key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      Object slot = slots[index(bit)];
+      if (slot instanceof Entry) {
+        Entry entry = (Entry) slot;
+        return entry.key.equals(key) ? entry.value : null;
+      }
+      return ((Node) slot).find(key, hash, shift + BITS);
+    }
+
+    @Override
+    Node put(UUID key, Order value, int hash, int shift, Object edit, boolean[] added) {
+      int bit = bit(hash, shift);
+      int index = index(bit);
+
+      if ((bitmap & bit) == 0) {
+        Object[] newSlots = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, newSlots, 0, index);
+        newSlots[index] = new Entry(key, value);
+        System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+        added[0] = true;
+        return with(edit, bitmap | bit, newSlots);
+      }
+
+      Object slot = slots[index];
+      Object replacement;
+      if (slot instanceof Entry) {
+        Entry entry = (Entry) slot;
+        if (entry.key.equals(key)) {
+          if (entry.value == value) {
+            return this;
+          }
+          replacement = new Entry(key, value);
+        } else {
+          added[0] = true;
+          replacement = merge(entry, hash(entry.key), new Entry(key, value), hash, shift + BITS, edit);
+        }
+      } else {
+        Node child = (Node) slot;
+        Node newChild = child.put(key, value, hash, shift + BITS, edit, added);
+        if (newChild == child) {
+          return this;
+        }
+        replacement = newChild;
+      }
+      return withSlot(index, replacement, edit);
+    }
+
+    @Override
+    Node remove(UUID key, int hash, int shift, Object edit, boolean[] removed) {
+      int bit = bit(hash, shift);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+      int index = index(bit);
+      Object slot = slots[index];
+
+      if (slot instanceof Entry) {
+        if (!((Entry) slot).key.equals(key)) {
+          return this;
+        }
+        removed[0] = true;
+        return withoutSlot(bit, index, edit);
+      }
+
+      Node child = (Node) slot;
+      Node newChild = child.remove(key, hash, shift + BITS, edit, removed);
+      if (!removed[0]) {
+        return this;
+      }
+      if (newChild == null) {
+        return withoutSlot(bit, index, edit);
+      }
+      Entry inlined = newChild.singleEntry();
+      if (inlined == null && newChild == child) {
+        return this;
+      }
+      return withSlot(index, inlined != null ? inlined : newChild, edit);
+    }
+
+    private boolean ownedBy(Object edit) {
+      return edit != PERSISTENT && this.edit == edit;
+    }
+
+    private Node with(Object edit, int newBitmap, Object[] newSlots) {
+      if (ownedBy(edit)) {
+        bitmap = newBitmap;
+        slots = newSlots;
+        return this;
+      }
+      return new BitmapNode(edit, newBitmap, newSlots);
+    }
+
+    private Node withSlot(int index, Object replacement, Object edit) {
+      if (ownedBy(edit)) {
+        slots[index] = replacement;
+        return this;
+      }
+      Object[] newSlots = slots.clone();
+      newSlots[index] = replacement;
+      return new BitmapNode(edit, bitmap, newSlots);
+    }
+
+    private Node withoutSlot(int bit, int index, Object edit) {
+      if (slots.length == 1) {
+        return null;
+      }
+      Object[] newSlots = new Object[slots.length - 1];
+      System.arraycopy(slots, 0, newSlots, 0, index);
+      System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+      return with(edit, bitmap & ~bit, newSlots);
+    }
+
+    @Override
+    int slotCount() {
+      return slots.length;
+    }
+
+    @Override
+    Object slot(int index) {
+      return slots[index];
+    }
+  }
+
+  private static final class CollisionNode extends Node {
+
+    private final int hash;
+    private final Entry[] entries;
+
+    CollisionNode(int hash, Entry[] entries) {
+      this.hash = hash;
+      this.entries = entries;
+    }
+
+    private int indexOf(UUID key) {
+      for (int i = 0; i < entries.length; i++) {
+        if (entries[i].key.equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Order find(UUID key, int hash, int shift) {
+      int index = indexOf(key);
+      return index < 0 ? null : entries[index].value;
+    }
+
+    @Override
+    Node put(UUID key, Order value, int hash, int shift, Object edit, boolean[] added) {
+      int index = indexOf(key);
+      if (index >= 0) {
+        if (entries[index].value == value) {
+          return this;
+        }
+        Entry[] newEntries = entries.clone();
+        newEntries[index] = new Entry(key, value);
+        return new CollisionNode(this.hash, newEntries);
+      }
+      Entry[] newEntries = new Entry[entries.length + 1];
+      System.arraycopy(entries, 0, newEntries, 0, entries.length);
+      newEntries[entries.length] = new Entry(key, value);
+      added[0] = true;
+      return new CollisionNode(this.hash, newEntries);
+    }
+
+    @Override
+    Node remove(UUID key, int hash, int shift, Object edit, boolean[] removed) {
+      int index = indexOf(key);
+      if (index < 0) {
+        return this;
+      }
+      removed[0] = true;
+      if (entries.length == 1) {
+        return null;
+      }
+      Entry[] newEntries = new Entry[entries.length - 1];
+      System.arraycopy(entries, 0, newEntries, 0, index);
+      System.arraycopy(entries, index + 1, newEntries, index, entries.length - index - 1);
+      return new CollisionNode(this.hash, newEntries);
+    }
+
+    @Override
+    int slotCount() {
+      return entries.length;
+    }
+
+    @Override
+    Object slot(int index) {
+      return entries[index];
+    }
+  }
+
+  private static final class OrderIterator implements Iterator<Order> {
+
+    private final Deque<Node> nodes = new ArrayDeque<Node>();
+    private final Deque<Integer> positions = new ArrayDeque<Integer>();
+    private Entry next;
+
+    OrderIterator(Node root) {
+      nodes.push(root);
+      positions.push(0);
+      advance();
+    }
+
+    private void advance() {
+      next = null;
+      while (!nodes.isEmpty()) {
+        Node node = nodes.peek();
+        int position = positions.pop();
+        if (position >= node.slotCount()) {
+          nodes.pop();
+          continue;
+        }
+        positions.push(position + 1);
+        Object slot = node.slot(position);
+        if (slot instanceof Entry) {
+          next = (Entry) slot;
+          return;
+        }
+        nodes.push((Node) slot);
+        positions.push(0);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Order next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Order value = next.value;
+      advance();
+      return value;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
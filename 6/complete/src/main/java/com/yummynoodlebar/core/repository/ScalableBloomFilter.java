@@ -0,0 +1,166 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of UUIDs that grows with the keys added to it. When the newest of its filters is full,
+ * another twice its capacity and with half its error rate is added, so the chance of a false positive
+ * over all of them stays under the rate the filter was created for however many keys it ends up with.
+ * <p>
+ * Keys can't be removed. Adding and testing are thread safe and lock free, apart from growing.
+ */
+final class ScalableBloomFilter {
+
+  private static final double TIGHTENING = 0.5;
+  private static final double LN2 = Math.log(2);
+
+  private volatile Stage[] stages;
+
+  ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+    stages = new Stage[]{new Stage(Math.max(64, initialCapacity), falsePositiveRate * (1 - TIGHTENING))};
+  }
+
+  boolean mightContain(UUID key) {
+    long first = firstHash(key);
+    long second = secondHash(key);
+    for (Stage stage : stages) {
+      if (stage.contains(first, second)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Adds the key, and returns false if it was, or seemed to be, already present.
+   */
+  boolean add(UUID key) {
+    long first = firstHash(key);
+    long second = secondHash(key);
+    Stage[] current = stages;
+    for (Stage stage : current) {
+      if (stage.contains(first, second)) {
+        return false;
+      }
+    }
+    Stage last = current[current.length - 1];
+    if (last.count.get() >= last.capacity) {
+      last = grow(last);
+    }
+    last.add(first, second);
+    return true;
+  }
+
+  int size() {
+    int size = 0;
+    for (Stage stage : stages) {
+      size += stage.count.get();
+    }
+    return size;
+  }
+
+  int getStageCount() {
+    return stages.length;
+  }
+
+  long getMemoryBytes() {
+    long bytes = 0;
+    for (Stage stage : stages) {
+      bytes += stage.bits / 8;
+    }
+    return bytes;
+  }
+
+  /*
+   * Chance a key never added is reported present, estimated from how full each stage is.
+   */
+  double getFalsePositiveProbability() {
+    double none = 1;
+    for (Stage stage : stages) {
+      none *= 1 - Math.pow((double) stage.bitsSet.get() / stage.bits, stage.hashes);
+    }
+    return 1 - none;
+  }
+
+  private synchronized Stage grow(Stage full) {
+    Stage[] current = stages;
+    Stage last = current[current.length - 1];
+    if (last == full) {
+      Stage[] grown = Arrays.copyOf(current, current.length + 1);
+      last = new Stage(full.capacity * 2L > Integer.MAX_VALUE ? Integer.MAX_VALUE : full.capacity * 2,
+              full.falsePositiveRate * TIGHTENING);
+      grown[current.length] = last;
+      stages = grown;
+    }
+    return last;
+  }
+
+  static long firstHash(UUID key) {
+    return mix(key.getMostSignificantBits() ^ Long.rotateLeft(key.getLeastSignificantBits(), 32));
+  }
+
+  static long secondHash(UUID key) {
+    return mix(key.getLeastSignificantBits() + 0x9e3779b97f4a7c15L * key.getMostSignificantBits()) | 1;
+  }
+
+  //The MurmurHash3 finalizer, as time ordered keys differ in few bits.
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  private static final class Stage {
+    final int capacity;
+    final double falsePositiveRate;
+    final long bits;
+    final int hashes;
+    final AtomicLongArray words;
+    final AtomicInteger count = new AtomicInteger();
+    final AtomicLong bitsSet = new AtomicLong();
+
+    Stage(int capacity, double falsePositiveRate) {
+      this.capacity = capacity;
+      this.falsePositiveRate = falsePositiveRate;
+      long optimal = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+      this.words = new AtomicLongArray((int) ((optimal + 63) / 64));
+      this.bits = words.length() * 64L;
+      this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * LN2));
+    }
+
+    boolean contains(long first, long second) {
+      for (int i = 0; i < hashes; i++) {
+        long bit = ((first + i * second) & Long.MAX_VALUE) % bits;
+        if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void add(long first, long second) {
+      for (int i = 0; i < hashes; i++) {
+        long bit = ((first + i * second) & Long.MAX_VALUE) % bits;
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long value;
+        do {
+          value = words.get(word);
+          if ((value & mask) != 0) {
+            break;
+          }
+        } while (!words.compareAndSet(word, value, value | mask));
+        if ((value & mask) == 0) {
+          bitsSet.incrementAndGet();
+        }
+      }
+      count.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Merges sources of encoded orders that are each in key order into one in key order, with one entry
+ * per key: the one from the first source holding it, so sources are given newest first.
+ */
+final class SortedOrderMerge implements Iterator<Map.Entry<UUID, byte[]>> {
+
+  private final PriorityQueue<Head> heads;
+
+  SortedOrderMerge(List<? extends Iterator<Map.Entry<UUID, byte[]>>> sources) {
+    heads = new PriorityQueue<Head>(Math.max(1, sources.size()));
+    for (int i = 0; i < sources.size(); i++) {
+      Iterator<Map.Entry<UUID, byte[]>> source = sources.get(i);
+      if (source.hasNext()) {
+        heads.add(new Head(source.next(), i, source));
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !heads.isEmpty();
+  }
+
+  @Override
+  public Map.Entry<UUID, byte[]> next() {
+    Head newest = heads.poll();
+    if (newest == null) {
+      throw new NoSuchElementException();
+    }
+    Map.Entry<UUID, byte[]> entry = newest.entry;
+    advance(newest);
+    while (!heads.isEmpty() && heads.peek().entry.getKey().equals(entry.getKey())) {
+      advance(heads.poll());
+    }
+    return entry;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  private void advance(Head head) {
+    if (head.source.hasNext()) {
+      head.entry = head.source.next();
+      heads.add(head);
+    }
+  }
+
+  private static final class Head implements Comparable<Head> {
+    Map.Entry<UUID, byte[]> entry;
+    final int age;
+    final Iterator<Map.Entry<UUID, byte[]>> source;
+
+    Head(Map.Entry<UUID, byte[]> entry, int age, Iterator<Map.Entry<UUID, byte[]>> source) {
+      this.entry = entry;
+      this.age = age;
+      this.source = source;
+    }
+
+    @Override
+    public int compareTo(Head other) {
+      int compared = entry.getKey().compareTo(other.entry.getKey());
+      return compared != 0 ? compared : age - other.age;
+    }
+  }
+}
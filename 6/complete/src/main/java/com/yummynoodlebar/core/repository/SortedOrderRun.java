@@ -0,0 +1,415 @@
+package com.yummynoodlebar.core.repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * One immutable run of an {@link OrdersLsmRepository}: orders encoded with {@link OrderCodec}, and
+ * tombstones of deleted ones, in key order, written front to back once and never changed.
+ * <p>
+ * The file holds blocks of about {@link #BLOCK_BYTES}, then a sparse index of the first key of each
+ * block, a Bloom filter of every key in the run, and a footer locating both. Only the index and the
+ * filter are kept on the heap. A lookup of a key the filter rules out reads nothing, and any other
+ * reads the one block the index points to, through a {@link ColdPageCache} shared by all runs.
+ */
+final class SortedOrderRun implements Closeable {
+
+  static final int BLOCK_BYTES = 4096;
+
+  //What a run, or a memtable, holds for a deleted order.
+  static final byte[] TOMBSTONE = new byte[0];
+
+  private static final long MAGIC = 0x594e424c534d52L;
+  //index position, filter position, number of entries, magic.
+  private static final int FOOTER = 8 + 8 + 8 + 8;
+  //key, then the length of the encoded order, or -1 for a tombstone.
+  static final int ENTRY_HEADER = 16 + 4;
+  //first key and position of a block.
+  private static final int INDEX_ENTRY = 16 + 8;
+  private static final int NO_VALUE = -1;
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+  private static final double LN2 = Math.log(2);
+
+  private final long id;
+  private final File file;
+  private final FileChannel channel;
+  private final ColdPageCache cache;
+  private final long[] firstMsb;
+  private final long[] firstLsb;
+  private final long[] blockPositions;
+  private final long indexPosition;
+  private final long[] filter;
+  private final int hashes;
+  private final long entries;
+  private final long bytes;
+
+  private SortedOrderRun(long id, File file, ColdPageCache cache, long[] firstMsb, long[] firstLsb,
+                         long[] blockPositions, long indexPosition, long[] filter, int hashes, long entries)
+          throws IOException {
+    this.id = id;
+    this.file = file;
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.cache = cache;
+    this.firstMsb = firstMsb;
+    this.firstLsb = firstLsb;
+    this.blockPositions = blockPositions;
+    this.indexPosition = indexPosition;
+    this.filter = filter;
+    this.hashes = hashes;
+    this.entries = entries;
+    this.bytes = channel.size();
+  }
+
+  /*
+   * Opens a run written earlier, reading its index and filter.
+   */
+  static SortedOrderRun open(File file, long id, ColdPageCache cache) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size < FOOTER) {
+        throw new IOException(file + " is not an order run");
+      }
+      ByteBuffer footer = read(channel, size - FOOTER, FOOTER);
+      long indexPosition = footer.getLong();
+      long filterPosition = footer.getLong();
+      long entries = footer.getLong();
+      if (footer.getLong() != MAGIC) {
+        throw new IOException(file + " is not an order run");
+      }
+
+      ByteBuffer index = read(channel, indexPosition, (int) (filterPosition - indexPosition));
+      int blocks = index.getInt();
+      long[] firstMsb = new long[blocks];
+      long[] firstLsb = new long[blocks];
+      long[] blockPositions = new long[blocks];
+      for (int i = 0; i < blocks; i++) {
+        firstMsb[i] = index.getLong();
+        firstLsb[i] = index.getLong();
+        blockPositions[i] = index.getLong();
+      }
+
+      ByteBuffer bloom = read(channel, filterPosition, (int) (size - FOOTER - filterPosition));
+      int hashes = bloom.getInt();
+      long[] filter = new long[bloom.getInt()];
+      for (int i = 0; i < filter.length; i++) {
+        filter[i] = bloom.getLong();
+      }
+      return new SortedOrderRun(id, file, cache, firstMsb, firstLsb, blockPositions, indexPosition,
+              filter, hashes, entries);
+    } finally {
+      channel.close();
+    }
+  }
+
+  long getId() {
+    return id;
+  }
+
+  long getEntries() {
+    return entries;
+  }
+
+  long getBytes() {
+    return bytes;
+  }
+
+  /*
+   * The encoded order the run holds for the key, TOMBSTONE if it holds its deletion, or null if it
+   * holds nothing for it.
+   */
+  byte[] find(UUID key) throws IOException {
+    if (!mightContain(key)) {
+      return null;
+    }
+    int block = blockOf(key);
+    if (block < 0) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(block(block));
+    while (buffer.hasRemaining()) {
+      int compared = compare(buffer.getLong(), buffer.getLong(), key);
+      int length = buffer.getInt();
+      if (compared == 0) {
+        if (length == NO_VALUE) {
+          return TOMBSTONE;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+      }
+      if (compared > 0) {
+        return null;
+      }
+      if (length != NO_VALUE) {
+        buffer.position(buffer.position() + length);
+      }
+    }
+    return null;
+  }
+
+  /*
+   * Every entry of the run in key order, read front to back. Must be closed.
+   */
+  Entries entries() throws IOException {
+    return new Entries();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  void delete() throws IOException {
+    close();
+    if (!file.delete() && file.exists()) {
+      throw new IOException("Unable to delete order run " + file);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return file.getName() + " (" + entries + " entries, " + bytes + " bytes)";
+  }
+
+  private boolean mightContain(UUID key) {
+    long first = ScalableBloomFilter.firstHash(key);
+    long second = ScalableBloomFilter.secondHash(key);
+    long bits = filter.length * 64L;
+    for (int i = 0; i < hashes; i++) {
+      long bit = ((first + i * second) & Long.MAX_VALUE) % bits;
+      if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * The last block starting at or before the key, or -1 if the key is before the first one.
+   */
+  private int blockOf(UUID key) {
+    int low = 0;
+    int high = firstMsb.length - 1;
+    int found = -1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (compare(firstMsb[middle], firstLsb[middle], key) <= 0) {
+        found = middle;
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return found;
+  }
+
+  private byte[] block(int block) throws IOException {
+    long location = id << 32 | block;
+    byte[] cached = cache.get(location);
+    if (cached != null) {
+      return cached;
+    }
+    long end = block + 1 < blockPositions.length ? blockPositions[block + 1] : indexPosition;
+    byte[] read = read(channel, blockPositions[block], (int) (end - blockPositions[block])).array();
+    cache.put(location, read);
+    return read;
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Order run ends before " + (position + length));
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  //As UUID.compareTo, which orders the memtables.
+  private static int compare(long msb, long lsb, UUID key) {
+    int compared = Long.compare(msb, key.getMostSignificantBits());
+    return compared != 0 ? compared : Long.compare(lsb, key.getLeastSignificantBits());
+  }
+
+  /**
+   * Sequential reader of a run's entries, for merges and scans.
+   */
+  final class Entries implements Iterator<Map.Entry<UUID, byte[]>>, Closeable {
+
+    private final DataInputStream in;
+    private long position;
+
+    private Entries() throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+
+    @Override
+    public boolean hasNext() {
+      return position < indexPosition;
+    }
+
+    @Override
+    public Map.Entry<UUID, byte[]> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      try {
+        UUID key = new UUID(in.readLong(), in.readLong());
+        int length = in.readInt();
+        byte[] value = TOMBSTONE;
+        if (length != NO_VALUE) {
+          value = new byte[length];
+          in.readFully(value);
+        }
+        position += ENTRY_HEADER + value.length;
+        return new AbstractMap.SimpleImmutableEntry<UUID, byte[]>(key, value);
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to read order run " + file, e);
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes a new run from entries added in key order, to a temporary file that is only renamed to
+   * the run's own once it is complete and on disk.
+   */
+  static final class Writer {
+
+    private final long id;
+    private final File file;
+    private final File temporary;
+    private final FileOutputStream stream;
+    private final DataOutputStream out;
+
+    private long position;
+    private long entries;
+    private long blockStart;
+    private int blocks;
+    private long[] firstMsb = new long[16];
+    private long[] firstLsb = new long[16];
+    private long[] blockPositions = new long[16];
+    private long[] keyHashes = new long[256];
+
+    Writer(File file, long id) throws IOException {
+      this.id = id;
+      this.file = file;
+      this.temporary = new File(file.getPath() + ".tmp");
+      this.stream = new FileOutputStream(temporary);
+      this.out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+    }
+
+    void add(UUID key, byte[] value) throws IOException {
+      int size = ENTRY_HEADER + value.length;
+      if (blocks == 0 || position - blockStart + size > BLOCK_BYTES) {
+        if (blocks == firstMsb.length) {
+          firstMsb = Arrays.copyOf(firstMsb, blocks * 2);
+          firstLsb = Arrays.copyOf(firstLsb, blocks * 2);
+          blockPositions = Arrays.copyOf(blockPositions, blocks * 2);
+        }
+        firstMsb[blocks] = key.getMostSignificantBits();
+        firstLsb[blocks] = key.getLeastSignificantBits();
+        blockPositions[blocks++] = position;
+        blockStart = position;
+      }
+      out.writeLong(key.getMostSignificantBits());
+      out.writeLong(key.getLeastSignificantBits());
+      out.writeInt(value == TOMBSTONE ? NO_VALUE : value.length);
+      out.write(value);
+      position += size;
+
+      if (2 * entries + 2 > keyHashes.length) {
+        keyHashes = Arrays.copyOf(keyHashes, keyHashes.length * 2);
+      }
+      keyHashes[(int) (2 * entries)] = ScalableBloomFilter.firstHash(key);
+      keyHashes[(int) (2 * entries + 1)] = ScalableBloomFilter.secondHash(key);
+      entries++;
+    }
+
+    long getEntries() {
+      return entries;
+    }
+
+    long getBytesWritten() {
+      return position;
+    }
+
+    /*
+     * Writes the index, filter and footer, forces the run to disk and opens it.
+     */
+    SortedOrderRun finish(ColdPageCache cache) throws IOException {
+      long indexPosition = position;
+      out.writeInt(blocks);
+      for (int i = 0; i < blocks; i++) {
+        out.writeLong(firstMsb[i]);
+        out.writeLong(firstLsb[i]);
+        out.writeLong(blockPositions[i]);
+      }
+      long filterPosition = indexPosition + 4 + (long) blocks * INDEX_ENTRY;
+
+      long bits = Math.max(64, (long) Math.ceil(-entries * Math.log(FALSE_POSITIVE_RATE) / (LN2 * LN2)));
+      long[] filter = new long[(int) ((bits + 63) / 64)];
+      bits = filter.length * 64L;
+      int hashes = Math.max(1, (int) Math.round((double) bits / Math.max(1, entries) * LN2));
+      for (int entry = 0; entry < entries; entry++) {
+        long first = keyHashes[2 * entry];
+        long second = keyHashes[2 * entry + 1];
+        for (int i = 0; i < hashes; i++) {
+          long bit = ((first + i * second) & Long.MAX_VALUE) % bits;
+          filter[(int) (bit >>> 6)] |= 1L << bit;
+        }
+      }
+      out.writeInt(hashes);
+      out.writeInt(filter.length);
+      for (long word : filter) {
+        out.writeLong(word);
+      }
+
+      out.writeLong(indexPosition);
+      out.writeLong(filterPosition);
+      out.writeLong(entries);
+      out.writeLong(MAGIC);
+      out.flush();
+      stream.getFD().sync();
+      out.close();
+
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      keyHashes = null;
+      return new SortedOrderRun(id, file, cache, Arrays.copyOf(firstMsb, blocks), Arrays.copyOf(firstLsb, blocks),
+              Arrays.copyOf(blockPositions, blocks), indexPosition, filter, hashes, entries);
+    }
+
+    /*
+     * Drops the partly written run.
+     */
+    void abandon() {
+      try {
+        out.close();
+      } catch (IOException e) {
+        //Being thrown away anyway.
+      }
+      temporary.delete();
+    }
+  }
+}
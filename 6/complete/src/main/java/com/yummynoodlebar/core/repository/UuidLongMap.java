@@ -0,0 +1,150 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Open addressing hash map from order key to a non-negative long, keyed on the two longs of the UUID
+ * so an entry costs three longs. Collisions are resolved by linear probing, and removal shifts the
+ * following entries back rather than leaving tombstones. A value of -1 marks a free slot. Not thread safe.
+ */
+final class UuidLongMap {
+
+  static final long NO_VALUE = -1;
+
+  private static final int MINIMUM_CAPACITY = 16;
+  private static final float LOAD_FACTOR = 0.7f;
+
+  //Most significant bits of the key in slot i at 2i, least significant at 2i + 1.
+  private long[] keys;
+  private long[] values;
+  private int mask;
+  private int size;
+  private int resizeAt;
+
+  UuidLongMap() {
+    allocate(MINIMUM_CAPACITY);
+  }
+
+  int size() {
+    return size;
+  }
+
+  long get(UUID key) {
+    long msb = key.getMostSignificantBits();
+    long lsb = key.getLeastSignificantBits();
+    int slot = hash(msb, lsb) & mask;
+    long value;
+    while ((value = values[slot]) != NO_VALUE) {
+      if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+        return value;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return NO_VALUE;
+  }
+
+  /*
+   * Returns the value previously held under the key, or NO_VALUE.
+   */
+  long put(UUID key, long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Only non-negative values can be stored, not " + value);
+    }
+    long msb = key.getMostSignificantBits();
+    long lsb = key.getLeastSignificantBits();
+    int slot = hash(msb, lsb) & mask;
+    long existing;
+    while ((existing = values[slot]) != NO_VALUE) {
+      if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+        values[slot] = value;
+        return existing;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[2 * slot] = msb;
+    keys[2 * slot + 1] = lsb;
+    values[slot] = value;
+    if (++size > resizeAt) {
+      allocateAndRehash(values.length * 2);
+    }
+    return NO_VALUE;
+  }
+
+  long remove(UUID key) {
+    long msb = key.getMostSignificantBits();
+    long lsb = key.getLeastSignificantBits();
+    int slot = hash(msb, lsb) & mask;
+    long existing;
+    while ((existing = values[slot]) != NO_VALUE) {
+      if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+        shiftBack(slot);
+        size--;
+        return existing;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return NO_VALUE;
+  }
+
+  List<UUID> keys() {
+    List<UUID> found = new ArrayList<UUID>(size);
+    for (int slot = 0; slot < values.length; slot++) {
+      if (values[slot] != NO_VALUE) {
+        found.add(new UUID(keys[2 * slot], keys[2 * slot + 1]));
+      }
+    }
+    return found;
+  }
+
+  private void shiftBack(int slot) {
+    int free = slot;
+    int next = (slot + 1) & mask;
+    while (values[next] != NO_VALUE) {
+      int home = hash(keys[2 * next], keys[2 * next + 1]) & mask;
+      if (((next - home) & mask) >= ((next - free) & mask)) {
+        keys[2 * free] = keys[2 * next];
+        keys[2 * free + 1] = keys[2 * next + 1];
+        values[free] = values[next];
+        free = next;
+      }
+      next = (next + 1) & mask;
+    }
+    values[free] = NO_VALUE;
+  }
+
+  private void allocateAndRehash(int capacity) {
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != NO_VALUE) {
+        int slot = hash(oldKeys[2 * i], oldKeys[2 * i + 1]) & mask;
+        while (values[slot] != NO_VALUE) {
+          slot = (slot + 1) & mask;
+        }
+        keys[2 * slot] = oldKeys[2 * i];
+        keys[2 * slot + 1] = oldKeys[2 * i + 1];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[2 * capacity];
+    values = new long[capacity];
+    Arrays.fill(values, NO_VALUE);
+    mask = capacity - 1;
+    resizeAt = (int) (capacity * LOAD_FACTOR);
+  }
+
+  private static int hash(long msb, long lsb) {
+    long h = msb ^ lsb;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
@@ -0,0 +1,63 @@
+package com.yummynoodlebar.core.repository;
+
+/**
+ * Point in time view of the commit activity of an {@link OrdersWriteAheadLog}.
+ */
+public class WriteAheadLogStatistics {
+
+  private final long commits;
+  private final long records;
+  private final long syncs;
+  private final int maxBatchSize;
+  private final long totalCommitLatencyNanos;
+  private final long maxCommitLatencyNanos;
+
+  public WriteAheadLogStatistics(long commits, long records, long syncs, int maxBatchSize,
+                                 long totalCommitLatencyNanos, long maxCommitLatencyNanos) {
+    this.commits = commits;
+    this.records = records;
+    this.syncs = syncs;
+    this.maxBatchSize = maxBatchSize;
+    this.totalCommitLatencyNanos = totalCommitLatencyNanos;
+    this.maxCommitLatencyNanos = maxCommitLatencyNanos;
+  }
+
+  /*
+   * Number of group commits, each writing one batch of records.
+   */
+  public long getCommits() {
+    return commits;
+  }
+
+  public long getRecords() {
+    return records;
+  }
+
+  public long getSyncs() {
+    return syncs;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  public double getAverageBatchSize() {
+    return commits == 0 ? 0 : (double) records / commits;
+  }
+
+  public double getAverageCommitLatencyMicros() {
+    return records == 0 ? 0 : totalCommitLatencyNanos / 1000.0 / records;
+  }
+
+  public double getMaxCommitLatencyMicros() {
+    return maxCommitLatencyNanos / 1000.0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d records in %d commits (%d syncs), batch size avg %.1f max %d, " +
+            "commit latency avg %.0fus max %.0fus",
+            records, commits, syncs, getAverageBatchSize(), maxBatchSize,
+            getAverageCommitLatencyMicros(), getMaxCommitLatencyMicros());
+  }
+}
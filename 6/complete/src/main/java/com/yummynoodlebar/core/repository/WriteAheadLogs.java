@@ -0,0 +1,32 @@
+package com.yummynoodlebar.core.repository;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The write-ahead logs of the journaled repositories, each by the directory it is in, so that their
+ * commit activity can be looked at while they run.
+ */
+public class WriteAheadLogs {
+
+  private final Map<String, OrdersWriteAheadLog> logs = new ConcurrentHashMap<String, OrdersWriteAheadLog>();
+
+  public OrdersWriteAheadLog register(String directory, OrdersWriteAheadLog log) {
+    logs.put(directory, log);
+    return log;
+  }
+
+  public boolean isEmpty() {
+    return logs.isEmpty();
+  }
+
+  public SortedMap<String, WriteAheadLogStatistics> getStatistics() {
+    SortedMap<String, WriteAheadLogStatistics> statistics = new TreeMap<String, WriteAheadLogStatistics>();
+    for (Map.Entry<String, OrdersWriteAheadLog> log : logs.entrySet()) {
+      statistics.put(log.getKey(), log.getValue().getStatistics());
+    }
+    return statistics;
+  }
+}
@@ -0,0 +1,148 @@
+package com.yummynoodlebar.core.services;
+
+import com.yummynoodlebar.core.events.orders.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class AsyncOrderEventHandler implements AsyncOrderService {
+
+  private final OrderService orderService;
+  private final Executor executor;
+
+  public AsyncOrderEventHandler(final OrderService orderService, final Executor executor) {
+    this.orderService = orderService;
+    this.executor = executor;
+  }
+
+  @Override
+  public EventFuture<AllOrdersEvent> requestAllOrders(final RequestAllOrdersEvent requestAllCurrentOrdersEvent) {
+    return submit(new Callable<AllOrdersEvent>() {
+      @Override
+      public AllOrdersEvent call() {
+        return orderService.requestAllOrders(requestAllCurrentOrdersEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<OrdersPageEvent> requestOrdersPage(final RequestOrdersPageEvent requestOrdersPageEvent) {
+    return submit(new Callable<OrdersPageEvent>() {
+      @Override
+      public OrdersPageEvent call() {
+        return orderService.requestOrdersPage(requestOrdersPageEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<AllOrdersEvent> requestOrdersSubmitted(final RequestOrdersSubmittedEvent requestOrdersSubmittedEvent) {
+    return submit(new Callable<AllOrdersEvent>() {
+      @Override
+      public AllOrdersEvent call() {
+        return orderService.requestOrdersSubmitted(requestOrdersSubmittedEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<AllOrdersEvent> requestOrdersContaining(final RequestOrdersContainingEvent requestOrdersContainingEvent) {
+    return submit(new Callable<AllOrdersEvent>() {
+      @Override
+      public AllOrdersEvent call() {
+        return orderService.requestOrdersContaining(requestOrdersContainingEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<AllOrdersEvent> requestOrdersByStatus(final RequestOrdersByStatusEvent requestOrdersByStatusEvent) {
+    return submit(new Callable<AllOrdersEvent>() {
+      @Override
+      public AllOrdersEvent call() {
+        return orderService.requestOrdersByStatus(requestOrdersByStatusEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<OrderStatusCountsEvent> requestOrderStatusCounts(final RequestOrderStatusCountsEvent requestOrderStatusCountsEvent) {
+    return submit(new Callable<OrderStatusCountsEvent>() {
+      @Override
+      public OrderStatusCountsEvent call() {
+        return orderService.requestOrderStatusCounts(requestOrderStatusCountsEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<OrderDetailsEvent> requestOrderDetails(final RequestOrderDetailsEvent requestOrderDetailsEvent) {
+    return submit(new Callable<OrderDetailsEvent>() {
+      @Override
+      public OrderDetailsEvent call() {
+        return orderService.requestOrderDetails(requestOrderDetailsEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<OrderStatusEvent> requestOrderStatus(final RequestOrderStatusEvent requestOrderStatusEvent) {
+    return submit(new Callable<OrderStatusEvent>() {
+      @Override
+      public OrderStatusEvent call() {
+        return orderService.requestOrderStatus(requestOrderStatusEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<OrderCreatedEvent> createOrder(final CreateOrderEvent event) {
+    return submit(new Callable<OrderCreatedEvent>() {
+      @Override
+      public OrderCreatedEvent call() {
+        return orderService.createOrder(event);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<OrdersCreatedEvent> createOrders(final CreateOrdersEvent event) {
+    return submit(new Callable<OrdersCreatedEvent>() {
+      @Override
+      public OrdersCreatedEvent call() {
+        return orderService.createOrders(event);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<OrderUpdatedEvent> setOrderPayment(final SetOrderPaymentEvent setOrderPaymentEvent) {
+    return submit(new Callable<OrderUpdatedEvent>() {
+      @Override
+      public OrderUpdatedEvent call() {
+        return orderService.setOrderPayment(setOrderPaymentEvent);
+      }
+    });
+  }
+
+  @Override
+  public EventFuture<OrderDeletedEvent> deleteOrder(final DeleteOrderEvent deleteOrderEvent) {
+    return submit(new Callable<OrderDeletedEvent>() {
+      @Override
+      public OrderDeletedEvent call() {
+        return orderService.deleteOrder(deleteOrderEvent);
+      }
+    });
+  }
+
+  private <T> EventFuture<T> submit(Callable<T> work) {
+    EventFuture<T> future = new EventFuture<T>(work);
+    try {
+      executor.execute(future);
+    } catch (RejectedExecutionException e) {
+      return EventFuture.failed(e);
+    }
+    return future;
+  }
+}
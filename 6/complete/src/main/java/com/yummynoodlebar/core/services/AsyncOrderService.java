@@ -0,0 +1,33 @@
+package com.yummynoodlebar.core.services;
+
+import com.yummynoodlebar.core.events.orders.*;
+
+//TODOCUMENT The OrderService, with each call done on an executor, so the caller's thread is free while the core
+//works. The events are those OrderService returns, and failures are those it throws. A call the executor has no
+//room for fails with a RejectedExecutionException.
+public interface AsyncOrderService {
+
+  public EventFuture<AllOrdersEvent> requestAllOrders(RequestAllOrdersEvent requestAllCurrentOrdersEvent);
+
+  public EventFuture<OrdersPageEvent> requestOrdersPage(RequestOrdersPageEvent requestOrdersPageEvent);
+
+  public EventFuture<AllOrdersEvent> requestOrdersSubmitted(RequestOrdersSubmittedEvent requestOrdersSubmittedEvent);
+
+  public EventFuture<AllOrdersEvent> requestOrdersContaining(RequestOrdersContainingEvent requestOrdersContainingEvent);
+
+  public EventFuture<AllOrdersEvent> requestOrdersByStatus(RequestOrdersByStatusEvent requestOrdersByStatusEvent);
+
+  public EventFuture<OrderStatusCountsEvent> requestOrderStatusCounts(RequestOrderStatusCountsEvent requestOrderStatusCountsEvent);
+
+  public EventFuture<OrderDetailsEvent> requestOrderDetails(RequestOrderDetailsEvent requestOrderDetailsEvent);
+
+  public EventFuture<OrderStatusEvent> requestOrderStatus(RequestOrderStatusEvent requestOrderStatusEvent);
+
+  public EventFuture<OrderCreatedEvent> createOrder(CreateOrderEvent event);
+
+  public EventFuture<OrdersCreatedEvent> createOrders(CreateOrdersEvent event);
+
+  public EventFuture<OrderUpdatedEvent> setOrderPayment(SetOrderPaymentEvent setOrderPaymentEvent);
+
+  public EventFuture<OrderDeletedEvent> deleteOrder(DeleteOrderEvent deleteOrderEvent);
+}
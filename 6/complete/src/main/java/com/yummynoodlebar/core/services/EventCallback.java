@@ -0,0 +1,9 @@
+package com.yummynoodlebar.core.services;
+
+//TODOCUMENT Told the outcome of an EventFuture once it has one, on the thread that produced it.
+public interface EventCallback<T> {
+
+  void onEvent(T event);
+
+  void onFailure(Throwable failure);
+}
@@ -0,0 +1,104 @@
+package com.yummynoodlebar.core.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The event an {@link AsyncOrderService} call results in, produced later on another thread.
+ * <p>
+ * Besides waiting for it, callers can register {@link EventCallback}s, which are called on the thread
+ * that produced the event as soon as there is one, or straight away if there already is, so nothing
+ * needs to block while the core works.
+ */
+public class EventFuture<T> extends FutureTask<T> {
+
+  private final List<EventCallback<? super T>> callbacks = new ArrayList<EventCallback<? super T>>();
+  private boolean done;
+  private final AtomicBoolean started = new AtomicBoolean();
+
+  public EventFuture(Callable<T> work) {
+    super(work);
+  }
+
+  public static <T> EventFuture<T> completed(final T event) {
+    EventFuture<T> future = new EventFuture<T>(new Callable<T>() {
+      @Override
+      public T call() {
+        return event;
+      }
+    });
+    future.run();
+    return future;
+  }
+
+  public static <T> EventFuture<T> failed(Throwable failure) {
+    EventFuture<T> future = new EventFuture<T>(new Callable<T>() {
+      @Override
+      public T call() {
+        throw new IllegalStateException("A failed future is never run");
+      }
+    });
+    future.setException(failure);
+    return future;
+  }
+
+  //TODOCUMENT Cancels the work only if it hasn't started, so that once cancelled it certainly never runs, and
+  //otherwise lets it finish, rather than interrupt it part way through a write.
+  public boolean cancelUnlessStarted() {
+    return started.compareAndSet(false, true) && cancel(false);
+  }
+
+  @Override
+  public void run() {
+    if (started.compareAndSet(false, true)) {
+      super.run();
+    }
+  }
+
+  public void addCallback(EventCallback<? super T> callback) {
+    synchronized (callbacks) {
+      if (!done) {
+        callbacks.add(callback);
+        return;
+      }
+    }
+    inform(callback);
+  }
+
+  @Override
+  protected void done() {
+    List<EventCallback<? super T>> waiting;
+    synchronized (callbacks) {
+      done = true;
+      waiting = new ArrayList<EventCallback<? super T>>(callbacks);
+      callbacks.clear();
+    }
+    for (EventCallback<? super T> callback : waiting) {
+      inform(callback);
+    }
+  }
+
+  private void inform(EventCallback<? super T> callback) {
+    T event;
+    try {
+      event = get();
+    } catch (ExecutionException e) {
+      callback.onFailure(e.getCause());
+      return;
+    } catch (CancellationException e) {
+      callback.onFailure(e);
+      return;
+    } catch (InterruptedException e) {
+      //Not reached, the future is done.
+      Thread.currentThread().interrupt();
+      callback.onFailure(e);
+      return;
+    }
+    callback.onEvent(event);
+  }
+}
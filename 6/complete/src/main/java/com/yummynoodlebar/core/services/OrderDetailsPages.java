@@ -0,0 +1,61 @@
+package com.yummynoodlebar.core.services;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.events.orders.OrderDetails;
+import com.yummynoodlebar.core.repository.OrderSnapshot;
+import com.yummynoodlebar.core.repository.OrderSnapshots;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+
+import java.util.Iterator;
+
+/**
+ * Lazily iterates the details of every order, streamed from the repository a page at a time, so only
+ * one page of orders is held at once. Each iteration starts from the beginning. Where there are
+ * snapshots, each iteration streams one, so orders written meanwhile don't show up half way through,
+ * and closes it once it has run out.
+ */
+class OrderDetailsPages implements Iterable<OrderDetails> {
+
+  private final OrdersRepository ordersRepository;
+  private final OrderSnapshots snapshots;
+  private final int pageSize;
+
+  OrderDetailsPages(OrdersRepository ordersRepository, int pageSize) {
+    this(ordersRepository, null, pageSize);
+  }
+
+  OrderDetailsPages(OrdersRepository ordersRepository, OrderSnapshots snapshots, int pageSize) {
+    this.ordersRepository = ordersRepository;
+    this.snapshots = snapshots;
+    this.pageSize = pageSize;
+  }
+
+  @Override
+  public Iterator<OrderDetails> iterator() {
+    final OrderSnapshot[] snapshot = {snapshots == null ? null : snapshots.snapshot()};
+    final Iterator<Order> orders =
+            (snapshot[0] == null ? ordersRepository : snapshot[0]).streamAll(pageSize).iterator();
+    return new Iterator<OrderDetails>() {
+
+      @Override
+      public boolean hasNext() {
+        boolean more = orders.hasNext();
+        if (!more && snapshot[0] != null) {
+          snapshot[0].close();
+          snapshot[0] = null;
+        }
+        return more;
+      }
+
+      @Override
+      public OrderDetails next() {
+        return orders.next().toOrderDetails();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
@@ -1,41 +1,129 @@
 package com.yummynoodlebar.core.services;
 
 import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
 import com.yummynoodlebar.core.domain.OrderStatus;
-import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
 import com.yummynoodlebar.core.events.orders.*;
+import com.yummynoodlebar.core.repository.OrderSnapshots;
+import com.yummynoodlebar.core.repository.OrderUpdate;
 import com.yummynoodlebar.core.repository.OrdersRepository;
 
 import java.util.*;
 
 public class OrderEventHandler implements OrderService {
 
+  //TODOCUMENT Number of orders held in memory at once while streaming all orders.
+  static final int STREAMING_PAGE_SIZE = 500;
+
   private final OrdersRepository ordersRepository;
+  private final OrderKeyGenerator keyGenerator;
+  private final OrderSnapshots snapshots;
 
   public OrderEventHandler(final OrdersRepository ordersRepository) {
+    this(ordersRepository, new TimeOrderedOrderKeyGenerator());
+  }
+
+  public OrderEventHandler(final OrdersRepository ordersRepository, final OrderKeyGenerator keyGenerator) {
+    this(ordersRepository, keyGenerator, null);
+  }
+
+  //TODOCUMENT snapshots, if not null, are of the orders the repository reads, and are what all orders are
+  //streamed from.
+  public OrderEventHandler(final OrdersRepository ordersRepository, final OrderKeyGenerator keyGenerator,
+                           final OrderSnapshots snapshots) {
     this.ordersRepository = ordersRepository;
+    this.keyGenerator = keyGenerator;
+    this.snapshots = snapshots;
   }
 
   @Override
   public OrderCreatedEvent createOrder(CreateOrderEvent createOrderEvent) {
-    Order order = Order.fromOrderDetails(createOrderEvent.getDetails());
+    Order order = Order.fromOrderDetails(keyGenerator.nextKey(), createOrderEvent.getDetails());
 
     order.addStatus(new OrderStatus(new Date(), "Order Created"));
+    order.setVersion(1);
 
     order = ordersRepository.save(order);
 
     return new OrderCreatedEvent(order.getKey(), order.toOrderDetails());
   }
 
+  @Override
+  public OrdersCreatedEvent createOrders(CreateOrdersEvent createOrdersEvent) {
+    Date created = new Date();
+    List<Order> orders = new ArrayList<Order>(createOrdersEvent.getDetails().size());
+    for (OrderDetails details : createOrdersEvent.getDetails()) {
+      Order order = Order.fromOrderDetails(keyGenerator.nextKey(), details);
+      order.addStatus(new OrderStatus(created, "Order Created"));
+      order.setVersion(1);
+      orders.add(order);
+    }
+
+    List<OrderCreatedEvent> events = new ArrayList<OrderCreatedEvent>(orders.size());
+    for (Order order : ordersRepository.saveAll(orders)) {
+      events.add(new OrderCreatedEvent(order.getKey(), order.toOrderDetails()));
+    }
+    return new OrdersCreatedEvent(events);
+  }
+
   @Override
   public AllOrdersEvent requestAllOrders(RequestAllOrdersEvent requestAllCurrentOrdersEvent) {
+    return new AllOrdersEvent(new OrderDetailsPages(ordersRepository, snapshots, STREAMING_PAGE_SIZE));
+  }
+
+  @Override
+  public AllOrdersEvent requestOrdersSubmitted(RequestOrdersSubmittedEvent requestOrdersSubmittedEvent) {
     List<OrderDetails> generatedDetails = new ArrayList<OrderDetails>();
-    for (Order order : ordersRepository.findAll()) {
+    for (Order order : ordersRepository.findBySubmissionTime(
+            requestOrdersSubmittedEvent.getFrom(), requestOrdersSubmittedEvent.getTo())) {
       generatedDetails.add(order.toOrderDetails());
     }
     return new AllOrdersEvent(generatedDetails);
   }
 
+  @Override
+  public AllOrdersEvent requestOrdersContaining(RequestOrdersContainingEvent requestOrdersContainingEvent) {
+    List<OrderDetails> generatedDetails = new ArrayList<OrderDetails>();
+    for (Order order : ordersRepository.findByItems(
+            requestOrdersContainingEvent.getItems(), requestOrdersContainingEvent.getMatch())) {
+      generatedDetails.add(order.toOrderDetails());
+    }
+    return new AllOrdersEvent(generatedDetails);
+  }
+
+  @Override
+  public AllOrdersEvent requestOrdersByStatus(RequestOrdersByStatusEvent requestOrdersByStatusEvent) {
+    List<OrderDetails> generatedDetails = new ArrayList<OrderDetails>();
+    for (Order order : ordersRepository.findByStatus(requestOrdersByStatusEvent.getStatus())) {
+      generatedDetails.add(order.toOrderDetails());
+    }
+    return new AllOrdersEvent(generatedDetails);
+  }
+
+  @Override
+  public OrderStatusCountsEvent requestOrderStatusCounts(RequestOrderStatusCountsEvent requestOrderStatusCountsEvent) {
+    return new OrderStatusCountsEvent(ordersRepository.countByStatus());
+  }
+
+  @Override
+  public OrdersPageEvent requestOrdersPage(RequestOrdersPageEvent requestOrdersPageEvent) {
+    OrderCursor after = requestOrdersPageEvent.getAfter() == null
+            ? null : OrderCursor.parse(requestOrdersPageEvent.getAfter());
+
+    List<Order> page = ordersRepository.findPage(after, requestOrdersPageEvent.getLimit());
+
+    List<OrderDetails> generatedDetails = new ArrayList<OrderDetails>(page.size());
+    for (Order order : page) {
+      generatedDetails.add(order.toOrderDetails());
+    }
+
+    String nextCursor = null;
+    if (!page.isEmpty() && page.size() == requestOrdersPageEvent.getLimit()) {
+      nextCursor = OrderCursor.of(page.get(page.size() - 1)).toString();
+    }
+    return new OrdersPageEvent(generatedDetails, nextCursor);
+  }
+
   @Override
   public OrderDetailsEvent requestOrderDetails(RequestOrderDetailsEvent requestOrderDetailsEvent) {
 
@@ -58,22 +146,36 @@ public class OrderEventHandler implements OrderService {
   @Override
   public OrderDeletedEvent deleteOrder(DeleteOrderEvent deleteOrderEvent) {
 
-    Order order = ordersRepository.findById(deleteOrderEvent.getKey());
+    final Long expectedVersion = deleteOrderEvent.getExpectedVersion();
+    final Order[] found = new Order[1];
+    final boolean[] matched = new boolean[1];
+    final boolean[] deletable = new boolean[1];
 
-    if (order == null) {
+    //TODOCUMENT This contains some specific domain logic, not exposed to the outside world, and not part of the
+    //persistence rules. It is checked and the order removed in one step, so it can't change in between.
+    ordersRepository.compute(deleteOrderEvent.getKey(), new OrderUpdate() {
+      @Override
+      public Order apply(Order current) {
+        found[0] = current;
+        matched[0] = current != null && (expectedVersion == null || current.getVersion() == expectedVersion);
+        deletable[0] = matched[0] && current.canBeDeleted();
+        return deletable[0] ? null : current;
+      }
+    });
+
+    if (found[0] == null) {
       return OrderDeletedEvent.notFound(deleteOrderEvent.getKey());
     }
 
-    OrderDetails details = order.toOrderDetails();
+    OrderDetails details = found[0].toOrderDetails();
 
-    //TODOCUMENT This contains some specific domain logic, not exposed to the outside world, and not part of the
-    //persistence rules.
+    if (!matched[0]) {
+      return OrderDeletedEvent.versionConflict(deleteOrderEvent.getKey(), details);
+    }
 
-    if (!order.canBeDeleted()) {
+    if (!deletable[0]) {
       return OrderDeletedEvent.deletionForbidden(deleteOrderEvent.getKey(), details);
     }
-
-    ordersRepository.delete(deleteOrderEvent.getKey());
     return new OrderDeletedEvent(deleteOrderEvent.getKey(), details);
   }
 
@@ -0,0 +1,9 @@
+package com.yummynoodlebar.core.services;
+
+import java.util.UUID;
+
+//TODOCUMENT Chooses the key of each new order. Keys must be unique, the service never checks.
+public interface OrderKeyGenerator {
+
+  UUID nextKey();
+}
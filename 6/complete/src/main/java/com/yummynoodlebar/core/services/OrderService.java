@@ -9,12 +9,24 @@ public interface OrderService {
 
   public AllOrdersEvent requestAllOrders(RequestAllOrdersEvent requestAllCurrentOrdersEvent);
 
+  public OrdersPageEvent requestOrdersPage(RequestOrdersPageEvent requestOrdersPageEvent);
+
+  public AllOrdersEvent requestOrdersSubmitted(RequestOrdersSubmittedEvent requestOrdersSubmittedEvent);
+
+  public AllOrdersEvent requestOrdersContaining(RequestOrdersContainingEvent requestOrdersContainingEvent);
+
+  public AllOrdersEvent requestOrdersByStatus(RequestOrdersByStatusEvent requestOrdersByStatusEvent);
+
+  public OrderStatusCountsEvent requestOrderStatusCounts(RequestOrderStatusCountsEvent requestOrderStatusCountsEvent);
+
   public OrderDetailsEvent requestOrderDetails(RequestOrderDetailsEvent requestOrderDetailsEvent);
 
   public OrderStatusEvent requestOrderStatus(RequestOrderStatusEvent requestOrderStatusEvent);
 
   public OrderCreatedEvent createOrder(CreateOrderEvent event);
 
+  public OrdersCreatedEvent createOrders(CreateOrdersEvent event);
+
   public OrderUpdatedEvent setOrderPayment(SetOrderPaymentEvent setOrderPaymentEvent);
 
   public OrderDeletedEvent deleteOrder(DeleteOrderEvent deleteOrderEvent);
@@ -0,0 +1,11 @@
+package com.yummynoodlebar.core.services;
+
+import java.util.UUID;
+
+public class RandomOrderKeyGenerator implements OrderKeyGenerator {
+
+  @Override
+  public UUID nextKey() {
+    return UUID.randomUUID();
+  }
+}
@@ -0,0 +1,32 @@
+package com.yummynoodlebar.core.services;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keys laid out as version 7 UUIDs: the creation time in milliseconds in the top 48 bits, then 74
+ * random bits around the version and variant fields. Keys made later compare greater, give or take
+ * the keys made in the same millisecond, so new orders land together at the end of anything kept in
+ * key order rather than all over it.
+ * <p>
+ * The random bits come from each thread's own generator, so threads creating orders never wait for
+ * each other as they do on the one SecureRandom behind {@link UUID#randomUUID()}. The keys are
+ * unique, not unguessable.
+ */
+public class TimeOrderedOrderKeyGenerator implements OrderKeyGenerator {
+
+  private static final long VERSION = 0x7000L;
+  private static final long VARIANT = 0x8000000000000000L;
+
+  @Override
+  public UUID nextKey() {
+    return keyAt(System.currentTimeMillis());
+  }
+
+  static UUID keyAt(long millis) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long msb = (millis << 16) | VERSION | (random.nextInt() & 0x0fffL);
+    long lsb = VARIANT | (random.nextLong() >>> 2);
+    return new UUID(msb, lsb);
+  }
+}
@@ -0,0 +1,144 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.cluster.ClusterNode;
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.repository.OrderCodec;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.*;
+
+//TODOCUMENT Endpoints the nodes of a partitioned deployment use to talk to each other, and to manage membership.
+//POST /cluster/nodes?node=http://host:port adds a node, DELETE /cluster/nodes?node=... takes one out,
+//and any node can be asked to do either. Orders travel in their binary form, and the order queries
+//here only answer from the orders this node holds itself.
+@Controller
+@RequestMapping("/cluster")
+public class ClusterController {
+
+    @Autowired(required = false)
+    private ClusterNode clusterNode;
+
+    @RequestMapping(method = RequestMethod.GET, value = "/nodes")
+    public ResponseEntity<Collection<String>> getNodes() {
+        if (!isClustered()) {
+            return new ResponseEntity<Collection<String>>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<Collection<String>>(clusterNode.getRing().getNodes(), HttpStatus.OK);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/nodes")
+    public ResponseEntity<Collection<String>> joinNode(@RequestParam String node) {
+        if (!isClustered()) {
+            return new ResponseEntity<Collection<String>>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<Collection<String>>(clusterNode.join(node), HttpStatus.OK);
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, value = "/nodes")
+    public ResponseEntity<Collection<String>> leaveNode(@RequestParam String node) {
+        if (!isClustered()) {
+            return new ResponseEntity<Collection<String>>(HttpStatus.NOT_FOUND);
+        }
+        try {
+            return new ResponseEntity<Collection<String>>(clusterNode.leave(node), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<Collection<String>>(HttpStatus.CONFLICT);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.PUT, value = "/nodes")
+    public ResponseEntity<Void> updateNodes(@RequestBody List<String> nodes) {
+        if (!isClustered()) {
+            return new ResponseEntity<Void>(HttpStatus.NOT_FOUND);
+        }
+        if (nodes.isEmpty()) {
+            return new ResponseEntity<Void>(HttpStatus.BAD_REQUEST);
+        }
+        clusterNode.update(nodes);
+        return new ResponseEntity<Void>(HttpStatus.NO_CONTENT);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/orders", consumes = "application/octet-stream")
+    public ResponseEntity<Void> receiveOrders(@RequestBody byte[] orders) {
+        if (!isClustered()) {
+            return new ResponseEntity<Void>(HttpStatus.NOT_FOUND);
+        }
+        clusterNode.receive(OrderCodec.decodeAll(orders));
+        return new ResponseEntity<Void>(HttpStatus.NO_CONTENT);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/orders", produces = "application/octet-stream")
+    public ResponseEntity<byte[]> findOrders(@RequestParam String query,
+                                             @RequestParam(required = false) Integer limit,
+                                             @RequestParam(required = false) String after,
+                                             @RequestParam(required = false) Long from,
+                                             @RequestParam(required = false) Long to,
+                                             @RequestParam(value = "item", required = false) List<String> items,
+                                             @RequestParam(required = false) String match,
+                                             @RequestParam(required = false) String status) {
+        if (!isClustered()) {
+            return new ResponseEntity<byte[]>(HttpStatus.NOT_FOUND);
+        }
+        OrdersRepository orders = clusterNode.getLocalRepository();
+        List<Order> found;
+        try {
+            if ("all".equals(query)) {
+                found = orders.findAll();
+            } else if ("page".equals(query) && limit != null) {
+                found = orders.findPage(after == null ? null : OrderCursor.parse(after), limit);
+            } else if ("submitted".equals(query)) {
+                found = orders.findBySubmissionTime(from == null ? null : new Date(from), to == null ? null : new Date(to));
+            } else if ("items".equals(query) && items != null && match != null) {
+                found = orders.findByItems(new LinkedHashSet<String>(items), ItemMatch.valueOf(match));
+            } else if ("status".equals(query) && status != null) {
+                found = orders.findByStatus(status);
+            } else {
+                return new ResponseEntity<byte[]>(HttpStatus.BAD_REQUEST);
+            }
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<byte[]>(HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<byte[]>(OrderCodec.encodeAll(found), HttpStatus.OK);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/orders/statuses")
+    public ResponseEntity<Map<String, Integer>> countOrdersByStatus() {
+        if (!isClustered()) {
+            return new ResponseEntity<Map<String, Integer>>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<Map<String, Integer>>(
+                clusterNode.getLocalRepository().countByStatus(), HttpStatus.OK);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/orders/{id}", produces = "application/octet-stream")
+    public ResponseEntity<byte[]> findOrder(@PathVariable String id) {
+        if (!isClustered()) {
+            return new ResponseEntity<byte[]>(HttpStatus.NOT_FOUND);
+        }
+        Order order = clusterNode.getLocalRepository().findById(UUID.fromString(id));
+        if (order == null) {
+            return new ResponseEntity<byte[]>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<byte[]>(OrderCodec.encode(order), HttpStatus.OK);
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, value = "/orders/{id}")
+    public ResponseEntity<Void> deleteOrder(@PathVariable String id) {
+        if (!isClustered()) {
+            return new ResponseEntity<Void>(HttpStatus.NOT_FOUND);
+        }
+        clusterNode.getLocalRepository().delete(UUID.fromString(id));
+        return new ResponseEntity<Void>(HttpStatus.NO_CONTENT);
+    }
+
+    private boolean isClustered() {
+        return clusterNode != null && clusterNode.isClustered();
+    }
+}
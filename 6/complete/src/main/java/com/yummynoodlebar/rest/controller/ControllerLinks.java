@@ -0,0 +1,64 @@
+package com.yummynoodlebar.rest.controller;
+
+import org.springframework.hateoas.LinkBuilder;
+import org.springframework.hateoas.core.AnnotationMappingDiscoverer;
+import org.springframework.hateoas.core.LinkBuilderSupport;
+import org.springframework.hateoas.core.MappingDiscoverer;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriTemplate;
+
+//TODOCUMENT Links to the controllers, as linkTo builds them, but from the URIs of a request taken while it was
+//being served. So they can be built on any thread, such as the one a deferred result is completed on, without the
+//request being bound to it.
+public final class ControllerLinks {
+
+    private static final MappingDiscoverer DISCOVERER = new AnnotationMappingDiscoverer(RequestMapping.class);
+
+    private final String servletMapping;
+    private final String request;
+
+    private ControllerLinks(String servletMapping, String request) {
+        this.servletMapping = servletMapping;
+        this.request = request;
+    }
+
+    //TODOCUMENT The links of the request bound to the current thread, the one being served.
+    public static ControllerLinks ofCurrentRequest() {
+        return new ControllerLinks(ServletUriComponentsBuilder.fromCurrentServletMapping().build().toUriString(),
+                ServletUriComponentsBuilder.fromCurrentRequest().build().toUriString());
+    }
+
+    //TODOCUMENT As ControllerLinkBuilder.linkTo, the parameters filling in the controller's mapping.
+    public LinkBuilder linkTo(Class<?> controller, Object... parameters) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(servletMapping);
+        String mapping = DISCOVERER.getMapping(controller);
+        if (mapping != null) {
+            builder.path(new UriTemplate(mapping).expand(parameters).toString());
+        }
+        return new Builder(builder);
+    }
+
+    //TODOCUMENT The URI of the request itself, query and all, to build others from.
+    public UriComponentsBuilder toRequest() {
+        return UriComponentsBuilder.fromUriString(request);
+    }
+
+    private static final class Builder extends LinkBuilderSupport<Builder> {
+
+        Builder(UriComponentsBuilder builder) {
+            super(builder);
+        }
+
+        @Override
+        protected Builder getThis() {
+            return this;
+        }
+
+        @Override
+        protected Builder createNewInstance(UriComponentsBuilder builder) {
+            return new Builder(builder);
+        }
+    }
+}
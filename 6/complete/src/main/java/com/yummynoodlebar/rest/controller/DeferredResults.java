@@ -0,0 +1,94 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.services.EventCallback;
+import com.yummynoodlebar.core.services.EventFuture;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CancellationException;
+
+//TODOCUMENT Servlet 3 async processing of the order service's futures. The servlet thread is handed back as soon
+//as the handler returns, and the response is written once the core's event has been turned into it. A failure
+//is handled as if the handler had thrown it.
+//A response the core hasn't produced within TIMEOUT_MILLIS cancels the work if it hasn't started, and is then
+//answered with 503 Service Unavailable, as a retry can't repeat it. Work already running isn't interrupted,
+//which could leave a write half done, so it goes on, and the response is the one toTimeout gives, such as
+//202 Accepted for a command, or 503 for a query, whose retry only reads again.
+final class DeferredResults {
+
+    static final long TIMEOUT_MILLIS = 30000;
+
+    private DeferredResults() {
+    }
+
+    //TODOCUMENT Turns an event into the response. Runs on the thread the event was produced on, which the request
+    //isn't bound to, so links are built from the ones taken on the servlet thread.
+    abstract static class Response<E, R> {
+
+        abstract R to(E event, ControllerLinks links);
+
+        //TODOCUMENT The response to a failure, or null to handle it as if the handler had thrown it.
+        R toFailure(Throwable failure) {
+            return null;
+        }
+
+        //TODOCUMENT The response when the core is still working at the timeout, or null for 503.
+        R toTimeout(ControllerLinks links) {
+            return null;
+        }
+    }
+
+    static <E, R> DeferredResult<R> of(final EventFuture<E> future, final Response<? super E, ? extends R> response) {
+        final DeferredResult<R> result = new DeferredResult<R>(TIMEOUT_MILLIS,
+                new ResponseEntity<Object>(HttpStatus.SERVICE_UNAVAILABLE));
+        final ControllerLinks links = ControllerLinks.ofCurrentRequest();
+        result.onTimeout(new Runnable() {
+            @Override
+            public void run() {
+                if (future.cancelUnlessStarted() || future.isDone()) {
+                    return;
+                }
+                R stillWorking = response.toTimeout(links);
+                if (stillWorking != null) {
+                    result.setResult(stillWorking);
+                }
+            }
+        });
+        future.addCallback(new EventCallback<E>() {
+            @Override
+            public void onEvent(E event) {
+                R converted;
+                try {
+                    converted = response.to(event, links);
+                } catch (RuntimeException e) {
+                    result.setErrorResult(e);
+                    return;
+                }
+                result.setResult(converted);
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                if (failure instanceof CancellationException) {
+                    //Only cancelled on the timeout, which answers for it.
+                    return;
+                }
+                R converted = response.toFailure(failure);
+                if (converted == null) {
+                    result.setErrorResult(failure);
+                } else {
+                    result.setResult(converted);
+                }
+            }
+        });
+        return result;
+    }
+
+    //TODOCUMENT For responses decided without the core, such as redirects.
+    static <R> DeferredResult<R> completed(R response) {
+        DeferredResult<R> result = new DeferredResult<R>();
+        result.setResult(response);
+        return result;
+    }
+}
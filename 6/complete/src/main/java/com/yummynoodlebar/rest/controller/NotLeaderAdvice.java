@@ -0,0 +1,16 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.raft.NotLeaderException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+//TODOCUMENT Sends any request that reached a Raft node other than the leader on to the leader.
+@ControllerAdvice
+public class NotLeaderAdvice {
+
+    @ExceptionHandler(NotLeaderException.class)
+    public ResponseEntity<Void> redirectToLeader(NotLeaderException e) {
+        return OwnerRedirects.redirectTo(e.getLeaderUrl());
+    }
+}
@@ -1,10 +1,15 @@
 package com.yummynoodlebar.rest.controller;
 
+import com.yummynoodlebar.core.cluster.ClusterNode;
 import com.yummynoodlebar.core.events.orders.CreateOrderEvent;
+import com.yummynoodlebar.core.events.orders.CreateOrdersEvent;
 import com.yummynoodlebar.core.events.orders.DeleteOrderEvent;
 import com.yummynoodlebar.core.events.orders.OrderCreatedEvent;
 import com.yummynoodlebar.core.events.orders.OrderDeletedEvent;
-import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.core.events.orders.OrderDetails;
+import com.yummynoodlebar.core.events.orders.OrdersCreatedEvent;
+import com.yummynoodlebar.core.replication.OrdersReplication;
+import com.yummynoodlebar.core.services.AsyncOrderService;
 import com.yummynoodlebar.rest.domain.Order;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,10 +20,15 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Controller
@@ -28,38 +38,131 @@ public class OrderCommandsController {
     private static Logger LOG = LoggerFactory.getLogger(OrderCommandsController.class);
 
     @Autowired
-    private OrderService orderService;
+    private AsyncOrderService orderService;
+
+    @Autowired(required = false)
+    private ClusterNode clusterNode;
+
+    @Autowired(required = false)
+    private OrdersReplication replication;
 
     @RequestMapping(method = RequestMethod.POST)
-    public ResponseEntity<Order> createOrder(@RequestBody Order order, UriComponentsBuilder builder) {
+    public DeferredResult<ResponseEntity<Order>> createOrder(@RequestBody Order order, final UriComponentsBuilder builder) {
 
-        OrderCreatedEvent orderCreated = orderService.createOrder(new CreateOrderEvent(order.toOrderDetails()));
+        if (replication != null && replication.isFollower()) {
+            return DeferredResults.completed(OwnerRedirects.<Order>redirectTo(replication.getLeaderUrl()));
+        }
 
-        Order newOrder = Order.fromOrderDetails(orderCreated.getDetails());
+        return DeferredResults.of(orderService.createOrder(new CreateOrderEvent(order.toOrderDetails())),
+                new DeferredResults.Response<OrderCreatedEvent, ResponseEntity<Order>>() {
+                    @Override
+                    ResponseEntity<Order> to(OrderCreatedEvent orderCreated, ControllerLinks links) {
+                        Order newOrder = Order.fromOrderDetails(orderCreated.getDetails(), links);
+
+                        HttpHeaders headers = new HttpHeaders();
+                        headers.setLocation(
+                                builder.path("/aggregators/orders/{id}")
+                                        .buildAndExpand(orderCreated.getNewOrderKey().toString()).toUri());
+                        headers.setETag(OrderVersionTags.tagOf(newOrder.getVersion()));
+
+                        return new ResponseEntity<Order>(newOrder, headers, HttpStatus.CREATED);
+                    }
+
+                    @Override
+                    ResponseEntity<Order> toTimeout(ControllerLinks links) {
+                        return stillWorking(null);
+                    }
+                });
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setLocation(
-                builder.path("/aggregators/orders/{id}")
-                        .buildAndExpand(orderCreated.getNewOrderKey().toString()).toUri());
+    //TODOCUMENT Creates a burst of orders in one batch, returning them in the order they were sent.
+    @RequestMapping(method = RequestMethod.POST, value = "/batch")
+    public DeferredResult<ResponseEntity<List<Order>>> createOrders(@RequestBody List<Order> orders) {
 
-        return new ResponseEntity<Order>(newOrder, headers, HttpStatus.CREATED);
+        if (replication != null && replication.isFollower()) {
+            return DeferredResults.completed(OwnerRedirects.<List<Order>>redirectTo(replication.getLeaderUrl()));
+        }
+
+        List<OrderDetails> details = new ArrayList<OrderDetails>(orders.size());
+        for (Order order : orders) {
+            details.add(order.toOrderDetails());
+        }
+        return DeferredResults.of(orderService.createOrders(new CreateOrdersEvent(details)),
+                new DeferredResults.Response<OrdersCreatedEvent, ResponseEntity<List<Order>>>() {
+                    @Override
+                    ResponseEntity<List<Order>> to(OrdersCreatedEvent ordersCreated, ControllerLinks links) {
+                        List<Order> created = new ArrayList<Order>(ordersCreated.getCreated().size());
+                        for (OrderCreatedEvent orderCreated : ordersCreated.getCreated()) {
+                            created.add(Order.fromOrderDetails(orderCreated.getDetails(), links));
+                        }
+                        return new ResponseEntity<List<Order>>(created, HttpStatus.CREATED);
+                    }
+
+                    @Override
+                    ResponseEntity<List<Order>> toTimeout(ControllerLinks links) {
+                        return stillWorking(null);
+                    }
+                });
     }
 
+    //TODOCUMENT With If-Match, the order is only cancelled while it is still at the version tagged, otherwise 412.
     @RequestMapping(method = RequestMethod.DELETE, value = "/{id}")
-    public ResponseEntity<Order> cancelOrder(@PathVariable String id) {
+    public DeferredResult<ResponseEntity<Order>> cancelOrder(@PathVariable String id,
+                                                             @RequestHeader(value = "If-Match", required = false) String ifMatch) {
+
+        UUID key = UUID.fromString(id);
+        if (replication != null && replication.isFollower()) {
+            return DeferredResults.completed(OwnerRedirects.<Order>redirectTo(replication.getLeaderUrl()));
+        }
+        if (OwnerRedirects.isElsewhere(clusterNode, key)) {
+            return DeferredResults.completed(OwnerRedirects.<Order>redirectToOwner(clusterNode, key));
+        }
 
-        OrderDeletedEvent orderDeleted = orderService.deleteOrder(new DeleteOrderEvent(UUID.fromString(id)));
+        return DeferredResults.of(orderService.deleteOrder(
+                new DeleteOrderEvent(key, OrderVersionTags.expectedVersion(ifMatch))),
+                new DeferredResults.Response<OrderDeletedEvent, ResponseEntity<Order>>() {
+                    @Override
+                    ResponseEntity<Order> to(OrderDeletedEvent orderDeleted, ControllerLinks links) {
+                        return cancelled(orderDeleted, links);
+                    }
+
+                    //The order itself, which can be read to see whether it has been cancelled.
+                    @Override
+                    ResponseEntity<Order> toTimeout(ControllerLinks links) {
+                        return stillWorking(links.toRequest().replaceQuery(null).build().toUri());
+                    }
+                });
+    }
 
+    /*
+     * The command has started and will be carried out, so it must not be retried as if it had failed.
+     * The location, when known, is where to look for its outcome.
+     */
+    private static <T> ResponseEntity<T> stillWorking(URI location) {
+        HttpHeaders headers = new HttpHeaders();
+        if (location != null) {
+            headers.setLocation(location);
+        }
+        return new ResponseEntity<T>(headers, HttpStatus.ACCEPTED);
+    }
+
+    private static ResponseEntity<Order> cancelled(OrderDeletedEvent orderDeleted, ControllerLinks links) {
         if (!orderDeleted.isEntityFound()) {
             return new ResponseEntity<Order>(HttpStatus.NOT_FOUND);
         }
 
-        Order order = Order.fromOrderDetails(orderDeleted.getDetails());
+        Order order = Order.fromOrderDetails(orderDeleted.getDetails(), links);
 
         if (orderDeleted.isDeletionCompleted()) {
             return new ResponseEntity<Order>(order, HttpStatus.OK);
         }
 
+        if (orderDeleted.isVersionConflict()) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(OrderVersionTags.tagOf(order.getVersion()));
+            return new ResponseEntity<Order>(order, headers, HttpStatus.PRECONDITION_FAILED);
+        }
+
         return new ResponseEntity<Order>(order, HttpStatus.FORBIDDEN);
     }
 }
@@ -0,0 +1,27 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.repository.OrderKeyFilter;
+import com.yummynoodlebar.core.repository.OrderKeyFilterStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+//TODOCUMENT Size and false positive rate of the filter answering lookups of unknown order keys.
+@Controller
+@RequestMapping("/key-filter")
+public class OrderKeyFilterController {
+
+    @Autowired(required = false)
+    private OrderKeyFilter orderKeyFilter;
+
+    @RequestMapping(method = RequestMethod.GET)
+    public ResponseEntity<OrderKeyFilterStatistics> getKeyFilterStatistics() {
+        if (orderKeyFilter == null) {
+            return new ResponseEntity<OrderKeyFilterStatistics>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<OrderKeyFilterStatistics>(orderKeyFilter.getStatistics(), HttpStatus.OK);
+    }
+}
@@ -1,18 +1,28 @@
 package com.yummynoodlebar.rest.controller;
 
+import com.yummynoodlebar.core.cluster.ClusterNode;
+import com.yummynoodlebar.core.domain.ItemMatch;
 import com.yummynoodlebar.core.events.orders.*;
+import com.yummynoodlebar.core.services.AsyncOrderService;
 import com.yummynoodlebar.core.services.OrderService;
 import com.yummynoodlebar.rest.domain.Order;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Controller
@@ -21,31 +31,178 @@ public class OrderQueriesController {
 
     private static Logger LOG = LoggerFactory.getLogger(OrderQueriesController.class);
 
+    static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private AsyncOrderService asyncOrderService;
+
+    @Autowired(required = false)
+    private ClusterNode clusterNode;
+
+    //TODOCUMENT The orders are written out as they are read from the core, one page at a time,
+    //rather than being collected into a list first. So unlike the other queries, this one is answered on the
+    //servlet thread, which is busy writing the response for as long as the core is reading orders anyway.
+    //from and to (epoch milliseconds, as dateTimeOfSubmission is rendered) restrict the orders to those
+    //submitted in that range, at or after from and before to.
     @RequestMapping(method = RequestMethod.GET)
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<Order> getAllOrders() {
-        List<Order> orders = new ArrayList<Order>();
-        for (OrderDetails detail : orderService.requestAllOrders(new RequestAllOrdersEvent()).getOrdersDetails()) {
-            orders.add(Order.fromOrderDetails(detail));
+    public Iterable<Order> getAllOrders(@RequestParam(required = false) Long from,
+                                        @RequestParam(required = false) Long to) {
+        final Iterable<OrderDetails> details;
+        if (from == null && to == null) {
+            details = orderService.requestAllOrders(new RequestAllOrdersEvent()).getOrdersDetailsStream();
+        } else {
+            details = orderService.requestOrdersSubmitted(new RequestOrdersSubmittedEvent(
+                    from == null ? null : new Date(from), to == null ? null : new Date(to))).getOrdersDetailsStream();
         }
-        return orders;
+
+        return toOrders(details, ControllerLinks.ofCurrentRequest());
+    }
+
+    //TODOCUMENT Orders containing menu items, e.g. ?item=yummy15&item=yummy3&match=any.
+    //match is all (the default) or any.
+    @RequestMapping(method = RequestMethod.GET, params = "item")
+    public DeferredResult<ResponseEntity<List<Order>>> getOrdersContaining(@RequestParam("item") List<String> items,
+                                                                           @RequestParam(defaultValue = "all") String match) {
+        ItemMatch itemMatch;
+        try {
+            itemMatch = ItemMatch.valueOf(match.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return DeferredResults.completed(new ResponseEntity<List<Order>>(HttpStatus.BAD_REQUEST));
+        }
+
+        return DeferredResults.of(asyncOrderService.requestOrdersContaining(
+                new RequestOrdersContainingEvent(new LinkedHashSet<String>(items), itemMatch)),
+                new DeferredResults.Response<AllOrdersEvent, ResponseEntity<List<Order>>>() {
+                    @Override
+                    ResponseEntity<List<Order>> to(AllOrdersEvent found, ControllerLinks links) {
+                        return new ResponseEntity<List<Order>>(toOrders(found.getOrdersDetails(), links), HttpStatus.OK);
+                    }
+                });
+    }
+
+    //TODOCUMENT Orders currently in the given status, e.g. ?status=Order Created
+    @RequestMapping(method = RequestMethod.GET, params = "status")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public DeferredResult<List<Order>> getOrdersByStatus(@RequestParam String status) {
+        return DeferredResults.of(asyncOrderService.requestOrdersByStatus(new RequestOrdersByStatusEvent(status)),
+                new DeferredResults.Response<AllOrdersEvent, List<Order>>() {
+                    @Override
+                    List<Order> to(AllOrdersEvent found, ControllerLinks links) {
+                        return toOrders(found.getOrdersDetails(), links);
+                    }
+                });
+    }
+
+    //TODOCUMENT Number of orders currently in each status, for dashboards that don't need the orders themselves.
+    @RequestMapping(method = RequestMethod.GET, value = "/statuses")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public DeferredResult<Map<String, Integer>> getOrderStatusCounts() {
+        return DeferredResults.of(asyncOrderService.requestOrderStatusCounts(new RequestOrderStatusCountsEvent()),
+                new DeferredResults.Response<OrderStatusCountsEvent, Map<String, Integer>>() {
+                    @Override
+                    Map<String, Integer> to(OrderStatusCountsEvent counts, ControllerLinks links) {
+                        return counts.getCounts();
+                    }
+                });
+    }
+
+    //TODOCUMENT Keyset pagination. The next page is found by following the Link header with rel="next",
+    //which is absent on the last page.
+    @RequestMapping(method = RequestMethod.GET, params = "limit")
+    public DeferredResult<ResponseEntity<List<Order>>> getOrdersPage(@RequestParam int limit,
+                                                                     @RequestParam(required = false) final String after) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return DeferredResults.completed(new ResponseEntity<List<Order>>(HttpStatus.BAD_REQUEST));
+        }
+
+        return DeferredResults.of(asyncOrderService.requestOrdersPage(new RequestOrdersPageEvent(after, limit)),
+                new DeferredResults.Response<OrdersPageEvent, ResponseEntity<List<Order>>>() {
+                    @Override
+                    ResponseEntity<List<Order>> to(OrdersPageEvent page, ControllerLinks links) {
+                        HttpHeaders headers = new HttpHeaders();
+                        if (page.hasNextPage()) {
+                            String next = links.toRequest()
+                                    .replaceQueryParam("after", page.getNextCursor())
+                                    .build().toUriString();
+                            headers.add("Link", "<" + next + ">; rel=\"next\"");
+                        }
+
+                        return new ResponseEntity<List<Order>>(toOrders(page.getOrdersDetails(), links), headers, HttpStatus.OK);
+                    }
+
+                    @Override
+                    ResponseEntity<List<Order>> toFailure(Throwable failure) {
+                        if (!(failure instanceof IllegalArgumentException)) {
+                            return null;
+                        }
+                        LOG.debug("Invalid orders cursor {}", after);
+                        return new ResponseEntity<List<Order>>(HttpStatus.BAD_REQUEST);
+                    }
+                });
     }
 
     @RequestMapping(method = RequestMethod.GET, value = "/{id}")
-    public ResponseEntity<Order> viewOrder(@PathVariable String id) {
+    public DeferredResult<ResponseEntity<Order>> viewOrder(@PathVariable String id) {
 
-        OrderDetailsEvent details = orderService.requestOrderDetails(new RequestOrderDetailsEvent(UUID.fromString(id)));
+        UUID key = UUID.fromString(id);
+        if (OwnerRedirects.isElsewhere(clusterNode, key)) {
+            return DeferredResults.completed(OwnerRedirects.<Order>redirectToOwner(clusterNode, key));
+        }
+
+        return DeferredResults.of(asyncOrderService.requestOrderDetails(new RequestOrderDetailsEvent(key)),
+                new DeferredResults.Response<OrderDetailsEvent, ResponseEntity<Order>>() {
+                    @Override
+                    ResponseEntity<Order> to(OrderDetailsEvent details, ControllerLinks links) {
+                        if (!details.isEntityFound()) {
+                            return new ResponseEntity<Order>(HttpStatus.NOT_FOUND);
+                        }
+
+                        Order order = Order.fromOrderDetails(details.getOrderDetails(), links);
+
+                        HttpHeaders headers = new HttpHeaders();
+                        headers.setETag(OrderVersionTags.tagOf(order.getVersion()));
+                        return new ResponseEntity<Order>(order, headers, HttpStatus.OK);
+                    }
+                });
+    }
 
-        if (!details.isEntityFound()) {
-            return new ResponseEntity<Order>(HttpStatus.NOT_FOUND);
+    private static List<Order> toOrders(Collection<OrderDetails> details, ControllerLinks links) {
+        List<Order> orders = new ArrayList<Order>(details.size());
+        for (OrderDetails detail : details) {
+            orders.add(Order.fromOrderDetails(detail, links));
         }
+        return orders;
+    }
+
+    private static Iterable<Order> toOrders(final Iterable<OrderDetails> details, final ControllerLinks links) {
+        return new Iterable<Order>() {
+            @Override
+            public Iterator<Order> iterator() {
+                final Iterator<OrderDetails> detailsIterator = details.iterator();
+                return new Iterator<Order>() {
+                    @Override
+                    public boolean hasNext() {
+                        return detailsIterator.hasNext();
+                    }
 
-        Order order = Order.fromOrderDetails(details.getOrderDetails());
+                    @Override
+                    public Order next() {
+                        return Order.fromOrderDetails(detailsIterator.next(), links);
+                    }
 
-        return new ResponseEntity<Order>(order, HttpStatus.OK);
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
     }
 }
@@ -1,8 +1,9 @@
 package com.yummynoodlebar.rest.controller;
 
+import com.yummynoodlebar.core.cluster.ClusterNode;
 import com.yummynoodlebar.core.events.orders.OrderStatusEvent;
 import com.yummynoodlebar.core.events.orders.RequestOrderStatusEvent;
-import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.core.services.AsyncOrderService;
 import com.yummynoodlebar.rest.domain.OrderStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.UUID;
 
@@ -19,21 +21,34 @@ import java.util.UUID;
 public class OrderStatusController {
 
   @Autowired
-  private OrderService orderService;
+  private AsyncOrderService orderService;
 
-  @RequestMapping(method = RequestMethod.GET)
-  public ResponseEntity<OrderStatus> getOrderStatus(@PathVariable String id) {
+  @Autowired(required = false)
+  private ClusterNode clusterNode;
 
-    OrderStatusEvent orderStatusEvent = orderService.requestOrderStatus(new RequestOrderStatusEvent(UUID.fromString(id)));
+  @RequestMapping(method = RequestMethod.GET)
+  public DeferredResult<ResponseEntity<OrderStatus>> getOrderStatus(@PathVariable String id) {
 
-    if (!orderStatusEvent.isEntityFound()) {
-      return new ResponseEntity<OrderStatus>(HttpStatus.NOT_FOUND);
+    UUID key = UUID.fromString(id);
+    if (OwnerRedirects.isElsewhere(clusterNode, key)) {
+      return DeferredResults.completed(OwnerRedirects.<OrderStatus>redirectToOwner(clusterNode, key));
     }
 
-    return new ResponseEntity<OrderStatus>(
-            OrderStatus.fromOrderStatusDetails(
-                    orderStatusEvent.getKey(),
-                    orderStatusEvent.getOrderStatus()),
-            HttpStatus.OK);
+    return DeferredResults.of(orderService.requestOrderStatus(new RequestOrderStatusEvent(key)),
+            new DeferredResults.Response<OrderStatusEvent, ResponseEntity<OrderStatus>>() {
+              @Override
+              ResponseEntity<OrderStatus> to(OrderStatusEvent orderStatusEvent, ControllerLinks links) {
+                if (!orderStatusEvent.isEntityFound()) {
+                  return new ResponseEntity<OrderStatus>(HttpStatus.NOT_FOUND);
+                }
+
+                return new ResponseEntity<OrderStatus>(
+                        OrderStatus.fromOrderStatusDetails(
+                                orderStatusEvent.getKey(),
+                                orderStatusEvent.getOrderStatus(),
+                                links),
+                        HttpStatus.OK);
+              }
+            });
   }
 }
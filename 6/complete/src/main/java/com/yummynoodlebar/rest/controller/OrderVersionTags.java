@@ -0,0 +1,36 @@
+package com.yummynoodlebar.rest.controller;
+
+//TODOCUMENT An order's version is its entity tag, so a client can send the tag it last saw back in If-Match
+//and have a write refused with a 412 if the order changed since, rather than overwriting the change.
+final class OrderVersionTags {
+
+    //TODOCUMENT Stands for a tag that isn't one of ours: no order is ever at it, so it never matches.
+    static final long NO_VERSION = -1;
+
+    private OrderVersionTags() {
+    }
+
+    static String tagOf(long version) {
+        return "\"" + version + "\"";
+    }
+
+    //TODOCUMENT The version an If-Match header asks for, or null if there is no header, or it is *, which any
+    //order matches. Weak tags are compared as strong ones, as the version alone makes the tag.
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            return NO_VERSION;
+        }
+        try {
+            return Long.parseLong(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            return NO_VERSION;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.cluster.ClusterNode;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.net.URI;
+import java.util.UUID;
+
+//TODOCUMENT In a partitioned deployment, requests for an order another node owns are sent on to that node
+//with a 307, which keeps the method and body, so clients talk to the owner directly from then on.
+//Replication followers send writes on to their leader the same way, and Raft followers reads as well.
+final class OwnerRedirects {
+
+    private OwnerRedirects() {
+    }
+
+    static boolean isElsewhere(ClusterNode clusterNode, UUID key) {
+        return clusterNode != null && !clusterNode.isLocal(key);
+    }
+
+    static <T> ResponseEntity<T> redirectToOwner(ClusterNode clusterNode, UUID key) {
+        return redirectTo(clusterNode.ownerOf(key));
+    }
+
+    //TODOCUMENT The same request, on the instance with the given base URL, or 503 when there is none yet.
+    static <T> ResponseEntity<T> redirectTo(String node) {
+        if (node == null) {
+            return new ResponseEntity<T>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String query = request.getQueryString();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setLocation(URI.create(node + path + (query == null ? "" : "?" + query)));
+        return new ResponseEntity<T>(headers, HttpStatus.TEMPORARY_REDIRECT);
+    }
+}
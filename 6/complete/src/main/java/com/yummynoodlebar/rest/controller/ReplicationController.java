@@ -0,0 +1,30 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.replication.NoReplication;
+import com.yummynoodlebar.core.replication.OrdersReplication;
+import com.yummynoodlebar.core.replication.ReplicationStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import java.util.List;
+
+//TODOCUMENT Replication lag, per follower on the leader, or as the follower sees it.
+@Controller
+@RequestMapping("/replication")
+public class ReplicationController {
+
+    @Autowired(required = false)
+    private OrdersReplication replication;
+
+    @RequestMapping(method = RequestMethod.GET)
+    public ResponseEntity<List<ReplicationStatistics>> getReplicationStatistics() {
+        if (replication == null || replication instanceof NoReplication) {
+            return new ResponseEntity<List<ReplicationStatistics>>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<List<ReplicationStatistics>>(replication.getStatistics(), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,19 @@
+package com.yummynoodlebar.rest.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.concurrent.RejectedExecutionException;
+
+//TODOCUMENT Answers requests the order service had no room to queue with 503, so that clients back off
+//rather than the servlet container piling them up.
+@ControllerAdvice
+public class ServiceBusyAdvice {
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Void> serviceBusy(RejectedExecutionException e) {
+        return new ResponseEntity<Void>(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,30 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.repository.WriteAheadLogStatistics;
+import com.yummynoodlebar.core.repository.WriteAheadLogs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import java.util.Map;
+
+//TODOCUMENT Group commit batch sizes, commit latencies and syncs of each journal's write-ahead log,
+//by the directory it is in. 404 unless yummynoodlebar.journal is on.
+@Controller
+@RequestMapping("/journal")
+public class WriteAheadLogController {
+
+    @Autowired(required = false)
+    private WriteAheadLogs writeAheadLogs;
+
+    @RequestMapping(method = RequestMethod.GET)
+    public ResponseEntity<Map<String, WriteAheadLogStatistics>> getWriteAheadLogStatistics() {
+        if (writeAheadLogs == null || writeAheadLogs.isEmpty()) {
+            return new ResponseEntity<Map<String, WriteAheadLogStatistics>>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<Map<String, WriteAheadLogStatistics>>(writeAheadLogs.getStatistics(), HttpStatus.OK);
+    }
+}
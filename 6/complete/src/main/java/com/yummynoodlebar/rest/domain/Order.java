@@ -13,8 +13,6 @@ import java.util.Date;
 import java.util.Map;
 import java.util.UUID;
 
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
-
 //TODOCUMENT This is added so that we can do jaxb serialisation.
 //this type of annotation is fine here, as this
 //Order implementation is made for integration with things like this.
@@ -30,6 +28,8 @@ public class Order extends ResourceSupport implements Serializable {
 
   private UUID key;
 
+  private long version;
+
   public Date getDateTimeOfSubmission() {
     return dateTimeOfSubmission;
   }
@@ -58,22 +58,37 @@ public class Order extends ResourceSupport implements Serializable {
     this.key = key;
   }
 
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
   public OrderDetails toOrderDetails() {
     OrderDetails details = new OrderDetails();
 
     details.setOrderItems(items);
     details.setKey(key);
     details.setDateTimeOfSubmission(dateTimeOfSubmission);
+    details.setVersion(version);
 
     return details;
   }
 
   // {!begin fromOrderDetails}
   public static Order fromOrderDetails(OrderDetails orderDetails) {
+    return fromOrderDetails(orderDetails, ControllerLinks.ofCurrentRequest());
+  }
+
+  //TODOCUMENT With links built from those of a request taken on its servlet thread, so it works off it too.
+  public static Order fromOrderDetails(OrderDetails orderDetails, ControllerLinks links) {
     Order order = new Order();
 
     order.dateTimeOfSubmission = orderDetails.getDateTimeOfSubmission();
     order.key = orderDetails.getKey();
+    order.version = orderDetails.getVersion();
     order.setItems(orderDetails.getOrderItems());
 
     //TODOCUMENT.  Adding the library, the above extends ResourceSupport and
@@ -82,12 +97,12 @@ public class Order extends ResourceSupport implements Serializable {
     //Much of the rest of the framework is helping deal with the blending of domains that happens in many spring apps
     //We have explicitly avoided that.
     // {!begin selfRel}
-    order.add(linkTo(OrderQueriesController.class).slash(order.key).withSelfRel());
+    order.add(links.linkTo(OrderQueriesController.class).slash(order.key).withSelfRel());
     // {!end selfRel}
     // {!begin status}
-    order.add(linkTo(OrderQueriesController.class).slash(order.key).slash("status").withRel("Order Status"));
+    order.add(links.linkTo(OrderQueriesController.class).slash(order.key).slash("status").withRel("Order Status"));
     // {!end status}
-    order.add(linkTo(OrderQueriesController.class).slash(order.key).slash("paymentdetails").withRel("Payment Details"));
+    order.add(links.linkTo(OrderQueriesController.class).slash(order.key).slash("paymentdetails").withRel("Payment Details"));
 
     return order;
   }
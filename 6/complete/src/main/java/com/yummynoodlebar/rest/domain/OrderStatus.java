@@ -1,6 +1,7 @@
 package com.yummynoodlebar.rest.domain;
 
 import com.yummynoodlebar.core.events.orders.OrderStatusDetails;
+import com.yummynoodlebar.rest.controller.ControllerLinks;
 import com.yummynoodlebar.rest.controller.OrderQueriesController;
 import com.yummynoodlebar.rest.controller.OrderStatusController;
 import org.springframework.hateoas.ResourceSupport;
@@ -10,8 +11,6 @@ import javax.xml.bind.annotation.XmlRootElement;
 import java.util.Date;
 import java.util.UUID;
 
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
-
 @XmlRootElement
 public class OrderStatus extends ResourceSupport {
 
@@ -25,14 +24,19 @@ public class OrderStatus extends ResourceSupport {
   private String status;
 
   public static OrderStatus fromOrderStatusDetails(UUID key, OrderStatusDetails orderDetails) {
+    return fromOrderStatusDetails(key, orderDetails, ControllerLinks.ofCurrentRequest());
+  }
+
+  //TODOCUMENT As above, for use off the servlet thread, from the links taken on it.
+  public static OrderStatus fromOrderStatusDetails(UUID key, OrderStatusDetails orderDetails, ControllerLinks links) {
     OrderStatus status = new OrderStatus();
 
     status.orderId = key;
     status.status = orderDetails.getStatus();
     status.statusDate = orderDetails.getStatusDate();
 
-    status.add(linkTo(OrderStatusController.class, key.toString()).withSelfRel());
-    status.add(linkTo(OrderQueriesController.class).slash(key).withRel("Order"));
+    status.add(links.linkTo(OrderStatusController.class, key.toString()).withSelfRel());
+    status.add(links.linkTo(OrderQueriesController.class).slash(key).withRel("Order"));
 
     return status;
   }
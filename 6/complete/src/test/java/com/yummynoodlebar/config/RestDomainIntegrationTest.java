@@ -13,6 +13,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
 import static com.yummynoodlebar.rest.controller.fixture.RestDataFixture.standardOrderJSON;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -44,7 +45,7 @@ public class RestDomainIntegrationTest {
 
   @Test
   public void addANewOrderToTheSystem() throws Exception  {
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             post("/aggregators/orders")
                     .content(standardOrderJSON())
                     .contentType(MediaType.APPLICATION_JSON)
@@ -0,0 +1,20 @@
+package com.yummynoodlebar.core;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmarks measure how fast things run rather than whether they work, take a while, and depend on
+ * the machine, so they are skipped in the ordinary test run. gradle benchmark runs them, logging what
+ * they measure.
+ */
+public final class Benchmarks {
+
+  public static final String BENCHMARKS_PROPERTY = "yummynoodlebar.benchmarks";
+
+  private Benchmarks() {
+  }
+
+  public static void assumeEnabled() {
+    assumeTrue("Benchmarks run with gradle benchmark", Boolean.getBoolean(BENCHMARKS_PROPERTY));
+  }
+}
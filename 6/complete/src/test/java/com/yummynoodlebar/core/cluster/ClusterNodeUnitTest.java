@@ -0,0 +1,258 @@
+package com.yummynoodlebar.core.cluster;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.repository.OrdersIndexingRepository;
+import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import com.yummynoodlebar.core.services.OrderKeyGenerator;
+import com.yummynoodlebar.core.services.RandomOrderKeyGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+//TODOCUMENT Several nodes in one process, talking through an in-process transport instead of HTTP.
+public class ClusterNodeUnitTest {
+
+  private static final String A = "http://localhost:8081";
+  private static final String B = "http://localhost:8082";
+  private static final String C = "http://localhost:8083";
+  private static final String D = "http://localhost:8084";
+  private static final int ORDERS_PER_NODE = 200;
+
+  InProcessTransport transport;
+  Map<String, OrdersPartitionedRepository> repositories;
+
+  @Before
+  public void setupCluster() {
+    transport = new InProcessTransport();
+    repositories = new LinkedHashMap<String, OrdersPartitionedRepository>();
+    for (String node : Arrays.asList(A, B, C)) {
+      start(node, Arrays.asList(A, B, C));
+    }
+    for (String node : Arrays.asList(A, B, C)) {
+      OrderKeyGenerator keys = new OwnedOrderKeyGenerator(repositories.get(node).getNode(), new RandomOrderKeyGenerator());
+      for (int i = 0; i < ORDERS_PER_NODE; i++) {
+        Order order = new Order(keys.nextKey(), new Date(i));
+        order.addStatus(new OrderStatus(new Date(), i % 2 == 0 ? "Order Created" : "Cooking"));
+        repositories.get(node).save(order);
+      }
+    }
+  }
+
+  @After
+  public void stopCluster() throws Exception {
+    for (OrdersPartitionedRepository repository : repositories.values()) {
+      repository.close();
+    }
+  }
+
+  @Test
+  public void nodesStoreTheOrdersTheyCreate() {
+    for (String node : Arrays.asList(A, B, C)) {
+      assertEquals(ORDERS_PER_NODE, local(node).findAll().size());
+    }
+    assertOrdersOnTheirOwners(3 * ORDERS_PER_NODE);
+  }
+
+  @Test
+  public void everyNodeQueriesTheWholeCluster() {
+    for (OrdersPartitionedRepository repository : repositories.values()) {
+      assertEquals(3 * ORDERS_PER_NODE, repository.findAll().size());
+      assertEquals(3 * ORDERS_PER_NODE / 2, repository.countByStatus("Cooking"));
+      assertEquals(3 * ORDERS_PER_NODE / 2, repository.findByStatus("Order Created").size());
+    }
+
+    List<Order> paged = new ArrayList<Order>();
+    OrderCursor after = null;
+    List<Order> page;
+    while (!(page = repositories.get(B).findPage(after, 70)).isEmpty()) {
+      paged.addAll(page);
+      after = OrderCursor.of(page.get(page.size() - 1));
+    }
+    assertEquals(3 * ORDERS_PER_NODE, paged.size());
+    for (int i = 1; i < paged.size(); i++) {
+      assertTrue(OrderCursor.compareOrders(paged.get(i - 1), paged.get(i)) < 0);
+    }
+  }
+
+  @Test
+  public void readsAndWritesGoToTheOwner() {
+    Order order = local(C).findAll().get(0);
+    assertSame(order, repositories.get(A).findById(order.getKey()));
+
+    repositories.get(A).delete(order.getKey());
+    assertNull(local(C).findById(order.getKey()));
+
+    repositories.get(A).save(order);
+    assertSame(order, local(C).findById(order.getKey()));
+  }
+
+  @Test
+  public void joiningNodeTakesOverItsOrders() {
+    start(D, Collections.<String>emptySet());
+
+    assertEquals(new TreeSet<String>(Arrays.asList(A, B, C, D)), node(A).join(D));
+    rebalanceAll();
+
+    for (String node : Arrays.asList(A, B, C, D)) {
+      assertEquals(node(A).getRing().getNodes(), node(node).getRing().getNodes());
+    }
+    assertFalse(local(D).findAll().isEmpty());
+    assertOrdersOnTheirOwners(3 * ORDERS_PER_NODE);
+    assertEquals(3 * ORDERS_PER_NODE, repositories.get(D).findAll().size());
+  }
+
+  @Test
+  public void leavingNodeHandsOverItsOrders() {
+    node(A).leave(B);
+    rebalanceAll();
+
+    assertTrue(local(B).findAll().isEmpty());
+    assertFalse(node(C).getRing().contains(B));
+    assertOrdersOnTheirOwners(3 * ORDERS_PER_NODE);
+    //The node that left still answers for the rest of the cluster until it is stopped.
+    assertEquals(3 * ORDERS_PER_NODE, repositories.get(B).findAll().size());
+  }
+
+  @Test
+  public void ordersWaitForAnUnreachableOwner() {
+    start(D, Collections.<String>emptySet());
+    transport.unreachable.add(D);
+
+    node(A).join(D);
+    rebalanceAll();
+    assertTrue(local(D).findAll().isEmpty());
+    assertEquals(3 * ORDERS_PER_NODE, local(A).findAll().size() + local(B).findAll().size() + local(C).findAll().size());
+
+    transport.unreachable.remove(D);
+    node(D).update(node(A).getRing().getNodes());
+    rebalanceAll();
+    assertFalse(local(D).findAll().isEmpty());
+    assertOrdersOnTheirOwners(3 * ORDERS_PER_NODE);
+  }
+
+  @Test
+  public void anOrderWrittenWhileItMovesIsMovedAgain() {
+    start(D, Collections.<String>emptySet());
+    transport.unreachable.add(D);
+    node(A).join(D);
+    final Order moving = ownedBy(D, local(A));
+    transport.unreachable.remove(D);
+    node(D).update(node(A).getRing().getNodes());
+    transport.duringTransfer = new Runnable() {
+      @Override
+      public void run() {
+        transport.duringTransfer = null;
+        Order paid = new Order(moving.getKey(), moving.getDateTimeOfSubmission());
+        paid.addStatus(new OrderStatus(new Date(), "Order Paid"));
+        local(A).saveIfVersion(paid, moving.getVersion());
+      }
+    };
+
+    node(A).rebalance();
+    assertEquals(moving.getVersion() + 1, local(A).findById(moving.getKey()).getVersion());
+
+    rebalanceAll();
+    assertNull(local(A).findById(moving.getKey()));
+    assertEquals("Order Paid", local(D).findById(moving.getKey()).getStatus().getStatus());
+    assertOrdersOnTheirOwners(3 * ORDERS_PER_NODE);
+  }
+
+  @Test
+  public void aLateTransferDoesNotUndoANewerVersion() {
+    Order order = local(C).findAll().get(0);
+    Order stale = new Order(order.getKey(), order.getDateTimeOfSubmission());
+    Order newer = new Order(order.getKey(), order.getDateTimeOfSubmission());
+    newer.setVersion(order.getVersion() + 1);
+    local(C).save(newer);
+
+    node(C).receive(Collections.singletonList(stale));
+
+    assertSame(newer, local(C).findById(order.getKey()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void standaloneNodeCannotJoinOthers() {
+    ClusterNode.standalone(new OrdersMemoryRepository(new HashMap<UUID, Order>())).join(B);
+  }
+
+  private void start(String name, Collection<String> nodes) {
+    OrdersRepository local = new OrdersIndexingRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>()));
+    ClusterNode node = new ClusterNode(name, nodes, local, transport);
+    transport.nodes.put(name, node);
+    repositories.put(name, new OrdersPartitionedRepository(node));
+  }
+
+  private void rebalanceAll() {
+    for (ClusterNode node : transport.nodes.values()) {
+      node.rebalance();
+    }
+  }
+
+  private Order ownedBy(String owner, OrdersRepository repository) {
+    for (Order order : repository.findAll()) {
+      if (owner.equals(node(A).ownerOf(order.getKey()))) {
+        return order;
+      }
+    }
+    throw new AssertionError("No order owned by " + owner);
+  }
+
+  private void assertOrdersOnTheirOwners(int expected) {
+    int total = 0;
+    for (ClusterNode node : transport.nodes.values()) {
+      for (Order order : node.getLocalRepository().findAll()) {
+        assertEquals(node.getSelf(), node.ownerOf(order.getKey()));
+        total++;
+      }
+    }
+    assertEquals(expected, total);
+  }
+
+  private ClusterNode node(String name) {
+    return transport.nodes.get(name);
+  }
+
+  private OrdersRepository local(String name) {
+    return node(name).getLocalRepository();
+  }
+
+  private static class InProcessTransport implements ClusterTransport {
+    final Map<String, ClusterNode> nodes = new ConcurrentHashMap<String, ClusterNode>();
+    final Set<String> unreachable = Collections.synchronizedSet(new HashSet<String>());
+    volatile Runnable duringTransfer;
+
+    @Override
+    public OrdersRepository repositoryOf(String node) {
+      return reach(node).getLocalRepository();
+    }
+
+    @Override
+    public void announce(String node, Collection<String> members) {
+      reach(node).update(members);
+    }
+
+    @Override
+    public void transfer(String node, List<Order> orders) {
+      Runnable running = duringTransfer;
+      if (running != null) {
+        running.run();
+      }
+      reach(node).receive(orders);
+    }
+
+    private ClusterNode reach(String node) {
+      if (unreachable.contains(node)) {
+        throw new IllegalStateException(node + " is unreachable");
+      }
+      return nodes.get(node);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.yummynoodlebar.core.cluster;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ConsistentHashRingUnitTest {
+
+  private static final List<String> NODES = Arrays.asList(
+          "http://localhost:8081", "http://localhost:8082", "http://localhost:8083", "http://localhost:8084");
+  private static final int KEYS = 40000;
+
+  @Test
+  public void ringsOverTheSameNodesAgree() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES);
+    List<String> reversed = new ArrayList<String>(NODES);
+    Collections.reverse(reversed);
+    ConsistentHashRing other = new ConsistentHashRing(reversed);
+
+    for (UUID key : keys()) {
+      assertEquals(ring.ownerOf(key), other.ownerOf(key));
+    }
+  }
+
+  @Test
+  public void spreadsKeysEvenly() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES);
+    Map<String, Integer> owned = ownership(ring, keys());
+
+    assertEquals(NODES.size(), owned.size());
+    for (int count : owned.values()) {
+      //Within a third of an even share.
+      assertTrue(owned.toString(), Math.abs(count - KEYS / NODES.size()) < KEYS / NODES.size() / 3);
+    }
+  }
+
+  @Test
+  public void spreadsTimeOrderedKeysEvenly() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES);
+    List<UUID> keys = new ArrayList<UUID>();
+    for (int i = 0; i < KEYS; i++) {
+      keys.add(new UUID(1700000000000L << 16 | i, 0x8000000000000000L | i));
+    }
+    for (int count : ownership(ring, keys).values()) {
+      assertTrue(Math.abs(count - KEYS / NODES.size()) < KEYS / NODES.size() / 3);
+    }
+  }
+
+  @Test
+  public void joiningNodeOnlyTakesKeys() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES);
+    ConsistentHashRing joined = ring.withNode("http://localhost:8085");
+
+    int moved = 0;
+    for (UUID key : keys()) {
+      if (!ring.ownerOf(key).equals(joined.ownerOf(key))) {
+        assertEquals("http://localhost:8085", joined.ownerOf(key));
+        moved++;
+      }
+    }
+    //About a fifth of the keys move to the new node, none move between the others.
+    assertTrue(moved > KEYS / 5 / 2 && moved < KEYS / 5 * 2);
+  }
+
+  @Test
+  public void leavingNodeOnlyGivesAwayItsKeys() {
+    ConsistentHashRing ring = new ConsistentHashRing(NODES);
+    ConsistentHashRing left = ring.withoutNode("http://localhost:8082");
+
+    for (UUID key : keys()) {
+      if (!ring.ownerOf(key).equals(left.ownerOf(key))) {
+        assertEquals("http://localhost:8082", ring.ownerOf(key));
+      }
+      assertFalse(left.ownerOf(key).equals("http://localhost:8082"));
+    }
+    assertEquals(NODES.size() - 1, left.size());
+    assertFalse(left.contains("http://localhost:8082"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void needsANode() {
+    new ConsistentHashRing(Collections.<String>emptySet());
+  }
+
+  private static List<UUID> keys() {
+    Random random = new Random(3);
+    List<UUID> keys = new ArrayList<UUID>(KEYS);
+    for (int i = 0; i < KEYS; i++) {
+      keys.add(new UUID(random.nextLong(), random.nextLong()));
+    }
+    return keys;
+  }
+
+  private static Map<String, Integer> ownership(ConsistentHashRing ring, List<UUID> keys) {
+    Map<String, Integer> owned = new TreeMap<String, Integer>();
+    for (UUID key : keys) {
+      String owner = ring.ownerOf(key);
+      Integer count = owned.get(owner);
+      owned.put(owner, count == null ? 1 : count + 1);
+    }
+    return owned;
+  }
+}
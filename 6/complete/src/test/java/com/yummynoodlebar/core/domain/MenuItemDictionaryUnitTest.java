@@ -0,0 +1,33 @@
+package com.yummynoodlebar.core.domain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MenuItemDictionaryUnitTest {
+
+  @Test
+  public void namesKeepTheirIdsAndNullHasItsOwn() {
+    MenuItemDictionary uut = new MenuItemDictionary(100);
+
+    int id = uut.idOf("yummy1");
+
+    assertEquals(id, uut.idOf("yummy1"));
+    assertEquals("yummy1", uut.nameOf(id));
+    assertEquals(MenuItemDictionary.NULL_ID, uut.idOf(null));
+    assertNull(uut.nameOf(MenuItemDictionary.NULL_ID));
+    assertEquals(1, uut.size());
+  }
+
+  @Test
+  public void aFullDictionaryStopsTakingNewNames() {
+    MenuItemDictionary uut = new MenuItemDictionary(100);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, uut.idOf("yummy" + i));
+    }
+
+    assertEquals(MenuItemDictionary.NO_ID, uut.idOf("yummy100"));
+    assertEquals(42, uut.idOf("yummy42"));
+    assertEquals(100, uut.size());
+  }
+}
@@ -6,12 +6,9 @@ import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class OrdersUnitTest {
 
@@ -46,4 +43,44 @@ public class OrdersUnitTest {
 
     assertEquals(0, uut.findAll().size());
   }
+
+  @Test
+  public void orderItemsReadBackAsTheyWereSet() {
+    Map<String, Integer> items = new HashMap<String, Integer>();
+    items.put("yummy1", 12);
+    items.put("yummy15", 3);
+    items.put("yummy3", null);
+
+    Order order = new Order(OrdersFixtures.newKey(), new Date());
+    order.setOrderItems(items);
+
+    assertEquals(items, order.getOrderItems());
+    assertEquals(Integer.valueOf(3), order.getOrderItems().get("yummy15"));
+    assertTrue(order.getOrderItems().containsKey("yummy3"));
+    assertNull(order.getOrderItems().get("yummy99"));
+    assertEquals(items, order.toOrderDetails().getOrderItems());
+  }
+
+  @Test
+  public void ordersShareOneCopyOfEachItemName() {
+    Order first = new Order(OrdersFixtures.newKey(), new Date());
+    first.setOrderItems(Collections.singletonMap(new String("yummy42"), 1));
+    Order second = new Order(OrdersFixtures.newKey(), new Date());
+    second.setOrderItems(Collections.singletonMap(new String("yummy42"), 2));
+
+    assertSame(first.getOrderItems().keySet().iterator().next(), second.getOrderItems().keySet().iterator().next());
+  }
+
+  @Test
+  public void aNullItemNameReadsBackAsNull() {
+    Map<String, Integer> items = new HashMap<String, Integer>();
+    items.put(null, 2);
+    items.put("yummy1", 1);
+
+    Order order = new Order(OrdersFixtures.newKey(), new Date());
+    order.setOrderItems(items);
+
+    assertEquals(items, order.getOrderItems());
+    assertEquals(Integer.valueOf(2), order.getOrderItems().get(null));
+  }
 }
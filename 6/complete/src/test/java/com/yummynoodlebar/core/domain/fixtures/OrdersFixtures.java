@@ -2,16 +2,26 @@ package com.yummynoodlebar.core.domain.fixtures;
 
 import com.yummynoodlebar.core.domain.Order;
 import com.yummynoodlebar.core.events.orders.OrderDetails;
+import com.yummynoodlebar.core.services.OrderKeyGenerator;
+import com.yummynoodlebar.core.services.TimeOrderedOrderKeyGenerator;
 
 import java.util.Collections;
 import java.util.Date;
+import java.util.UUID;
 
 public class OrdersFixtures {
 
   public static final String YUMMY_ITEM = "yummy_core";
 
+  private static final OrderKeyGenerator KEYS = new TimeOrderedOrderKeyGenerator();
+
+  //TODOCUMENT Keys come from a key generator, as the service's do, orders never make their own.
+  public static UUID newKey() {
+    return KEYS.nextKey();
+  }
+
   public static Order standardOrder() {
-    Order order = new Order(new Date());
+    Order order = new Order(newKey(), new Date());
 
     order.setOrderItems(Collections.singletonMap(YUMMY_ITEM, 12));
 
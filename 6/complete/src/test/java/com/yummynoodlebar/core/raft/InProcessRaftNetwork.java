@@ -0,0 +1,61 @@
+package com.yummynoodlebar.core.raft;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connects Raft nodes in one process, and lets tests cut them off from each other, or lose a share
+ * of the messages between them.
+ */
+class InProcessRaftNetwork {
+
+  private final Map<Integer, RaftNode> nodes = new ConcurrentHashMap<Integer, RaftNode>();
+  private final Set<Integer> isolated = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+  private final Random random = new Random();
+  private volatile double dropRate;
+
+  RaftTransport transport() {
+    return new RaftTransport() {
+      private int self = -1;
+
+      @Override
+      public void register(int id, RaftNode node) {
+        self = id;
+        nodes.put(id, node);
+      }
+
+      @Override
+      public void send(int to, RaftMessage message) {
+        RaftNode target = nodes.get(to);
+        if (target == null || isolated.contains(to) || isolated.contains(message.from)) {
+          return;
+        }
+        if (dropRate > 0 && random.nextDouble() < dropRate) {
+          return;
+        }
+        target.receive(message);
+      }
+
+      @Override
+      public void close() {
+        nodes.remove(self);
+      }
+    };
+  }
+
+  //TODOCUMENT Cuts the node off from every other, until healed.
+  void isolate(int id) {
+    isolated.add(id);
+  }
+
+  void heal() {
+    isolated.clear();
+  }
+
+  void setDropRate(double dropRate) {
+    this.dropRate = dropRate;
+  }
+}
@@ -0,0 +1,142 @@
+package com.yummynoodlebar.core.raft;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RaftLogUnitTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void thatTheLogTermAndVoteSurviveReopening() throws Exception {
+    File directory = folder.newFolder();
+    RaftLog log = new RaftLog(directory);
+    log.setTermAndVote(3, 2);
+    log.append(entries(1, 5));
+    log.append(entries(3, 5));
+    log.truncateFrom(8);
+    log.sync();
+    log.close();
+
+    RaftLog reopened = new RaftLog(directory);
+    assertEquals(3, reopened.getTerm());
+    assertEquals(2, reopened.getVotedFor());
+    assertEquals(7, reopened.getLastIndex());
+    assertEquals(1, reopened.termAt(5));
+    assertEquals(3, reopened.termAt(6));
+    assertEquals(3, reopened.getLastTerm());
+    assertArrayEquals(new byte[]{1}, reopened.entryAt(7).payload);
+    reopened.close();
+  }
+
+  @Test
+  public void thatATornRecordIsCutOff() throws Exception {
+    File directory = folder.newFolder();
+    RaftLog log = new RaftLog(directory);
+    log.append(entries(1, 4));
+    log.close();
+
+    RandomAccessFile file = new RandomAccessFile(new File(directory, RaftLog.LOG_FILE), "rw");
+    file.setLength(file.length() - 2);
+    file.close();
+
+    RaftLog reopened = new RaftLog(directory);
+    assertEquals(3, reopened.getLastIndex());
+    reopened.append(entries(2, 1));
+    reopened.close();
+
+    assertEquals(Arrays.asList(1L, 1L, 1L, 2L), terms(new RaftLog(directory)));
+  }
+
+  @Test
+  public void thatASnapshotReplacesTheEntriesItCoversAcrossReopening() throws Exception {
+    File directory = folder.newFolder();
+    RaftLog log = new RaftLog(directory);
+    log.append(entries(1, 6));
+    log.append(entries(2, 4));
+    log.snapshot(6, 1, new byte[]{42});
+    log.close();
+
+    RaftLog reopened = new RaftLog(directory);
+    assertEquals(6, reopened.getSnapshotIndex());
+    assertEquals(10, reopened.getLastIndex());
+    assertEquals(1, reopened.termAt(6));
+    assertEquals(2, reopened.getLastTerm());
+    assertArrayEquals(new byte[]{42}, reopened.getSnapshot());
+    assertArrayEquals(new byte[]{0}, reopened.entryAt(7).payload);
+    try {
+      reopened.termAt(5);
+      fail("The term of an entry the snapshot replaced was known");
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+    reopened.truncateFrom(9);
+    reopened.append(entries(3, 1));
+    reopened.close();
+
+    assertEquals(Arrays.asList(2L, 2L, 3L), terms(new RaftLog(directory)));
+  }
+
+  @Test
+  public void thatASnapshotTheLogDoesntMatchReplacesItWhole() throws Exception {
+    File directory = folder.newFolder();
+    RaftLog log = new RaftLog(directory);
+    log.append(entries(1, 3));
+    log.append(entries(2, 3));
+    log.snapshot(5, 3, new byte[]{42});
+    assertEquals(5, log.getLastIndex());
+    assertEquals(3, log.getLastTerm());
+    log.close();
+
+    RaftLog reopened = new RaftLog(directory);
+    assertEquals(5, reopened.getLastIndex());
+    assertEquals(3, reopened.getLastTerm());
+    reopened.close();
+  }
+
+  @Test
+  public void thatEntriesASnapshotCoversAreDroppedIfACrashLeftThemInTheLog() throws Exception {
+    File directory = folder.newFolder();
+    RaftLog log = new RaftLog(directory);
+    log.append(entries(1, 8));
+    log.sync();
+    byte[] uncompacted = Files.readAllBytes(new File(directory, RaftLog.LOG_FILE).toPath());
+    log.snapshot(5, 1, new byte[]{42});
+    log.close();
+    //As if the node crashed after writing the snapshot, before rewriting the log.
+    Files.write(new File(directory, RaftLog.LOG_FILE).toPath(), uncompacted);
+
+    RaftLog reopened = new RaftLog(directory);
+    assertEquals(5, reopened.getSnapshotIndex());
+    assertEquals(8, reopened.getLastIndex());
+    assertEquals(Arrays.asList(1L, 1L, 1L), terms(reopened));
+    reopened.close();
+  }
+
+  private static List<RaftEntry> entries(long term, int count) {
+    List<RaftEntry> entries = new ArrayList<RaftEntry>();
+    for (int i = 0; i < count; i++) {
+      entries.add(new RaftEntry(term, RaftEntry.SAVE, new byte[]{(byte) i}));
+    }
+    return entries;
+  }
+
+  private static List<Long> terms(RaftLog log) {
+    List<Long> terms = new ArrayList<Long>();
+    for (long index = log.getSnapshotIndex() + 1; index <= log.getLastIndex(); index++) {
+      terms.add(log.termAt(index));
+    }
+    return terms;
+  }
+}
@@ -0,0 +1,153 @@
+package com.yummynoodlebar.core.raft;
+
+import com.yummynoodlebar.core.Benchmarks;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.repository.OrdersIndexingRepository;
+import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Order creation through a three node group, with many clients writing at once, logging the rate
+ * reached, to hold against the target in {@link RaftNode}. A benchmark, see {@link Benchmarks}.
+ */
+public class RaftThroughputTest {
+
+  private static Logger LOG = LoggerFactory.getLogger(RaftThroughputTest.class);
+
+  private static final int CLIENTS = 64;
+  private static final int ORDERS = 20000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  List<RaftNode> nodes = new ArrayList<RaftNode>();
+
+  @BeforeClass
+  public static void onlyWhenBenchmarking() {
+    Benchmarks.assumeEnabled();
+  }
+
+  @After
+  public void stopGroup() throws Exception {
+    for (RaftNode node : nodes) {
+      node.close();
+    }
+  }
+
+  @Test
+  public void inProcessNodesWithLogsInMemory() throws Exception {
+    InProcessRaftNetwork network = new InProcessRaftNetwork();
+    List<String> members = Arrays.asList("node0", "node1", "node2");
+    for (int id = 0; id < members.size(); id++) {
+      nodes.add(new RaftNode(id, members, null, orders(), RaftLog.inMemory(), network.transport()));
+    }
+    measure("in process, logs in memory");
+  }
+
+  @Test
+  public void localhostNodesWithLogsOnDisk() throws Exception {
+    List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+    List<String> members = new ArrayList<String>();
+    for (int id = 0; id < 3; id++) {
+      addresses.add(new InetSocketAddress("localhost", freePort()));
+      members.add(addresses.get(id).toString());
+    }
+    for (int id = 0; id < members.size(); id++) {
+      nodes.add(new RaftNode(id, members, null, orders(), new RaftLog(folder.newFolder("node" + id)),
+              new SocketRaftTransport(addresses)));
+    }
+    measure("localhost, logs on disk");
+  }
+
+  private void measure(String setup) throws Exception {
+    awaitLeader();
+    final AtomicInteger remaining = new AtomicInteger(ORDERS);
+    final AtomicInteger failures = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(CLIENTS);
+    long start = System.nanoTime();
+    for (int i = 0; i < CLIENTS; i++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            while (remaining.decrementAndGet() >= 0) {
+              Order order = new Order(UUID.randomUUID(), new Date());
+              order.addStatus(new OrderStatus(new Date(), "Order Created"));
+              order.setOrderItems(Collections.singletonMap("yummy1", 2));
+              save(order);
+            }
+          } catch (Exception e) {
+            failures.incrementAndGet();
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+    done.await();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    double rate = ORDERS / seconds;
+    LOG.info(String.format("Raft, 3 nodes, %s, %d clients: %.0f orders created a second", setup, CLIENTS, rate));
+
+    assertEquals(0, failures.get());
+    assertEquals(ORDERS, awaitLeader().getRepository().findAll().size());
+  }
+
+  /*
+   * Saves through the leader, following it if it changes, as a client redirected by a follower would.
+   */
+  private void save(Order order) throws InterruptedException {
+    while (true) {
+      try {
+        awaitLeader().getRepository().save(order);
+        return;
+      } catch (NotLeaderException e) {
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  private RaftNode awaitLeader() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 20000;
+    while (System.currentTimeMillis() < deadline) {
+      for (RaftNode node : nodes) {
+        if (node.isLeader()) {
+          return node;
+        }
+      }
+      Thread.sleep(10);
+    }
+    fail("No leader was elected");
+    return null;
+  }
+
+  private static OrdersRepository orders() {
+    return new OrdersIndexingRepository(new OrdersMemoryRepository(new ConcurrentHashMap<UUID, Order>()));
+  }
+
+  private static int freePort() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    try {
+      return socket.getLocalPort();
+    } finally {
+      socket.close();
+    }
+  }
+}
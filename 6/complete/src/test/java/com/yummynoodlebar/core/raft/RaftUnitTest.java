@@ -0,0 +1,296 @@
+package com.yummynoodlebar.core.raft;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.repository.OrdersIndexingRepository;
+import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+//TODOCUMENT Raft groups in one process, with nodes killed, restarted and cut off from each other.
+public class RaftUnitTest {
+
+  private static final long TIMEOUT_MILLIS = 20000;
+
+  InProcessRaftNetwork network = new InProcessRaftNetwork();
+  List<String> members;
+  RaftNode[] nodes;
+  RaftLog[] logs;
+  OrdersRepository[] applied;
+  int snapshotEvery = RaftNode.DEFAULT_SNAPSHOT_EVERY;
+
+  @After
+  public void stopGroup() throws Exception {
+    if (nodes != null) {
+      for (RaftNode node : nodes) {
+        if (node != null) {
+          node.close();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void theLeaderReplicatesWritesToEveryNode() throws Exception {
+    startGroup(3);
+    RaftNode leader = awaitLeader();
+
+    List<UUID> keys = new ArrayList<UUID>();
+    for (int i = 0; i < 100; i++) {
+      Order order = order(i);
+      keys.add(order.getKey());
+      leader.getRepository().save(order);
+    }
+    leader.getRepository().delete(keys.get(0));
+
+    assertEquals(99, leader.getRepository().findAll().size());
+    assertNull(leader.getRepository().findById(keys.get(0)));
+    assertNotNull(leader.getRepository().findById(keys.get(1)));
+    awaitApplied(leader.getCommitIndex(), 0, 1, 2);
+    for (OrdersRepository orders : applied) {
+      assertEquals(99, orders.findAll().size());
+    }
+  }
+
+  @Test
+  public void followersSendReadsAndWritesToTheLeader() throws Exception {
+    startGroup(3);
+    RaftNode leader = awaitLeader();
+    awaitLeaderKnown(leader);
+
+    for (RaftNode node : nodes) {
+      if (node != leader) {
+        assertTrue(node.isFollower());
+        try {
+          node.getRepository().save(order(0));
+          fail("A follower accepted a write");
+        } catch (NotLeaderException e) {
+          assertEquals(url(leader.getId()), e.getLeaderUrl());
+        }
+        try {
+          node.getRepository().findAll();
+          fail("A follower served a read");
+        } catch (NotLeaderException e) {
+          assertEquals(url(leader.getId()), e.getLeaderUrl());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void acknowledgedWritesSurviveTheLeaderBeingKilled() throws Exception {
+    startGroup(5);
+    RaftNode leader = awaitLeader();
+    Set<UUID> acknowledged = new HashSet<UUID>();
+    for (int i = 0; i < 200; i++) {
+      Order order = order(i);
+      leader.getRepository().save(order);
+      acknowledged.add(order.getKey());
+    }
+
+    kill(leader.getId());
+    RaftNode next = awaitLeader();
+    assertNotSame(leader, next);
+    assertTrue(next.getTerm() > leader.getTerm());
+    for (UUID key : acknowledged) {
+      assertNotNull(next.getRepository().findById(key));
+    }
+    next.getRepository().save(order(200));
+    assertEquals(201, next.getRepository().findAll().size());
+  }
+
+  @Test
+  public void aLeaderCutOffFromTheOthersStopsServing() throws Exception {
+    startGroup(3);
+    RaftNode old = awaitLeader();
+    old.getRepository().save(order(0));
+
+    network.isolate(old.getId());
+    RaftNode next = awaitLeader(old);
+    Order written = order(1);
+    next.getRepository().save(written);
+
+    //The old leader's lease ran out before the others could elect a new one, so it can't serve a stale read.
+    try {
+      assertNotNull(old.getRepository().findById(written.getKey()));
+      fail("The isolated leader served a read");
+    } catch (NotLeaderException e) {
+      assertTrue(old.isFollower());
+    } catch (IllegalStateException e) {
+      assertTrue(old.isFollower());
+    }
+    try {
+      old.getRepository().save(order(2));
+      fail("The isolated leader accepted a write");
+    } catch (NotLeaderException e) {
+      assertTrue(old.isFollower());
+    }
+
+    network.heal();
+    awaitApplied(next.getCommitIndex(), old.getId());
+    assertEquals(2, applied[old.getId()].findAll().size());
+    assertSame(next, awaitLeader());
+  }
+
+  @Test
+  public void aRestartedNodeCatchesUpFromItsLog() throws Exception {
+    startGroup(3);
+    RaftNode leader = awaitLeader();
+    int follower = (leader.getId() + 1) % 3;
+    for (int i = 0; i < 50; i++) {
+      leader.getRepository().save(order(i));
+    }
+    awaitApplied(leader.getCommitIndex(), follower);
+
+    kill(follower);
+    for (int i = 50; i < 100; i++) {
+      leader.getRepository().save(order(i));
+    }
+    assertEquals(51, logs[follower].getLastIndex());
+
+    //Its orders are gone, its log isn't.
+    start(follower);
+    awaitApplied(leader.getCommitIndex(), follower);
+    assertEquals(100, applied[follower].findAll().size());
+  }
+
+  @Test
+  public void aRestartedNodeRestoresItsSnapshot() throws Exception {
+    snapshotEvery = 50;
+    startGroup(3);
+    RaftNode leader = awaitLeader();
+    int follower = (leader.getId() + 1) % 3;
+    for (int i = 0; i < 120; i++) {
+      leader.getRepository().save(order(i));
+    }
+    awaitApplied(leader.getCommitIndex(), follower);
+
+    kill(follower);
+    assertTrue(logs[follower].getSnapshotIndex() >= 100);
+    start(follower);
+    leader.getRepository().save(order(120));
+    awaitApplied(leader.getCommitIndex(), follower);
+    assertEquals(121, applied[follower].findAll().size());
+  }
+
+  @Test
+  public void aNodeThatLostItsLogCatchesUpFromTheLeadersSnapshot() throws Exception {
+    snapshotEvery = 50;
+    startGroup(3);
+    RaftNode leader = awaitLeader();
+    int follower = (leader.getId() + 1) % 3;
+    kill(follower);
+    for (int i = 0; i < 120; i++) {
+      leader.getRepository().save(order(i));
+    }
+    assertTrue(logs[leader.getId()].getSnapshotIndex() > 1);
+
+    logs[follower] = RaftLog.inMemory();
+    start(follower);
+    awaitApplied(leader.getCommitIndex(), follower);
+    assertEquals(logs[leader.getId()].getSnapshotIndex(), logs[follower].getSnapshotIndex());
+    assertEquals(120, applied[follower].findAll().size());
+  }
+
+  @Test
+  public void writesCommitDespiteLostMessages() throws Exception {
+    startGroup(3);
+    RaftNode leader = awaitLeader();
+    network.setDropRate(0.1);
+    for (int i = 0; i < 2000; i++) {
+      leader.getRepository().save(order(i));
+    }
+    network.setDropRate(0);
+
+    assertEquals(2000, leader.getRepository().findAll().size());
+    awaitApplied(leader.getCommitIndex(), 0, 1, 2);
+    for (OrdersRepository orders : applied) {
+      assertEquals(2000, orders.findAll().size());
+    }
+  }
+
+  private void startGroup(int size) {
+    members = new ArrayList<String>();
+    for (int i = 0; i < size; i++) {
+      members.add("node" + i);
+    }
+    nodes = new RaftNode[size];
+    logs = new RaftLog[size];
+    applied = new OrdersRepository[size];
+    for (int i = 0; i < size; i++) {
+      logs[i] = RaftLog.inMemory();
+      start(i);
+    }
+  }
+
+  private void start(int id) {
+    applied[id] = new OrdersIndexingRepository(new OrdersMemoryRepository(new ConcurrentHashMap<UUID, Order>()));
+    List<String> urls = new ArrayList<String>();
+    for (int i = 0; i < members.size(); i++) {
+      urls.add(url(i));
+    }
+    nodes[id] = new RaftNode(id, members, urls, applied[id], logs[id], network.transport(), snapshotEvery);
+  }
+
+  private void kill(int id) throws Exception {
+    nodes[id].close();
+    nodes[id] = null;
+  }
+
+  private RaftNode awaitLeader(RaftNode... ignoring) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline) {
+      RaftNode found = null;
+      for (RaftNode node : nodes) {
+        if (node != null && node.isLeader() && !Arrays.asList(ignoring).contains(node)
+                && (found == null || node.getTerm() > found.getTerm())) {
+          found = node;
+        }
+      }
+      if (found != null) {
+        return found;
+      }
+      Thread.sleep(10);
+    }
+    fail("No leader was elected");
+    return null;
+  }
+
+  private void awaitLeaderKnown(RaftNode leader) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    for (RaftNode node : nodes) {
+      while (!url(leader.getId()).equals(node.getLeaderUrl())) {
+        assertTrue("Node " + node.getId() + " never heard from the leader", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  private void awaitApplied(long index, int... ids) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    for (int id : ids) {
+      while (nodes[id].getAppliedIndex() < index) {
+        assertTrue("Node " + id + " applied " + nodes[id].getAppliedIndex() + " of " + index + " entries",
+                System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  private static String url(int id) {
+    return "http://localhost:" + (8081 + id);
+  }
+
+  private static Order order(int i) {
+    Order order = new Order(UUID.randomUUID(), new Date(i));
+    order.addStatus(new OrderStatus(new Date(i), "Order Created"));
+    order.setOrderItems(Collections.singletonMap("yummy" + (i % 5), 1 + i % 3));
+    return order;
+  }
+}
@@ -0,0 +1,34 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.repository.OrdersIndexingRepository;
+import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A follower in a JVM of its own, for {@link ReplicationMultiProcessTest}. Follows the leader on the
+ * localhost port given as its argument, and answers every line read from stdin with its progress.
+ */
+public class ReplicationFollowerProcess {
+
+  static final String STATUS_PREFIX = "follower-status ";
+
+  public static void main(String[] args) throws Exception {
+    ReplicationFollower follower = new ReplicationFollower(
+            new OrdersIndexingRepository(new OrdersMemoryRepository(new ConcurrentHashMap<UUID, Order>())),
+            new InetSocketAddress("localhost", Integer.parseInt(args[0])), null);
+
+    BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+    while (commands.readLine() != null) {
+      System.out.println(STATUS_PREFIX + follower.isConnected() + " " + follower.getAppliedSequence()
+              + " " + follower.getRepository().findAll().size());
+      System.out.flush();
+    }
+    follower.close();
+  }
+}
@@ -0,0 +1,113 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.repository.OrdersIndexingRepository;
+import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+//TODOCUMENT A leader in this JVM replicating to followers each running in a JVM of their own.
+public class ReplicationMultiProcessTest {
+
+  private static final long TIMEOUT_MILLIS = 60000;
+
+  ReplicationLeader leader;
+  FollowerProcess first;
+  FollowerProcess second;
+
+  @Before
+  public void startLeader() throws Exception {
+    leader = new ReplicationLeader(
+            new OrdersIndexingRepository(new OrdersMemoryRepository(new ConcurrentHashMap<UUID, Order>())), 0, 100);
+  }
+
+  @After
+  public void stopAll() throws Exception {
+    for (FollowerProcess follower : new FollowerProcess[] {first, second}) {
+      if (follower != null) {
+        follower.kill();
+      }
+    }
+    leader.close();
+  }
+
+  @Test
+  public void followerProcessesCatchUpAfterBeingKilled() throws Exception {
+    save(500);
+    first = new FollowerProcess(leader.getPort());
+    second = new FollowerProcess(leader.getPort());
+    first.awaitCaughtUp(leader.getLastSequence(), 500);
+    second.awaitCaughtUp(leader.getLastSequence(), 500);
+
+    first.kill();
+    //Far more than the backlog holds, so the restarted follower needs a snapshot.
+    save(1000);
+    second.awaitCaughtUp(leader.getLastSequence(), 1500);
+
+    first = new FollowerProcess(leader.getPort());
+    first.awaitCaughtUp(leader.getLastSequence(), 1500);
+  }
+
+  private void save(int count) {
+    for (int i = 0; i < count; i++) {
+      Order order = new Order(UUID.randomUUID(), new Date());
+      order.addStatus(new OrderStatus(new Date(), "Order Created"));
+      leader.getRepository().save(order);
+    }
+  }
+
+  private static final class FollowerProcess {
+    private final Process process;
+    private final Writer commands;
+    private final BufferedReader output;
+
+    FollowerProcess(int leaderPort) throws IOException {
+      String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+      process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+              ReplicationFollowerProcess.class.getName(), String.valueOf(leaderPort))
+              .redirectErrorStream(true).start();
+      commands = new OutputStreamWriter(process.getOutputStream(), "UTF-8");
+      output = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+    }
+
+    void awaitCaughtUp(long sequence, int orders) throws Exception {
+      long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      String status = null;
+      while (System.currentTimeMillis() < deadline) {
+        status = status();
+        if (status.equals("true " + sequence + " " + orders)) {
+          return;
+        }
+        Thread.sleep(100);
+      }
+      fail("Follower process expected at change " + sequence + " with " + orders + " orders, was " + status);
+    }
+
+    //connected, applied sequence and orders held.
+    private String status() throws IOException, InterruptedException {
+      commands.write("status\n");
+      commands.flush();
+      String line;
+      while ((line = output.readLine()) != null) {
+        if (line.startsWith(ReplicationFollowerProcess.STATUS_PREFIX)) {
+          return line.substring(ReplicationFollowerProcess.STATUS_PREFIX.length());
+        }
+      }
+      throw new EOFException("Follower process exited with " + process.waitFor());
+    }
+
+    void kill() throws InterruptedException {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+}
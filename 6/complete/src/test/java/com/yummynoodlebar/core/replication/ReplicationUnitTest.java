@@ -0,0 +1,183 @@
+package com.yummynoodlebar.core.replication;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.repository.OrdersIndexingRepository;
+import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
+import com.yummynoodlebar.core.repository.OrdersRepository;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+//TODOCUMENT A leader and its followers in one process, talking over localhost.
+public class ReplicationUnitTest {
+
+  private static final long TIMEOUT_MILLIS = 20000;
+
+  List<OrdersReplication> replicas = new ArrayList<OrdersReplication>();
+
+  @After
+  public void stopReplicas() throws Exception {
+    for (OrdersReplication replica : replicas) {
+      replica.close();
+    }
+  }
+
+  @Test
+  public void followersApplyTheLeadersChangesInOrder() throws Exception {
+    ReplicationLeader leader = leader(0, ReplicationLeader.DEFAULT_BACKLOG_CAPACITY);
+    ReplicationFollower follower = follower(leader.getPort());
+
+    List<UUID> keys = new ArrayList<UUID>();
+    for (int i = 0; i < 100; i++) {
+      Order order = order(i);
+      keys.add(order.getKey());
+      leader.getRepository().save(order);
+    }
+    Order cooked = leader.getRepository().findById(keys.get(0));
+    cooked.addStatus(new OrderStatus(new Date(), "Cooking"));
+    leader.getRepository().save(cooked);
+    leader.getRepository().delete(keys.get(1));
+
+    awaitCaughtUp(leader, follower);
+
+    OrdersRepository replica = follower.getRepository();
+    assertEquals(99, replica.findAll().size());
+    assertNull(replica.findById(keys.get(1)));
+    assertEquals("Cooking", replica.findById(keys.get(0)).getStatus().getStatus());
+    assertEquals(1, replica.countByStatus("Cooking"));
+  }
+
+  @Test
+  public void newFollowersStartFromASnapshot() throws Exception {
+    ReplicationLeader leader = leader(0, 10);
+    for (int i = 0; i < 100; i++) {
+      leader.getRepository().save(order(i));
+    }
+
+    ReplicationFollower follower = follower(leader.getPort());
+    awaitCaughtUp(leader, follower);
+    leader.getRepository().save(order(100));
+    awaitCaughtUp(leader, follower);
+
+    assertEquals(101, follower.getRepository().findAll().size());
+    ReplicationStatistics statistics = follower.getStatistics().get(0);
+    assertEquals(1, statistics.getSnapshots());
+    assertEquals(1, statistics.getChanges());
+  }
+
+  @Test
+  public void followersCatchUpWithALeaderThatRestarted() throws Exception {
+    ReplicationLeader leader = leader(0, ReplicationLeader.DEFAULT_BACKLOG_CAPACITY);
+    int port = leader.getPort();
+    ReplicationFollower follower = follower(port);
+    Order stale = order(0);
+    leader.getRepository().save(stale);
+    awaitCaughtUp(leader, follower);
+
+    leader.close();
+    replicas.remove(leader);
+    ReplicationLeader restarted = null;
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (restarted == null) {
+      try {
+        restarted = leader(port, ReplicationLeader.DEFAULT_BACKLOG_CAPACITY);
+      } catch (BindException e) {
+        //The old connections may hold the port for a moment.
+        assertTrue(System.currentTimeMillis() < deadline);
+        Thread.sleep(50);
+      }
+    }
+    for (int i = 1; i <= 10; i++) {
+      restarted.getRepository().save(order(i));
+    }
+
+    awaitCaughtUp(restarted, follower);
+    assertEquals(10, follower.getRepository().findAll().size());
+    assertNull(follower.getRepository().findById(stale.getKey()));
+  }
+
+  @Test
+  public void leadersReportEachFollowersLag() throws Exception {
+    ReplicationLeader leader = leader(0, ReplicationLeader.DEFAULT_BACKLOG_CAPACITY);
+    ReplicationFollower first = follower(leader.getPort());
+    ReplicationFollower second = follower(leader.getPort());
+    for (int i = 0; i < 50; i++) {
+      leader.getRepository().save(order(i));
+    }
+    awaitCaughtUp(leader, first);
+    awaitCaughtUp(leader, second);
+
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    List<ReplicationStatistics> statistics = leader.getStatistics();
+    while (!allAcknowledged(statistics, 50) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      statistics = leader.getStatistics();
+    }
+    assertEquals(2, statistics.size());
+    for (ReplicationStatistics follower : statistics) {
+      assertTrue(follower.isConnected());
+      assertEquals(50, follower.getAppliedSequence());
+      assertEquals(0, follower.getLagChanges());
+      assertEquals(0, follower.getLagMillis());
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void followersRefuseWrites() throws Exception {
+    ReplicationLeader leader = leader(0, ReplicationLeader.DEFAULT_BACKLOG_CAPACITY);
+    follower(leader.getPort()).getRepository().save(order(0));
+  }
+
+  private boolean allAcknowledged(List<ReplicationStatistics> statistics, long sequence) {
+    if (statistics.size() < 2) {
+      return false;
+    }
+    for (ReplicationStatistics follower : statistics) {
+      if (follower.getAppliedSequence() < sequence) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void awaitCaughtUp(ReplicationLeader leader, ReplicationFollower follower) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!(follower.isConnected() && follower.getAppliedSequence() == leader.getLastSequence())) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("Follower applied " + follower.getAppliedSequence() + " of " + leader.getLastSequence() + " changes");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private ReplicationLeader leader(int port, int backlog) throws Exception {
+    ReplicationLeader leader = new ReplicationLeader(repository(), port, backlog);
+    replicas.add(leader);
+    return leader;
+  }
+
+  private ReplicationFollower follower(int port) {
+    ReplicationFollower follower = new ReplicationFollower(repository(),
+            new InetSocketAddress("localhost", port), "http://localhost:8080");
+    replicas.add(follower);
+    return follower;
+  }
+
+  private static OrdersRepository repository() {
+    return new OrdersIndexingRepository(new OrdersMemoryRepository(new ConcurrentHashMap<UUID, Order>()));
+  }
+
+  private static Order order(int i) {
+    Order order = new Order(UUID.randomUUID(), new Date(i));
+    order.addStatus(new OrderStatus(new Date(i), "Order Created"));
+    order.setOrderItems(Collections.singletonMap("yummy" + (i % 5), 1 + i % 3));
+    return order;
+  }
+}
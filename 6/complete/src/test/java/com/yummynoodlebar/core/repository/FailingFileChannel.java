@@ -0,0 +1,122 @@
+package com.yummynoodlebar.core.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A file channel that can be made to fail its next write half way through, as a full disk would,
+ * or its next force. Everything else goes to the channel it wraps.
+ */
+class FailingFileChannel extends FileChannel {
+
+  private final FileChannel channel;
+  volatile boolean tearNextWrite;
+  volatile boolean failNextForce;
+
+  FailingFileChannel(FileChannel channel) {
+    this.channel = channel;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    if (!tearNextWrite) {
+      return channel.write(src);
+    }
+    tearNextWrite = false;
+    ByteBuffer half = src.duplicate();
+    half.limit(src.position() + src.remaining() / 2);
+    channel.write(half);
+    throw new IOException("No space left on device");
+  }
+
+  @Override
+  public void force(boolean metaData) throws IOException {
+    if (failNextForce) {
+      failNextForce = false;
+      throw new IOException("Input/output error");
+    }
+    channel.force(metaData);
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    return channel.read(dst);
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    return channel.read(dsts, offset, length);
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    return channel.write(srcs, offset, length);
+  }
+
+  @Override
+  public long position() throws IOException {
+    return channel.position();
+  }
+
+  @Override
+  public FileChannel position(long newPosition) throws IOException {
+    channel.position(newPosition);
+    return this;
+  }
+
+  @Override
+  public long size() throws IOException {
+    return channel.size();
+  }
+
+  @Override
+  public FileChannel truncate(long size) throws IOException {
+    channel.truncate(size);
+    return this;
+  }
+
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+    return channel.transferTo(position, count, target);
+  }
+
+  @Override
+  public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+    return channel.transferFrom(src, position, count);
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    return channel.read(dst, position);
+  }
+
+  @Override
+  public int write(ByteBuffer src, long position) throws IOException {
+    return channel.write(src, position);
+  }
+
+  @Override
+  public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+    return channel.map(mode, position, size);
+  }
+
+  @Override
+  public FileLock lock(long position, long size, boolean shared) throws IOException {
+    return channel.lock(position, size, shared);
+  }
+
+  @Override
+  public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+    return channel.tryLock(position, size, shared);
+  }
+
+  @Override
+  protected void implCloseChannel() throws IOException {
+    channel.close();
+  }
+}
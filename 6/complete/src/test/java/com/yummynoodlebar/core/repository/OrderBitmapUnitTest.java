@@ -0,0 +1,81 @@
+package com.yummynoodlebar.core.repository;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OrderBitmapUnitTest {
+
+  @Test
+  public void behavesLikeASortedSetAcrossContainerKinds() {
+    OrderBitmap uut = new OrderBitmap();
+    TreeSet<Integer> expected = new TreeSet<Integer>();
+    Random random = new Random(3);
+
+    //Dense in the first container, sparse beyond it, so both array and bitmap containers are used.
+    for (int i = 0; i < 100000; i++) {
+      int value = random.nextBoolean() ? random.nextInt(20000) : random.nextInt(5000000);
+      if (random.nextInt(4) == 0) {
+        uut.remove(value);
+        expected.remove(value);
+      } else {
+        uut.add(value);
+        expected.add(value);
+      }
+    }
+
+    assertEquals(expected.size(), uut.cardinality());
+    assertArrayEquals(toArray(expected), uut.toArray());
+    for (int value : expected) {
+      assertTrue(uut.contains(value));
+    }
+  }
+
+  @Test
+  public void intersectsAndUnites() {
+    Random random = new Random(5);
+    OrderBitmap first = new OrderBitmap();
+    OrderBitmap second = new OrderBitmap();
+    TreeSet<Integer> firstValues = new TreeSet<Integer>();
+    TreeSet<Integer> secondValues = new TreeSet<Integer>();
+
+    for (int i = 0; i < 50000; i++) {
+      int value = random.nextInt(300000);
+      first.add(value);
+      firstValues.add(value);
+      value = random.nextInt(i % 2 == 0 ? 10000 : 300000);
+      second.add(value);
+      secondValues.add(value);
+    }
+
+    TreeSet<Integer> intersection = new TreeSet<Integer>(firstValues);
+    intersection.retainAll(secondValues);
+    TreeSet<Integer> union = new TreeSet<Integer>(firstValues);
+    union.addAll(secondValues);
+
+    assertArrayEquals(toArray(intersection), OrderBitmap.and(first, second).toArray());
+    assertArrayEquals(toArray(union), OrderBitmap.or(first, second).toArray());
+    assertEquals(firstValues.size(), first.cardinality());
+  }
+
+  @Test
+  public void denseContainersTakeABitPerOrder() {
+    OrderBitmap uut = new OrderBitmap();
+    for (int i = 0; i < 1 << 20; i++) {
+      uut.add(i);
+    }
+
+    assertTrue(uut.sizeInBytes() < (1 << 20) / 8 + 4096);
+  }
+
+  private static int[] toArray(Collection<Integer> values) {
+    int[] array = new int[values.size()];
+    int i = 0;
+    for (int value : values) {
+      array[i++] = value;
+    }
+    return array;
+  }
+}
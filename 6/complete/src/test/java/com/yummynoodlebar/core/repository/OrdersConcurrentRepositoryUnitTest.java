@@ -0,0 +1,258 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class OrdersConcurrentRepositoryUnitTest {
+
+  OrdersConcurrentRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() {
+    uut = new OrdersConcurrentRepository();
+  }
+
+  @Test
+  public void addASingleOrderToTheOrders() {
+
+    assertEquals(0, uut.findAll().size());
+
+    Order order = uut.save(OrdersFixtures.standardOrder());
+
+    assertEquals(1, uut.findAll().size());
+    assertSame(order, uut.findById(order.getKey()));
+  }
+
+  @Test
+  public void removeASingleOrder() {
+
+    UUID key = UUID.randomUUID();
+
+    uut = new OrdersConcurrentRepository(Collections.singletonMap(key, OrdersFixtures.standardOrder()));
+
+    assertEquals(1, uut.findAll().size());
+
+    uut.delete(key);
+
+    assertEquals(0, uut.findAll().size());
+  }
+
+  @Test
+  public void concurrentWritersDoNotLoseOrders() throws Exception {
+    final int writers = 8;
+    final int ordersPerWriter = 2000;
+    ExecutorService executor = Executors.newFixedThreadPool(writers);
+    final CountDownLatch start = new CountDownLatch(1);
+
+    List<Future<List<UUID>>> results = new ArrayList<Future<List<UUID>>>();
+    for (int i = 0; i < writers; i++) {
+      results.add(executor.submit(new Callable<List<UUID>>() {
+        @Override
+        public List<UUID> call() throws Exception {
+          start.await();
+          List<UUID> kept = new ArrayList<UUID>();
+          for (int j = 0; j < ordersPerWriter; j++) {
+            Order order = uut.save(OrdersFixtures.standardOrder());
+            if (j % 2 == 0) {
+              uut.delete(order.getKey());
+            } else {
+              kept.add(order.getKey());
+            }
+          }
+          return kept;
+        }
+      }));
+    }
+    start.countDown();
+
+    Set<UUID> expected = new HashSet<UUID>();
+    for (Future<List<UUID>> result : results) {
+      expected.addAll(result.get(30, TimeUnit.SECONDS));
+    }
+    executor.shutdown();
+
+    assertEquals(writers * ordersPerWriter / 2, uut.findAll().size());
+    for (UUID key : expected) {
+      assertNotNull(uut.findById(key));
+    }
+  }
+
+  @Test
+  public void concurrentUpdatesOfOneOrderAreNotLost() throws Exception {
+    final int writers = 8;
+    final int updatesPerWriter = 500;
+    final UUID key = uut.save(OrdersFixtures.standardOrder()).getKey();
+    ExecutorService executor = Executors.newFixedThreadPool(writers);
+    final CountDownLatch start = new CountDownLatch(1);
+
+    List<Future<?>> results = new ArrayList<Future<?>>();
+    for (int i = 0; i < writers; i++) {
+      results.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          start.await();
+          for (int j = 0; j < updatesPerWriter; j++) {
+            uut.computeIfPresent(key, new OrderUpdate() {
+              @Override
+              public Order apply(Order current) {
+                Order updated = new Order(current.getKey(), current.getDateTimeOfSubmission());
+                for (OrderStatus status : current.getStatusHistory()) {
+                  updated.addStatus(status);
+                }
+                updated.addStatus(new OrderStatus(new Date(), "Order Updated"));
+                return updated;
+              }
+            });
+          }
+          return null;
+        }
+      }));
+    }
+    start.countDown();
+    for (Future<?> result : results) {
+      result.get(30, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    assertEquals(writers * updatesPerWriter, uut.findById(key).getStatusHistory().size());
+  }
+
+  @Test
+  public void removesOnlyOrdersMeetingTheCondition() {
+    final Order kept = uut.save(OrdersFixtures.standardOrder());
+    Order removed = uut.save(OrdersFixtures.standardOrder());
+    OrderCondition notKept = new OrderCondition() {
+      @Override
+      public boolean test(Order order) {
+        return order != kept;
+      }
+    };
+
+    assertFalse(uut.removeIf(kept.getKey(), notKept));
+    assertTrue(uut.removeIf(removed.getKey(), notKept));
+    assertFalse(uut.removeIf(removed.getKey(), notKept));
+
+    assertSame(kept, uut.findById(kept.getKey()));
+    assertNull(uut.findById(removed.getKey()));
+    assertNull(uut.computeIfPresent(removed.getKey(), new OrderUpdate() {
+      @Override
+      public Order apply(Order current) {
+        throw new AssertionError("Called without an order");
+      }
+    }));
+  }
+
+  @Test
+  public void savesOnlyOverTheVersionExpected() {
+    Order given = OrdersFixtures.standardOrder();
+
+    Order first = uut.saveIfVersion(given, 0);
+    assertEquals(1, first.getVersion());
+    assertEquals(0, given.getVersion());
+    assertEquals(given.getStatusHistory(), first.getStatusHistory());
+
+    Order stale = copyOf(first);
+    try {
+      uut.saveIfVersion(stale, 0);
+      fail("Saved over an order that was already there");
+    } catch (OrderVersionConflictException e) {
+      assertEquals(0, e.getExpectedVersion());
+      assertEquals(1, e.getActualVersion());
+    }
+    assertEquals(0, stale.getVersion());
+    assertSame(first, uut.findById(first.getKey()));
+
+    Order second = uut.saveIfVersion(copyOf(first), 1);
+    assertEquals(2, second.getVersion());
+    assertSame(second, uut.findById(first.getKey()));
+  }
+
+  @Test
+  public void concurrentVersionedSavesOfOneOrderAreNotLost() throws Exception {
+    final int writers = 8;
+    final int updatesPerWriter = 200;
+    final UUID key = uut.saveIfVersion(OrdersFixtures.standardOrder(), 0).getKey();
+    ExecutorService executor = Executors.newFixedThreadPool(writers);
+    final CountDownLatch start = new CountDownLatch(1);
+
+    List<Future<?>> results = new ArrayList<Future<?>>();
+    for (int i = 0; i < writers; i++) {
+      results.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          start.await();
+          for (int j = 0; j < updatesPerWriter; j++) {
+            while (true) {
+              Order current = uut.findById(key);
+              Order updated = copyOf(current);
+              updated.addStatus(new OrderStatus(new Date(), "Order Updated"));
+              try {
+                uut.saveIfVersion(updated, current.getVersion());
+                break;
+              } catch (OrderVersionConflictException e) {
+                //Another writer got in first, so read its order and try again.
+              }
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    start.countDown();
+    for (Future<?> result : results) {
+      result.get(30, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    Order order = uut.findById(key);
+    assertEquals(1 + writers * updatesPerWriter, order.getVersion());
+    assertEquals(writers * updatesPerWriter, order.getStatusHistory().size());
+  }
+
+  @Test
+  public void pagesThroughEveryOrderInSubmissionOrder() {
+    Set<UUID> expected = new HashSet<UUID>();
+    for (int i = 0; i < 250; i++) {
+      //Only a handful of distinct times, so that the key has to break ties.
+      Order order = uut.save(new Order(OrdersFixtures.newKey(), new Date(i % 7)));
+      expected.add(order.getKey());
+    }
+
+    List<Order> seen = new ArrayList<Order>();
+    OrderCursor after = null;
+    List<Order> page;
+    do {
+      page = uut.findPage(after, 40);
+      seen.addAll(page);
+      if (!page.isEmpty()) {
+        after = OrderCursor.of(page.get(page.size() - 1));
+      }
+    } while (page.size() == 40);
+
+    assertEquals(expected.size(), seen.size());
+    for (int i = 1; i < seen.size(); i++) {
+      assertTrue(OrderCursor.compareOrders(seen.get(i - 1), seen.get(i)) < 0);
+    }
+    for (Order order : seen) {
+      assertTrue(expected.remove(order.getKey()));
+    }
+  }
+
+  private static Order copyOf(Order order) {
+    Order copy = new Order(order.getKey(), order.getDateTimeOfSubmission());
+    copy.setOrderItems(order.getOrderItems());
+    for (OrderStatus status : order.getStatusHistory()) {
+      copy.addStatus(status);
+    }
+    return copy;
+  }
+}
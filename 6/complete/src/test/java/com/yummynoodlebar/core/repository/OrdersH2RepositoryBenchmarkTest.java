@@ -0,0 +1,155 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.Benchmarks;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.*;
+
+/**
+ * An {@link OrdersH2Repository} already holding a million orders, each with two lines and two
+ * statuses: orders created one at a time and in batches, looked up by key, and listed a page after
+ * a cursor, from one thread. Each is run for a while to warm up, then measured, and the rate logged.
+ * Loading the orders takes a few minutes. A benchmark, see {@link Benchmarks}.
+ */
+public class OrdersH2RepositoryBenchmarkTest {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersH2RepositoryBenchmarkTest.class);
+
+  private static final int ORDERS = 1000000;
+  private static final int BATCH = 100;
+  private static final int PAGE = 100;
+  private static final int CURSOR_EVERY = 100;
+  private static final long WARMUP_MILLIS = 5000;
+  private static final long MEASURE_MILLIS = 10000;
+
+  @ClassRule
+  public static TemporaryFolder folder = new TemporaryFolder();
+
+  static OrdersH2Repository orders;
+  static UUID[] keys = new UUID[ORDERS];
+  static List<OrderCursor> cursors = new ArrayList<OrderCursor>();
+
+  @BeforeClass
+  public static void loadOrders() {
+    Benchmarks.assumeEnabled();
+    orders = new OrdersH2Repository(folder.getRoot());
+    long start = System.nanoTime();
+    for (int i = 0; i < ORDERS; i += BATCH) {
+      List<Order> batch = new ArrayList<Order>(BATCH);
+      for (int j = i; j < i + BATCH; j++) {
+        Order order = order(j);
+        keys[j] = order.getKey();
+        if (j % CURSOR_EVERY == 0) {
+          cursors.add(OrderCursor.of(order));
+        }
+        batch.add(order);
+      }
+      orders.saveAll(batch);
+    }
+    LOG.info(String.format("H2, loaded %d orders in %.0fs", ORDERS, (System.nanoTime() - start) / 1e9));
+  }
+
+  @AfterClass
+  public static void closeOrders() throws Exception {
+    if (orders != null) {
+      orders.close();
+    }
+  }
+
+  @Test
+  public void createOneAtATime() {
+    measure("create, one save an order", "orders", new Operation() {
+      @Override
+      int run(int i) {
+        orders.save(order(i));
+        return 1;
+      }
+    });
+  }
+
+  @Test
+  public void createInBatches() {
+    measure("create, saveAll batches of " + BATCH, "orders", new Operation() {
+      @Override
+      int run(int i) {
+        List<Order> batch = new ArrayList<Order>(BATCH);
+        for (int j = 0; j < BATCH; j++) {
+          batch.add(order(i * BATCH + j));
+        }
+        orders.saveAll(batch);
+        return BATCH;
+      }
+    });
+  }
+
+  @Test
+  public void lookUpByKey() {
+    measure("lookup by key", "lookups", new Operation() {
+      @Override
+      int run(int i) {
+        assertNotNull(orders.findById(keys[ThreadLocalRandom.current().nextInt(ORDERS)]));
+        return 1;
+      }
+    });
+  }
+
+  @Test
+  public void listAPageAfterACursor() {
+    measure("list, a page of " + PAGE + " after a cursor", "pages", new Operation() {
+      @Override
+      int run(int i) {
+        OrderCursor after = cursors.get(ThreadLocalRandom.current().nextInt(cursors.size()));
+        assertFalse(orders.findPage(after, PAGE).isEmpty());
+        return 1;
+      }
+    });
+  }
+
+  private static void measure(String name, String unit, Operation operation) {
+    run(operation, WARMUP_MILLIS);
+    double perSecond = run(operation, MEASURE_MILLIS);
+    LOG.info(String.format("H2, %d orders stored, %s: %.0f %s a second", ORDERS, name, perSecond, unit));
+  }
+
+  /*
+   * How many the operation did a second, run over and over for the time.
+   */
+  private static double run(Operation operation, long millis) {
+    long start = System.nanoTime();
+    long stop = start + millis * 1000000;
+    long done = 0;
+    for (int i = 0; System.nanoTime() < stop; i++) {
+      done += operation.run(i);
+    }
+    return done / ((System.nanoTime() - start) / 1e9);
+  }
+
+  private static Order order(int index) {
+    Order order = new Order(OrdersFixtures.newKey(), new Date());
+    Map<String, Integer> items = new HashMap<String, Integer>();
+    items.put("yummy" + index % 20, 1 + index % 3);
+    items.put("yummy" + (20 + index % 7), 1);
+    order.setOrderItems(items);
+    order.addStatus(new OrderStatus(new Date(), "Order Created"));
+    order.addStatus(new OrderStatus(new Date(), "Order Paid"));
+    return order;
+  }
+
+  private abstract static class Operation {
+    //Returns how many of what is being measured it did.
+    abstract int run(int i);
+  }
+}
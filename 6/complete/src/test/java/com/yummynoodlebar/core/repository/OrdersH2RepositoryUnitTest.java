@@ -0,0 +1,247 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OrdersH2RepositoryUnitTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  OrdersH2Repository uut;
+
+  @Before
+  public void setupUnitUnderTest() {
+    uut = new OrdersH2Repository(folder.getRoot(), 2);
+  }
+
+  @After
+  public void closeUnitUnderTest() throws Exception {
+    uut.close();
+  }
+
+  @Test
+  public void addASingleOrderToTheOrders() {
+
+    assertEquals(0, uut.findAll().size());
+
+    Order order = OrdersFixtures.standardOrder();
+    order.addStatus(new OrderStatus(new Date(1000), "Order Created"));
+    order.addStatus(new OrderStatus(null, "Order Paid"));
+    order.setVersion(3);
+    uut.save(order);
+
+    assertEquals(1, uut.findAll().size());
+
+    Order found = uut.findById(order.getKey());
+    assertEquals(order.getKey(), found.getKey());
+    assertEquals(order.getDateTimeOfSubmission(), found.getDateTimeOfSubmission());
+    assertEquals(order.getOrderItems(), found.getOrderItems());
+    assertEquals(3, found.getVersion());
+    assertEquals(2, found.getStatusHistory().size());
+    assertEquals(new Date(1000), found.getStatusHistory().get(0).getStatusDate());
+    assertNull(found.getStatus().getStatusDate());
+    assertEquals("Order Paid", found.getStatus().getStatus());
+  }
+
+  @Test
+  public void removeASingleOrder() {
+
+    Order order = uut.save(OrdersFixtures.standardOrder());
+
+    uut.delete(order.getKey());
+
+    assertEquals(0, uut.findAll().size());
+    assertNull(uut.findById(order.getKey()));
+  }
+
+  @Test
+  public void savingAgainReplacesTheLinesAndHistory() {
+    Order order = uut.save(order(1000, "Order Created", "yummy1", "yummy2"));
+
+    Order changed = order(1000, "Order Paid", "yummy3");
+    Order replacement = new Order(order.getKey(), order.getDateTimeOfSubmission());
+    replacement.setOrderItems(changed.getOrderItems());
+    replacement.addStatus(changed.getStatus());
+    uut.save(replacement);
+
+    Order found = uut.findById(order.getKey());
+    assertEquals(Collections.singletonMap("yummy3", 1), found.getOrderItems());
+    assertEquals(1, found.getStatusHistory().size());
+    assertEquals(Collections.singletonMap("Order Paid", 1), uut.countByStatus());
+    assertTrue(uut.findByItems(Collections.singleton("yummy1"), ItemMatch.ANY).isEmpty());
+  }
+
+  @Test
+  public void ordersSurviveReopeningTheDatabase() throws Exception {
+    List<Order> saved = new ArrayList<Order>();
+    for (int i = 0; i < 100; i++) {
+      saved.add(order(i, "Order Created", "yummy" + (i % 3)));
+    }
+    uut.saveAll(saved);
+    uut.deleteAll(Arrays.asList(saved.get(0).getKey(), saved.get(1).getKey()));
+
+    uut.close();
+    uut = new OrdersH2Repository(folder.getRoot(), 2);
+
+    assertEquals(98, uut.findAll().size());
+    assertNull(uut.findById(saved.get(0).getKey()));
+    assertEquals(saved.get(50).getOrderItems(), uut.findById(saved.get(50).getKey()).getOrderItems());
+  }
+
+  @Test
+  public void aBatchSavedOverSeveralTransactionsIsSavedAsLastGiven() throws Exception {
+    uut.close();
+    uut = new OrdersH2Repository(folder.getRoot(), 2, 3);
+    List<Order> batch = new ArrayList<Order>();
+    for (int i = 0; i < 10; i++) {
+      batch.add(order(i, "Order Created", "yummy1"));
+    }
+    Order first = batch.get(0);
+    Order again = new Order(first.getKey(), first.getDateTimeOfSubmission());
+    again.setOrderItems(Collections.singletonMap("yummy2", 2));
+    again.addStatus(new OrderStatus(new Date(), "Order Paid"));
+    batch.add(again);
+
+    uut.saveAll(batch);
+
+    assertEquals(10, uut.findAll().size());
+    assertEquals("Order Paid", uut.findById(first.getKey()).getStatus().getStatus());
+    assertEquals(again.getOrderItems(), uut.findById(first.getKey()).getOrderItems());
+  }
+
+  @Test
+  public void answersTheQueriesLikeTheOtherStores() {
+    Order first = uut.save(order(1000, "Order Created", "yummy1", "yummy2"));
+    Order second = uut.save(order(2000, "Order Paid", "yummy2"));
+    Order third = uut.save(order(3000, "Order Created", "yummy3"));
+    Order undated = uut.save(new Order(OrdersFixtures.newKey(), null));
+
+    assertEquals(keys(first, third), keys(uut.findByStatus("Order Created")));
+    assertEquals(2, uut.countByStatus("Order Created"));
+    assertEquals(0, uut.countByStatus("Order Delivered"));
+    Map<String, Integer> counts = new TreeMap<String, Integer>();
+    counts.put("Order Created", 2);
+    counts.put("Order Paid", 1);
+    assertEquals(counts, uut.countByStatus());
+
+    assertEquals(keys(first, second), keys(uut.findByItems(Arrays.asList("yummy2", "yummy1"), ItemMatch.ANY)));
+    assertEquals(keys(first), keys(uut.findByItems(Arrays.asList("yummy1", "yummy2"), ItemMatch.ALL)));
+    assertEquals(first.getOrderItems(),
+            uut.findByItems(Collections.singleton("yummy1"), ItemMatch.ANY).get(0).getOrderItems());
+    assertTrue(uut.findByItems(Collections.<String>emptyList(), ItemMatch.ANY).isEmpty());
+
+    assertEquals(keys(first, second), keys(uut.findBySubmissionTime(new Date(1000), new Date(3000))));
+    assertEquals(keys(undated, first), keys(uut.findBySubmissionTime(null, new Date(2000))));
+    assertEquals(keys(third), keys(uut.findBySubmissionTime(new Date(2500), null)));
+    assertNull(uut.findById(undated.getKey()).getDateTimeOfSubmission());
+    assertNull(uut.findById(undated.getKey()).getStatus());
+  }
+
+  @Test
+  public void versionedSavesAndComputeAreAtomic() {
+    Order order = uut.saveIfVersion(OrdersFixtures.standardOrder(), 0);
+    assertEquals(1, uut.findById(order.getKey()).getVersion());
+
+    try {
+      uut.saveIfVersion(order, 0);
+      fail("Saved over an order that was already there");
+    } catch (OrderVersionConflictException e) {
+      assertEquals(1, e.getActualVersion());
+    }
+
+    assertTrue(uut.removeIf(order.getKey(), new OrderCondition() {
+      @Override
+      public boolean test(Order current) {
+        return current.getVersion() == 1;
+      }
+    }));
+    assertNull(uut.findById(order.getKey()));
+  }
+
+  @Test
+  public void pagesThroughEveryOrderInSubmissionOrder() {
+    Set<UUID> expected = new HashSet<UUID>();
+    List<Order> batch = new ArrayList<Order>();
+    for (int i = 0; i < 250; i++) {
+      //Only a handful of distinct times, so that the key has to break ties.
+      Order order = order(i % 7, "Order Created", "yummy" + i);
+      batch.add(order);
+      expected.add(order.getKey());
+    }
+    uut.saveAll(batch);
+
+    List<Order> seen = new ArrayList<Order>();
+    OrderCursor after = null;
+    List<Order> page;
+    do {
+      page = uut.findPage(after, 40);
+      seen.addAll(page);
+      if (!page.isEmpty()) {
+        after = OrderCursor.of(page.get(page.size() - 1));
+      }
+    } while (page.size() == 40);
+
+    assertEquals(expected.size(), seen.size());
+    for (int i = 1; i < seen.size(); i++) {
+      assertTrue(OrderCursor.compareOrders(seen.get(i - 1), seen.get(i)) < 0);
+    }
+    for (Order order : seen) {
+      assertTrue(expected.remove(order.getKey()));
+      assertEquals(1, order.getOrderItems().size());
+      assertEquals("Order Created", order.getStatus().getStatus());
+    }
+  }
+
+  @Test
+  public void listsTheKeysOfTheOrdersStored() {
+    Set<UUID> expected = new HashSet<UUID>();
+    for (int i = 0; i < 20; i++) {
+      expected.add(uut.save(order(i, "Order Created", "yummy1")).getKey());
+    }
+    UUID deleted = expected.iterator().next();
+    uut.delete(deleted);
+    expected.remove(deleted);
+
+    Set<UUID> listed = new HashSet<UUID>();
+    for (UUID key : uut.keys()) {
+      assertTrue(listed.add(key));
+    }
+    assertEquals(expected, listed);
+  }
+
+  private static Order order(long submitted, String status, String... items) {
+    Order order = new Order(OrdersFixtures.newKey(), new Date(submitted));
+    Map<String, Integer> lines = new LinkedHashMap<String, Integer>();
+    for (String item : items) {
+      lines.put(item, 1);
+    }
+    order.setOrderItems(lines);
+    order.addStatus(new OrderStatus(new Date(submitted), status));
+    return order;
+  }
+
+  private static List<UUID> keys(Order... orders) {
+    List<UUID> keys = new ArrayList<UUID>();
+    for (Order order : orders) {
+      keys.add(order.getKey());
+    }
+    return keys;
+  }
+
+  private static List<UUID> keys(List<Order> orders) {
+    return keys(orders.toArray(new Order[orders.size()]));
+  }
+}
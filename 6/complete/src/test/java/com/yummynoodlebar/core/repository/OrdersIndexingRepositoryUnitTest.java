@@ -0,0 +1,279 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OrdersIndexingRepositoryUnitTest {
+
+  OrdersIndexingRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() {
+    uut = new OrdersIndexingRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>()));
+  }
+
+  @Test
+  public void findsTheOrdersSubmittedInARange() {
+    for (int i = 0; i < 100; i++) {
+      uut.save(new Order(OrdersFixtures.newKey(), new Date(i * 1000L)));
+    }
+
+    List<Order> found = uut.findBySubmissionTime(new Date(10000), new Date(20000));
+
+    assertEquals(10, found.size());
+    for (int i = 0; i < found.size(); i++) {
+      assertEquals((10 + i) * 1000L, found.get(i).getDateTimeOfSubmission().getTime());
+    }
+    assertEquals(90, uut.findBySubmissionTime(new Date(10000), null).size());
+    assertEquals(10, uut.findBySubmissionTime(null, new Date(10000)).size());
+  }
+
+  @Test
+  public void deletedOrdersLeaveTheIndex() {
+    Order order = uut.save(new Order(OrdersFixtures.newKey(), new Date(5000)));
+    uut.save(new Order(OrdersFixtures.newKey(), new Date(6000)));
+
+    uut.delete(order.getKey());
+
+    List<Order> found = uut.findBySubmissionTime(new Date(0), new Date(10000));
+    assertEquals(1, found.size());
+    assertEquals(6000, found.get(0).getDateTimeOfSubmission().getTime());
+  }
+
+  @Test
+  public void indexesTheOrdersAlreadyInTheStore() {
+    OrdersMemoryRepository store = new OrdersMemoryRepository(new HashMap<UUID, Order>());
+    for (int i = 0; i < 10; i++) {
+      store.save(new Order(OrdersFixtures.newKey(), new Date(i)));
+    }
+
+    uut = new OrdersIndexingRepository(store);
+
+    assertEquals(5, uut.findBySubmissionTime(new Date(5), null).size());
+  }
+
+  @Test
+  public void agreesWithAScanOverTheStore() {
+    OrdersMemoryRepository scanned = new OrdersMemoryRepository(new HashMap<UUID, Order>());
+    List<UUID> keys = new ArrayList<UUID>();
+    Random random = new Random(7);
+
+    for (int i = 0; i < 5000; i++) {
+      if (!keys.isEmpty() && random.nextInt(4) == 0) {
+        UUID key = keys.remove(random.nextInt(keys.size()));
+        uut.delete(key);
+        scanned.delete(key);
+      } else {
+        Order order = uut.save(new Order(OrdersFixtures.newKey(), new Date(random.nextInt(1000))));
+        scanned.save(order);
+        keys.add(order.getKey());
+      }
+    }
+
+    assertEquals(scanned.findBySubmissionTime(new Date(250), new Date(750)),
+            uut.findBySubmissionTime(new Date(250), new Date(750)));
+    assertEquals(scanned.findPage(OrderCursor.of(uut.findPage(null, 100).get(99)), 100),
+            uut.findPage(OrderCursor.of(uut.findPage(null, 100).get(99)), 100));
+  }
+
+  @Test
+  public void findsTheOrdersContainingItems() {
+    Order both = uut.save(orderOf("yummy1", "yummy15"));
+    Order first = uut.save(orderOf("yummy1"));
+    Order second = uut.save(orderOf("yummy15", "yummy3"));
+    uut.save(orderOf("yummy7"));
+
+    assertEquals(Arrays.asList(both, second), uut.findByItems(Collections.singleton("yummy15"), ItemMatch.ALL));
+    assertEquals(Arrays.asList(both), uut.findByItems(Arrays.asList("yummy1", "yummy15"), ItemMatch.ALL));
+    assertEquals(Arrays.asList(both, first, second), uut.findByItems(Arrays.asList("yummy1", "yummy15"), ItemMatch.ANY));
+    assertTrue(uut.findByItems(Arrays.asList("yummy1", "yummy99"), ItemMatch.ALL).isEmpty());
+    assertTrue(uut.findByItems(Collections.<String>emptySet(), ItemMatch.ALL).isEmpty());
+  }
+
+  @Test
+  public void itemFiltersAgreeWithAScanUnderRandomWrites() {
+    OrdersMemoryRepository scanned = new OrdersMemoryRepository(new HashMap<UUID, Order>());
+    List<UUID> keys = new ArrayList<UUID>();
+    Random random = new Random(11);
+
+    for (int i = 0; i < 5000; i++) {
+      if (!keys.isEmpty() && random.nextInt(3) == 0) {
+        UUID key = keys.remove(random.nextInt(keys.size()));
+        uut.delete(key);
+        scanned.delete(key);
+      } else {
+        Order order;
+        if (!keys.isEmpty() && random.nextInt(5) == 0) {
+          //Re-save an existing order with different items.
+          order = new Order(keys.get(random.nextInt(keys.size())), new Date(i));
+        } else {
+          order = new Order(OrdersFixtures.newKey(), new Date(i));
+          keys.add(order.getKey());
+        }
+        Map<String, Integer> items = new HashMap<String, Integer>();
+        items.put("yummy" + random.nextInt(20), 1);
+        items.put("yummy" + random.nextInt(20), 2);
+        order.setOrderItems(items);
+        uut.save(order);
+        scanned.save(order);
+      }
+    }
+
+    for (int i = 0; i < 20; i++) {
+      List<String> items = Arrays.asList("yummy" + i, "yummy" + (19 - i));
+      assertEquals(scanned.findByItems(items, ItemMatch.ANY), uut.findByItems(items, ItemMatch.ANY));
+      assertEquals(scanned.findByItems(items.subList(0, 1), ItemMatch.ALL), uut.findByItems(items.subList(0, 1), ItemMatch.ALL));
+    }
+  }
+
+  @Test
+  public void countsOrdersByCurrentStatus() {
+    Order created = uut.save(orderInStatus("Order Created"));
+    uut.save(orderInStatus("Order Created"));
+    Order cooking = uut.save(orderInStatus("Cooking"));
+
+    assertEquals(2, uut.countByStatus("Order Created"));
+    assertEquals(1, uut.countByStatus("Cooking"));
+    assertEquals(0, uut.countByStatus("Delivered"));
+    assertEquals(Arrays.asList(cooking), uut.findByStatus("Cooking"));
+
+    uut.delete(created.getKey());
+
+    assertEquals(1, uut.countByStatus("Order Created"));
+  }
+
+  @Test
+  public void addingAStatusToAStoredOrderMovesItInTheIndex() {
+    Order order = uut.save(orderInStatus("Order Created"));
+
+    order.addStatus(new OrderStatus(new Date(), "Cooking"));
+
+    assertEquals(0, uut.countByStatus("Order Created"));
+    assertEquals(1, uut.countByStatus("Cooking"));
+    assertEquals(Arrays.asList(order), uut.findByStatus("Cooking"));
+    assertEquals(Collections.singletonMap("Cooking", 1), uut.countByStatus());
+  }
+
+  @Test
+  public void updatesAndConditionalRemovesKeepTheIndexesInStep() {
+    Order order = new Order(OrdersFixtures.newKey(), new Date(1000));
+    order.addStatus(new OrderStatus(new Date(), "Order Created"));
+    uut.save(order);
+
+    uut.compute(order.getKey(), new OrderUpdate() {
+      @Override
+      public Order apply(Order current) {
+        Order paid = new Order(current.getKey(), current.getDateTimeOfSubmission());
+        paid.addStatus(new OrderStatus(new Date(), "Order Paid"));
+        return paid;
+      }
+    });
+
+    assertEquals(0, uut.countByStatus("Order Created"));
+    assertEquals(1, uut.findByStatus("Order Paid").size());
+
+    assertTrue(uut.removeIf(order.getKey(), new OrderCondition() {
+      @Override
+      public boolean test(Order current) {
+        return "Order Paid".equals(current.getStatus().getStatus());
+      }
+    }));
+
+    assertEquals(0, uut.countByStatus("Order Paid"));
+    assertTrue(uut.findBySubmissionTime(null, null).isEmpty());
+  }
+
+  @Test
+  public void ordersNoLongerStoredAreNotFollowed() {
+    Order replaced = uut.save(orderInStatus("Order Created"));
+    Order replacement = new Order(replaced.getKey(), replaced.getDateTimeOfSubmission());
+    replacement.addStatus(new OrderStatus(new Date(), "Order Created"));
+    uut.save(replacement);
+
+    replaced.addStatus(new OrderStatus(new Date(), "Cooking"));
+
+    assertEquals(1, uut.countByStatus("Order Created"));
+    assertEquals(0, uut.countByStatus("Cooking"));
+  }
+
+  @Test
+  public void savedOrdersAreNotReadBackFromTheStore() {
+    final int[] reads = new int[1];
+    uut = new OrdersIndexingRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>()) {
+      @Override
+      public Order findById(UUID key) {
+        reads[0]++;
+        return super.findById(key);
+      }
+    });
+    Order order = null;
+    for (int i = 0; i < 100; i++) {
+      order = uut.save(orderInStatus("Order Created"));
+    }
+
+    order.addStatus(new OrderStatus(new Date(), "Cooking"));
+
+    assertEquals(1, reads[0]);
+    assertEquals(1, uut.countByStatus("Cooking"));
+  }
+
+  @Test
+  public void statusCountsAgreeWithAScanUnderConcurrentChanges() throws Exception {
+    final List<Order> stored = new ArrayList<Order>();
+    for (int i = 0; i < 1000; i++) {
+      stored.add(uut.save(orderInStatus("Order Created")));
+    }
+
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int offset = t;
+      threads[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = offset; i < stored.size(); i += 2) {
+            stored.get(i).addStatus(new OrderStatus(new Date(), "Status " + (i % 3)));
+            uut.save(stored.get(i));
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Map<String, Integer> scanned = new TreeMap<String, Integer>();
+    for (Order order : stored) {
+      String status = order.getStatus().getStatus();
+      scanned.put(status, scanned.containsKey(status) ? scanned.get(status) + 1 : 1);
+    }
+    assertEquals(scanned, uut.countByStatus());
+  }
+
+  private static Order orderInStatus(String status) {
+    Order order = orderOf("yummy1");
+    order.addStatus(new OrderStatus(new Date(), status));
+    return order;
+  }
+
+  private static int submitted;
+
+  private static Order orderOf(String... items) {
+    Order order = new Order(OrdersFixtures.newKey(), new Date(submitted++));
+    Map<String, Integer> orderItems = new HashMap<String, Integer>();
+    for (String item : items) {
+      orderItems.put(item, 1);
+    }
+    order.setOrderItems(orderItems);
+    return order;
+  }
+}
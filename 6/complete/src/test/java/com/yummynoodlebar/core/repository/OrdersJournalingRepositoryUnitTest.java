@@ -0,0 +1,202 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class OrdersJournalingRepositoryUnitTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  OrdersJournalingRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() throws Exception {
+    uut = open(FsyncPolicy.EVERY_WRITE);
+  }
+
+  @After
+  public void closeUnitUnderTest() throws Exception {
+    uut.close();
+  }
+
+  @Test
+  public void ordersAreRestoredFromTheLog() throws Exception {
+    Order kept = OrdersFixtures.standardOrder();
+    kept.addStatus(new OrderStatus(new Date(), "Order Created"));
+    uut.save(kept);
+    Order deleted = uut.save(OrdersFixtures.standardOrder());
+    uut.delete(deleted.getKey());
+
+    uut.close();
+    uut = open(FsyncPolicy.EVERY_WRITE);
+
+    assertEquals(1, uut.findAll().size());
+    assertNull(uut.findById(deleted.getKey()));
+    assertEquals(kept.getOrderItems(), uut.findById(kept.getKey()).getOrderItems());
+    assertEquals("Order Created", uut.findById(kept.getKey()).getStatus().getStatus());
+  }
+
+  @Test
+  public void aTornRecordAtTheEndOfTheLogIsDiscarded() throws Exception {
+    Order order = uut.save(OrdersFixtures.standardOrder());
+    uut.close();
+
+    RandomAccessFile log = new RandomAccessFile(new File(folder.getRoot(), OrdersWriteAheadLog.LOG_FILE), "rw");
+    log.seek(log.length());
+    log.writeInt(200);
+    log.write(new byte[10]);
+    log.close();
+
+    uut = open(FsyncPolicy.EVERY_WRITE);
+    assertNotNull(uut.findById(order.getKey()));
+
+    Order another = uut.save(OrdersFixtures.standardOrder());
+    uut.close();
+    uut = open(FsyncPolicy.EVERY_WRITE);
+
+    assertEquals(2, uut.findAll().size());
+    assertNotNull(uut.findById(another.getKey()));
+  }
+
+  @Test
+  public void concurrentWritersAreGroupCommitted() throws Exception {
+    final int writers = 16;
+    final int ordersPerWriter = 200;
+    ExecutorService executor = Executors.newFixedThreadPool(writers);
+    List<Future<?>> results = new ArrayList<Future<?>>();
+
+    for (int i = 0; i < writers; i++) {
+      results.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < ordersPerWriter; j++) {
+            uut.save(OrdersFixtures.standardOrder());
+          }
+        }
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    WriteAheadLogStatistics statistics = uut.getStatistics();
+    assertEquals(writers * ordersPerWriter, statistics.getRecords());
+    assertTrue(statistics.getCommits() <= statistics.getRecords());
+    assertEquals(statistics.getCommits(), statistics.getSyncs());
+
+    uut.close();
+    uut = open(FsyncPolicy.OS);
+    assertEquals(writers * ordersPerWriter, uut.findAll().size());
+  }
+
+  @Test
+  public void aBatchIsWrittenInOneCommit() throws Exception {
+    List<Order> batch = new ArrayList<Order>();
+    for (int i = 0; i < 100; i++) {
+      batch.add(OrdersFixtures.standardOrder());
+    }
+    uut.saveAll(batch);
+    uut.deleteAll(Arrays.asList(batch.get(0).getKey(), batch.get(1).getKey()));
+
+    WriteAheadLogStatistics statistics = uut.getStatistics();
+    assertEquals(102, statistics.getRecords());
+    assertEquals(2, statistics.getCommits());
+    assertEquals(100, statistics.getMaxBatchSize());
+
+    uut.close();
+    uut = open(FsyncPolicy.EVERY_WRITE);
+    assertEquals(98, uut.findAll().size());
+    assertNull(uut.findById(batch.get(0).getKey()));
+    assertNotNull(uut.findById(batch.get(99).getKey()));
+  }
+
+  @Test
+  public void aTornBatchIsCutOffSoLaterWritesAreNotLost() throws Exception {
+    uut.close();
+    final List<FailingFileChannel> channels = new ArrayList<FailingFileChannel>();
+    uut = new OrdersJournalingRepository(new OrdersPersistentMapRepository(), failingLog(channels));
+
+    Order before = uut.save(OrdersFixtures.standardOrder());
+    channels.get(0).tearNextWrite = true;
+    Order torn = OrdersFixtures.standardOrder();
+    try {
+      uut.save(torn);
+      fail("Saved an order the log could not write");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    Order after = uut.save(OrdersFixtures.standardOrder());
+
+    uut.close();
+    uut = open(FsyncPolicy.EVERY_WRITE);
+
+    assertNotNull(uut.findById(before.getKey()));
+    assertNull(uut.findById(torn.getKey()));
+    assertNotNull(uut.findById(after.getKey()));
+  }
+
+  @Test
+  public void aFailedSyncFailsTheLogAndIsNotReplayed() throws Exception {
+    uut.close();
+    final List<FailingFileChannel> channels = new ArrayList<FailingFileChannel>();
+    uut = new OrdersJournalingRepository(new OrdersPersistentMapRepository(), failingLog(channels));
+
+    Order before = uut.save(OrdersFixtures.standardOrder());
+    channels.get(0).failNextForce = true;
+    Order unsynced = OrdersFixtures.standardOrder();
+    try {
+      uut.save(unsynced);
+      fail("Saved an order the log could not sync");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    try {
+      uut.save(OrdersFixtures.standardOrder());
+      fail("Saved an order after the log failed");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("failed"));
+    }
+
+    uut.close();
+    uut = open(FsyncPolicy.EVERY_WRITE);
+
+    assertEquals(1, uut.findAll().size());
+    assertNotNull(uut.findById(before.getKey()));
+    assertNull(uut.findById(unsynced.getKey()));
+  }
+
+  private OrdersWriteAheadLog failingLog(final List<FailingFileChannel> channels) throws IOException {
+    return new OrdersWriteAheadLog(folder.getRoot(), FsyncPolicy.EVERY_WRITE, 10) {
+      @Override
+      FileChannel open(Path path, OpenOption... options) throws IOException {
+        FailingFileChannel channel = new FailingFileChannel(FileChannel.open(path, options));
+        channels.add(channel);
+        return channel;
+      }
+    };
+  }
+
+  private OrdersJournalingRepository open(FsyncPolicy policy) throws Exception {
+    return new OrdersJournalingRepository(new OrdersPersistentMapRepository(),
+            new OrdersWriteAheadLog(folder.getRoot(), policy, 10));
+  }
+}
@@ -0,0 +1,140 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class OrdersKeyFilteringRepositoryUnitTest {
+
+  OrdersRepository store;
+  OrdersKeyFilteringRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() {
+    store = spy(new OrdersMemoryRepository(new ConcurrentHashMap<UUID, Order>()));
+    uut = new OrdersKeyFilteringRepository(store, new OrderKeyFilter(1000, 0.01), 0);
+  }
+
+  @After
+  public void closeUnitUnderTest() throws Exception {
+    uut.close();
+  }
+
+  @Test
+  public void unknownKeysAreAnsweredWithoutTheRepository() {
+    Order order = uut.save(order());
+
+    for (int i = 0; i < 1000; i++) {
+      uut.findById(UUID.randomUUID());
+    }
+    assertNotNull(uut.findById(order.getKey()));
+
+    OrderKeyFilterStatistics statistics = uut.getFilter().getStatistics();
+    assertEquals(1001, statistics.getLookups());
+    assertTrue(statistics.getDefiniteMisses() > 980);
+    verify(store, atMost(21)).findById(any(UUID.class));
+  }
+
+  @Test
+  public void theFalsePositiveRateHoldsAsTheFilterGrows() {
+    List<UUID> keys = new ArrayList<UUID>();
+    for (int i = 0; i < 20000; i++) {
+      keys.add(uut.save(order()).getKey());
+    }
+    for (int i = 0; i < 20000; i++) {
+      assertNull(uut.findById(UUID.randomUUID()));
+    }
+    for (UUID key : keys) {
+      assertNotNull(uut.findById(key));
+    }
+
+    OrderKeyFilterStatistics statistics = uut.getFilter().getStatistics();
+    assertTrue(statistics.getStages() > 1);
+    //Keys that looked present already aren't counted.
+    assertEquals(20000, statistics.getKeys(), 400);
+    assertTrue(statistics.toString(), statistics.getObservedFalsePositiveRate() < 0.02);
+    assertTrue(statistics.toString(), statistics.getExpectedFalsePositiveRate() < 0.02);
+    assertTrue(statistics.toString(), statistics.getMemoryBytes() < 20000 * 4);
+  }
+
+  @Test
+  public void deletedKeysAreDroppedWhenTheFilterIsRebuilt() {
+    List<UUID> keys = new ArrayList<UUID>();
+    for (int i = 0; i < 100; i++) {
+      keys.add(uut.save(order()).getKey());
+    }
+    for (UUID key : keys.subList(0, 50)) {
+      uut.delete(key);
+      assertNull(uut.findById(key));
+    }
+    assertEquals(50, uut.getFilter().getStatistics().getFalsePositives());
+    assertTrue(uut.getFilter().needsRebuild());
+
+    uut.rebuild();
+
+    assertFalse(uut.getFilter().needsRebuild());
+    for (UUID key : keys.subList(0, 50)) {
+      assertNull(uut.findById(key));
+    }
+    for (UUID key : keys.subList(50, 100)) {
+      assertNotNull(uut.findById(key));
+    }
+    assertTrue(uut.getFilter().getStatistics().getFalsePositives() < 55);
+  }
+
+  @Test
+  public void theFilterIsRebuiltFromTheKeysWithoutReadingOrders() {
+    for (int i = 0; i < 100; i++) {
+      uut.save(order());
+    }
+    reset(store);
+
+    uut.rebuild();
+
+    verify(store).keys();
+    verify(store, never()).findAll();
+    verify(store, never()).findById(any(UUID.class));
+    verify(store, never()).streamAll(anyInt());
+  }
+
+  @Test
+  public void ordersSavedDuringARebuildAreFound() throws Exception {
+    final List<UUID> saved = Collections.synchronizedList(new ArrayList<UUID>());
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!done.get()) {
+          saved.add(uut.save(order()).getKey());
+        }
+      }
+    });
+    writer.start();
+    for (int i = 0; i < 20; i++) {
+      uut.rebuild();
+    }
+    done.set(true);
+    writer.join();
+
+    for (UUID key : saved) {
+      assertNotNull(uut.findById(key));
+    }
+  }
+
+  private static Order order() {
+    Order order = new Order(UUID.randomUUID(), new Date());
+    order.addStatus(new OrderStatus(new Date(), "Order Created"));
+    order.setOrderItems(Collections.singletonMap("yummy1", 1));
+    return order;
+  }
+}
@@ -0,0 +1,153 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.Benchmarks;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * Order ingestion into an {@link OrdersLsmRepository} by many writers, with a reader looking orders up
+ * meanwhile, as the queries controller would. Logs the ingestion rate, the write amplification, and
+ * the lookup latencies while runs are being flushed and merged and once they are done, with the merges
+ * throttled and not. The memtable is kept small so that a short run goes through several merges.
+ * A benchmark, see {@link Benchmarks}.
+ */
+public class OrdersLsmBenchmarkTest {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrdersLsmBenchmarkTest.class);
+
+  private static final int WRITERS = 8;
+  private static final int ORDERS = 100000;
+  private static final int LOOKUPS = 20000;
+  private static final int MEMTABLE_BYTES = 256 << 10;
+  private static final double MAX_WRITE_AMPLIFICATION = 10;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void onlyWhenBenchmarking() {
+    Benchmarks.assumeEnabled();
+  }
+
+  @Test
+  public void throttledMerges() throws Exception {
+    measure(4L << 20, "merges throttled to 4MB/s");
+  }
+
+  @Test
+  public void unthrottledMerges() throws Exception {
+    measure(Long.MAX_VALUE, "merges unthrottled");
+  }
+
+  private void measure(long compactionBytesPerSecond, String setup) throws Exception {
+    final OrdersLsmRepository orders = new OrdersLsmRepository(folder.getRoot(), FsyncPolicy.OS, 0,
+            MEMTABLE_BYTES, compactionBytesPerSecond);
+    try {
+      final AtomicReferenceArray<UUID> keys = new AtomicReferenceArray<UUID>(ORDERS);
+      final AtomicInteger next = new AtomicInteger();
+      final AtomicInteger written = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(WRITERS);
+
+      long start = System.nanoTime();
+      for (int i = 0; i < WRITERS; i++) {
+        new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              int index;
+              while ((index = next.getAndIncrement()) < ORDERS) {
+                Order order = order(index);
+                orders.save(order);
+                keys.set(index, order.getKey());
+                written.incrementAndGet();
+              }
+            } finally {
+              done.countDown();
+            }
+          }
+        }).start();
+      }
+
+      List<Long> busy = new ArrayList<Long>();
+      while (done.getCount() > 0) {
+        int upTo = written.get();
+        UUID key = upTo == 0 ? null : keys.get(ThreadLocalRandom.current().nextInt(upTo));
+        if (key != null) {
+          busy.add(lookup(orders, key, true));
+        }
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      assertTrue(orders.awaitIdle(120000));
+
+      long[] hits = new long[LOOKUPS];
+      long[] misses = new long[LOOKUPS];
+      for (int i = 0; i < LOOKUPS; i++) {
+        hits[i] = lookup(orders, keys.get(ThreadLocalRandom.current().nextInt(ORDERS)), true);
+        misses[i] = lookup(orders, UUID.randomUUID(), false);
+      }
+
+      LsmTreeStatistics statistics = orders.getStatistics();
+      double rate = ORDERS / seconds;
+      LOG.info(String.format("LSM, %d orders from %d writers, %s: %.0f orders a second, write amplification %.2f%n" +
+              "  lookups while ingesting %s%n  lookups after  %s%n  unknown keys   %s%n  %s",
+              ORDERS, WRITERS, setup, rate, statistics.getWriteAmplification(),
+              percentiles(toArray(busy)), percentiles(hits), percentiles(misses), statistics));
+
+      assertEquals(ORDERS, orders.findAll().size());
+      assertTrue(statistics.toString(), statistics.getWriteAmplification() < MAX_WRITE_AMPLIFICATION);
+    } finally {
+      orders.close();
+    }
+  }
+
+  private static long lookup(OrdersRepository orders, UUID key, boolean present) {
+    long start = System.nanoTime();
+    Order found = orders.findById(key);
+    long elapsed = System.nanoTime() - start;
+    assertEquals(present, found != null);
+    return elapsed;
+  }
+
+  private static String percentiles(long[] nanos) {
+    Arrays.sort(nanos);
+    return String.format("p50 %.1fus p99 %.1fus p99.9 %.1fus (%d lookups)", percentile(nanos, 0.5),
+            percentile(nanos, 0.99), percentile(nanos, 0.999), nanos.length);
+  }
+
+  private static double percentile(long[] sorted, double fraction) {
+    return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, sorted.length * fraction)] / 1000.0;
+  }
+
+  private static long[] toArray(List<Long> values) {
+    long[] array = new long[values.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = values.get(i);
+    }
+    return array;
+  }
+
+  private static Order order(int index) {
+    Order order = new Order(OrdersFixtures.newKey(), new Date());
+    Map<String, Integer> items = new HashMap<String, Integer>();
+    items.put("yummy" + index % 20, 1 + index % 3);
+    items.put("yummy" + index % 7, 1);
+    order.setOrderItems(items);
+    order.addStatus(new OrderStatus(new Date(), "Order Created"));
+    return order;
+  }
+}
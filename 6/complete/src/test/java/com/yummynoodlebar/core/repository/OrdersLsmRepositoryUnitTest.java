@@ -0,0 +1,224 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OrdersLsmRepositoryUnitTest {
+
+  //Small enough that a few hundred orders fill several memtables, and their runs get merged.
+  private static final int MEMTABLE_BYTES = 8 << 10;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  OrdersLsmRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() throws Exception {
+    uut = open();
+  }
+
+  @After
+  public void closeUnitUnderTest() throws Exception {
+    uut.close();
+  }
+
+  @Test
+  public void addASingleOrderToTheOrders() {
+
+    assertEquals(0, uut.findAll().size());
+
+    Order order = OrdersFixtures.standardOrder();
+    order.setVersion(3);
+    uut.save(order);
+
+    assertEquals(1, uut.findAll().size());
+    Order found = uut.findById(order.getKey());
+    assertEquals(order.getKey(), found.getKey());
+    assertEquals(order.getOrderItems(), found.getOrderItems());
+    assertEquals(3, found.getVersion());
+  }
+
+  @Test
+  public void removeASingleOrder() {
+
+    Order order = uut.save(OrdersFixtures.standardOrder());
+
+    uut.delete(order.getKey());
+
+    assertEquals(0, uut.findAll().size());
+    assertNull(uut.findById(order.getKey()));
+  }
+
+  @Test
+  public void flushesAndMergesRunsWithoutLosingWrites() throws Exception {
+    List<Order> kept = new ArrayList<Order>();
+    List<UUID> deleted = new ArrayList<UUID>();
+    for (int i = 0; i < 1000; i++) {
+      Order order = uut.save(order(i, "Order Created"));
+      if (i % 4 == 0) {
+        deleted.add(order.getKey());
+      } else {
+        kept.add(order);
+      }
+    }
+    uut.deleteAll(deleted);
+    for (int i = 0; i < kept.size(); i += 10) {
+      kept.set(i, uut.save(updated(kept.get(i), "Order Paid")));
+    }
+    assertTrue(uut.awaitIdle(30000));
+
+    LsmTreeStatistics statistics = uut.getStatistics();
+    assertTrue(statistics.toString(), statistics.getFlushes() > 5);
+    assertTrue(statistics.toString(), statistics.getCompactions() > 0);
+    assertTrue(statistics.toString(), statistics.getRuns() < statistics.getFlushes());
+
+    assertEverythingIsThere(kept, deleted);
+    assertEquals(Collections.singletonMap("Order Paid", 75), paidCounts());
+  }
+
+  @Test
+  public void ordersSurviveReopeningFromTheRunsAndTheLog() throws Exception {
+    List<Order> kept = new ArrayList<Order>();
+    List<UUID> deleted = new ArrayList<UUID>();
+    for (int i = 0; i < 300; i++) {
+      kept.add(order(i, "Order Created"));
+    }
+    uut.saveAll(kept);
+    assertTrue(uut.awaitIdle(30000));
+    //These stay in the memtable and the log only.
+    for (int i = 0; i < 20; i++) {
+      deleted.add(kept.remove(kept.size() - 1).getKey());
+    }
+    uut.deleteAll(deleted);
+    kept.set(0, uut.save(updated(kept.get(0), "Order Paid")));
+
+    uut.close();
+    uut = open();
+
+    assertEverythingIsThere(kept, deleted);
+    assertEquals("Order Paid", uut.findById(kept.get(0).getKey()).getStatus().getStatus());
+  }
+
+  @Test
+  public void leftoverRunFilesAreDeletedOnStartup() throws Exception {
+    Order order = uut.save(OrdersFixtures.standardOrder());
+    uut.close();
+    File stray = new File(folder.getRoot(), "run-999.sst");
+    assertTrue(stray.createNewFile());
+
+    uut = open();
+
+    assertFalse(stray.exists());
+    assertNotNull(uut.findById(order.getKey()));
+  }
+
+  @Test
+  public void versionedSavesAndComputeAreAtomic() {
+    Order order = uut.saveIfVersion(OrdersFixtures.standardOrder(), 0);
+    assertEquals(1, uut.findById(order.getKey()).getVersion());
+
+    try {
+      uut.saveIfVersion(order, 0);
+      fail("Saved over an order that was already there");
+    } catch (OrderVersionConflictException e) {
+      assertEquals(1, e.getActualVersion());
+    }
+
+    assertTrue(uut.removeIf(order.getKey(), new OrderCondition() {
+      @Override
+      public boolean test(Order current) {
+        return current.getVersion() == 1;
+      }
+    }));
+    assertNull(uut.findById(order.getKey()));
+  }
+
+  @Test
+  public void picksTheNewestRunsOfAboutTheSameSizeToMerge() throws Exception {
+    assertNull(OrdersLsmRepository.pickMerge(Collections.<SortedOrderRun>emptyList()));
+
+    List<SortedOrderRun> runs = new ArrayList<SortedOrderRun>();
+    for (int entries : new int[]{100, 4000, 100, 120, 150, 110, 300, 1000}) {
+      runs.add(run(runs.size(), entries));
+    }
+    try {
+      assertArrayEquals(new int[]{2, 6}, OrdersLsmRepository.pickMerge(runs));
+      assertNull(OrdersLsmRepository.pickMerge(runs.subList(0, 5)));
+    } finally {
+      for (SortedOrderRun run : runs) {
+        run.close();
+      }
+    }
+  }
+
+  private OrdersLsmRepository open() throws Exception {
+    return new OrdersLsmRepository(folder.getRoot(), FsyncPolicy.OS, 0, MEMTABLE_BYTES, Long.MAX_VALUE);
+  }
+
+  private SortedOrderRun run(long id, int entries) throws Exception {
+    File directory = folder.newFolder("runs-" + id);
+    SortedOrderRun.Writer writer = new SortedOrderRun.Writer(new File(directory, "run-" + id + ".sst"), id);
+    SortedMap<UUID, byte[]> sorted = new TreeMap<UUID, byte[]>();
+    for (int i = 0; i < entries; i++) {
+      Order order = order(i, "Order Created");
+      sorted.put(order.getKey(), OrderCodec.encode(order));
+    }
+    for (Map.Entry<UUID, byte[]> entry : sorted.entrySet()) {
+      writer.add(entry.getKey(), entry.getValue());
+    }
+    return writer.finish(new ColdPageCache(1));
+  }
+
+  private void assertEverythingIsThere(List<Order> kept, List<UUID> deleted) {
+    for (UUID key : deleted) {
+      assertNull(uut.findById(key));
+    }
+    Set<UUID> expected = new HashSet<UUID>();
+    for (Order order : kept) {
+      Order found = uut.findById(order.getKey());
+      assertNotNull(found);
+      assertEquals(order.getStatus().getStatus(), found.getStatus().getStatus());
+      expected.add(order.getKey());
+    }
+    Set<UUID> all = new HashSet<UUID>();
+    for (Order order : uut.findAll()) {
+      assertTrue(all.add(order.getKey()));
+    }
+    assertEquals(expected, all);
+  }
+
+  private Map<String, Integer> paidCounts() {
+    Map<String, Integer> counts = new HashMap<String, Integer>(uut.countByStatus());
+    counts.remove("Order Created");
+    return counts;
+  }
+
+  private static Order order(long submitted, String status) {
+    Order order = new Order(OrdersFixtures.newKey(), new Date(submitted));
+    order.setOrderItems(Collections.singletonMap("yummy" + submitted % 5, 1));
+    order.addStatus(new OrderStatus(new Date(submitted), status));
+    return order;
+  }
+
+  private static Order updated(Order order, String status) {
+    Order updated = new Order(order.getKey(), order.getDateTimeOfSubmission());
+    updated.setOrderItems(order.getOrderItems());
+    for (OrderStatus past : order.getStatusHistory()) {
+      updated.addStatus(past);
+    }
+    updated.addStatus(new OrderStatus(new Date(), status));
+    return updated;
+  }
+}
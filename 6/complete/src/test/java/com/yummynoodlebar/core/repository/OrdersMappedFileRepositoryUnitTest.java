@@ -0,0 +1,210 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OrdersMappedFileRepositoryUnitTest {
+
+  private static final int SMALL_SEGMENT = 64 * 1024;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  OrdersMappedFileRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() throws Exception {
+    uut = new OrdersMappedFileRepository(folder.getRoot(), SMALL_SEGMENT);
+  }
+
+  @After
+  public void closeUnitUnderTest() {
+    uut.close();
+  }
+
+  @Test
+  public void addASingleOrderToTheOrders() {
+
+    assertEquals(0, uut.findAll().size());
+
+    Order order = OrdersFixtures.standardOrder();
+    order.addStatus(new OrderStatus(new Date(), "Order Created"));
+    uut.save(order);
+
+    assertEquals(1, uut.findAll().size());
+
+    Order found = uut.findById(order.getKey());
+    assertEquals(order.getKey(), found.getKey());
+    assertEquals(order.getDateTimeOfSubmission(), found.getDateTimeOfSubmission());
+    assertEquals(order.getOrderItems(), found.getOrderItems());
+    assertEquals("Order Created", found.getStatus().getStatus());
+  }
+
+  @Test
+  public void removeASingleOrder() {
+
+    Order order = uut.save(OrdersFixtures.standardOrder());
+
+    uut.delete(order.getKey());
+
+    assertEquals(0, uut.findAll().size());
+    assertNull(uut.findById(order.getKey()));
+  }
+
+  @Test
+  public void ordersSurviveReopeningTheDirectory() throws Exception {
+    List<UUID> kept = saveOrdersAcrossSegments(5000);
+
+    uut.close();
+    uut = new OrdersMappedFileRepository(folder.getRoot(), SMALL_SEGMENT);
+
+    assertKept(kept);
+  }
+
+  @Test
+  public void indexIsRebuiltFromSegmentsWhenMissing() throws Exception {
+    List<UUID> kept = saveOrdersAcrossSegments(5000);
+
+    uut.close();
+    assertTrue(new File(folder.getRoot(), "orders.idx").delete());
+    uut = new OrdersMappedFileRepository(folder.getRoot(), SMALL_SEGMENT);
+
+    assertKept(kept);
+  }
+
+  @Test
+  public void indexGrowsPastItsInitialCapacity() {
+    List<UUID> kept = saveOrdersAcrossSegments(100000);
+
+    assertKept(kept);
+  }
+
+  private List<UUID> saveOrdersAcrossSegments(int count) {
+    List<UUID> kept = new ArrayList<UUID>();
+    for (int i = 0; i < count; i++) {
+      Order order = uut.save(OrdersFixtures.standardOrder());
+      if (i % 3 == 0) {
+        uut.delete(order.getKey());
+      } else {
+        kept.add(order.getKey());
+      }
+    }
+    return kept;
+  }
+
+  private void assertKept(List<UUID> kept) {
+    assertEquals(kept.size(), uut.findAll().size());
+    for (UUID key : kept) {
+      assertEquals(key, uut.findById(key).getKey());
+    }
+  }
+
+  @Test
+  public void pagesThroughEveryOrderInSubmissionOrder() {
+    Set<UUID> expected = new HashSet<UUID>();
+    for (int i = 0; i < 250; i++) {
+      //Only a handful of distinct times, so that the key has to break ties.
+      Order order = uut.save(new Order(OrdersFixtures.newKey(), new Date(i % 7)));
+      expected.add(order.getKey());
+    }
+
+    List<Order> seen = new ArrayList<Order>();
+    OrderCursor after = null;
+    List<Order> page;
+    do {
+      page = uut.findPage(after, 40);
+      seen.addAll(page);
+      if (!page.isEmpty()) {
+        after = OrderCursor.of(page.get(page.size() - 1));
+      }
+    } while (page.size() == 40);
+
+    assertEquals(expected.size(), seen.size());
+    for (int i = 1; i < seen.size(); i++) {
+      assertTrue(OrderCursor.compareOrders(seen.get(i - 1), seen.get(i)) < 0);
+    }
+    for (Order order : seen) {
+      assertTrue(expected.remove(order.getKey()));
+    }
+  }
+
+  @Test
+  public void streamsEveryOrderInSubmissionOrderFromTheIndex() {
+    List<UUID> expected = new ArrayList<UUID>();
+    for (int i = 0; i < 250; i++) {
+      expected.add(uut.save(new Order(OrdersFixtures.newKey(), new Date(i % 7))).getKey());
+    }
+    List<UUID> streamed = new ArrayList<UUID>();
+    Order previous = null;
+    for (Order order : uut.streamAll(40)) {
+      assertTrue(previous == null || OrderCursor.compareOrders(previous, order) < 0);
+      streamed.add(order.getKey());
+      previous = order;
+    }
+    assertEquals(new HashSet<UUID>(expected), new HashSet<UUID>(streamed));
+    assertEquals(expected.size(), streamed.size());
+  }
+
+  @Test
+  public void listsTheKeysOfTheLiveOrdersFromTheIndex() {
+    List<UUID> kept = saveOrdersAcrossSegments(500);
+
+    Set<UUID> listed = new HashSet<UUID>();
+    for (UUID key : uut.keys()) {
+      assertTrue(listed.add(key));
+    }
+    assertEquals(new HashSet<UUID>(kept), listed);
+  }
+
+  @Test
+  public void compactingReclaimsTheSpaceOfOverwrittenAndDeletedOrders() throws Exception {
+    List<UUID> kept = saveOrdersAcrossSegments(5000);
+    for (UUID key : kept.subList(0, kept.size() / 2)) {
+      Order order = uut.findById(key);
+      order.addStatus(new OrderStatus(new Date(), "Overwritten"));
+      uut.save(order);
+    }
+    int segmentsBefore = segmentFiles();
+    long reclaimableBefore = uut.getReclaimableBytes();
+    assertTrue(uut.needsCompaction());
+
+    uut.compact();
+
+    assertTrue(segmentFiles() < segmentsBefore);
+    assertTrue(uut.getReclaimableBytes() < reclaimableBefore);
+    assertKept(kept);
+    assertEquals("Overwritten", uut.findById(kept.get(0)).getStatus().getStatus());
+
+    uut.close();
+    uut = new OrdersMappedFileRepository(folder.getRoot(), SMALL_SEGMENT);
+    assertKept(kept);
+
+    uut.close();
+    assertTrue(new File(folder.getRoot(), "orders.idx").delete());
+    uut = new OrdersMappedFileRepository(folder.getRoot(), SMALL_SEGMENT);
+    assertKept(kept);
+    assertEquals("Overwritten", uut.findById(kept.get(0)).getStatus().getStatus());
+  }
+
+  private int segmentFiles() {
+    int segments = 0;
+    for (String name : folder.getRoot().list()) {
+      if (!name.equals("orders.idx")) {
+        segments++;
+      }
+    }
+    return segments;
+  }
+}
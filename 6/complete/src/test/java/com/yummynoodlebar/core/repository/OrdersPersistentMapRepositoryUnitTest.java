@@ -0,0 +1,156 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OrdersPersistentMapRepositoryUnitTest {
+
+  OrdersPersistentMapRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() {
+    uut = new OrdersPersistentMapRepository();
+  }
+
+  @Test
+  public void addASingleOrderToTheOrders() {
+
+    assertEquals(0, uut.findAll().size());
+
+    Order order = uut.save(OrdersFixtures.standardOrder());
+
+    assertEquals(1, uut.findAll().size());
+    assertSame(order, uut.findById(order.getKey()));
+  }
+
+  @Test
+  public void removeASingleOrder() {
+
+    UUID key = UUID.randomUUID();
+
+    uut = new OrdersPersistentMapRepository(Collections.singletonMap(key, OrdersFixtures.standardOrder()));
+
+    assertEquals(1, uut.findAll().size());
+
+    uut.delete(key);
+
+    assertEquals(0, uut.findAll().size());
+    assertNull(uut.findById(key));
+  }
+
+  @Test
+  public void earlierSnapshotsAreUnaffectedByLaterWrites() {
+    Order order = uut.save(OrdersFixtures.standardOrder());
+
+    List<Order> before = uut.findAll();
+
+    uut.delete(order.getKey());
+    uut.save(OrdersFixtures.standardOrder());
+
+    assertEquals(1, before.size());
+    assertSame(order, before.get(0));
+  }
+
+  @Test
+  public void behavesLikeAHashMapUnderRandomWrites() {
+    Map<UUID, Order> expected = new HashMap<UUID, Order>();
+    List<UUID> keys = new ArrayList<UUID>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 20000; i++) {
+      if (!keys.isEmpty() && random.nextInt(3) == 0) {
+        UUID key = keys.remove(random.nextInt(keys.size()));
+        expected.remove(key);
+        uut.delete(key);
+      } else {
+        Order order = uut.save(OrdersFixtures.standardOrder());
+        keys.add(order.getKey());
+        expected.put(order.getKey(), order);
+      }
+    }
+
+    assertEquals(expected.size(), uut.findAll().size());
+    assertEquals(new HashSet<Order>(expected.values()), new HashSet<Order>(uut.findAll()));
+    for (UUID key : keys) {
+      assertSame(expected.get(key), uut.findById(key));
+    }
+  }
+
+  @Test
+  public void batchesBehaveLikeSingleWritesAndLeaveEarlierSnapshotsAlone() {
+    Map<UUID, Order> expected = new HashMap<UUID, Order>();
+    List<UUID> keys = new ArrayList<UUID>();
+    Random random = new Random(42);
+
+    for (int round = 0; round < 200; round++) {
+      List<Order> before = uut.findAll();
+      int sizeBefore = before.size();
+
+      List<Order> saves = new ArrayList<Order>();
+      for (int i = random.nextInt(100); i > 0; i--) {
+        Order order = OrdersFixtures.standardOrder();
+        saves.add(order);
+        keys.add(order.getKey());
+        expected.put(order.getKey(), order);
+      }
+      uut.saveAll(saves);
+
+      List<UUID> deletes = new ArrayList<UUID>();
+      for (int i = random.nextInt(50); i > 0 && !keys.isEmpty(); i--) {
+        UUID key = keys.remove(random.nextInt(keys.size()));
+        deletes.add(key);
+        expected.remove(key);
+      }
+      //Deleting a key twice, or one never saved, is harmless.
+      if (!deletes.isEmpty()) {
+        deletes.add(deletes.get(0));
+      }
+      deletes.add(UUID.randomUUID());
+      uut.deleteAll(deletes);
+
+      assertEquals(sizeBefore, before.size());
+      assertEquals(expected.size(), uut.findAll().size());
+    }
+
+    assertEquals(new HashSet<Order>(expected.values()), new HashSet<Order>(uut.findAll()));
+    for (UUID key : keys) {
+      assertSame(expected.get(key), uut.findById(key));
+    }
+  }
+
+  @Test
+  public void streamingAllOrdersScansOnceAPage() {
+    final int[] scans = new int[1];
+    uut = new OrdersPersistentMapRepository() {
+      @Override
+      protected Iterable<Order> scan() {
+        scans[0]++;
+        return super.scan();
+      }
+    };
+    for (int i = 0; i < 1050; i++) {
+      //Only a handful of distinct times, so that the key has to break ties.
+      uut.save(new Order(OrdersFixtures.newKey(), new Date(i % 7)));
+    }
+    List<Order> expected = new ArrayList<Order>(uut.findAll());
+    Collections.sort(expected, OrderCursor.SUBMISSION_ORDER);
+
+    List<Order> streamed = new ArrayList<Order>();
+    Iterator<Order> orders = uut.streamAll(100).iterator();
+    uut.delete(expected.remove(expected.size() - 1).getKey());
+    while (orders.hasNext()) {
+      streamed.add(orders.next());
+    }
+
+    assertEquals(expected, streamed);
+    //Ten full pages, then the short one that ends the stream; no list of every order is kept across them.
+    assertEquals(11, scans[0]);
+  }
+}
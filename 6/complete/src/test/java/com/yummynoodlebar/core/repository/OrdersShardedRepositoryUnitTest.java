@@ -0,0 +1,108 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OrdersShardedRepositoryUnitTest {
+
+  private static final int SHARDS = 4;
+
+  OrdersShardedRepository uut;
+  OrdersRepository single;
+
+  @Before
+  public void setupUnitUnderTest() {
+    List<OrdersRepository> shards = new ArrayList<OrdersRepository>();
+    for (int i = 0; i < SHARDS; i++) {
+      shards.add(new OrdersIndexingRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>())));
+    }
+    uut = new OrdersShardedRepository(shards, SHARDS);
+    single = new OrdersIndexingRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>()));
+
+    Random random = new Random(17);
+    for (int i = 0; i < 2000; i++) {
+      //Few distinct times, so ties between shards are broken on the key.
+      Order order = new Order(OrdersFixtures.newKey(), new Date(random.nextInt(100)));
+      order.setOrderItems(Collections.singletonMap("yummy" + random.nextInt(10), 1));
+      order.addStatus(new OrderStatus(new Date(), random.nextBoolean() ? "Order Created" : "Cooking"));
+      uut.save(order);
+      single.save(order);
+    }
+  }
+
+  @After
+  public void closeUnitUnderTest() throws Exception {
+    uut.close();
+  }
+
+  @Test
+  public void spreadsOrdersOverEveryShard() {
+    for (int i = 0; i < SHARDS; i++) {
+      UUID key = UUID.randomUUID();
+      assertSame(uut.shardFor(key), uut.shardFor(key));
+    }
+    Set<OrdersRepository> used = new HashSet<OrdersRepository>();
+    for (Order order : uut.findAll()) {
+      OrdersRepository shard = uut.shardFor(order.getKey());
+      assertSame(order, shard.findById(order.getKey()));
+      used.add(shard);
+    }
+    assertEquals(SHARDS, used.size());
+    assertEquals(2000, uut.findAll().size());
+  }
+
+  @Test
+  public void pagesMatchASingleRepository() {
+    OrderCursor after = null;
+    for (int page = 0; page < 30; page++) {
+      List<Order> expected = single.findPage(after, 97);
+      assertEquals(expected, uut.findPage(after, 97));
+      if (expected.isEmpty()) {
+        return;
+      }
+      after = OrderCursor.of(expected.get(expected.size() - 1));
+    }
+    fail("Paging did not reach the end");
+  }
+
+  @Test
+  public void streamingAllOrdersMatchesASingleRepository() {
+    List<Order> streamed = new ArrayList<Order>();
+    for (Order order : uut.streamAll(97)) {
+      streamed.add(order);
+    }
+    List<Order> expected = new ArrayList<Order>(single.findAll());
+    Collections.sort(expected, OrderCursor.SUBMISSION_ORDER);
+    assertEquals(expected, streamed);
+  }
+
+  @Test
+  public void filteredQueriesMatchASingleRepository() {
+    assertEquals(single.findBySubmissionTime(new Date(20), new Date(40)), uut.findBySubmissionTime(new Date(20), new Date(40)));
+    assertEquals(single.findByItems(Arrays.asList("yummy1", "yummy2"), ItemMatch.ANY),
+            uut.findByItems(Arrays.asList("yummy1", "yummy2"), ItemMatch.ANY));
+    assertEquals(single.findByStatus("Cooking"), uut.findByStatus("Cooking"));
+    assertEquals(single.countByStatus(), uut.countByStatus());
+    assertEquals(single.countByStatus("Order Created"), uut.countByStatus("Order Created"));
+  }
+
+  @Test
+  public void deletesFromTheOwningShard() {
+    Order order = uut.findAll().get(0);
+
+    uut.delete(order.getKey());
+
+    assertNull(uut.findById(order.getKey()));
+    assertEquals(1999, uut.findAll().size());
+  }
+}
@@ -0,0 +1,126 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OrdersSnapshotStoreUnitTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void theLatestSnapshotIsLoadedInParallelChunks() throws Exception {
+    OrdersSnapshotStore uut = new OrdersSnapshotStore(folder.getRoot(), 100, 4);
+
+    OrdersPersistentMapRepository source = new OrdersPersistentMapRepository();
+    for (int i = 0; i < 1050; i++) {
+      source.save(OrdersFixtures.standardOrder());
+    }
+    uut.write(7, Collections.singletonList(OrdersFixtures.standardOrder()));
+    uut.write(42, source.snapshot());
+
+    OrdersPersistentMapRepository target = new OrdersPersistentMapRepository();
+    assertEquals(42, uut.loadLatest(target));
+
+    assertEquals(1050, target.findAll().size());
+    for (Order order : source.findAll()) {
+      assertEquals(order.getOrderItems(), target.findById(order.getKey()).getOrderItems());
+    }
+    assertEquals(1, folder.getRoot().list().length);
+  }
+
+  @Test
+  public void noSnapshotLoadsNothing() throws Exception {
+    OrdersPersistentMapRepository target = new OrdersPersistentMapRepository();
+
+    assertEquals(-1, new OrdersSnapshotStore(folder.getRoot()).loadLatest(target));
+    assertEquals(0, target.findAll().size());
+  }
+
+  @Test
+  public void startupReplaysOnlyTheLogTailAfterACheckpoint() throws Exception {
+    File directory = folder.getRoot();
+    OrdersJournalingRepository journal = openJournal(directory);
+
+    Order deletedAfterCheckpoint = journal.save(OrdersFixtures.standardOrder());
+    Order kept = journal.save(OrdersFixtures.standardOrder());
+    journal.checkpoint();
+    long logAfterCheckpoint = new File(directory, OrdersWriteAheadLog.LOG_FILE).length();
+
+    Order savedAfterCheckpoint = journal.save(OrdersFixtures.standardOrder());
+    journal.delete(deletedAfterCheckpoint.getKey());
+    journal.close();
+
+    journal = openJournal(directory);
+    try {
+      assertEquals(2, journal.findAll().size());
+      assertNotNull(journal.findById(kept.getKey()));
+      assertNotNull(journal.findById(savedAfterCheckpoint.getKey()));
+      assertNull(journal.findById(deletedAfterCheckpoint.getKey()));
+
+      Order savedAfterRestart = journal.save(OrdersFixtures.standardOrder());
+      journal.close();
+      journal = openJournal(directory);
+      assertNotNull(journal.findById(savedAfterRestart.getKey()));
+    } finally {
+      journal.close();
+    }
+    assertTrue(logAfterCheckpoint < 32);
+  }
+
+  @Test
+  public void aDurableStoreIsFlushedRatherThanSnapshottedAndReloaded() throws Exception {
+    File directory = folder.getRoot();
+    AtomicInteger saves = new AtomicInteger();
+    OrdersJournalingRepository journal = openDurableJournal(directory, saves);
+
+    Order checkpointed = journal.save(OrdersFixtures.standardOrder());
+    journal.checkpoint();
+    Order savedAfterCheckpoint = journal.save(OrdersFixtures.standardOrder());
+    journal.close();
+
+    saves.set(0);
+    journal = openDurableJournal(directory, saves);
+    try {
+      assertEquals(1, saves.get());
+      assertEquals(2, journal.findAll().size());
+      assertNotNull(journal.findById(checkpointed.getKey()));
+      assertNotNull(journal.findById(savedAfterCheckpoint.getKey()));
+      assertEquals(0, directory.list(new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+          return name.endsWith(".snapshot");
+        }
+      }).length);
+    } finally {
+      journal.close();
+    }
+  }
+
+  private OrdersJournalingRepository openDurableJournal(File directory, final AtomicInteger saves) throws Exception {
+    OrdersMappedFileRepository store = new OrdersMappedFileRepository(new File(directory, "store"), 1 << 20) {
+      @Override
+      public Order save(Order order) {
+        saves.incrementAndGet();
+        return super.save(order);
+      }
+    };
+    return new OrdersJournalingRepository(store,
+            new OrdersWriteAheadLog(directory, FsyncPolicy.OS, 0), new OrdersSnapshotStore(directory), 0);
+  }
+
+  private OrdersJournalingRepository openJournal(File directory) throws Exception {
+    return new OrdersJournalingRepository(new OrdersPersistentMapRepository(),
+            new OrdersWriteAheadLog(directory, FsyncPolicy.OS, 0), new OrdersSnapshotStore(directory), 0);
+  }
+}
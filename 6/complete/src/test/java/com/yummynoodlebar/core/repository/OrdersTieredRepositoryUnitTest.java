@@ -0,0 +1,222 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OrdersTieredRepositoryUnitTest {
+
+  private static final long DAY = 24L * 60 * 60 * 1000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  OrdersRepository hot;
+  OrdersTieredRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() throws Exception {
+    uut = open(DAY, 0);
+  }
+
+  @After
+  public void closeUnitUnderTest() throws Exception {
+    uut.close();
+  }
+
+  @Test
+  public void ordersPastTheMaximumAgeMoveToTheColdTier() throws Exception {
+    List<Order> old = saveOrders(200, 2 * DAY);
+    List<Order> recent = saveOrders(10, 0);
+
+    assertEquals(200, uut.demote());
+
+    assertEquals(10, hot.findAll().size());
+    assertEquals(200, uut.getColdTier().size());
+    for (Order order : old) {
+      assertEquals(order.getOrderItems(), uut.findById(order.getKey()).getOrderItems());
+    }
+    assertNotNull(uut.findById(recent.get(0).getKey()));
+    assertEquals(210, uut.findAll().size());
+    assertEquals(0, uut.demote());
+  }
+
+  @Test
+  public void theOldestOrdersMoveWhileTheHeapIsOverItsThreshold() throws Exception {
+    uut.close();
+    uut = open(0, 0.0001);
+    List<Order> orders = saveOrders(30, 0);
+
+    assertEquals(10, uut.demote());
+
+    for (int i = 0; i < 30; i++) {
+      assertEquals(i < 10, uut.getColdTier().contains(orders.get(i).getKey()));
+    }
+  }
+
+  @Test
+  public void savingAColdOrderBringsItBackToTheHotTier() throws Exception {
+    Order order = saveOrders(1, 2 * DAY).get(0);
+    uut.demote();
+
+    order.addStatus(new OrderStatus(new Date(), "Order Cooking"));
+    uut.save(order);
+
+    assertFalse(uut.getColdTier().contains(order.getKey()));
+    assertNotNull(hot.findById(order.getKey()));
+    assertEquals("Order Cooking", uut.findById(order.getKey()).getStatus().getStatus());
+    assertEquals(1, uut.findAll().size());
+  }
+
+  @Test
+  public void theColdTierIsRebuiltOnReopening() throws Exception {
+    List<Order> orders = saveOrders(100, 2 * DAY);
+    uut.demote();
+    uut.delete(orders.get(0).getKey());
+
+    uut.close();
+    uut = open(DAY, 0);
+
+    assertEquals(99, uut.getColdTier().size());
+    assertNull(uut.findById(orders.get(0).getKey()));
+    for (Order order : orders.subList(1, 100)) {
+      assertNotNull(uut.findById(order.getKey()));
+    }
+    assertEquals(99, uut.countByStatus("Order Created"));
+  }
+
+  @Test
+  public void queriesSpanBothTiers() throws Exception {
+    List<Order> old = saveOrders(20, 2 * DAY);
+    List<Order> recent = saveOrders(20, 0);
+    uut.demote();
+
+    Date now = new Date();
+    assertEquals(20, uut.findBySubmissionTime(null, new Date(now.getTime() - DAY)).size());
+    assertEquals(40, uut.findBySubmissionTime(new Date(now.getTime() - 3 * DAY), null).size());
+    assertEquals(40, uut.findByStatus("Order Created").size());
+    assertEquals(Collections.singletonMap("Order Created", 40), uut.countByStatus());
+    assertEquals(8, uut.findByItems(Collections.singleton("yummy0"), ItemMatch.ANY).size());
+
+    List<Order> page = uut.findPage(null, 25);
+    assertEquals(25, page.size());
+    assertEquals(old.get(0).getKey(), page.get(0).getKey());
+    assertEquals(recent.get(4).getKey(), page.get(24).getKey());
+  }
+
+  @Test
+  public void pagesAndFilteredQueriesOnlyReadTheColdBlocksTheyNeed() throws Exception {
+    List<Order> old = saveOrders(2000, 2 * DAY);
+    Order cooking = old.get(1234);
+    cooking.addStatus(new OrderStatus(new Date(), "Cooking"));
+    uut.save(cooking);
+    uut.demote();
+    assertEquals(2000, uut.getColdTier().size());
+    ColdOrderSegments cold = uut.getColdTier();
+
+    long scanned = cold.getBlocksScanned();
+    List<Order> page = uut.findPage(null, 25);
+    assertEquals(keys(old.subList(0, 25)), keys(page));
+    assertTrue(cold.getBlocksScanned() - scanned <= 4);
+
+    scanned = cold.getBlocksScanned();
+    int streamed = 0;
+    for (Order order : uut.streamAll(100)) {
+      assertEquals(old.get(streamed++).getKey(), order.getKey());
+    }
+    assertEquals(2000, streamed);
+    assertTrue(cold.getBlocksScanned() - scanned <= 2 * 200);
+
+    scanned = cold.getBlocksScanned();
+    assertEquals(Collections.singletonList(cooking.getKey()), keys(uut.findByStatus("Cooking")));
+    assertEquals(1, cold.getBlocksScanned() - scanned);
+    assertEquals(400, uut.findByItems(Collections.singleton("yummy0"), ItemMatch.ANY).size());
+    scanned = cold.getBlocksScanned();
+    assertTrue(uut.findByItems(Collections.singleton("yummy9"), ItemMatch.ANY).isEmpty());
+    assertEquals(0, cold.getBlocksScanned() - scanned);
+  }
+
+  @Test
+  public void repeatedColdLookupsAreServedFromTheCache() throws Exception {
+    Order order = saveOrders(1, 2 * DAY).get(0);
+    uut.demote();
+
+    uut.findById(order.getKey());
+    uut.findById(order.getKey());
+
+    assertEquals(1, uut.getColdTier().getCacheMisses());
+    assertEquals(1, uut.getColdTier().getCacheHits());
+  }
+
+  @Test
+  public void updatesMadeWhileOrdersAreMovedAreKept() throws Exception {
+    final List<Order> orders = saveOrders(2000, 2 * DAY);
+    final AtomicBoolean done = new AtomicBoolean();
+    final AtomicInteger updates = new AtomicInteger();
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Random random = new Random(1);
+        while (!done.get()) {
+          Order order = orders.get(random.nextInt(orders.size()));
+          Order updated = new Order(order.getKey(), order.getDateTimeOfSubmission());
+          updated.setOrderItems(order.getOrderItems());
+          updated.addStatus(new OrderStatus(new Date(), "Update " + updates.incrementAndGet()));
+          uut.save(updated);
+        }
+      }
+    });
+    writer.start();
+    for (int i = 0; i < 5; i++) {
+      uut.demote();
+    }
+    done.set(true);
+    writer.join();
+
+    Map<String, Integer> expected = new HashMap<String, Integer>();
+    for (Order order : orders) {
+      String status = uut.findById(order.getKey()).getStatus().getStatus();
+      expected.put(status, expected.containsKey(status) ? expected.get(status) + 1 : 1);
+    }
+    assertEquals(2000, uut.findAll().size());
+    assertEquals(expected, uut.countByStatus());
+    assertTrue(updates.get() > 0);
+  }
+
+  private OrdersTieredRepository open(long maxAge, double heapThreshold) throws Exception {
+    hot = new OrdersIndexingRepository(new OrdersMemoryRepository(new ConcurrentHashMap<UUID, Order>()));
+    return new OrdersTieredRepository(hot, new ColdOrderSegments(folder.getRoot(), 16), maxAge, heapThreshold, 0, 10);
+  }
+
+  private static List<UUID> keys(List<Order> orders) {
+    List<UUID> keys = new ArrayList<UUID>(orders.size());
+    for (Order order : orders) {
+      keys.add(order.getKey());
+    }
+    return keys;
+  }
+
+  private List<Order> saveOrders(int count, long age) {
+    List<Order> orders = new ArrayList<Order>();
+    long start = System.currentTimeMillis() - age;
+    for (int i = 0; i < count; i++) {
+      Order order = new Order(UUID.randomUUID(), new Date(start + i));
+      order.addStatus(new OrderStatus(new Date(), "Order Created"));
+      order.setOrderItems(Collections.singletonMap("yummy" + (i % 5), 1 + i % 3));
+      orders.add(uut.save(order));
+    }
+    return orders;
+  }
+}
@@ -0,0 +1,294 @@
+package com.yummynoodlebar.core.repository;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.OrderCursor;
+import com.yummynoodlebar.core.domain.OrderStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class OrdersVersioningRepositoryUnitTest {
+
+  OrdersVersioningRepository uut;
+
+  @Before
+  public void setupUnitUnderTest() {
+    uut = new OrdersVersioningRepository(
+            new OrdersIndexingRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>())));
+  }
+
+  @After
+  public void closeUnitUnderTest() throws Exception {
+    uut.close();
+  }
+
+  @Test
+  public void aSnapshotSeesTheOrdersAsTheyWereWhenItWasTaken() {
+    Order changed = uut.save(order(1000, "Order Created", "yummy1"));
+    Order deleted = uut.save(order(2000, "Order Created", "yummy2"));
+
+    OrderSnapshot snapshot = uut.snapshot();
+
+    uut.save(withStatus(changed, "Order Paid"));
+    uut.delete(deleted.getKey());
+    Order added = uut.save(order(3000, "Order Created", "yummy1"));
+
+    assertSame(changed, snapshot.findById(changed.getKey()));
+    assertSame(deleted, snapshot.findById(deleted.getKey()));
+    assertNull(snapshot.findById(added.getKey()));
+    assertEquals(2, snapshot.findAll().size());
+    assertEquals(Arrays.asList(changed, deleted), snapshot.findPage(null, 10));
+    assertEquals(Arrays.asList(changed, deleted), snapshot.findByStatus("Order Created"));
+    assertEquals(0, snapshot.countByStatus("Order Paid"));
+    assertEquals(Collections.singletonList(changed),
+            snapshot.findByItems(Collections.singleton("yummy1"), ItemMatch.ANY));
+    assertEquals(Collections.singletonList(deleted), snapshot.findBySubmissionTime(new Date(1500), null));
+    assertEquals(Collections.singletonMap("Order Created", 2), snapshot.countByStatus());
+
+    assertEquals(2, uut.findAll().size());
+    assertEquals(1, uut.countByStatus("Order Paid"));
+    snapshot.close();
+  }
+
+  @Test
+  public void pagesOfASnapshotSkipNewOrdersAndKeepReplacedOnes() {
+    List<Order> saved = new ArrayList<Order>();
+    for (int i = 0; i < 20; i++) {
+      saved.add(uut.save(order(i * 10, "Order Created", "yummy1")));
+    }
+    OrderSnapshot snapshot = uut.snapshot();
+
+    for (int i = 0; i < 20; i++) {
+      uut.save(order(i * 10 + 5, "Order Created", "yummy1"));
+    }
+    for (int i = 0; i < 20; i += 2) {
+      uut.delete(saved.get(i).getKey());
+    }
+
+    List<Order> paged = new ArrayList<Order>();
+    List<Order> page = snapshot.findPage(null, 3);
+    while (!page.isEmpty()) {
+      paged.addAll(page);
+      page = snapshot.findPage(OrderCursor.of(page.get(page.size() - 1)), 3);
+    }
+    assertEquals(saved, paged);
+    snapshot.close();
+  }
+
+  @Test
+  public void aSnapshotIsStreamedAPageAtATime() {
+    final List<Integer> loaded = new ArrayList<Integer>();
+    uut = new OrdersVersioningRepository(
+            new OrdersIndexingRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>())) {
+              @Override
+              public List<Order> findAll() {
+                fail("Every order was loaded at once");
+                return null;
+              }
+
+              @Override
+              public List<Order> findPage(OrderCursor after, int limit) {
+                List<Order> page = super.findPage(after, limit);
+                loaded.add(page.size());
+                return page;
+              }
+            });
+    List<Order> saved = new ArrayList<Order>();
+    for (int i = 0; i < 25; i++) {
+      saved.add(uut.save(order(i * 10, "Order Created", "yummy1")));
+    }
+    OrderSnapshot snapshot = uut.snapshot();
+    uut.save(order(5, "Order Created", "yummy1"));
+
+    List<Order> streamed = new ArrayList<Order>();
+    for (Order order : snapshot.streamAll(10)) {
+      streamed.add(order);
+    }
+    assertEquals(saved, streamed);
+    assertFalse(loaded.isEmpty());
+    //A page is fetched again with room for the order written since the snapshot, which it leaves out.
+    for (int size : loaded) {
+      assertTrue("Loaded " + size + " orders at once", size <= 10 + 1);
+    }
+    snapshot.close();
+  }
+
+  @Test
+  public void replacedOrdersAreKeptOnlyWhileASnapshotNeedsThem() {
+    Order order = uut.save(order(1000, "Order Created", "yummy1"));
+    uut.save(withStatus(order, "Order Paid"));
+    assertEquals(0, uut.getRetainedOrders());
+
+    OrderSnapshot older = uut.snapshot();
+    uut.save(withStatus(order, "Order Cooked"));
+    OrderSnapshot newer = uut.snapshot();
+    uut.save(withStatus(order, "Order Delivered"));
+
+    assertEquals(2, uut.getRetainedOrders());
+    assertEquals("Order Paid", older.findById(order.getKey()).getStatus().getStatus());
+    assertEquals("Order Cooked", newer.findById(order.getKey()).getStatus().getStatus());
+
+    older.close();
+    assertEquals(1, uut.getRetainedOrders());
+    assertEquals("Order Cooked", newer.findById(order.getKey()).getStatus().getStatus());
+
+    newer.close();
+    assertEquals(0, uut.getRetainedOrders());
+    assertEquals(0, uut.getOpenSnapshots());
+  }
+
+  @Test
+  public void writesReadNothingBackWhileNoSnapshotIsOpen() {
+    final List<UUID> read = new ArrayList<UUID>();
+    uut = new OrdersVersioningRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>()) {
+      @Override
+      public Order findById(UUID key) {
+        read.add(key);
+        return super.findById(key);
+      }
+    });
+    Order order = uut.save(order(1000, "Order Created", "yummy1"));
+    uut.save(withStatus(order, "Order Paid"));
+    assertTrue(read.isEmpty());
+
+    OrderSnapshot snapshot = uut.snapshot();
+    uut.save(withStatus(order, "Order Cooked"));
+    assertEquals(Collections.singletonList(order.getKey()), read);
+    assertEquals("Order Paid", snapshot.findById(order.getKey()).getStatus().getStatus());
+    snapshot.close();
+  }
+
+  @Test
+  public void aSnapshotParksUntilTheWritesUnderWayEnd() throws Exception {
+    final CountDownLatch saving = new CountDownLatch(1);
+    final CountDownLatch saved = new CountDownLatch(1);
+    uut = new OrdersVersioningRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>()) {
+      @Override
+      public Order save(Order order) {
+        saving.countDown();
+        try {
+          saved.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.save(order);
+      }
+    });
+    final Order order = order(1000, "Order Created", "yummy1");
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        uut.save(order);
+      }
+    });
+    writer.start();
+    saving.await();
+
+    final OrderSnapshot[] snapshot = new OrderSnapshot[1];
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        snapshot[0] = uut.snapshot();
+      }
+    });
+    reader.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (reader.getState() != Thread.State.WAITING) {
+      assertTrue("The snapshot didn't park, it is " + reader.getState(), System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+
+    saved.countDown();
+    reader.join(5000);
+    writer.join(5000);
+    assertSame(order, snapshot[0].findById(order.getKey()));
+    snapshot[0].close();
+  }
+
+  @Test
+  public void snapshotsThatAreNoLongerReferencedAreReleased() throws Exception {
+    Order order = uut.save(order(1000, "Order Created", "yummy1"));
+    uut.snapshot();
+
+    for (int i = 0; i < 50 && uut.getOpenSnapshots() > 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      uut.save(withStatus(order, "Order Paid"));
+    }
+    assertEquals(0, uut.getOpenSnapshots());
+    assertEquals(0, uut.getRetainedOrders());
+  }
+
+  @Test
+  public void aSnapshotStaysTheSameWhileBatchesAreWritten() throws Exception {
+    final List<Order> initial = new ArrayList<Order>();
+    for (int i = 0; i < 1000; i++) {
+      initial.add(order(i, "Order Created", "yummy1"));
+    }
+    uut.saveAll(initial);
+
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Random random = new Random(42);
+        while (!done.get()) {
+          List<Order> batch = new ArrayList<Order>();
+          for (int i = 0; i < 10; i++) {
+            batch.add(withStatus(initial.get(random.nextInt(initial.size())), "Order Paid"));
+            batch.add(order(random.nextInt(1000), "Order Created", "yummy2"));
+          }
+          uut.saveAll(batch);
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    });
+    writer.start();
+
+    try {
+      for (int i = 0; i < 10; i++) {
+        OrderSnapshot snapshot = uut.snapshot();
+        Set<Order> all = new HashSet<Order>(snapshot.findAll());
+        Set<Order> paged = new HashSet<Order>();
+        List<Order> page = snapshot.findPage(null, 100);
+        while (!page.isEmpty()) {
+          paged.addAll(page);
+          page = snapshot.findPage(OrderCursor.of(page.get(page.size() - 1)), 100);
+        }
+        assertEquals(all, paged);
+        assertEquals(all, new HashSet<Order>(snapshot.findAll()));
+        assertEquals(all.size(), snapshot.countByStatus("Order Created") + snapshot.countByStatus("Order Paid"));
+        snapshot.close();
+      }
+    } finally {
+      done.set(true);
+      writer.join();
+    }
+    assertEquals(0, uut.getRetainedOrders());
+  }
+
+  private static Order order(long submitted, String status, String item) {
+    Order order = new Order(UUID.randomUUID(), new Date(submitted));
+    order.addStatus(new OrderStatus(new Date(submitted), status));
+    order.setOrderItems(Collections.singletonMap(item, 1));
+    return order;
+  }
+
+  private static Order withStatus(Order order, String status) {
+    Order changed = new Order(order.getKey(), order.getDateTimeOfSubmission());
+    changed.setOrderItems(order.getOrderItems());
+    changed.addStatus(new OrderStatus(new Date(), status));
+    return changed;
+  }
+}
@@ -0,0 +1,145 @@
+package com.yummynoodlebar.core.services;
+
+import com.yummynoodlebar.core.events.orders.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.TestCase.*;
+import static org.mockito.Mockito.*;
+
+public class AsyncOrderEventHandlerUnitTest {
+
+  AsyncOrderEventHandler uut;
+  OrderService mockOrderService;
+  ExecutorService executor;
+
+  @Before
+  public void setupUnitUnderTest() {
+    mockOrderService = mock(OrderService.class);
+    executor = Executors.newSingleThreadExecutor();
+    uut = new AsyncOrderEventHandler(mockOrderService, executor);
+  }
+
+  @After
+  public void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void eventsAreProducedOffTheCallingThreadAndPassedToCallbacks() throws Exception {
+    final Thread caller = Thread.currentThread();
+    final UUID key = UUID.randomUUID();
+    final BlockingQueue<Object> received = new ArrayBlockingQueue<Object>(2);
+    //The core answers only once the callback has been added, so it is called from the executor's thread.
+    final CountDownLatch callbackAdded = new CountDownLatch(1);
+    when(mockOrderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenAnswer(
+            new Answer<OrderStatusEvent>() {
+              @Override
+              public OrderStatusEvent answer(InvocationOnMock invocation) throws Throwable {
+                callbackAdded.await();
+                return OrderStatusEvent.notFound(key);
+              }
+            });
+
+    EventFuture<OrderStatusEvent> future = uut.requestOrderStatus(new RequestOrderStatusEvent(key));
+    future.addCallback(new Recorder<OrderStatusEvent>(received) {
+      @Override
+      public void onEvent(OrderStatusEvent event) {
+        received.add(Thread.currentThread() != caller);
+        super.onEvent(event);
+      }
+    });
+    callbackAdded.countDown();
+
+    assertEquals(Boolean.TRUE, received.poll(5, TimeUnit.SECONDS));
+    OrderStatusEvent event = (OrderStatusEvent) received.poll(5, TimeUnit.SECONDS);
+    assertFalse(event.isEntityFound());
+    assertSame(event, future.get());
+
+    //Callbacks added once the event is there are called straight away.
+    future.addCallback(new Recorder<OrderStatusEvent>(received));
+    assertSame(event, received.poll());
+  }
+
+  @Test
+  public void failuresOfTheCoreArePassedToCallbacks() throws Exception {
+    BlockingQueue<Object> received = new ArrayBlockingQueue<Object>(1);
+    IllegalArgumentException invalid = new IllegalArgumentException("Invalid cursor");
+    when(mockOrderService.requestOrdersPage(any(RequestOrdersPageEvent.class))).thenThrow(invalid);
+
+    uut.requestOrdersPage(new RequestOrdersPageEvent("nonsense", 10))
+            .addCallback(new Recorder<OrdersPageEvent>(received));
+
+    assertSame(invalid, received.poll(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void requestsTheExecutorHasNoRoomForFailStraightAway() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    ThreadPoolExecutor full = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(1));
+    try {
+      full.execute(new Awaiting(blocked));
+      full.execute(new Awaiting(blocked));
+      uut = new AsyncOrderEventHandler(mockOrderService, full);
+
+      BlockingQueue<Object> received = new ArrayBlockingQueue<Object>(1);
+      uut.requestOrderStatusCounts(new RequestOrderStatusCountsEvent())
+              .addCallback(new Recorder<OrderStatusCountsEvent>(received));
+
+      assertTrue(received.poll() instanceof RejectedExecutionException);
+      verifyZeroInteractions(mockOrderService);
+    } finally {
+      blocked.countDown();
+      full.shutdown();
+    }
+  }
+
+  private static class Recorder<T> implements EventCallback<T> {
+    private final BlockingQueue<Object> received;
+
+    Recorder(BlockingQueue<Object> received) {
+      this.received = received;
+    }
+
+    @Override
+    public void onEvent(T event) {
+      received.add(event);
+    }
+
+    @Override
+    public void onFailure(Throwable failure) {
+      received.add(failure);
+    }
+  }
+
+  private static class Awaiting implements Runnable {
+    private final CountDownLatch latch;
+
+    Awaiting(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public void run() {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
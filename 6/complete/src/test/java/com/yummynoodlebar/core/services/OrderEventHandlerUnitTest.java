@@ -1,12 +1,23 @@
 package com.yummynoodlebar.core.services;
 
 import com.yummynoodlebar.core.domain.Order;
+import com.yummynoodlebar.core.domain.fixtures.OrdersFixtures;
+import com.yummynoodlebar.core.repository.OrderUpdate;
 import com.yummynoodlebar.core.repository.OrdersMemoryRepository;
+import com.yummynoodlebar.core.repository.OrdersVersioningRepository;
 import com.yummynoodlebar.core.events.orders.*;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 import static junit.framework.TestCase.*;
 
@@ -27,7 +38,7 @@ public class OrderEventHandlerUnitTest {
   @Test
   public void addANewOrderToTheSystem() {
 
-    when(mockOrdersMemoryRepository.save(any(Order.class))).thenReturn(new Order(new Date()));
+    when(mockOrdersMemoryRepository.save(any(Order.class))).thenReturn(new Order(OrdersFixtures.newKey(), new Date()));
 
     CreateOrderEvent ev = new CreateOrderEvent(new OrderDetails());
 
@@ -40,7 +51,7 @@ public class OrderEventHandlerUnitTest {
   @Test
   public void addTwoNewOrdersToTheSystem() {
 
-    when(mockOrdersMemoryRepository.save(any(Order.class))).thenReturn(new Order(new Date()));
+    when(mockOrdersMemoryRepository.save(any(Order.class))).thenReturn(new Order(OrdersFixtures.newKey(), new Date()));
 
     CreateOrderEvent ev = new CreateOrderEvent(new OrderDetails());
 
@@ -51,33 +62,58 @@ public class OrderEventHandlerUnitTest {
     verifyNoMoreInteractions(mockOrdersMemoryRepository);
   }
 
+  @Test
+  public void addABatchOfOrdersToTheSystemInOneWrite() {
+
+    when(mockOrdersMemoryRepository.saveAll(anyCollectionOf(Order.class))).then(new Answer<List<Order>>() {
+      @Override
+      public List<Order> answer(InvocationOnMock invocation) {
+        return new ArrayList<Order>((Collection<Order>) invocation.getArguments()[0]);
+      }
+    });
+
+    CreateOrdersEvent ev = new CreateOrdersEvent(Arrays.asList(new OrderDetails(), new OrderDetails()));
+
+    OrdersCreatedEvent created = uut.createOrders(ev);
+
+    verify(mockOrdersMemoryRepository).saveAll(anyCollectionOf(Order.class));
+    verifyNoMoreInteractions(mockOrdersMemoryRepository);
+
+    assertEquals(2, created.getCreated().size());
+    assertFalse(created.getCreated().get(0).getNewOrderKey().equals(created.getCreated().get(1).getNewOrderKey()));
+  }
+
   @Test
   public void removeAnOrderFromTheSystemFailsIfNotPresent() {
     UUID key = UUID.randomUUID();
 
-    when(mockOrdersMemoryRepository.findById(key)).thenReturn(null);
+    Order[] stored = storedOrder(key, null);
 
+    OrderDeletedEvent orderDeletedEvent = uut.deleteOrder(new DeleteOrderEvent(key));
 
+    assertFalse(orderDeletedEvent.isEntityFound());
+    assertNull(stored[0]);
   }
 
   @Test
   public void removeAnOrderFromTheSystemFailsIfNotPermitted() {
     UUID key = UUID.randomUUID();
 
-    Order order = new Order(new Date()) {
+    Order order = new Order(OrdersFixtures.newKey(), new Date()) {
       @Override
       public boolean canBeDeleted() {
         return false;
       }
     };
 
-    when(mockOrdersMemoryRepository.findById(key)).thenReturn(order);
+    Order[] stored = storedOrder(key, order);
 
     DeleteOrderEvent ev = new DeleteOrderEvent(key);
 
     OrderDeletedEvent orderDeletedEvent = uut.deleteOrder(ev);
 
     verify(mockOrdersMemoryRepository, never()).delete(ev.getKey());
+    assertSame(order, stored[0]);
 
     assertTrue(orderDeletedEvent.isEntityFound());
     assertFalse(orderDeletedEvent.isDeletionCompleted());
@@ -88,18 +124,76 @@ public class OrderEventHandlerUnitTest {
   public void removeAnOrderFromTheSystemWorksIfExists() {
 
     UUID key = UUID.randomUUID();
-    Order order = new Order(new Date());
+    Order order = new Order(OrdersFixtures.newKey(), new Date());
 
-    when(mockOrdersMemoryRepository.findById(key)).thenReturn(order);
+    Order[] stored = storedOrder(key, order);
 
     DeleteOrderEvent ev = new DeleteOrderEvent(key);
 
     OrderDeletedEvent orderDeletedEvent = uut.deleteOrder(ev);
 
-    verify(mockOrdersMemoryRepository).delete(ev.getKey());
+    verify(mockOrdersMemoryRepository, never()).findById(key);
+    assertNull(stored[0]);
 
     assertTrue(orderDeletedEvent.isEntityFound());
     assertTrue(orderDeletedEvent.isDeletionCompleted());
     assertEquals(order.getDateTimeOfSubmission(), orderDeletedEvent.getDetails().getDateTimeOfSubmission());
   }
+
+  @Test
+  public void removeAnOrderFromTheSystemFailsIfItChangedSinceTheVersionExpected() {
+
+    UUID key = UUID.randomUUID();
+    Order order = new Order(OrdersFixtures.newKey(), new Date());
+    order.setVersion(3);
+
+    Order[] stored = storedOrder(key, order);
+
+    OrderDeletedEvent orderDeletedEvent = uut.deleteOrder(new DeleteOrderEvent(key, 2L));
+
+    assertSame(order, stored[0]);
+
+    assertTrue(orderDeletedEvent.isEntityFound());
+    assertFalse(orderDeletedEvent.isDeletionCompleted());
+    assertTrue(orderDeletedEvent.isVersionConflict());
+    assertEquals(3, orderDeletedEvent.getDetails().getVersion());
+
+    orderDeletedEvent = uut.deleteOrder(new DeleteOrderEvent(key, 3L));
+
+    assertNull(stored[0]);
+    assertTrue(orderDeletedEvent.isDeletionCompleted());
+  }
+
+  /*
+   * Makes the repository hold the order under the key, and returns what it holds after each update.
+   */
+  private Order[] storedOrder(UUID key, final Order order) {
+    final Order[] stored = {order};
+    when(mockOrdersMemoryRepository.compute(eq(key), any(OrderUpdate.class))).then(new Answer<Order>() {
+      @Override
+      public Order answer(InvocationOnMock invocation) {
+        stored[0] = ((OrderUpdate) invocation.getArguments()[1]).apply(stored[0]);
+        return stored[0];
+      }
+    });
+    return stored;
+  }
+
+  @Test
+  public void allOrdersAreStreamedFromASnapshotThatIsClosedOnceRunOut() {
+    OrdersVersioningRepository repository =
+            new OrdersVersioningRepository(new OrdersMemoryRepository(new HashMap<UUID, Order>()));
+    uut = new OrderEventHandler(repository, new RandomOrderKeyGenerator(), repository);
+    uut.createOrder(new CreateOrderEvent(new OrderDetails()));
+
+    Iterator<OrderDetails> orders = uut.requestAllOrders(new RequestAllOrdersEvent()).getOrdersDetailsStream().iterator();
+    uut.createOrder(new CreateOrderEvent(new OrderDetails()));
+    assertEquals(1, repository.getOpenSnapshots());
+
+    assertTrue(orders.hasNext());
+    orders.next();
+    assertFalse(orders.hasNext());
+    assertEquals(0, repository.getOpenSnapshots());
+    assertEquals(0, repository.getRetainedOrders());
+  }
 }
@@ -0,0 +1,92 @@
+package com.yummynoodlebar.core.services;
+
+import com.yummynoodlebar.core.Benchmarks;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Key generation by 1 to 64 threads at once, random keys against time-ordered ones, logging the keys
+ * made a microsecond across all threads. Each thread count runs for a while to warm up before it is
+ * measured. A benchmark, see {@link Benchmarks}.
+ */
+public class OrderKeyGeneratorBenchmarkTest {
+
+  private static Logger LOG = LoggerFactory.getLogger(OrderKeyGeneratorBenchmarkTest.class);
+
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+  private static final long WARMUP_MILLIS = 500;
+  private static final long MEASURE_MILLIS = 1000;
+
+  @BeforeClass
+  public static void onlyWhenBenchmarking() {
+    Benchmarks.assumeEnabled();
+  }
+
+  @Test
+  public void randomKeys() throws Exception {
+    measure("random", new RandomOrderKeyGenerator());
+  }
+
+  @Test
+  public void timeOrderedKeys() throws Exception {
+    measure("time-ordered", new TimeOrderedOrderKeyGenerator());
+  }
+
+  private void measure(String name, OrderKeyGenerator generator) throws Exception {
+    StringBuilder report = new StringBuilder(name).append(" keys a microsecond by threads:");
+    for (int threads : THREADS) {
+      run(generator, threads, WARMUP_MILLIS);
+      report.append(String.format(" %d: %.2f", threads, run(generator, threads, MEASURE_MILLIS)));
+    }
+    LOG.info(report.toString());
+  }
+
+  /*
+   * Keys made a microsecond by the threads over the time, all of them starting together.
+   */
+  private static double run(final OrderKeyGenerator generator, int threads, long millis) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    final AtomicLong made = new AtomicLong();
+    final AtomicLong nulls = new AtomicLong();
+    final long[] stopAt = new long[1];
+    for (int i = 0; i < threads; i++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            long count = 0;
+            //The clock is read every 1024 keys, so it costs next to nothing.
+            while ((count & 1023) != 0 || System.nanoTime() < stopAt[0]) {
+              UUID key = generator.nextKey();
+              if (key == null) {
+                nulls.incrementAndGet();
+              }
+              count++;
+            }
+            made.addAndGet(count);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+    long started = System.nanoTime();
+    stopAt[0] = started + millis * 1000000;
+    start.countDown();
+    done.await();
+    assertEquals(0, nulls.get());
+    return made.get() / ((System.nanoTime() - started) / 1000.0);
+  }
+}
@@ -0,0 +1,64 @@
+package com.yummynoodlebar.core.services;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class TimeOrderedOrderKeyGeneratorUnitTest {
+
+  TimeOrderedOrderKeyGenerator uut = new TimeOrderedOrderKeyGenerator();
+
+  @Test
+  public void keysAreVersion7UuidsHoldingTheTimeTheyWereMade() {
+    long before = System.currentTimeMillis();
+    UUID key = uut.nextKey();
+    long after = System.currentTimeMillis();
+
+    assertEquals(7, key.version());
+    assertEquals(2, key.variant());
+    long millis = key.getMostSignificantBits() >>> 16;
+    assertTrue(millis >= before && millis <= after);
+  }
+
+  @Test
+  public void keysMadeInLaterMillisecondsSortAfter() {
+    List<UUID> keys = new ArrayList<UUID>();
+    for (long millis = 1000; millis < 1100; millis++) {
+      keys.add(TimeOrderedOrderKeyGenerator.keyAt(millis));
+      keys.add(TimeOrderedOrderKeyGenerator.keyAt(millis));
+    }
+    for (int i = 2; i < keys.size(); i++) {
+      assertTrue(keys.get(i - 2).compareTo(keys.get(i)) < 0);
+    }
+  }
+
+  @Test
+  public void threadsMakingKeysAtOnceNeverMakeTheSameOne() throws Exception {
+    final int threads = 8;
+    final int keysPerThread = 50000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<List<UUID>>> results = new ArrayList<Future<List<UUID>>>();
+    for (int i = 0; i < threads; i++) {
+      results.add(executor.submit(new Callable<List<UUID>>() {
+        @Override
+        public List<UUID> call() {
+          List<UUID> keys = new ArrayList<UUID>(keysPerThread);
+          for (int j = 0; j < keysPerThread; j++) {
+            keys.add(uut.nextKey());
+          }
+          return keys;
+        }
+      }));
+    }
+    Set<UUID> unique = new HashSet<UUID>();
+    for (Future<List<UUID>> result : results) {
+      unique.addAll(result.get(30, TimeUnit.SECONDS));
+    }
+    executor.shutdown();
+
+    assertEquals(threads * keysPerThread, unique.size());
+  }
+}
@@ -1,7 +1,8 @@
 package com.yummynoodlebar.rest.controller;
 
 import com.yummynoodlebar.core.events.orders.DeleteOrderEvent;
-import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,6 +15,7 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.UUID;
 
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
 import static com.yummynoodlebar.rest.controller.fixture.RestEventFixtures.*;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.when;
@@ -30,7 +32,7 @@ public class CancelOrderIntegrationTest {
   OrderCommandsController controller;
 
   @Mock
-  OrderService orderService;
+  AsyncOrderService orderService;
 
   UUID key = UUID.fromString("f3512d26-72f6-4290-9265-63ad69eccc13");
 
@@ -47,10 +49,10 @@ public class CancelOrderIntegrationTest {
   public void thatDeleteOrderUsesHttpOkOnSuccess() throws Exception {
 
     when(orderService.deleteOrder(any(DeleteOrderEvent.class)))
-            .thenReturn(
-                    orderDeleted(key));
+            .thenReturn(EventFuture.completed(
+                    orderDeleted(key)));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             delete("/aggregators/orders/{id}", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andDo(print())
@@ -65,10 +67,10 @@ public class CancelOrderIntegrationTest {
   public void thatDeleteOrderUsesHttpNotFoundOnEntityLookupFailure() throws Exception {
 
     when(orderService.deleteOrder(any(DeleteOrderEvent.class)))
-            .thenReturn(
-                    orderDeletedNotFound(key));
+            .thenReturn(EventFuture.completed(
+                    orderDeletedNotFound(key)));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             delete("/aggregators/orders/{id}", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andDo(print())
@@ -80,13 +82,33 @@ public class CancelOrderIntegrationTest {
   public void thatDeleteOrderUsesHttpForbiddenOnEntityDeletionFailure() throws Exception {
 
     when(orderService.deleteOrder(any(DeleteOrderEvent.class)))
-            .thenReturn(
-                    orderDeletedFailed(key));
+            .thenReturn(EventFuture.completed(
+                    orderDeletedFailed(key)));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             delete("/aggregators/orders/{id}", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andDo(print())
             .andExpect(status().isForbidden());
   }
+
+  @Test
+  public void thatDeleteOrderUsesHttpPreconditionFailedWhenTheOrderChangedSinceTheVersionTagged() throws Exception {
+
+    when(orderService.deleteOrder(any(DeleteOrderEvent.class)))
+            .thenReturn(EventFuture.completed(
+                    orderDeletedVersionConflict(key)));
+
+    performAsync(this.mockMvc,
+            delete("/aggregators/orders/{id}", key.toString())
+                    .header("If-Match", "\"2\"")
+                    .accept(MediaType.APPLICATION_JSON))
+            .andDo(print())
+            .andExpect(status().isPreconditionFailed())
+            .andExpect(header().string("ETag", "\"3\""));
+
+    verify(orderService).deleteOrder(argThat(
+            Matchers.<DeleteOrderEvent>hasProperty("expectedVersion",
+                    Matchers.equalTo(2L))));
+  }
 }
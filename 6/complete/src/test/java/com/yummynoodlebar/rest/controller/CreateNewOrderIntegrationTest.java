@@ -1,7 +1,9 @@
 package com.yummynoodlebar.rest.controller;
 
 import com.yummynoodlebar.core.events.orders.CreateOrderEvent;
-import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.core.events.orders.OrderCreatedEvent;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
@@ -13,12 +15,17 @@ import org.springframework.http.converter.json.MappingJackson2HttpMessageConvert
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.*;
 import static org.mockito.Mockito.*;
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsyncTimingOut;
+import static org.junit.Assert.*;
 import static com.yummynoodlebar.rest.controller.fixture.RestDataFixture.*;
 import static com.yummynoodlebar.rest.controller.fixture.RestEventFixtures.*;
 
@@ -31,7 +38,7 @@ public class CreateNewOrderIntegrationTest {
   OrderCommandsController controller;
 
   @Mock
-  OrderService orderService;
+  AsyncOrderService orderService;
 
   @Before
   public void setup() {
@@ -40,8 +47,8 @@ public class CreateNewOrderIntegrationTest {
     this.mockMvc = standaloneSetup(controller)
             .setMessageConverters(new MappingJackson2HttpMessageConverter()).build();
 
-    when(orderService.createOrder(any(CreateOrderEvent.class))).thenReturn(
-            orderCreated(UUID.fromString("f3512d26-72f6-4290-9265-63ad69eccc13")));
+    when(orderService.createOrder(any(CreateOrderEvent.class))).thenReturn(EventFuture.completed(
+            orderCreated(UUID.fromString("f3512d26-72f6-4290-9265-63ad69eccc13"))));
   }
 
   //createOrder - validation?
@@ -49,7 +56,7 @@ public class CreateNewOrderIntegrationTest {
   @Test
   public void thatCreateOrderUsesHttpCreated() throws Exception {
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             post("/aggregators/orders")
                     .content(standardOrderJSON())
                     .contentType(MediaType.APPLICATION_JSON)
@@ -61,7 +68,7 @@ public class CreateNewOrderIntegrationTest {
   @Test
   public void thatCreateOrderRendersAsJson() throws Exception {
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             post("/aggregators/orders")
                     .content(standardOrderJSON())
                     .contentType(MediaType.APPLICATION_JSON)
@@ -73,11 +80,66 @@ public class CreateNewOrderIntegrationTest {
   @Test
   public void thatCreateOrderPassesLocationHeader() throws Exception {
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             post("/aggregators/orders")
                     .content(standardOrderJSON())
                     .contentType(MediaType.APPLICATION_JSON)
                     .accept(MediaType.APPLICATION_JSON))
             .andExpect(header().string("Location", Matchers.endsWith("/aggregators/orders/f3512d26-72f6-4290-9265-63ad69eccc13")));
   }
+
+  @Test
+  public void thatCreateOrderTimingOutBeforeItStartsIsCancelledAndUsesHttpServiceUnavailable() throws Exception {
+    final boolean[] created = new boolean[1];
+    EventFuture<OrderCreatedEvent> queued = new EventFuture<OrderCreatedEvent>(new Callable<OrderCreatedEvent>() {
+      @Override
+      public OrderCreatedEvent call() {
+        created[0] = true;
+        return orderCreated(UUID.randomUUID());
+      }
+    });
+    when(orderService.createOrder(any(CreateOrderEvent.class))).thenReturn(queued);
+
+    performAsyncTimingOut(this.mockMvc,
+            post("/aggregators/orders")
+                    .content(standardOrderJSON())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isServiceUnavailable());
+
+    queued.run();
+    assertTrue(queued.isCancelled());
+    assertFalse(created[0]);
+  }
+
+  @Test
+  public void thatCreateOrderTimingOutWhileItIsBeingCreatedUsesHttpAccepted() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final EventFuture<OrderCreatedEvent> working = new EventFuture<OrderCreatedEvent>(new Callable<OrderCreatedEvent>() {
+      @Override
+      public OrderCreatedEvent call() throws Exception {
+        started.countDown();
+        release.await();
+        return orderCreated(UUID.randomUUID());
+      }
+    });
+    when(orderService.createOrder(any(CreateOrderEvent.class))).thenReturn(working);
+    new Thread(working).start();
+    started.await();
+
+    try {
+      performAsyncTimingOut(this.mockMvc,
+              post("/aggregators/orders")
+                      .content(standardOrderJSON())
+                      .contentType(MediaType.APPLICATION_JSON)
+                      .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isAccepted());
+    } finally {
+      release.countDown();
+    }
+
+    assertNotNull(working.get());
+    assertFalse(working.isCancelled());
+  }
 }
@@ -0,0 +1,98 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.events.orders.RequestOrderDetailsEvent;
+import com.yummynoodlebar.core.replication.OrdersReplication;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
+import static com.yummynoodlebar.rest.controller.fixture.RestDataFixture.standardOrderJSON;
+import static com.yummynoodlebar.rest.controller.fixture.RestEventFixtures.orderDetailsEvent;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+public class FollowerWriteRedirectIntegrationTest {
+
+  private static final String LEADER = "http://localhost:8081";
+
+  MockMvc mockMvc;
+
+  @InjectMocks
+  OrderQueriesController queriesController;
+
+  @InjectMocks
+  OrderCommandsController commandsController;
+
+  @Mock
+  AsyncOrderService orderService;
+
+  @Mock
+  OrdersReplication replication;
+
+  UUID key = UUID.fromString("f3512d26-72f6-4290-9265-63ad69eccc13");
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    this.mockMvc = standaloneSetup(queriesController, commandsController)
+            .setMessageConverters(new MappingJackson2HttpMessageConverter()).build();
+
+    when(replication.isFollower()).thenReturn(true);
+    when(replication.getLeaderUrl()).thenReturn(LEADER);
+  }
+
+  @Test
+  public void thatFollowersSendWritesToTheLeader() throws Exception {
+    performAsync(this.mockMvc,
+            post("/aggregators/orders")
+                    .content(standardOrderJSON())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isTemporaryRedirect())
+            .andExpect(header().string("Location", LEADER + "/aggregators/orders"));
+
+    performAsync(this.mockMvc,
+            delete("/aggregators/orders/{id}", key.toString())
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isTemporaryRedirect())
+            .andExpect(header().string("Location", LEADER + "/aggregators/orders/" + key));
+
+    verifyZeroInteractions(orderService);
+  }
+
+  @Test
+  public void thatWritesAreRefusedWhileNoLeaderIsKnown() throws Exception {
+    when(replication.getLeaderUrl()).thenReturn(null);
+
+    performAsync(this.mockMvc,
+            delete("/aggregators/orders/{id}", key.toString())
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isServiceUnavailable());
+
+    verifyZeroInteractions(orderService);
+  }
+
+  @Test
+  public void thatFollowersServeReads() throws Exception {
+    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(EventFuture.completed(orderDetailsEvent(key)));
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders/{id}", key.toString())
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.key").value(key.toString()));
+  }
+}
@@ -0,0 +1,78 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.events.orders.OrderStatusCountsEvent;
+import com.yummynoodlebar.core.events.orders.RequestOrderStatusCountsEvent;
+import com.yummynoodlebar.core.events.orders.RequestOrdersByStatusEvent;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
+import com.yummynoodlebar.rest.controller.fixture.RestDataFixture;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
+import static com.yummynoodlebar.rest.controller.fixture.RestDataFixture.allOrders;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+public class GetOrdersByStatusIntegrationTest {
+
+  MockMvc mockMvc;
+
+  @InjectMocks
+  OrderQueriesController controller;
+
+  @Mock
+  AsyncOrderService orderService;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    this.mockMvc = standaloneSetup(controller).build();
+  }
+
+  @Test
+  public void thatOrdersInAStatusAreRequested() throws Exception {
+    when(orderService.requestOrdersByStatus(any(RequestOrdersByStatusEvent.class))).thenReturn(EventFuture.completed(allOrders()));
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders?status=Order Created")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("$[0].items['" + RestDataFixture.YUMMY_ITEM + "']").value(12));
+
+    ArgumentCaptor<RequestOrdersByStatusEvent> request = ArgumentCaptor.forClass(RequestOrdersByStatusEvent.class);
+    verify(orderService).requestOrdersByStatus(request.capture());
+
+    assertEquals("Order Created", request.getValue().getStatus());
+  }
+
+  @Test
+  public void thatStatusCountsRenderAsJson() throws Exception {
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    counts.put("Order Created", 12);
+    counts.put("Cooking", 3);
+    when(orderService.requestOrderStatusCounts(any(RequestOrderStatusCountsEvent.class))).thenReturn(EventFuture.completed(
+            new OrderStatusCountsEvent(counts)));
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders/statuses")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("$['Order Created']").value(12))
+              .andExpect(jsonPath("$['Cooking']").value(3));
+  }
+}
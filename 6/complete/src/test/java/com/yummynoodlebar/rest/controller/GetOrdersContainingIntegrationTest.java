@@ -0,0 +1,86 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.domain.ItemMatch;
+import com.yummynoodlebar.core.events.orders.RequestOrdersContainingEvent;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
+import com.yummynoodlebar.rest.controller.fixture.RestDataFixture;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
+import static com.yummynoodlebar.rest.controller.fixture.RestDataFixture.allOrders;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+public class GetOrdersContainingIntegrationTest {
+
+  MockMvc mockMvc;
+
+  @InjectMocks
+  OrderQueriesController controller;
+
+  @Mock
+  AsyncOrderService orderService;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    this.mockMvc = standaloneSetup(controller).build();
+
+    when(orderService.requestOrdersContaining(any(RequestOrdersContainingEvent.class))).thenReturn(EventFuture.completed(allOrders()));
+  }
+
+  @Test
+  public void thatOrdersContainingAllItemsAreRequestedByDefault() throws Exception {
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders?item=yummy15&item=yummy3")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("$[0].items['" + RestDataFixture.YUMMY_ITEM + "']").value(12));
+
+    ArgumentCaptor<RequestOrdersContainingEvent> request = ArgumentCaptor.forClass(RequestOrdersContainingEvent.class);
+    verify(orderService).requestOrdersContaining(request.capture());
+
+    assertEquals(new LinkedHashSet<String>(Arrays.asList("yummy15", "yummy3")), request.getValue().getItems());
+    assertEquals(ItemMatch.ALL, request.getValue().getMatch());
+  }
+
+  @Test
+  public void thatAnyItemCanBeMatched() throws Exception {
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders?item=yummy15&item=yummy3&match=any")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isOk());
+
+    ArgumentCaptor<RequestOrdersContainingEvent> request = ArgumentCaptor.forClass(RequestOrdersContainingEvent.class);
+    verify(orderService).requestOrdersContaining(request.capture());
+
+    assertEquals(ItemMatch.ANY, request.getValue().getMatch());
+  }
+
+  @Test
+  public void thatAnUnknownMatchIsABadRequest() throws Exception {
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders?item=yummy15&match=some")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isBadRequest());
+  }
+}
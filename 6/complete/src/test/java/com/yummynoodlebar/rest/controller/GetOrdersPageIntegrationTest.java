@@ -0,0 +1,84 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.events.orders.OrderDetails;
+import com.yummynoodlebar.core.events.orders.OrdersPageEvent;
+import com.yummynoodlebar.core.events.orders.RequestOrdersPageEvent;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
+import com.yummynoodlebar.rest.controller.fixture.RestDataFixture;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
+import static com.yummynoodlebar.rest.controller.fixture.RestDataFixture.standardOrderDetails;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+public class GetOrdersPageIntegrationTest {
+
+  private static final String NEXT_CURSOR = "1370000000000_f3512d26-72f6-4290-9265-63ad69eccc13";
+
+  MockMvc mockMvc;
+
+  @InjectMocks
+  OrderQueriesController controller;
+
+  @Mock
+  AsyncOrderService orderService;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    this.mockMvc = standaloneSetup(controller).build();
+  }
+
+  @Test
+  public void thatAFullPageLinksToTheNextPage() throws Exception {
+    when(orderService.requestOrdersPage(any(RequestOrdersPageEvent.class))).thenReturn(EventFuture.completed(
+            new OrdersPageEvent(Collections.singletonList(standardOrderDetails()), NEXT_CURSOR)));
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders?limit=1")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("$[0].items['" + RestDataFixture.YUMMY_ITEM + "']").value(12))
+              .andExpect(header().string("Link", containsString("after=" + NEXT_CURSOR)))
+              .andExpect(header().string("Link", containsString("rel=\"next\"")));
+  }
+
+  @Test
+  public void thatTheLastPageHasNoNextLink() throws Exception {
+    when(orderService.requestOrdersPage(any(RequestOrdersPageEvent.class))).thenReturn(EventFuture.completed(
+            new OrdersPageEvent(Collections.<OrderDetails>emptyList(), null)));
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders?limit=10&after=" + NEXT_CURSOR)
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isOk())
+              .andExpect(header().string("Link", nullValue()));
+  }
+
+  @Test
+  public void thatAnInvalidCursorIsABadRequest() throws Exception {
+    when(orderService.requestOrdersPage(any(RequestOrdersPageEvent.class))).thenReturn(
+            EventFuture.<OrdersPageEvent>failed(new IllegalArgumentException("Invalid cursor")));
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders?limit=10&after=nonsense")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isBadRequest());
+  }
+}
@@ -0,0 +1,75 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.events.orders.RequestAllOrdersEvent;
+import com.yummynoodlebar.core.events.orders.RequestOrdersSubmittedEvent;
+import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.rest.controller.fixture.RestDataFixture;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static com.yummynoodlebar.rest.controller.fixture.RestDataFixture.allOrders;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+public class GetOrdersSubmittedIntegrationTest {
+
+  MockMvc mockMvc;
+
+  @InjectMocks
+  OrderQueriesController controller;
+
+  @Mock
+  OrderService orderService;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    this.mockMvc = standaloneSetup(controller).build();
+
+    when(orderService.requestOrdersSubmitted(any(RequestOrdersSubmittedEvent.class))).thenReturn(allOrders());
+  }
+
+  @Test
+  public void thatATimeRangeQueriesOrdersSubmittedInIt() throws Exception {
+
+    this.mockMvc.perform(
+            get("/aggregators/orders?from=1370000000000&to=1370000600000")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isOk())
+              .andExpect(jsonPath("$[0].items['" + RestDataFixture.YUMMY_ITEM + "']").value(12));
+
+    ArgumentCaptor<RequestOrdersSubmittedEvent> request = ArgumentCaptor.forClass(RequestOrdersSubmittedEvent.class);
+    verify(orderService).requestOrdersSubmitted(request.capture());
+    verify(orderService, never()).requestAllOrders(any(RequestAllOrdersEvent.class));
+
+    assertEquals(1370000000000L, request.getValue().getFrom().getTime());
+    assertEquals(1370000600000L, request.getValue().getTo().getTime());
+  }
+
+  @Test
+  public void thatARangeCanBeOpenEnded() throws Exception {
+
+    this.mockMvc.perform(
+            get("/aggregators/orders?from=1370000000000")
+              .accept(MediaType.APPLICATION_JSON))
+              .andExpect(status().isOk());
+
+    ArgumentCaptor<RequestOrdersSubmittedEvent> request = ArgumentCaptor.forClass(RequestOrdersSubmittedEvent.class);
+    verify(orderService).requestOrdersSubmitted(request.capture());
+
+    assertEquals(1370000000000L, request.getValue().getFrom().getTime());
+    assertNull(request.getValue().getTo());
+  }
+}
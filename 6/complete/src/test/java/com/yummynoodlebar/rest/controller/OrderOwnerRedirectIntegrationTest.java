@@ -0,0 +1,95 @@
+package com.yummynoodlebar.rest.controller;
+
+import com.yummynoodlebar.core.cluster.ClusterNode;
+import com.yummynoodlebar.core.events.orders.RequestOrderDetailsEvent;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
+import static com.yummynoodlebar.rest.controller.fixture.RestEventFixtures.orderDetailsEvent;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+public class OrderOwnerRedirectIntegrationTest {
+
+  private static final String OWNER = "http://localhost:8082";
+
+  MockMvc mockMvc;
+
+  @InjectMocks
+  OrderQueriesController queriesController;
+
+  @InjectMocks
+  OrderCommandsController commandsController;
+
+  @InjectMocks
+  OrderStatusController statusController;
+
+  @Mock
+  AsyncOrderService orderService;
+
+  @Mock
+  ClusterNode clusterNode;
+
+  UUID key = UUID.fromString("f3512d26-72f6-4290-9265-63ad69eccc13");
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+
+    this.mockMvc = standaloneSetup(queriesController, commandsController, statusController)
+            .setMessageConverters(new MappingJackson2HttpMessageConverter()).build();
+
+    when(clusterNode.ownerOf(key)).thenReturn(OWNER);
+  }
+
+  @Test
+  public void thatOrdersOwnedElsewhereAreRedirectedToTheirOwner() throws Exception {
+    when(clusterNode.isLocal(key)).thenReturn(false);
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders/{id}", key.toString())
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isTemporaryRedirect())
+            .andExpect(header().string("Location", OWNER + "/aggregators/orders/" + key));
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders/{id}/status", key.toString())
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isTemporaryRedirect())
+            .andExpect(header().string("Location", OWNER + "/aggregators/orders/" + key + "/status"));
+
+    performAsync(this.mockMvc,
+            delete("/aggregators/orders/{id}", key.toString())
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isTemporaryRedirect())
+            .andExpect(header().string("Location", OWNER + "/aggregators/orders/" + key));
+
+    verifyZeroInteractions(orderService);
+  }
+
+  @Test
+  public void thatOrdersOwnedHereAreServedHere() throws Exception {
+    when(clusterNode.isLocal(key)).thenReturn(true);
+    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(EventFuture.completed(orderDetailsEvent(key)));
+
+    performAsync(this.mockMvc,
+            get("/aggregators/orders/{id}", key.toString())
+                    .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.key").value(key.toString()));
+  }
+}
@@ -1,7 +1,8 @@
 package com.yummynoodlebar.rest.controller;
 
 import com.yummynoodlebar.core.events.orders.RequestOrderStatusEvent;
-import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -14,6 +15,7 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.UUID;
 
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
 import static com.yummynoodlebar.rest.controller.fixture.RestEventFixtures.*;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.when;
@@ -30,7 +32,7 @@ public class OrderStatusIntegrationTest {
   OrderStatusController controller;
 
   @Mock
-  OrderService orderService;
+  AsyncOrderService orderService;
 
   UUID key = UUID.fromString("f3512d26-72f6-4290-9265-63ad69eccc13");
 
@@ -47,10 +49,10 @@ public class OrderStatusIntegrationTest {
   @Test
   public void thatViewOrderStatusUsesHttpNotFound() throws Exception {
 
-    when(orderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenReturn(
-            orderStatusNotFound(key));
+    when(orderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenReturn(EventFuture.completed(
+            orderStatusNotFound(key)));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}/status", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andExpect(status().isNotFound());
@@ -59,10 +61,10 @@ public class OrderStatusIntegrationTest {
   @Test
   public void thatViewOrderUsesHttpOK() throws Exception {
 
-    when(orderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenReturn(
-            orderStatus(key, "Cooking"));
+    when(orderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenReturn(EventFuture.completed(
+            orderStatus(key, "Cooking")));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}/status", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andDo(print())
@@ -72,10 +74,10 @@ public class OrderStatusIntegrationTest {
   @Test
   public void thatViewOrderRendersJSONCorrectly() throws Exception {
 
-    when(orderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenReturn(
-            orderStatus(key, "Cooking"));
+    when(orderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenReturn(EventFuture.completed(
+            orderStatus(key, "Cooking")));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}/status", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
@@ -86,10 +88,10 @@ public class OrderStatusIntegrationTest {
   @Test
   public void thatViewOrderRendersXMLCorrectly() throws Exception {
 
-    when(orderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenReturn(
-            orderStatus(key, "Cooking"));
+    when(orderService.requestOrderStatus(any(RequestOrderStatusEvent.class))).thenReturn(EventFuture.completed(
+            orderStatus(key, "Cooking")));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}/status", key.toString())
                     .accept(MediaType.TEXT_XML))
             .andDo(print())
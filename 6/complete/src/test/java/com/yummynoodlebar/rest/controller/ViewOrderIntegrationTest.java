@@ -1,7 +1,8 @@
 package com.yummynoodlebar.rest.controller;
 
 import com.yummynoodlebar.core.events.orders.RequestOrderDetailsEvent;
-import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -19,6 +20,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
 import static com.yummynoodlebar.rest.controller.fixture.RestDataFixture.*;
 import static com.yummynoodlebar.rest.controller.fixture.RestEventFixtures.*;
 
@@ -30,7 +32,7 @@ public class ViewOrderIntegrationTest {
   OrderQueriesController controller;
 
   @Mock
-  OrderService orderService;
+  AsyncOrderService orderService;
 
   UUID key = UUID.fromString("f3512d26-72f6-4290-9265-63ad69eccc13");
 
@@ -45,10 +47,10 @@ public class ViewOrderIntegrationTest {
   @Test
   public void thatViewOrderUsesHttpNotFound() throws Exception {
 
-    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(
-            orderDetailsNotFound(key));
+    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(EventFuture.completed(
+            orderDetailsNotFound(key)));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}",  key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andDo(print())
@@ -58,10 +60,10 @@ public class ViewOrderIntegrationTest {
   @Test
   public void thatViewOrderUsesHttpOK() throws Exception {
 
-    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(
-            orderDetailsEvent(key));
+    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(EventFuture.completed(
+            orderDetailsEvent(key)));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andExpect(status().isOk());
@@ -70,10 +72,10 @@ public class ViewOrderIntegrationTest {
   @Test
   public void thatViewOrderRendersCorrectly() throws Exception {
 
-    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(
-            orderDetailsEvent(key));
+    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(EventFuture.completed(
+            orderDetailsEvent(key)));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andExpect(jsonPath("$.items['" + YUMMY_ITEM + "']").value(12))
@@ -1,7 +1,8 @@
 package com.yummynoodlebar.rest.controller;
 
 import com.yummynoodlebar.core.events.orders.RequestOrderDetailsEvent;
-import com.yummynoodlebar.core.services.OrderService;
+import com.yummynoodlebar.core.services.AsyncOrderService;
+import com.yummynoodlebar.core.services.EventFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
@@ -14,6 +15,7 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.UUID;
 
+import static com.yummynoodlebar.rest.controller.fixture.AsyncRequests.performAsync;
 import static com.yummynoodlebar.rest.controller.fixture.RestEventFixtures.orderDetailsEvent;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.when;
@@ -31,7 +33,7 @@ public class ViewOrderXmlIntegrationTest {
   OrderQueriesController controller;
 
   @Mock
-  OrderService orderService;
+  AsyncOrderService orderService;
 
   UUID key = UUID.fromString("f3512d26-72f6-4290-9265-63ad69eccc13");
 
@@ -47,10 +49,10 @@ public class ViewOrderXmlIntegrationTest {
   @Test
   public void thatViewOrderRendersXMLCorrectly() throws Exception {
 
-    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(
-            orderDetailsEvent(key));
+    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(EventFuture.completed(
+            orderDetailsEvent(key)));
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}", key.toString())
                     .accept(MediaType.TEXT_XML))
             .andDo(print())
@@ -61,12 +63,12 @@ public class ViewOrderXmlIntegrationTest {
   @Test
   public void thatViewOrderRendersJsonCorrectly() throws Exception {
 
-    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(
-            orderDetailsEvent(key));
+    when(orderService.requestOrderDetails(any(RequestOrderDetailsEvent.class))).thenReturn(EventFuture.completed(
+            orderDetailsEvent(key)));
 
     //TODOCUMENT JSON Path in use here (really like this)
 
-    this.mockMvc.perform(
+    performAsync(this.mockMvc,
             get("/aggregators/orders/{id}", key.toString())
                     .accept(MediaType.APPLICATION_JSON))
             .andDo(print())
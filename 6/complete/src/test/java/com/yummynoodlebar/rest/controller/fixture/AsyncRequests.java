@@ -0,0 +1,65 @@
+package com.yummynoodlebar.rest.controller.fixture;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+//TODOCUMENT The controllers answer through DeferredResult, so MockMvc only sees the response once the async
+//processing they start has been dispatched. asyncDispatch does not wait for that, and getAsyncResult() returns
+//a moment before the result reaches the WebAsyncManager when it is set on another thread, so wait for both.
+public class AsyncRequests {
+
+  private static final long TIMEOUT_MILLIS = 5000;
+
+  public static ResultActions performAsync(MockMvc mockMvc, RequestBuilder requestBuilder) throws Exception {
+    MvcResult started = mockMvc.perform(requestBuilder)
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    started.getAsyncResult(TIMEOUT_MILLIS);
+
+    return dispatch(mockMvc, started);
+  }
+
+  //TODOCUMENT As the servlet container does when the async processing outlasts its timeout, without waiting that
+  //long. The mock async context only shows its listeners reflectively.
+  public static ResultActions performAsyncTimingOut(MockMvc mockMvc, RequestBuilder requestBuilder) throws Exception {
+    MvcResult started = mockMvc.perform(requestBuilder)
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    AsyncContext asyncContext = ((HttpServletRequest) started.getRequest()).getAsyncContext();
+    Method getListeners = asyncContext.getClass().getMethod("getListeners");
+    getListeners.setAccessible(true);
+    for (Object listener : (List<?>) getListeners.invoke(asyncContext)) {
+      ((AsyncListener) listener).onTimeout(new AsyncEvent(asyncContext));
+    }
+
+    return dispatch(mockMvc, started);
+  }
+
+  private static ResultActions dispatch(MockMvc mockMvc, MvcResult started) throws Exception {
+    WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(started.getRequest());
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!asyncManager.hasConcurrentResult() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertTrue("No result to dispatch", asyncManager.hasConcurrentResult());
+
+    return mockMvc.perform(asyncDispatch(started));
+  }
+}
@@ -28,6 +28,11 @@ public class RestEventFixtures {
   public static OrderDeletedEvent orderDeletedFailed(UUID key) {
     return OrderDeletedEvent.deletionForbidden(key, standardOrderDetails());
   }
+  public static OrderDeletedEvent orderDeletedVersionConflict(UUID key) {
+    OrderDetails details = standardOrderDetails();
+    details.setVersion(3);
+    return OrderDeletedEvent.versionConflict(key, details);
+  }
   public static OrderDeletedEvent orderDeletedNotFound(UUID key) {
     return OrderDeletedEvent.notFound(key);
   }
@@ -1,6 +1,7 @@
 package com.yummynoodlebar.rest.domain;
 
 import com.yummynoodlebar.core.events.orders.OrderDetails;
+import com.yummynoodlebar.rest.controller.ControllerLinks;
 import com.yummynoodlebar.rest.controller.fixture.RestDataFixture;
 import org.junit.Before;
 import org.junit.Test;
@@ -46,4 +47,17 @@ public class OrderTests {
     assertTrue(order.getItems().containsKey(RestDataFixture.YUMMY_ITEM));
     assertEquals(details.getOrderItems().get(RestDataFixture.YUMMY_ITEM), order.getItems().get(RestDataFixture.YUMMY_ITEM));
   }
+
+  @Test
+  public void thatOrderLinksCanBeBuiltOnceTheRequestIsNoLongerBound() {
+    ControllerLinks links = ControllerLinks.ofCurrentRequest();
+    RequestContextHolder.resetRequestAttributes();
+    OrderDetails details = RestDataFixture.standardOrderDetails();
+
+    Order order = Order.fromOrderDetails(details, links);
+
+    assertEquals("http://localhost/aggregators/orders/" + details.getKey(), order.getId().getHref());
+    assertEquals("http://localhost/aggregators/orders/" + details.getKey() + "/status",
+            order.getLink("Order Status").getHref());
+  }
 }